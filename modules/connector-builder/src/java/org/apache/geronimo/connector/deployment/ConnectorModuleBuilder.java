@@ -748,16 +748,24 @@ public class ConnectorModuleBuilder implements ModuleBuilder, ResourceReferenceB
         if (connectionManager.getSinglePool() != null) {
             GerSinglepoolType pool = connectionManager.getSinglePool();
 
-            pooling = new SinglePool(pool.isSetMaxSize() ? pool.getMaxSize() : defaultMaxSize,
+            SinglePool singlePool = new SinglePool(pool.isSetMaxSize() ? pool.getMaxSize() : defaultMaxSize,
                     pool.isSetMinSize() ? pool.getMinSize() : defaultMinSize,
                     pool.isSetBlockingTimeoutMilliseconds() ? pool.getBlockingTimeoutMilliseconds() : defaultBlockingTimeoutMilliseconds,
                     pool.isSetIdleTimeoutMinutes() ? pool.getIdleTimeoutMinutes() : defaultIdleTimeoutMinutes,
                     pool.getMatchOne() != null,
                     pool.getMatchAll() != null,
                     pool.getSelectOneAssumeMatch() != null);
+            singlePool.setStriped(pool.isSetStriped());
+            if (pool.isSetBackgroundValidationMilliseconds()) {
+                singlePool.setBackgroundValidationMilliseconds(pool.getBackgroundValidationMilliseconds());
+            }
+            if (pool.isSetMaxLifetimeMinutes()) {
+                singlePool.setMaxLifetimeMinutes(pool.getMaxLifetimeMinutes());
+            }
+            pooling = singlePool;
         } else if (connectionManager.getPartitionedPool() != null) {
             GerPartitionedpoolType pool = connectionManager.getPartitionedPool();
-            pooling = new PartitionedPool(pool.isSetMaxSize() ? pool.getMaxSize() : defaultMaxSize,
+            PartitionedPool partitionedPool = new PartitionedPool(pool.isSetMaxSize() ? pool.getMaxSize() : defaultMaxSize,
                     pool.isSetMinSize() ? pool.getMinSize() : defaultMinSize,
                     pool.isSetBlockingTimeoutMilliseconds() ? pool.getBlockingTimeoutMilliseconds() : defaultBlockingTimeoutMilliseconds,
                     pool.isSetIdleTimeoutMinutes() ? pool.getIdleTimeoutMinutes() : defaultIdleTimeoutMinutes,
@@ -766,6 +774,17 @@ public class ConnectorModuleBuilder implements ModuleBuilder, ResourceReferenceB
                     pool.getSelectOneAssumeMatch() != null,
                     pool.isSetPartitionByConnectionrequestinfo(),
                     pool.isSetPartitionBySubject());
+            partitionedPool.setStriped(pool.isSetStriped());
+            if (pool.isSetBackgroundValidationMilliseconds()) {
+                partitionedPool.setBackgroundValidationMilliseconds(pool.getBackgroundValidationMilliseconds());
+            }
+            if (pool.isSetMaxLifetimeMinutes()) {
+                partitionedPool.setMaxLifetimeMinutes(pool.getMaxLifetimeMinutes());
+            }
+            if (pool.isSetMaxTotalConnections()) {
+                partitionedPool.setMaxTotalConnections(pool.getMaxTotalConnections());
+            }
+            pooling = partitionedPool;
         } else if (connectionManager.getNoPool() != null) {
             pooling = new NoPool();
         } else {
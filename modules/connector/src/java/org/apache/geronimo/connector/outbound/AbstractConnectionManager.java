@@ -17,6 +17,7 @@
 
 package org.apache.geronimo.connector.outbound;
 
+import javax.management.j2ee.statistics.Stats;
 import javax.resource.ResourceException;
 import javax.resource.spi.ConnectionManager;
 import javax.resource.spi.ConnectionRequestInfo;
@@ -24,12 +25,14 @@ import javax.resource.spi.LazyAssociatableConnectionManager;
 import javax.resource.spi.ManagedConnectionFactory;
 
 import org.apache.geronimo.connector.outbound.connectionmanagerconfig.PoolingSupport;
+import org.apache.geronimo.management.StatisticsProvider;
+import org.apache.geronimo.management.stats.JCAConnectionPoolStatsImpl;
 import org.apache.geronimo.transaction.manager.NamedXAResource;
 
 /**
  * @version $Rev$ $Date$
  */
-public abstract class AbstractConnectionManager implements ConnectionManagerContainer, ConnectionManager, LazyAssociatableConnectionManager, PoolingAttributes {
+public abstract class AbstractConnectionManager implements ConnectionManagerContainer, ConnectionManager, LazyAssociatableConnectionManager, PoolingAttributes, StatisticsProvider {
     protected final Interceptors interceptors;
 
     //default constructor for use as endpoint
@@ -42,7 +45,9 @@ public abstract class AbstractConnectionManager implements ConnectionManagerCont
     }
 
     public Object createConnectionFactory(ManagedConnectionFactory mcf) throws ResourceException {
-        return mcf.createConnectionFactory(this);
+        Object connectionFactory = mcf.createConnectionFactory(this);
+        getPooling().prefill(mcf);
+        return connectionFactory;
     }
 
     /**
@@ -136,6 +141,18 @@ public abstract class AbstractConnectionManager implements ConnectionManagerCont
         getPooling().setIdleTimeoutMinutes(idleTimeoutMinutes);
     }
 
+    /**
+     * @return a snapshot of the JCAConnectionPoolStats of this connection manager's pool
+     */
+    public Stats getStats() {
+        PoolingSupport pooling = getPooling();
+        ConnectionPoolStatistics statistics = pooling.getStatistics();
+        if (statistics == null) {
+            return new JCAConnectionPoolStatsImpl(null, null);
+        }
+        return statistics.getStats(null, null, pooling);
+    }
+
     private ConnectionInterceptor getStack() {
         return interceptors.getStack();
     }
@@ -19,6 +19,7 @@ package org.apache.geronimo.connector.outbound;
 import org.apache.geronimo.gbean.GBeanInfo;
 import org.apache.geronimo.gbean.GBeanInfoBuilder;
 import org.apache.geronimo.j2ee.j2eeobjectnames.NameFactory;
+import org.apache.geronimo.management.StatisticsProvider;
 
 /**
  *
@@ -43,6 +44,8 @@ public class AbstractConnectionManagerGBean {
                              "blockingTimeoutMilliseconds",
                              "idleTimeoutMinutes"});
 
+        infoBuilder.addInterface(StatisticsProvider.class);
+
         GBEAN_INFO = infoBuilder.getBeanInfo();
     }
 
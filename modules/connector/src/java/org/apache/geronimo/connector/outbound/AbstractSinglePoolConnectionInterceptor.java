@@ -16,12 +16,13 @@
  */
 package org.apache.geronimo.connector.outbound;
 
-import java.util.TimerTask;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.Timer;
+import java.util.Map;
 import javax.resource.spi.ManagedConnectionFactory;
 import javax.resource.spi.ConnectionRequestInfo;
+import javax.resource.spi.ValidatingManagedConnectionFactory;
 import javax.resource.ResourceException;
 import javax.security.auth.Subject;
 
@@ -34,7 +35,7 @@ import org.apache.commons.logging.LogFactory;
 /**
  * @version $Rev$ $Date$
  */
-public abstract class AbstractSinglePoolConnectionInterceptor implements ConnectionInterceptor, PoolingAttributes {
+public abstract class AbstractSinglePoolConnectionInterceptor implements ConnectionInterceptor, PoolingAttributes, PoolMaintenance.Pool {
     protected static Log log = LogFactory.getLog(SinglePoolConnectionInterceptor.class.getName());
     protected final ConnectionInterceptor next;
     private final ReadWriteLock resizeLock = new WriterPreferenceReadWriteLock();
@@ -42,12 +43,25 @@ public abstract class AbstractSinglePoolConnectionInterceptor implements Connect
     protected int blockingTimeoutMilliseconds;
     protected int connectionCount = 0;
     private long idleTimeoutMilliseconds;
-    private IdleReleaser idleReleaser;
-    protected Timer timer = PoolIdleReleaserTimer.getTimer();
+    private long backgroundValidationMilliseconds;
+    private long maxLifetimeMilliseconds;
+    private long lastValidation;
+    private PoolMaintenance.MaintenanceTask maintenanceTask;
+    private final Object fillLock = new Object();
+    private FillTask fillTask;
+    private boolean filling = false;
+    /**
+     * Idle connections maintenance has taken out of the pool to validate or destroy them, mapped
+     * to Boolean.TRUE once a connection error has been reported for them meanwhile.  Maintenance,
+     * not returnConnection, then destroys them.  Also guards taking a connection out of the pool
+     * to destroy it.
+     */
+    private final Map reclaimed = new IdentityHashMap();
     protected int maxSize = 0;
     protected int minSize = 0;
     protected int shrinkLater = 0;
     protected volatile boolean destroyed = false;
+    protected ConnectionPoolStatistics statistics = new ConnectionPoolStatistics();
 
     public AbstractSinglePoolConnectionInterceptor(final ConnectionInterceptor next,
                                                    int maxSize,
@@ -69,8 +83,9 @@ public abstract class AbstractSinglePoolConnectionInterceptor implements Connect
         try {
             resizeLock.readLock().acquire();
             try {
-                if (permits.attempt(blockingTimeoutMilliseconds)) {
+                if (acquirePermit()) {
                     internalGetConnection(connectionInfo);
+                    connectionInfo.getManagedConnectionInfo().setCheckedOutTime(System.currentTimeMillis());
                 } else {
                     throw new ResourceException("No ManagedConnections available "
                             + "within configured blocking timeout ( "
@@ -87,6 +102,25 @@ public abstract class AbstractSinglePoolConnectionInterceptor implements Connect
         } // end of try-catch
     }
 
+    private boolean acquirePermit() throws InterruptedException {
+        if (permits.attempt(0)) {
+            statistics.permitAcquired();
+            return true;
+        }
+        statistics.waitStarted();
+        long start = System.currentTimeMillis();
+        boolean timedOut = false;
+        try {
+            if (permits.attempt(blockingTimeoutMilliseconds)) {
+                return true;
+            }
+            timedOut = true;
+            return false;
+        } finally {
+            statistics.waitFinished(System.currentTimeMillis() - start, timedOut);
+        }
+    }
+
     protected abstract void internalGetConnection(ConnectionInfo connectionInfo) throws ResourceException;
 
     public void returnConnection(ConnectionInfo connectionInfo,
@@ -116,10 +150,28 @@ public abstract class AbstractSinglePoolConnectionInterceptor implements Connect
                 return;
             }
 
-            boolean wasInPool = internalReturn(connectionInfo, connectionReturnAction);
+            long now = System.currentTimeMillis();
+            if (maxLifetimeMilliseconds > 0 && mci.getCreatedTime() < now - maxLifetimeMilliseconds) {
+                connectionReturnAction = ConnectionReturnAction.DESTROY;
+            }
+            boolean wasInPool;
+            if (connectionReturnAction == ConnectionReturnAction.DESTROY) {
+                // a connection error may be reported for a connection sitting in the pool, which holds no permit
+                synchronized (reclaimed) {
+                    if (reclaimed.containsKey(mci)) {
+                        reclaimed.put(mci, Boolean.TRUE);
+                        return;
+                    }
+                    wasInPool = removeIdle(mci);
+                }
+                internalReturn(connectionInfo, connectionReturnAction);
+            } else {
+                wasInPool = internalReturn(connectionInfo, connectionReturnAction);
+            }
 
             if (!wasInPool) {
                 permits.release();
+                statistics.connectionReturned(now - mci.getCheckedOutTime());
             }
         } finally {
             resizeLock.readLock().release();
@@ -130,11 +182,10 @@ public abstract class AbstractSinglePoolConnectionInterceptor implements Connect
 
     protected abstract void internalDestroy();
 
-    // Cancel the IdleReleaser TimerTask (fixes memory leak) and clean up the pool
+    // Cancel the maintenance TimerTask (fixes memory leak) and clean up the pool
     public void destroy() {
         destroyed = true;
-        if (idleReleaser != null)
-            idleReleaser.cancel();
+        scheduleMaintenance();
         internalDestroy();
         next.destroy();
     }
@@ -143,6 +194,17 @@ public abstract class AbstractSinglePoolConnectionInterceptor implements Connect
         return 1;
     }
 
+    public ConnectionPoolStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Replaces the statistics collector; only to be called before the pool is used.
+     */
+    public void setStatistics(ConnectionPoolStatistics statistics) {
+        this.statistics = statistics;
+    }
+
     public abstract int getPartitionMaxSize();
 
     public void setPartitionMaxSize(int newMaxSize) throws InterruptedException {
@@ -255,64 +317,242 @@ public abstract class AbstractSinglePoolConnectionInterceptor implements Connect
         if (idleTimeoutMinutes < 0) {
             throw new IllegalArgumentException("idleTimeoutMinutes must be positive or 0, not " + idleTimeoutMinutes);
         }
-        if (idleReleaser != null) {
-            idleReleaser.cancel();
+        this.idleTimeoutMilliseconds = idleTimeoutMinutes * 60 * 1000;
+        scheduleMaintenance();
+    }
+
+    public long getBackgroundValidationMilliseconds() {
+        return backgroundValidationMilliseconds;
+    }
+
+    /**
+     * Sets how often idle connections are checked with a ValidatingManagedConnectionFactory; 0 turns
+     * background validation off.
+     */
+    public void setBackgroundValidationMilliseconds(long backgroundValidationMilliseconds) {
+        if (backgroundValidationMilliseconds < 0) {
+            throw new IllegalArgumentException("backgroundValidationMilliseconds must be positive or 0, not " + backgroundValidationMilliseconds);
         }
-        if (idleTimeoutMinutes > 0) {
-            this.idleTimeoutMilliseconds = idleTimeoutMinutes * 60 * 1000;
-            idleReleaser = new IdleReleaser(this);
-            timer.schedule(idleReleaser, this.idleTimeoutMilliseconds, this.idleTimeoutMilliseconds);
+        this.backgroundValidationMilliseconds = backgroundValidationMilliseconds;
+        scheduleMaintenance();
+    }
+
+    public int getMaxLifetimeMinutes() {
+        return (int) (maxLifetimeMilliseconds / (1000 * 60));
+    }
+
+    /**
+     * Sets the age after which connections are destroyed rather than returned to the pool; 0 means
+     * connections live until they fail or sit idle too long.
+     */
+    public void setMaxLifetimeMinutes(int maxLifetimeMinutes) {
+        if (maxLifetimeMinutes < 0) {
+            throw new IllegalArgumentException("maxLifetimeMinutes must be positive or 0, not " + maxLifetimeMinutes);
         }
+        this.maxLifetimeMilliseconds = maxLifetimeMinutes * 60L * 1000;
+        scheduleMaintenance();
     }
 
-    protected abstract void getExpiredManagedConnectionInfos(long threshold, ArrayList killList);
+    private synchronized void scheduleMaintenance() {
+        if (maintenanceTask != null) {
+            maintenanceTask.cancel();
+            maintenanceTask = null;
+        }
+        if (destroyed) {
+            return;
+        }
+        long period = shortest(shortest(idleTimeoutMilliseconds, backgroundValidationMilliseconds), maxLifetimeMilliseconds);
+        if (period > 0) {
+            maintenanceTask = PoolMaintenance.schedule(this, period);
+        }
+    }
 
-    protected abstract boolean addToPool(ManagedConnectionInfo mci);
+    private static long shortest(long period1, long period2) {
+        if (period1 == 0 || (period2 != 0 && period2 < period1)) {
+            return period2;
+        }
+        return period1;
+    }
 
-    // static class to permit chain of strong references from preventing ClassLoaders
-    // from being GC'ed.
-    private static class IdleReleaser extends TimerTask {
-        private AbstractSinglePoolConnectionInterceptor parent;
+    public void maintain() {
+        try {
+            resizeLock.readLock().acquire();
+        } catch (InterruptedException e) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            releaseExpired(now);
+            if (backgroundValidationMilliseconds > 0 && now - lastValidation >= backgroundValidationMilliseconds) {
+                lastValidation = now;
+                validateIdle();
+            }
+        } finally {
+            resizeLock.readLock().release();
+        }
+        // replace connections that were released or failed validation
+        FillTask fillTask;
+        synchronized (fillLock) {
+            fillTask = this.fillTask;
+        }
+        if (fillTask != null && connectionCount < minSize) {
+            scheduleFill(fillTask);
+        }
+    }
 
-        private IdleReleaser(AbstractSinglePoolConnectionInterceptor parent) {
-            this.parent = parent;
+    public void prefill(ManagedConnectionFactory managedConnectionFactory) {
+        if (minSize > 0) {
+            scheduleFill(new FillTask(new ConnectionInfo(new ManagedConnectionInfo(managedConnectionFactory, null))));
         }
+    }
 
-        public boolean cancel() {
-            this.parent = null;
-            return super.cancel();
+    /**
+     * Destroys the idle connections that have been idle longer than the idle timeout or have
+     * lived longer than the maximum lifetime.
+     */
+    private void releaseExpired(long now) {
+        long idleThreshold = idleTimeoutMilliseconds > 0 ? now - idleTimeoutMilliseconds : Long.MIN_VALUE;
+        long createdThreshold = maxLifetimeMilliseconds > 0 ? now - maxLifetimeMilliseconds : Long.MIN_VALUE;
+        ArrayList idle = new ArrayList();
+        getExpiredManagedConnectionInfos(Long.MAX_VALUE, idle);
+        for (Iterator i = idle.iterator(); i.hasNext();) {
+            ManagedConnectionInfo mci = (ManagedConnectionInfo) i.next();
+            if (mci.getLastUsed() < idleThreshold || mci.getCreatedTime() < createdThreshold) {
+                releaseIdle(mci);
+            }
         }
+    }
 
-        public void run() {
-            // protect against interceptor being set to null mid-execution
-            AbstractSinglePoolConnectionInterceptor interceptor = parent;
-            if (interceptor == null)
+    /**
+     * @return false if the connection was not idle
+     */
+    private boolean releaseIdle(ManagedConnectionInfo mci) {
+        synchronized (reclaimed) {
+            if (!removeIdle(mci)) {
+                return false;
+            }
+            reclaimed.put(mci, Boolean.FALSE);
+        }
+        internalReturn(new ConnectionInfo(mci), ConnectionReturnAction.DESTROY);
+        synchronized (reclaimed) {
+            reclaimed.remove(mci);
+        }
+        return true;
+    }
+
+    public long getOldestIdleTime() {
+        ManagedConnectionInfo oldest = getOldestIdle();
+        return oldest == null ? Long.MAX_VALUE : oldest.getLastUsed();
+    }
+
+    public boolean releaseOldestIdle() {
+        try {
+            resizeLock.readLock().acquire();
+        } catch (InterruptedException e) {
+            return false;
+        }
+        try {
+            ManagedConnectionInfo oldest = getOldestIdle();
+            return oldest != null && releaseIdle(oldest);
+        } finally {
+            resizeLock.readLock().release();
+        }
+    }
+
+    private ManagedConnectionInfo getOldestIdle() {
+        ArrayList idle = new ArrayList();
+        getExpiredManagedConnectionInfos(Long.MAX_VALUE, idle);
+        ManagedConnectionInfo oldest = null;
+        for (Iterator i = idle.iterator(); i.hasNext();) {
+            ManagedConnectionInfo mci = (ManagedConnectionInfo) i.next();
+            if (oldest == null || mci.getLastUsed() < oldest.getLastUsed()) {
+                oldest = mci;
+            }
+        }
+        return oldest;
+    }
+
+    /**
+     * Checks the idle connections one at a time with a ValidatingManagedConnectionFactory.  The
+     * connection being checked is taken out of the pool under a permit, so it cannot be handed out
+     * meanwhile and the pool cannot grow past its maximum size.  A connection error reported while
+     * it is checked leaves destroying it, and the permit, to this method.
+     */
+    private void validateIdle() {
+        ArrayList idle = new ArrayList();
+        getExpiredManagedConnectionInfos(Long.MAX_VALUE, idle);
+        for (Iterator i = idle.iterator(); i.hasNext() && !destroyed;) {
+            ManagedConnectionInfo mci = (ManagedConnectionInfo) i.next();
+            if (!(mci.getManagedConnectionFactory() instanceof ValidatingManagedConnectionFactory)) {
                 return;
+            }
             try {
-                interceptor.resizeLock.readLock().acquire();
+                if (!permits.attempt(0)) {
+                    return;
+                }
             } catch (InterruptedException e) {
                 return;
             }
-            try {
-                long threshold = System.currentTimeMillis() - interceptor.idleTimeoutMilliseconds;
-                ArrayList killList = new ArrayList(interceptor.getPartitionMaxSize());
-                interceptor.getExpiredManagedConnectionInfos(threshold, killList);
-                for (Iterator i = killList.iterator(); i.hasNext();) {
-                    ManagedConnectionInfo managedConnectionInfo = (ManagedConnectionInfo) i.next();
-                    ConnectionInfo killInfo = new ConnectionInfo(managedConnectionInfo);
-                    interceptor.internalReturn(killInfo, ConnectionReturnAction.DESTROY);
+            synchronized (reclaimed) {
+                if (!removeIdle(mci)) {
+                    permits.release();
+                    continue;
                 }
-                interceptor.permits.release(killList.size());
+                reclaimed.put(mci, Boolean.FALSE);
+            }
+            boolean valid = false;
+            try {
+                valid = PoolMaintenance.isValid(mci);
             } finally {
-                interceptor.resizeLock.readLock().release();
+                synchronized (reclaimed) {
+                    if (reclaimed.remove(mci) == Boolean.TRUE) {
+                        valid = false;
+                    }
+                    if (valid) {
+                        long lastUsed = mci.getLastUsed();
+                        internalReturn(new ConnectionInfo(mci), ConnectionReturnAction.RETURN_HANDLE);
+                        mci.setLastUsed(lastUsed);
+                    }
+                }
+                if (!valid) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Destroying invalid connection " + mci);
+                    }
+                    internalReturn(new ConnectionInfo(mci), ConnectionReturnAction.DESTROY);
+                }
+                permits.release();
             }
         }
+    }
 
+    protected void scheduleFill(ConnectionInfo connectionInfo) {
+        scheduleFill(new FillTask(connectionInfo));
     }
 
-    // Currently only a short-lived (10 millisecond) task.
-    // So, FillTask, unlike IdleReleaser, shouldn't cause GC problems.
-    protected class FillTask extends TimerTask {
+    private void scheduleFill(FillTask fillTask) {
+        synchronized (fillLock) {
+            this.fillTask = fillTask;
+            if (filling || destroyed) {
+                return;
+            }
+            filling = true;
+        }
+        PoolMaintenance.execute(fillTask);
+    }
+
+    protected abstract void getExpiredManagedConnectionInfos(long threshold, ArrayList killList);
+
+    /**
+     * Removes a connection from the idle connections.
+     *
+     * @return false if the connection was not idle
+     */
+    protected abstract boolean removeIdle(ManagedConnectionInfo mci);
+
+    protected abstract boolean addToPool(ManagedConnectionInfo mci);
+
+    // Runs on the PoolMaintenance threads; only one FillTask of a pool runs at a time.
+    protected class FillTask implements Runnable {
         private final ManagedConnectionFactory managedConnectionFactory;
         private final Subject subject;
         private final ConnectionRequestInfo cri;
@@ -324,13 +564,23 @@ public abstract class AbstractSinglePoolConnectionInterceptor implements Connect
         }
 
         public void run() {
+            try {
+                fill();
+            } finally {
+                synchronized (fillLock) {
+                    filling = false;
+                }
+            }
+        }
+
+        private void fill() {
             try {
                 resizeLock.readLock().acquire();
             } catch (InterruptedException e) {
                 return;
             }
             try {
-                while (connectionCount < minSize) {
+                while (connectionCount < minSize && !destroyed) {
                     ManagedConnectionInfo mci = new ManagedConnectionInfo(managedConnectionFactory, cri);
                     mci.setSubject(subject);
                     ConnectionInfo ci = new ConnectionInfo(mci);
@@ -339,6 +589,7 @@ public abstract class AbstractSinglePoolConnectionInterceptor implements Connect
                     } catch (ResourceException e) {
                         return;
                     }
+                    mci.setLastUsed(System.currentTimeMillis());
                     boolean added = false;
                     added = addToPool(mci);
                     if (!added) {
@@ -0,0 +1,152 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.connector.outbound;
+
+import org.apache.geronimo.management.stats.HistogramStatisticImpl;
+import org.apache.geronimo.management.stats.JCAConnectionPoolStatsImpl;
+import org.apache.geronimo.management.stats.RangeStatisticImpl;
+import org.apache.geronimo.management.stats.StatisticImpl;
+
+/**
+ * Collects the statistics of a connection pool as the pool interceptors report events.
+ * Wait times, use times and the remaining counters are guarded by three separate
+ * monitors, each held only for a few field updates, so recording adds no lock that
+ * is held across pool operations.  All the single pools created for a PartitionedPool
+ * share one instance.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ConnectionPoolStatistics {
+    private final long startTime = System.currentTimeMillis();
+    private final HistogramStatisticImpl waitTime = new HistogramStatisticImpl(null, null, null);
+    private final HistogramStatisticImpl useTime = new HistogramStatisticImpl(null, null, null);
+
+    private final Object countLock = new Object();
+    private long createCount;
+    private long closeCount;
+    private long timeoutCount;
+    private long matchFailureCount;
+    private int waitingThreads;
+    private int waitingThreadsHighWaterMark;
+    private int poolSize;
+    private int poolSizeHighWaterMark;
+
+    /**
+     * A permit was available without waiting.
+     */
+    public void permitAcquired() {
+        synchronized (waitTime) {
+            waitTime.addTime(0);
+        }
+    }
+
+    public void waitStarted() {
+        synchronized (countLock) {
+            waitingThreads++;
+            if (waitingThreads > waitingThreadsHighWaterMark) {
+                waitingThreadsHighWaterMark = waitingThreads;
+            }
+        }
+    }
+
+    public void waitFinished(long waitMilliseconds, boolean timedOut) {
+        synchronized (waitTime) {
+            waitTime.addTime(waitMilliseconds);
+        }
+        synchronized (countLock) {
+            waitingThreads--;
+            if (timedOut) {
+                timeoutCount++;
+            }
+        }
+    }
+
+    public void connectionReturned(long useMilliseconds) {
+        synchronized (useTime) {
+            useTime.addTime(useMilliseconds);
+        }
+    }
+
+    public void connectionCreated() {
+        synchronized (countLock) {
+            createCount++;
+            poolSize++;
+            if (poolSize > poolSizeHighWaterMark) {
+                poolSizeHighWaterMark = poolSize;
+            }
+        }
+    }
+
+    public void connectionDestroyed() {
+        synchronized (countLock) {
+            closeCount++;
+            poolSize--;
+        }
+    }
+
+    public void matchFailed() {
+        synchronized (countLock) {
+            matchFailureCount++;
+        }
+    }
+
+    /**
+     * Takes a snapshot of the statistics collected so far.
+     *
+     * @param pool supplies the current idle connection count and the size limits
+     */
+    public JCAConnectionPoolStatsImpl getStats(String connectionFactory, String managedConnectionFactory, PoolingAttributes pool) {
+        long now = System.currentTimeMillis();
+        JCAConnectionPoolStatsImpl stats = new JCAConnectionPoolStatsImpl(connectionFactory, managedConnectionFactory);
+        synchronized (waitTime) {
+            stats.getWaitTimeImpl().setValues(waitTime);
+        }
+        synchronized (useTime) {
+            stats.getUseTimeImpl().setValues(useTime);
+        }
+        int maxSize = pool.getPartitionMaxSize() * Math.max(1, pool.getPartitionCount());
+        synchronized (countLock) {
+            stats.getCreateCountImpl().setCount(createCount);
+            stats.getCloseCountImpl().setCount(closeCount);
+            stats.getTimeoutCountImpl().setCount(timeoutCount);
+            stats.getMatchFailureCountImpl().setCount(matchFailureCount);
+            setRange(stats.getWaitingThreadCountImpl(), waitingThreads, waitingThreadsHighWaterMark);
+            setRange(stats.getPoolSizeImpl(), poolSize, poolSizeHighWaterMark);
+        }
+        stats.getPoolSizeImpl().setBounds(0, maxSize);
+        int idle = pool.getIdleConnectionCount();
+        setRange(stats.getFreePoolSizeImpl(), idle, idle);
+        stats.getFreePoolSizeImpl().setBounds(0, maxSize);
+
+        StatisticImpl[] statistics = new StatisticImpl[] {
+            stats.getWaitTimeImpl(), stats.getUseTimeImpl(), stats.getCreateCountImpl(), stats.getCloseCountImpl(),
+            stats.getTimeoutCountImpl(), stats.getMatchFailureCountImpl(), stats.getWaitingThreadCountImpl(),
+            stats.getPoolSizeImpl(), stats.getFreePoolSizeImpl()
+        };
+        for (int i = 0; i < statistics.length; i++) {
+            statistics[i].setStartTime(startTime);
+            statistics[i].setLastSampleTime(now);
+        }
+        return stats;
+    }
+
+    private static void setRange(RangeStatisticImpl range, long current, long highWaterMark) {
+        range.setCurrent(current);
+        range.setHighWaterMark(highWaterMark);
+        range.setLowWaterMark(0);
+    }
+}
@@ -23,17 +23,18 @@ import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
 import javax.transaction.xa.Xid;
 
-import org.apache.geronimo.transaction.manager.NamedXAResource;
+import org.apache.geronimo.transaction.manager.LastResource;
 
 /**
  * LocalXAResource adapts a local transaction to be controlled by a
  * JTA transaction manager.  Of course, it cannot provide xa
- * semantics.
+ * semantics, but as a LastResource it is committed in one phase after
+ * the xa branches of the transaction are prepared.
  *
  *
  * @version $Rev$ $Date$
  */
-public class LocalXAResource implements NamedXAResource {
+public class LocalXAResource implements LastResource {
 
     //accessible in package for testing
     final LocalTransaction localTransaction;
@@ -43,6 +43,7 @@ public class MCFConnectionInterceptor implements ConnectionInterceptor {
                         mci.getSubject(),
                         mci.getConnectionRequestInfo());
         mci.setManagedConnection(mc);
+        mci.setCreatedTime(System.currentTimeMillis());
         GeronimoConnectionEventListener listener = new GeronimoConnectionEventListener(stack, mci);
         mci.setConnectionEventListener(listener);
         mc.addConnectionEventListener(listener);
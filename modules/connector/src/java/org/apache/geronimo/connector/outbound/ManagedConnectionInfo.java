@@ -41,6 +41,8 @@ public class ManagedConnectionInfo {
     private ManagedConnection managedConnection;
     private XAResource xares;
     private long lastUsed;
+    private long checkedOutTime;
+    private long createdTime;
     private ConnectionInterceptor poolInterceptor;
 
     private GeronimoConnectionEventListener listener;
@@ -101,6 +103,22 @@ public class ManagedConnectionInfo {
         this.lastUsed = lastUsed;
     }
 
+    public long getCreatedTime() {
+        return createdTime;
+    }
+
+    public void setCreatedTime(long createdTime) {
+        this.createdTime = createdTime;
+    }
+
+    public long getCheckedOutTime() {
+        return checkedOutTime;
+    }
+
+    public void setCheckedOutTime(long checkedOutTime) {
+        this.checkedOutTime = checkedOutTime;
+    }
+
     public void setPoolInterceptor(ConnectionInterceptor poolInterceptor) {
         this.poolInterceptor = poolInterceptor;
     }
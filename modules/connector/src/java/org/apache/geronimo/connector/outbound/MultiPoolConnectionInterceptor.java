@@ -17,16 +17,15 @@
 
 package org.apache.geronimo.connector.outbound;
 
-//import EDU.oswego.cs.dl.util.concurrent.ConcurrentHashMap;
-
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.TimerTask;
 
 import javax.resource.ResourceException;
 import javax.resource.spi.ConnectionRequestInfo;
 import javax.security.auth.Subject;
 
+import EDU.oswego.cs.dl.util.concurrent.ConcurrentReaderHashMap;
 import org.apache.geronimo.connector.outbound.connectionmanagerconfig.PoolingSupport;
 
 /**
@@ -34,6 +33,12 @@ import org.apache.geronimo.connector.outbound.connectionmanagerconfig.PoolingSup
  * "SinglePool".  This can be used to make sure all matches will succeed, avoiding synchronization
  * slowdowns.
  *
+ * The sub-pools are kept in a ConcurrentReaderHashMap, so finding the pool for a request
+ * and reading the aggregated pool statistics take no lock; only creating a new sub-pool does.
+ * When an idle timeout is configured, sub-pools that have had no connections for longer than
+ * the timeout are evicted.  If maxTotalConnections is positive, it caps the number of
+ * physical connections held by all sub-pools together.
+ *
  * Created: Fri Oct 10 12:53:11 2003
  *
  * @version $Rev$ $Date$
@@ -41,15 +46,22 @@ import org.apache.geronimo.connector.outbound.connectionmanagerconfig.PoolingSup
 public class MultiPoolConnectionInterceptor implements ConnectionInterceptor, PoolingAttributes{
 
     private final ConnectionInterceptor next;
+    private final ConnectionInterceptor poolTail;
     private final PoolingSupport singlePoolFactory;
 
     private final boolean useSubject;
 
     private final boolean useCRI;
 
-    private final Map pools = new HashMap();
+    private final int maxTotalConnections;
+
+    /**
+     * SubjectCRIKey -> SubPool.  Written only while holding the map's lock.
+     */
+    private final Map pools = new ConcurrentReaderHashMap();
+
+    private SubPoolEvictor subPoolEvictor;
 
-    // volatile is not necessary, here, because of synchronization. but maintained for consistency with other Interceptors...
     private volatile boolean destroyed = false;
 
     public MultiPoolConnectionInterceptor(
@@ -57,10 +69,22 @@ public class MultiPoolConnectionInterceptor implements ConnectionInterceptor, Po
             PoolingSupport singlePoolFactory,
             final boolean useSubject,
             final boolean useCRI) {
+        this(next, singlePoolFactory, useSubject, useCRI, 0);
+    }
+
+    public MultiPoolConnectionInterceptor(
+            final ConnectionInterceptor next,
+            PoolingSupport singlePoolFactory,
+            final boolean useSubject,
+            final boolean useCRI,
+            final int maxTotalConnections) {
         this.next = next;
+        this.poolTail = maxTotalConnections > 0 ? new ConnectionLimitInterceptor(next) : next;
         this.singlePoolFactory = singlePoolFactory;
         this.useSubject = useSubject;
         this.useCRI = useCRI;
+        this.maxTotalConnections = maxTotalConnections;
+        scheduleSubPoolEvictor(singlePoolFactory.getIdleTimeoutMinutes());
     }
 
     public void getConnection(ConnectionInfo connectionInfo) throws ResourceException {
@@ -69,19 +93,38 @@ public class MultiPoolConnectionInterceptor implements ConnectionInterceptor, Po
                 new SubjectCRIKey(
                         useSubject ? mci.getSubject() : null,
                         useCRI ? mci.getConnectionRequestInfo() : null);
-        ConnectionInterceptor poolInterceptor = null;
+        SubPool subPool = (SubPool) pools.get(key);
+        while (true) {
+            if (destroyed) {
+                throw new ResourceException("ConnectionManaged has been destroyed");
+            }
+            if (subPool == null || !subPool.enter()) {
+                // missing, or evicted since we found it
+                subPool = createSubPool(key, subPool);
+                continue;
+            }
+            try {
+                mci.setPoolInterceptor(subPool.interceptor);
+                subPool.interceptor.getConnection(connectionInfo);
+                return;
+            } finally {
+                subPool.exit();
+            }
+        }
+    }
+
+    private SubPool createSubPool(SubjectCRIKey key, SubPool evicted) throws ResourceException {
         synchronized (pools) {
             if (destroyed) {
                 throw new ResourceException("ConnectionManaged has been destroyed");
             }
-            poolInterceptor = (ConnectionInterceptor) pools.get(key);
-            if (poolInterceptor == null) {
-                poolInterceptor = singlePoolFactory.addPoolingInterceptors(next);
-                pools.put(key, poolInterceptor);
+            SubPool subPool = (SubPool) pools.get(key);
+            if (subPool == null || subPool == evicted) {
+                subPool = new SubPool(singlePoolFactory.addPoolingInterceptors(poolTail));
+                pools.put(key, subPool);
             }
+            return subPool;
         }
-        mci.setPoolInterceptor(poolInterceptor);
-        poolInterceptor.getConnection(connectionInfo);
     }
 
     // let underlying pools handle destroyed processing...
@@ -96,14 +139,53 @@ public class MultiPoolConnectionInterceptor implements ConnectionInterceptor, Po
     public void destroy() {
         synchronized (pools) {
             destroyed = true;
+            if (subPoolEvictor != null) {
+                subPoolEvictor.cancel();
+            }
             for (Iterator it = pools.entrySet().iterator(); it.hasNext(); ) {
-                ((ConnectionInterceptor)((Map.Entry)it.next()).getValue()).destroy();
+                ((SubPool)((Map.Entry)it.next()).getValue()).interceptor.destroy();
                 it.remove();
             }
         }
         next.destroy();
     }
-    
+
+    /**
+     * Destroys the sub-pools that have had no connections and no requests since the threshold.
+     */
+    void evictIdleSubPools(long threshold) {
+        for (Iterator iterator = pools.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry entry = (Map.Entry) iterator.next();
+            SubPool subPool = (SubPool) entry.getValue();
+            if (subPool.evict(threshold)) {
+                synchronized (pools) {
+                    if (pools.get(entry.getKey()) == subPool) {
+                        pools.remove(entry.getKey());
+                    }
+                }
+                subPool.interceptor.destroy();
+            }
+        }
+    }
+
+    private void scheduleSubPoolEvictor(int idleTimeoutMinutes) {
+        synchronized (pools) {
+            if (subPoolEvictor != null) {
+                subPoolEvictor.cancel();
+                subPoolEvictor = null;
+            }
+            if (idleTimeoutMinutes > 0 && !destroyed) {
+                long idleTimeoutMilliseconds = idleTimeoutMinutes * 60 * 1000L;
+                subPoolEvictor = new SubPoolEvictor(this, idleTimeoutMilliseconds);
+                PoolIdleReleaserTimer.getTimer().schedule(subPoolEvictor, idleTimeoutMilliseconds, idleTimeoutMilliseconds);
+            }
+        }
+    }
+
+    public int getMaxTotalConnections() {
+        return maxTotalConnections;
+    }
+
     public int getPartitionCount() {
         return pools.size();
     }
@@ -114,8 +196,8 @@ public class MultiPoolConnectionInterceptor implements ConnectionInterceptor, Po
 
     public void setPartitionMaxSize(int maxSize) throws InterruptedException {
         singlePoolFactory.setPartitionMaxSize(maxSize);
-        for (Iterator iterator = pools.entrySet().iterator(); iterator.hasNext();) {
-            PoolingAttributes poolingAttributes = (PoolingAttributes) ((Map.Entry) iterator.next()).getValue();
+        for (Iterator iterator = pools.values().iterator(); iterator.hasNext();) {
+            PoolingAttributes poolingAttributes = ((SubPool) iterator.next()).getPoolingAttributes();
             poolingAttributes.setPartitionMaxSize(maxSize);
         }
     }
@@ -126,16 +208,16 @@ public class MultiPoolConnectionInterceptor implements ConnectionInterceptor, Po
 
     public void setPartitionMinSize(int minSize) {
         singlePoolFactory.setPartitionMinSize(minSize);
-        for (Iterator iterator = pools.entrySet().iterator(); iterator.hasNext();) {
-            PoolingAttributes poolingAttributes = (PoolingAttributes) ((Map.Entry) iterator.next()).getValue();
+        for (Iterator iterator = pools.values().iterator(); iterator.hasNext();) {
+            PoolingAttributes poolingAttributes = ((SubPool) iterator.next()).getPoolingAttributes();
             poolingAttributes.setPartitionMinSize(minSize);
         }
     }
 
     public int getIdleConnectionCount() {
         int count = 0;
-        for (Iterator iterator = pools.entrySet().iterator(); iterator.hasNext();) {
-            PoolingAttributes poolingAttributes = (PoolingAttributes) ((Map.Entry) iterator.next()).getValue();
+        for (Iterator iterator = pools.values().iterator(); iterator.hasNext();) {
+            PoolingAttributes poolingAttributes = ((SubPool) iterator.next()).getPoolingAttributes();
             count += poolingAttributes.getIdleConnectionCount();
         }
         return count;
@@ -143,8 +225,8 @@ public class MultiPoolConnectionInterceptor implements ConnectionInterceptor, Po
 
     public int getConnectionCount() {
         int count = 0;
-        for (Iterator iterator = pools.entrySet().iterator(); iterator.hasNext();) {
-            PoolingAttributes poolingAttributes = (PoolingAttributes) ((Map.Entry) iterator.next()).getValue();
+        for (Iterator iterator = pools.values().iterator(); iterator.hasNext();) {
+            PoolingAttributes poolingAttributes = ((SubPool) iterator.next()).getPoolingAttributes();
             count += poolingAttributes.getConnectionCount();
         }
         return count;
@@ -156,8 +238,8 @@ public class MultiPoolConnectionInterceptor implements ConnectionInterceptor, Po
 
     public void setBlockingTimeoutMilliseconds(int timeoutMilliseconds) {
         singlePoolFactory.setBlockingTimeoutMilliseconds(timeoutMilliseconds);
-        for (Iterator iterator = pools.entrySet().iterator(); iterator.hasNext();) {
-            PoolingAttributes poolingAttributes = (PoolingAttributes) ((Map.Entry) iterator.next()).getValue();
+        for (Iterator iterator = pools.values().iterator(); iterator.hasNext();) {
+            PoolingAttributes poolingAttributes = ((SubPool) iterator.next()).getPoolingAttributes();
             poolingAttributes.setBlockingTimeoutMilliseconds(timeoutMilliseconds);
         }
     }
@@ -168,10 +250,204 @@ public class MultiPoolConnectionInterceptor implements ConnectionInterceptor, Po
 
     public void setIdleTimeoutMinutes(int idleTimeoutMinutes) {
         singlePoolFactory.setIdleTimeoutMinutes(idleTimeoutMinutes);
-        for (Iterator iterator = pools.entrySet().iterator(); iterator.hasNext();) {
-            PoolingAttributes poolingAttributes = (PoolingAttributes) ((Map.Entry) iterator.next()).getValue();
+        for (Iterator iterator = pools.values().iterator(); iterator.hasNext();) {
+            PoolingAttributes poolingAttributes = ((SubPool) iterator.next()).getPoolingAttributes();
             poolingAttributes.setIdleTimeoutMinutes(idleTimeoutMinutes);
         }
+        scheduleSubPoolEvictor(idleTimeoutMinutes);
+    }
+
+    /**
+     * A sub-pool and the number of requests currently inside it.  A sub-pool can only be
+     * evicted while no request is using it and it holds no connections.
+     */
+    private static final class SubPool {
+        private final ConnectionInterceptor interceptor;
+        private int activeRequests = 0;
+        private long lastUsed = System.currentTimeMillis();
+        private boolean evicted = false;
+
+        public SubPool(ConnectionInterceptor interceptor) {
+            this.interceptor = interceptor;
+        }
+
+        public PoolingAttributes getPoolingAttributes() {
+            return (PoolingAttributes) interceptor;
+        }
+
+        public synchronized boolean enter() {
+            if (evicted) {
+                return false;
+            }
+            activeRequests++;
+            return true;
+        }
+
+        public synchronized void exit() {
+            activeRequests--;
+            lastUsed = System.currentTimeMillis();
+        }
+
+        public synchronized boolean evict(long threshold) {
+            if (!evicted
+                    && activeRequests == 0
+                    && lastUsed < threshold
+                    && getPoolingAttributes().getConnectionCount() == 0) {
+                evicted = true;
+            }
+            return evicted;
+        }
+    }
+
+    /**
+     * Destroys the least recently used idle connection of the sub-pools other than the requester.
+     */
+    void releaseOldestIdle(ConnectionInterceptor requester) {
+        PoolMaintenance.Pool oldestPool = null;
+        long oldest = Long.MAX_VALUE;
+        for (Iterator iterator = pools.values().iterator(); iterator.hasNext();) {
+            ConnectionInterceptor interceptor = ((SubPool) iterator.next()).interceptor;
+            if (interceptor != requester && interceptor instanceof PoolMaintenance.Pool) {
+                long idleTime = ((PoolMaintenance.Pool) interceptor).getOldestIdleTime();
+                if (idleTime < oldest) {
+                    oldest = idleTime;
+                    oldestPool = (PoolMaintenance.Pool) interceptor;
+                }
+            }
+        }
+        if (oldestPool != null) {
+            oldestPool.releaseOldestIdle();
+        }
+    }
+
+    /**
+     * Sits between the sub-pools and the next interceptor and counts the physical connections
+     * they create and destroy.  When maxTotalConnections are open a request for a new connection
+     * has the least recently used idle connection of another sub-pool destroyed, and waits up to
+     * the blocking timeout for a sub-pool to destroy one.  A fill, which has no requesting pool
+     * interceptor, does not wait.
+     */
+    private final class ConnectionLimitInterceptor implements ConnectionInterceptor {
+        private final ConnectionInterceptor next;
+        private int totalConnections = 0;
+
+        public ConnectionLimitInterceptor(ConnectionInterceptor next) {
+            this.next = next;
+        }
+
+        public void getConnection(ConnectionInfo connectionInfo) throws ResourceException {
+            if (connectionInfo.getManagedConnectionInfo().getManagedConnection() != null) {
+                return;
+            }
+            acquire(connectionInfo.getManagedConnectionInfo().getPoolInterceptor());
+            boolean success = false;
+            try {
+                next.getConnection(connectionInfo);
+                success = true;
+            } finally {
+                if (!success) {
+                    release();
+                }
+            }
+        }
+
+        public void returnConnection(ConnectionInfo connectionInfo, ConnectionReturnAction connectionReturnAction) {
+            // the pools only pass a connection on when they are done with it
+            next.returnConnection(connectionInfo, connectionReturnAction);
+            release();
+        }
+
+        public void destroy() {
+            next.destroy();
+        }
+
+        private void acquire(ConnectionInterceptor requester) throws ResourceException {
+            synchronized (this) {
+                if (totalConnections < maxTotalConnections) {
+                    totalConnections++;
+                    return;
+                }
+            }
+            if (requester == null) {
+                throw new ResourceException("All " + maxTotalConnections + " connections of the partitioned pool are in use");
+            }
+            // the requesting thread may hold locks of its own sub-pool, so another thread takes the others'
+            PoolMaintenance.execute(new IdleConnectionReleaser(MultiPoolConnectionInterceptor.this, requester));
+            waitForConnection();
+        }
+
+        private synchronized void waitForConnection() throws ResourceException {
+            int blockingTimeoutMilliseconds = getBlockingTimeoutMilliseconds();
+            long timeout = blockingTimeoutMilliseconds;
+            long deadline = System.currentTimeMillis() + timeout;
+            boolean acquired = false;
+            try {
+                while (totalConnections >= maxTotalConnections) {
+                    if (timeout <= 0) {
+                        throw new ResourceException("No ManagedConnections available: all "
+                                + maxTotalConnections
+                                + " connections of the partitioned pool are in use after the configured blocking timeout ( "
+                                + blockingTimeoutMilliseconds
+                                + " [ms] )");
+                    }
+                    wait(timeout);
+                    timeout = deadline - System.currentTimeMillis();
+                }
+                totalConnections++;
+                acquired = true;
+            } catch (InterruptedException ie) {
+                throw new ResourceException("Interrupted while requesting permit!");
+            } finally {
+                // pass on a notify this thread may have consumed while giving up
+                if (!acquired && totalConnections < maxTotalConnections) {
+                    notify();
+                }
+            }
+        }
+
+        private synchronized void release() {
+            totalConnections--;
+            notify();
+        }
+    }
+
+    private static class IdleConnectionReleaser implements Runnable {
+        private final MultiPoolConnectionInterceptor parent;
+        private final ConnectionInterceptor requester;
+
+        private IdleConnectionReleaser(MultiPoolConnectionInterceptor parent, ConnectionInterceptor requester) {
+            this.parent = parent;
+            this.requester = requester;
+        }
+
+        public void run() {
+            parent.releaseOldestIdle(requester);
+        }
+    }
+
+    // static class to permit chain of strong references from preventing ClassLoaders
+    // from being GC'ed.
+    private static class SubPoolEvictor extends TimerTask {
+        private MultiPoolConnectionInterceptor parent;
+        private final long idleTimeoutMilliseconds;
+
+        private SubPoolEvictor(MultiPoolConnectionInterceptor parent, long idleTimeoutMilliseconds) {
+            this.parent = parent;
+            this.idleTimeoutMilliseconds = idleTimeoutMilliseconds;
+        }
+
+        public boolean cancel() {
+            this.parent = null;
+            return super.cancel();
+        }
+
+        public void run() {
+            // protect against interceptor being set to null mid-execution
+            MultiPoolConnectionInterceptor interceptor = parent;
+            if (interceptor == null)
+                return;
+            interceptor.evictIdleSubPools(System.currentTimeMillis() - idleTimeoutMilliseconds);
+        }
     }
 
     static class SubjectCRIKey {
@@ -0,0 +1,191 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.connector.outbound;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import javax.resource.ResourceException;
+import javax.resource.spi.ManagedConnectionFactory;
+import javax.resource.spi.ValidatingManagedConnectionFactory;
+
+import EDU.oswego.cs.dl.util.concurrent.LinkedQueue;
+import EDU.oswego.cs.dl.util.concurrent.PooledExecutor;
+import EDU.oswego.cs.dl.util.concurrent.ThreadFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Runs the background work of all connection pools: filling pools to their minimum size,
+ * releasing idle connections, retiring connections past their maximum lifetime and
+ * validating idle connections.  The shared PoolIdleReleaserTimer only keeps the schedule;
+ * the work itself runs on a small shared set of daemon threads, so a pool that is slow to
+ * connect or validate does not hold up the maintenance of the other pools.
+ *
+ * @version $Rev$ $Date$
+ */
+public class PoolMaintenance {
+    private static final Log log = LogFactory.getLog(PoolMaintenance.class);
+    private static final int THREADS = 4;
+    private static final long KEEP_ALIVE_MILLISECONDS = 60 * 1000;
+
+    private static final Timer timer = PoolIdleReleaserTimer.getTimer();
+    private static final PooledExecutor executor;
+
+    static {
+        executor = new PooledExecutor(new LinkedQueue(), THREADS);
+        executor.setMinimumPoolSize(THREADS);
+        executor.setKeepAliveTime(KEEP_ALIVE_MILLISECONDS);
+        executor.setThreadFactory(new MaintenanceThreadFactory());
+    }
+
+    private PoolMaintenance() {
+    }
+
+    /**
+     * Runs a piece of pool work, such as filling a pool, on the maintenance threads.
+     */
+    public static void execute(Runnable work) {
+        try {
+            executor.execute(work);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Calls maintain() on the pool every period milliseconds until the returned task is cancelled.
+     * A run that is still in progress when the next one is due is not overlapped.
+     */
+    public static MaintenanceTask schedule(Pool pool, long periodMilliseconds) {
+        MaintenanceTask task = new MaintenanceTask(pool);
+        timer.schedule(task, periodMilliseconds, periodMilliseconds);
+        return task;
+    }
+
+    /**
+     * Asks the connection's ValidatingManagedConnectionFactory whether the connection is still good.
+     * A connection that cannot be checked counts as invalid.
+     */
+    public static boolean isValid(ManagedConnectionInfo mci) {
+        ValidatingManagedConnectionFactory managedConnectionFactory = (ValidatingManagedConnectionFactory) mci.getManagedConnectionFactory();
+        try {
+            Set invalid = managedConnectionFactory.getInvalidConnections(Collections.singleton(mci.getManagedConnection()));
+            return invalid == null || !invalid.contains(mci.getManagedConnection());
+        } catch (ResourceException e) {
+            log.debug("Could not validate connection " + mci, e);
+            return false;
+        }
+    }
+
+    /**
+     * Work a pool interceptor does in the background.
+     */
+    public interface Pool {
+        /**
+         * Releases idle and retired connections, validates idle connections and refills the pool.
+         */
+        void maintain();
+
+        /**
+         * Starts filling the pool to its minimum size with connections from the supplied factory.
+         */
+        void prefill(ManagedConnectionFactory managedConnectionFactory);
+
+        void setBackgroundValidationMilliseconds(long backgroundValidationMilliseconds);
+
+        void setMaxLifetimeMinutes(int maxLifetimeMinutes);
+
+        /**
+         * @return when the least recently used idle connection was last used, or Long.MAX_VALUE if no
+         * connection is idle
+         */
+        long getOldestIdleTime();
+
+        /**
+         * Destroys the least recently used idle connection, making room for a connection another pool
+         * sharing a connection limit needs.
+         *
+         * @return false if no connection was idle
+         */
+        boolean releaseOldestIdle();
+    }
+
+    // static class to permit chain of strong references from preventing ClassLoaders
+    // from being GC'ed.
+    public static class MaintenanceTask extends TimerTask {
+        private Pool pool;
+        private boolean running;
+
+        private MaintenanceTask(Pool pool) {
+            this.pool = pool;
+        }
+
+        public boolean cancel() {
+            synchronized (this) {
+                pool = null;
+            }
+            return super.cancel();
+        }
+
+        public void run() {
+            final Pool pool;
+            synchronized (this) {
+                // protect against the pool being set to null mid-execution
+                if (this.pool == null || running) {
+                    return;
+                }
+                pool = this.pool;
+                running = true;
+            }
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            pool.maintain();
+                        } catch (Throwable t) {
+                            log.warn("Connection pool maintenance failed", t);
+                        } finally {
+                            finished();
+                        }
+                    }
+                });
+            } catch (InterruptedException e) {
+                finished();
+            }
+        }
+
+        private synchronized void finished() {
+            running = false;
+        }
+    }
+
+    private static final class MaintenanceThreadFactory implements ThreadFactory {
+        private int nextWorkerID = 0;
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Connection pool maintenance " + getNextWorkerID());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+        private synchronized int getNextWorkerID() {
+            return nextWorkerID++;
+        }
+    }
+}
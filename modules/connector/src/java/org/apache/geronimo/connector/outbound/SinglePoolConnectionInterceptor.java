@@ -62,6 +62,7 @@ public class SinglePoolConnectionInterceptor extends AbstractSinglePoolConnectio
             if (pool.isEmpty()) {
                 next.getConnection(connectionInfo);
                 connectionCount++;
+                statistics.connectionCreated();
                 if (log.isTraceEnabled()) {
                     log.trace("Returning new connection " + connectionInfo.getManagedConnectionInfo());
                 }
@@ -70,7 +71,7 @@ public class SinglePoolConnectionInterceptor extends AbstractSinglePoolConnectio
                 newMCI = pool.removeLast();
             }
             if (connectionCount < minSize) {
-                timer.schedule(new FillTask(connectionInfo), 10);
+                scheduleFill(connectionInfo);
             }
             if (selectOneAssumeMatch) {
                 connectionInfo.setManagedConnectionInfo(newMCI);
@@ -95,6 +96,7 @@ public class SinglePoolConnectionInterceptor extends AbstractSinglePoolConnectio
                     return;
                 } else {
                     //matching failed.
+                    statistics.matchFailed();
                     ConnectionInfo returnCI = new ConnectionInfo();
                     returnCI.setManagedConnectionInfo(newMCI);
                     returnConnection(returnCI,
@@ -161,6 +163,7 @@ public class SinglePoolConnectionInterceptor extends AbstractSinglePoolConnectio
         //we must destroy connection.
         next.returnConnection(connectionInfo, connectionReturnAction);
         connectionCount--;
+        statistics.connectionDestroyed();
         return wasInPool;
     }
 
@@ -199,10 +202,17 @@ public class SinglePoolConnectionInterceptor extends AbstractSinglePoolConnectio
         }
     }
 
+    protected boolean removeIdle(ManagedConnectionInfo mci) {
+        synchronized (pool) {
+            return pool.remove(mci);
+        }
+    }
+
     protected boolean addToPool(ManagedConnectionInfo mci) {
         boolean added;
         synchronized (pool) {
             connectionCount++;
+            statistics.connectionCreated();
             added = getPartitionMaxSize() > getIdleConnectionCount();
             if (added) {
                 pool.add(mci);
@@ -72,10 +72,11 @@ public class SinglePoolMatchAllConnectionInterceptor extends AbstractSinglePoolC
                             log.trace("Returning pooled connection " + connectionInfo.getManagedConnectionInfo());
                         }
                         if (connectionCount < minSize) {
-                            timer.schedule(new FillTask(connectionInfo), 10);
+                            scheduleFill(connectionInfo);
                         }
                         return;
                     }
+                    statistics.matchFailed();
                 }
                 //matching failed or pool is empty
                 //if pool is at maximum size, pick a cx to kill
@@ -88,11 +89,12 @@ public class SinglePoolMatchAllConnectionInterceptor extends AbstractSinglePoolC
                 }
                 next.getConnection(connectionInfo);
                 connectionCount++;
+                statistics.connectionCreated();
                 if (log.isTraceEnabled()) {
                     log.trace("Returning new connection " + connectionInfo.getManagedConnectionInfo());
                 }
                 if (connectionCount < minSize) {
-                    timer.schedule(new FillTask(connectionInfo), 10);
+                    scheduleFill(connectionInfo);
                 }
 
             } catch (ResourceException e) {
@@ -137,6 +139,7 @@ public class SinglePoolMatchAllConnectionInterceptor extends AbstractSinglePoolC
         //we must destroy connection.
         next.returnConnection(connectionInfo, connectionReturnAction);
         connectionCount--;
+        statistics.connectionDestroyed();
         return wasInPool;
     }
 
@@ -193,10 +196,17 @@ public class SinglePoolMatchAllConnectionInterceptor extends AbstractSinglePoolC
 
     }
 
+    protected boolean removeIdle(ManagedConnectionInfo mci) {
+        synchronized (pool) {
+            return pool.remove(mci.getManagedConnection()) != null;
+        }
+    }
+
     protected boolean addToPool(ManagedConnectionInfo mci) {
         boolean added;
         synchronized (pool) {
             connectionCount++;
+            statistics.connectionCreated();
             added = getPartitionMaxSize() > getIdleConnectionCount();
             if (added) {
                 pool.put(mci.getManagedConnection(), mci);
@@ -0,0 +1,826 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.connector.outbound;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import javax.resource.ResourceException;
+import javax.resource.spi.ConnectionRequestInfo;
+import javax.resource.spi.ManagedConnection;
+import javax.resource.spi.ManagedConnectionFactory;
+import javax.resource.spi.ValidatingManagedConnectionFactory;
+import javax.security.auth.Subject;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * StripedSinglePoolConnectionInterceptor is a single pool with the same matching rules as
+ * SinglePoolConnectionInterceptor, built so that a slow physical connect or a slow
+ * matchManagedConnections call never blocks threads that could be served from the pool.
+ * <p/>
+ * Idle connections are kept in several independently locked stripes.  A thread returns
+ * connections to, and first looks for connections in, its own home stripe, so under load
+ * threads mostly touch different locks and tend to get back the connection they used last.
+ * A thread whose home stripe is empty takes a connection from one of the other stripes.
+ * <p/>
+ * The number of checked out connections is bounded by a simple counter guarded by its own
+ * monitor; no lock is held while a new ManagedConnection is created, matched, cleaned up
+ * or destroyed.  Unlike the FIFOSemaphore used by AbstractSinglePoolConnectionInterceptor,
+ * permits are not handed out in strict arrival order.
+ *
+ * @version $Rev$ $Date$
+ */
+public class StripedSinglePoolConnectionInterceptor implements ConnectionInterceptor, PoolingAttributes, PoolMaintenance.Pool {
+    private static final Log log = LogFactory.getLog(StripedSinglePoolConnectionInterceptor.class);
+
+    private final ConnectionInterceptor next;
+    private final boolean selectOneAssumeMatch;
+    private final Stripe[] stripes;
+
+    /**
+     * Guards updates to maxSize, checkedOut, connectionCount, shrinkLater, filling, fillTask and
+     * reclaimed.  Threads waiting for a permit wait on this object.
+     */
+    private final Object permitLock = new Object();
+    private volatile int maxSize;
+    private int checkedOut = 0;
+    private volatile int connectionCount = 0;
+    private int shrinkLater = 0;
+    private boolean filling = false;
+    private FillTask fillTask;
+    /**
+     * Idle connections the pool itself has taken out of the stripes to validate or destroy them,
+     * mapped to Boolean.TRUE once a connection error has been reported for them meanwhile.  The
+     * pool, not returnConnection, then destroys them.
+     */
+    private final Map reclaimed = new IdentityHashMap();
+
+    private volatile int minSize;
+    private volatile int blockingTimeoutMilliseconds;
+    private long idleTimeoutMilliseconds;
+    private long backgroundValidationMilliseconds;
+    private long maxLifetimeMilliseconds;
+    private long lastValidation;
+    private PoolMaintenance.MaintenanceTask maintenanceTask;
+    private volatile boolean destroyed = false;
+    private ConnectionPoolStatistics statistics = new ConnectionPoolStatistics();
+
+    public StripedSinglePoolConnectionInterceptor(final ConnectionInterceptor next,
+                                                  int maxSize,
+                                                  int minSize,
+                                                  int blockingTimeoutMilliseconds,
+                                                  int idleTimeoutMinutes,
+                                                  boolean selectOneAssumeMatch) {
+        this(next, maxSize, minSize, blockingTimeoutMilliseconds, idleTimeoutMinutes, selectOneAssumeMatch, Runtime.getRuntime().availableProcessors());
+    }
+
+    public StripedSinglePoolConnectionInterceptor(final ConnectionInterceptor next,
+                                                  int maxSize,
+                                                  int minSize,
+                                                  int blockingTimeoutMilliseconds,
+                                                  int idleTimeoutMinutes,
+                                                  boolean selectOneAssumeMatch,
+                                                  int stripeCount) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size must be positive, not " + maxSize);
+        }
+        if (stripeCount <= 0) {
+            throw new IllegalArgumentException("Stripe count must be positive, not " + stripeCount);
+        }
+        this.next = next;
+        this.maxSize = maxSize;
+        this.minSize = minSize;
+        this.selectOneAssumeMatch = selectOneAssumeMatch;
+
+        // a power of two so the home stripe is a mask of the thread hash
+        int size = 1;
+        while (size < stripeCount && size < maxSize) {
+            size <<= 1;
+        }
+        stripes = new Stripe[size];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+
+        // schedules maintenance, which needs the stripes
+        setBlockingTimeoutMilliseconds(blockingTimeoutMilliseconds);
+        setIdleTimeoutMinutes(idleTimeoutMinutes);
+    }
+
+    public void getConnection(ConnectionInfo connectionInfo) throws ResourceException {
+        if (connectionInfo.getManagedConnectionInfo().getManagedConnection() != null) {
+            return;
+        }
+        acquirePermit();
+        boolean success = false;
+        try {
+            ManagedConnectionInfo pooledMCI = removeIdle();
+            if (pooledMCI == null) {
+                // counted before connecting, like the fills, so a concurrent fill stops at minSize
+                synchronized (permitLock) {
+                    connectionCount++;
+                }
+                boolean connected = false;
+                try {
+                    next.getConnection(connectionInfo);
+                    connected = true;
+                } finally {
+                    if (!connected) {
+                        synchronized (permitLock) {
+                            connectionCount--;
+                        }
+                    }
+                }
+                statistics.connectionCreated();
+                if (log.isTraceEnabled()) {
+                    log.trace("Returning new connection " + connectionInfo.getManagedConnectionInfo());
+                }
+            } else {
+                if (!selectOneAssumeMatch) {
+                    match(pooledMCI, connectionInfo.getManagedConnectionInfo());
+                }
+                connectionInfo.setManagedConnectionInfo(pooledMCI);
+                if (log.isTraceEnabled()) {
+                    log.trace("Returning pooled connection " + pooledMCI);
+                }
+            }
+            connectionInfo.getManagedConnectionInfo().setCheckedOutTime(System.currentTimeMillis());
+            success = true;
+        } finally {
+            if (!success) {
+                releasePermit();
+            }
+        }
+        scheduleFill(connectionInfo);
+    }
+
+    private void acquirePermit() throws ResourceException {
+        boolean available = false;
+        synchronized (permitLock) {
+            if (destroyed) {
+                throw new ResourceException("ManagedConnection pool has been destroyed");
+            }
+            if (checkedOut < maxSize) {
+                checkedOut++;
+                available = true;
+            }
+        }
+        if (available) {
+            statistics.permitAcquired();
+            return;
+        }
+        statistics.waitStarted();
+        long start = System.currentTimeMillis();
+        boolean timedOut = false;
+        try {
+            if (!waitForPermit(start)) {
+                timedOut = true;
+                throw new ResourceException("No ManagedConnections available "
+                        + "within configured blocking timeout ( "
+                        + blockingTimeoutMilliseconds
+                        + " [ms] )");
+            }
+        } finally {
+            statistics.waitFinished(System.currentTimeMillis() - start, timedOut);
+        }
+    }
+
+    /**
+     * @return false if the blocking timeout expired
+     */
+    private boolean waitForPermit(long start) throws ResourceException {
+        synchronized (permitLock) {
+            long timeout = blockingTimeoutMilliseconds;
+            long deadline = start + timeout;
+            boolean acquired = false;
+            try {
+                while (checkedOut >= maxSize) {
+                    if (destroyed) {
+                        throw new ResourceException("ManagedConnection pool has been destroyed");
+                    }
+                    if (timeout <= 0) {
+                        return false;
+                    }
+                    permitLock.wait(timeout);
+                    timeout = deadline - System.currentTimeMillis();
+                }
+                checkedOut++;
+                acquired = true;
+                return true;
+            } catch (InterruptedException ie) {
+                throw new ResourceException("Interrupted while requesting permit!");
+            } finally {
+                // pass on a notify this thread may have consumed while giving up
+                if (!acquired && checkedOut < maxSize) {
+                    permitLock.notify();
+                }
+            }
+        }
+    }
+
+    private void releasePermit() {
+        synchronized (permitLock) {
+            checkedOut--;
+            permitLock.notify();
+        }
+    }
+
+    /**
+     * Checks with the ManagedConnectionFactory that the pooled connection matches the request.
+     * If it does not, the connection goes back to the pool; if matching fails, it is destroyed.
+     */
+    private void match(ManagedConnectionInfo pooledMCI, ManagedConnectionInfo requestMCI) throws ResourceException {
+        ManagedConnection matchedMC;
+        try {
+            matchedMC = pooledMCI
+                    .getManagedConnectionFactory()
+                    .matchManagedConnections(Collections.singleton(pooledMCI.getManagedConnection()),
+                            requestMCI.getSubject(),
+                            requestMCI.getConnectionRequestInfo());
+        } catch (ResourceException e) {
+            //something is wrong: destroy connection, rethrow
+            destroyConnection(new ConnectionInfo(pooledMCI));
+            throw e;
+        }
+        if (matchedMC == null) {
+            statistics.matchFailed();
+            addIdle(pooledMCI);
+            throw new ResourceException("The pooling strategy does not match the MatchManagedConnections implementation.  Please investigate and reconfigure this pool");
+        }
+    }
+
+    public void returnConnection(ConnectionInfo connectionInfo,
+                                 ConnectionReturnAction connectionReturnAction) {
+        if (log.isTraceEnabled()) {
+            log.trace("returning connection" + connectionInfo.getConnectionHandle());
+        }
+        ManagedConnectionInfo mci = connectionInfo.getManagedConnectionInfo();
+        if (connectionReturnAction == ConnectionReturnAction.RETURN_HANDLE && mci.hasConnectionHandles()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (maxLifetimeMilliseconds > 0 && mci.getCreatedTime() < now - maxLifetimeMilliseconds) {
+            connectionReturnAction = ConnectionReturnAction.DESTROY;
+        }
+        ManagedConnection mc = mci.getManagedConnection();
+        try {
+            mc.cleanup();
+        } catch (ResourceException e) {
+            connectionReturnAction = ConnectionReturnAction.DESTROY;
+        }
+
+        if (connectionReturnAction == ConnectionReturnAction.DESTROY) {
+            // a connection error may be reported for a connection sitting in the pool, which holds no permit
+            boolean wasInPool;
+            synchronized (permitLock) {
+                if (reclaimed.containsKey(mci)) {
+                    // being validated or destroyed by the pool, which also accounts for it
+                    reclaimed.put(mci, Boolean.TRUE);
+                    return;
+                }
+                wasInPool = removeIdle(mci);
+            }
+            destroyConnection(connectionInfo);
+            if (!wasInPool) {
+                releasePermit();
+                statistics.connectionReturned(now - mci.getCheckedOutTime());
+            }
+            return;
+        }
+
+        boolean shrink = false;
+        synchronized (permitLock) {
+            if (shrinkLater > 0) {
+                shrinkLater--;
+                shrink = true;
+            }
+        }
+        if (destroyed || shrink) {
+            destroyConnection(connectionInfo);
+        } else {
+            mci.setLastUsed(now);
+            addIdle(mci);
+            // closes the timing hole with a concurrent destroy() that has already emptied the pool
+            if (destroyed && removeIdle(mci)) {
+                destroyConnection(connectionInfo);
+            }
+        }
+        releasePermit();
+        statistics.connectionReturned(now - mci.getCheckedOutTime());
+    }
+
+    private void destroyConnection(ConnectionInfo connectionInfo) {
+        next.returnConnection(connectionInfo, ConnectionReturnAction.DESTROY);
+        synchronized (permitLock) {
+            connectionCount--;
+        }
+        statistics.connectionDestroyed();
+    }
+
+    public void destroy() {
+        destroyed = true;
+        scheduleMaintenance();
+        List idle = new ArrayList();
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i].removeAll(idle);
+        }
+        for (Iterator iterator = idle.iterator(); iterator.hasNext();) {
+            ManagedConnection mc = ((ManagedConnectionInfo) iterator.next()).getManagedConnection();
+            if (mc != null) {
+                try {
+                    mc.destroy();
+                }
+                catch (ResourceException re) { } // ignore
+            }
+        }
+        synchronized (permitLock) {
+            connectionCount -= idle.size();
+            permitLock.notifyAll();
+        }
+        next.destroy();
+    }
+
+    private Stripe getHomeStripe() {
+        return stripes[System.identityHashCode(Thread.currentThread()) & (stripes.length - 1)];
+    }
+
+    private void addIdle(ManagedConnectionInfo mci) {
+        getHomeStripe().add(mci);
+    }
+
+    private ManagedConnectionInfo removeIdle() {
+        int home = System.identityHashCode(Thread.currentThread()) & (stripes.length - 1);
+        for (int i = 0; i < stripes.length; i++) {
+            ManagedConnectionInfo mci = stripes[(home + i) & (stripes.length - 1)].removeLast();
+            if (mci != null) {
+                return mci;
+            }
+        }
+        return null;
+    }
+
+    private boolean removeIdle(ManagedConnectionInfo mci) {
+        for (int i = 0; i < stripes.length; i++) {
+            if (stripes[i].remove(mci)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void scheduleFill(ConnectionInfo connectionInfo) {
+        if (connectionCount < minSize) {
+            scheduleFill(new FillTask(connectionInfo));
+        }
+    }
+
+    private void scheduleFill(FillTask fillTask) {
+        synchronized (permitLock) {
+            this.fillTask = fillTask;
+            if (filling || destroyed || connectionCount >= minSize) {
+                return;
+            }
+            filling = true;
+        }
+        PoolMaintenance.execute(fillTask);
+    }
+
+    public ConnectionPoolStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Replaces the statistics collector; only to be called before the pool is used.
+     */
+    public void setStatistics(ConnectionPoolStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    public int getPartitionCount() {
+        return 1;
+    }
+
+    public int getPartitionMaxSize() {
+        return maxSize;
+    }
+
+    public void setPartitionMaxSize(int newMaxSize) {
+        if (newMaxSize <= 0) {
+            throw new IllegalArgumentException("Max size must be positive, not " + newMaxSize);
+        }
+        int shrinkNow;
+        synchronized (permitLock) {
+            if (newMaxSize == maxSize) {
+                return;
+            }
+            // checked out connections over the new size are destroyed when they come back
+            shrinkLater = Math.max(0, checkedOut - newMaxSize);
+            shrinkNow = connectionCount - newMaxSize - shrinkLater;
+            maxSize = newMaxSize;
+            if (minSize > newMaxSize) {
+                minSize = newMaxSize;
+            }
+            permitLock.notifyAll();
+        }
+        // and idle connections over the new size are destroyed right away
+        List killList = new ArrayList();
+        synchronized (permitLock) {
+            for (int i = 0; i < shrinkNow; i++) {
+                ManagedConnectionInfo mci = removeIdle();
+                if (mci == null) {
+                    break;
+                }
+                reclaimed.put(mci, Boolean.FALSE);
+                killList.add(mci);
+            }
+        }
+        destroyReclaimed(killList);
+    }
+
+    public int getPartitionMinSize() {
+        return minSize;
+    }
+
+    public void setPartitionMinSize(int minSize) {
+        this.minSize = minSize;
+    }
+
+    public int getIdleConnectionCount() {
+        int count = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            count += stripes[i].size();
+        }
+        return count;
+    }
+
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    public int getBlockingTimeoutMilliseconds() {
+        return blockingTimeoutMilliseconds;
+    }
+
+    public void setBlockingTimeoutMilliseconds(int blockingTimeoutMilliseconds) {
+        if (blockingTimeoutMilliseconds < 0) {
+            throw new IllegalArgumentException("blockingTimeoutMilliseconds must be positive or 0, not " + blockingTimeoutMilliseconds);
+        }
+        if (blockingTimeoutMilliseconds == 0) {
+            this.blockingTimeoutMilliseconds = Integer.MAX_VALUE;
+        } else {
+            this.blockingTimeoutMilliseconds = blockingTimeoutMilliseconds;
+        }
+    }
+
+    public int getIdleTimeoutMinutes() {
+        return (int) idleTimeoutMilliseconds / (1000 * 60);
+    }
+
+    public void setIdleTimeoutMinutes(int idleTimeoutMinutes) {
+        if (idleTimeoutMinutes < 0) {
+            throw new IllegalArgumentException("idleTimeoutMinutes must be positive or 0, not " + idleTimeoutMinutes);
+        }
+        this.idleTimeoutMilliseconds = idleTimeoutMinutes * 60 * 1000;
+        scheduleMaintenance();
+    }
+
+    public long getBackgroundValidationMilliseconds() {
+        return backgroundValidationMilliseconds;
+    }
+
+    /**
+     * Sets how often idle connections are checked with a ValidatingManagedConnectionFactory; 0 turns
+     * background validation off.
+     */
+    public void setBackgroundValidationMilliseconds(long backgroundValidationMilliseconds) {
+        if (backgroundValidationMilliseconds < 0) {
+            throw new IllegalArgumentException("backgroundValidationMilliseconds must be positive or 0, not " + backgroundValidationMilliseconds);
+        }
+        this.backgroundValidationMilliseconds = backgroundValidationMilliseconds;
+        scheduleMaintenance();
+    }
+
+    public int getMaxLifetimeMinutes() {
+        return (int) (maxLifetimeMilliseconds / (1000 * 60));
+    }
+
+    /**
+     * Sets the age after which connections are destroyed rather than returned to the pool; 0 means
+     * connections live until they fail or sit idle too long.
+     */
+    public void setMaxLifetimeMinutes(int maxLifetimeMinutes) {
+        if (maxLifetimeMinutes < 0) {
+            throw new IllegalArgumentException("maxLifetimeMinutes must be positive or 0, not " + maxLifetimeMinutes);
+        }
+        this.maxLifetimeMilliseconds = maxLifetimeMinutes * 60L * 1000;
+        scheduleMaintenance();
+    }
+
+    private synchronized void scheduleMaintenance() {
+        if (maintenanceTask != null) {
+            maintenanceTask.cancel();
+            maintenanceTask = null;
+        }
+        if (destroyed) {
+            return;
+        }
+        long period = shortest(shortest(idleTimeoutMilliseconds, backgroundValidationMilliseconds), maxLifetimeMilliseconds);
+        if (period > 0) {
+            maintenanceTask = PoolMaintenance.schedule(this, period);
+        }
+    }
+
+    private static long shortest(long period1, long period2) {
+        if (period1 == 0 || (period2 != 0 && period2 < period1)) {
+            return period2;
+        }
+        return period1;
+    }
+
+    public void maintain() {
+        long now = System.currentTimeMillis();
+        releaseExpired(now);
+        if (backgroundValidationMilliseconds > 0 && now - lastValidation >= backgroundValidationMilliseconds) {
+            lastValidation = now;
+            validateIdle();
+        }
+        // replace connections that were released or failed validation
+        FillTask fillTask;
+        synchronized (permitLock) {
+            fillTask = this.fillTask;
+        }
+        if (fillTask != null) {
+            scheduleFill(fillTask);
+        }
+    }
+
+    public void prefill(ManagedConnectionFactory managedConnectionFactory) {
+        scheduleFill(new ConnectionInfo(new ManagedConnectionInfo(managedConnectionFactory, null)));
+    }
+
+    private void releaseExpired(long now) {
+        long idleThreshold = idleTimeoutMilliseconds > 0 ? now - idleTimeoutMilliseconds : Long.MIN_VALUE;
+        long createdThreshold = maxLifetimeMilliseconds > 0 ? now - maxLifetimeMilliseconds : Long.MIN_VALUE;
+        List killList = new ArrayList();
+        synchronized (permitLock) {
+            for (int i = 0; i < stripes.length; i++) {
+                stripes[i].removeExpired(idleThreshold, createdThreshold, killList);
+            }
+            for (Iterator i = killList.iterator(); i.hasNext();) {
+                reclaimed.put(i.next(), Boolean.FALSE);
+            }
+        }
+        destroyReclaimed(killList);
+    }
+
+    public long getOldestIdleTime() {
+        long oldest = Long.MAX_VALUE;
+        for (int i = 0; i < stripes.length; i++) {
+            ManagedConnectionInfo mci = stripes[i].getFirst();
+            if (mci != null && mci.getLastUsed() < oldest) {
+                oldest = mci.getLastUsed();
+            }
+        }
+        return oldest;
+    }
+
+    public boolean releaseOldestIdle() {
+        List killList = new ArrayList();
+        synchronized (permitLock) {
+            Stripe oldestStripe = null;
+            long oldest = Long.MAX_VALUE;
+            for (int i = 0; i < stripes.length; i++) {
+                ManagedConnectionInfo mci = stripes[i].getFirst();
+                if (mci != null && mci.getLastUsed() <= oldest) {
+                    oldest = mci.getLastUsed();
+                    oldestStripe = stripes[i];
+                }
+            }
+            ManagedConnectionInfo mci = oldestStripe == null ? null : oldestStripe.removeFirst();
+            if (mci == null) {
+                return false;
+            }
+            reclaimed.put(mci, Boolean.FALSE);
+            killList.add(mci);
+        }
+        destroyReclaimed(killList);
+        return true;
+    }
+
+    private void destroyReclaimed(List killList) {
+        for (Iterator i = killList.iterator(); i.hasNext();) {
+            ManagedConnectionInfo managedConnectionInfo = (ManagedConnectionInfo) i.next();
+            destroyConnection(new ConnectionInfo(managedConnectionInfo));
+            synchronized (permitLock) {
+                reclaimed.remove(managedConnectionInfo);
+            }
+        }
+    }
+
+    /**
+     * Checks the idle connections one at a time with a ValidatingManagedConnectionFactory.  The
+     * connection being checked is taken out of the pool under a permit, so it cannot be handed out
+     * meanwhile and the pool cannot grow past its maximum size.  A connection error reported while
+     * it is checked leaves destroying it, and the permit, to this method.
+     */
+    private void validateIdle() {
+        List idle = new ArrayList();
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i].copyTo(idle);
+        }
+        for (Iterator i = idle.iterator(); i.hasNext() && !destroyed;) {
+            ManagedConnectionInfo mci = (ManagedConnectionInfo) i.next();
+            if (!(mci.getManagedConnectionFactory() instanceof ValidatingManagedConnectionFactory)) {
+                return;
+            }
+            synchronized (permitLock) {
+                if (checkedOut >= maxSize) {
+                    return;
+                }
+                if (!removeIdle(mci)) {
+                    continue;
+                }
+                checkedOut++;
+                reclaimed.put(mci, Boolean.FALSE);
+            }
+            boolean valid = false;
+            try {
+                valid = PoolMaintenance.isValid(mci);
+            } finally {
+                synchronized (permitLock) {
+                    if (reclaimed.remove(mci) == Boolean.TRUE) {
+                        valid = false;
+                    }
+                    if (valid) {
+                        addIdle(mci);
+                    }
+                }
+                // as in returnConnection, a concurrent destroy() may already have emptied the pool
+                if (valid && destroyed && removeIdle(mci)) {
+                    valid = false;
+                }
+                if (!valid) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Destroying invalid connection " + mci);
+                    }
+                    destroyConnection(new ConnectionInfo(mci));
+                }
+                releasePermit();
+            }
+        }
+    }
+
+    /**
+     * Idle connections of one stripe, most recently returned last.
+     */
+    private static final class Stripe {
+        private ManagedConnectionInfo[] connections = new ManagedConnectionInfo[4];
+        private volatile int size = 0;
+
+        public synchronized void add(ManagedConnectionInfo mci) {
+            if (size == connections.length) {
+                ManagedConnectionInfo[] newConnections = new ManagedConnectionInfo[size * 2];
+                System.arraycopy(connections, 0, newConnections, 0, size);
+                connections = newConnections;
+            }
+            connections[size++] = mci;
+        }
+
+        public synchronized ManagedConnectionInfo removeLast() {
+            if (size == 0) {
+                return null;
+            }
+            ManagedConnectionInfo mci = connections[--size];
+            connections[size] = null;
+            return mci;
+        }
+
+        public synchronized ManagedConnectionInfo getFirst() {
+            return size == 0 ? null : connections[0];
+        }
+
+        public synchronized ManagedConnectionInfo removeFirst() {
+            if (size == 0) {
+                return null;
+            }
+            ManagedConnectionInfo mci = connections[0];
+            System.arraycopy(connections, 1, connections, 0, size - 1);
+            connections[--size] = null;
+            return mci;
+        }
+
+        public synchronized boolean remove(ManagedConnectionInfo mci) {
+            for (int i = 0; i < size; i++) {
+                if (connections[i] == mci) {
+                    System.arraycopy(connections, i + 1, connections, i, size - i - 1);
+                    connections[--size] = null;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public synchronized void removeExpired(long idleThreshold, long createdThreshold, List killList) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (connections[i].getLastUsed() < idleThreshold || connections[i].getCreatedTime() < createdThreshold) {
+                    killList.add(connections[i]);
+                } else {
+                    connections[kept++] = connections[i];
+                }
+            }
+            for (int i = kept; i < size; i++) {
+                connections[i] = null;
+            }
+            size = kept;
+        }
+
+        public synchronized void copyTo(List list) {
+            for (int i = 0; i < size; i++) {
+                list.add(connections[i]);
+            }
+        }
+
+        public synchronized void removeAll(List list) {
+            for (int i = 0; i < size; i++) {
+                list.add(connections[i]);
+                connections[i] = null;
+            }
+            size = 0;
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+
+    // Runs on the PoolMaintenance threads; only one FillTask of a pool runs at a time.
+    private class FillTask implements Runnable {
+        private final ManagedConnectionFactory managedConnectionFactory;
+        private final Subject subject;
+        private final ConnectionRequestInfo cri;
+
+        public FillTask(ConnectionInfo connectionInfo) {
+            managedConnectionFactory = connectionInfo.getManagedConnectionInfo().getManagedConnectionFactory();
+            subject = connectionInfo.getManagedConnectionInfo().getSubject();
+            cri = connectionInfo.getManagedConnectionInfo().getConnectionRequestInfo();
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    // reserve the connection before creating it so concurrent fills stop at minSize,
+                    // and hold a permit meanwhile so getConnection cannot create one past maxSize;
+                    // a busy pool is not filled rather than making the maintenance thread wait
+                    synchronized (permitLock) {
+                        if (destroyed || connectionCount >= minSize || connectionCount >= maxSize || checkedOut >= maxSize) {
+                            return;
+                        }
+                        connectionCount++;
+                        checkedOut++;
+                    }
+                    ManagedConnectionInfo mci = new ManagedConnectionInfo(managedConnectionFactory, cri);
+                    mci.setSubject(subject);
+                    ConnectionInfo ci = new ConnectionInfo(mci);
+                    try {
+                        next.getConnection(ci);
+                    } catch (ResourceException e) {
+                        synchronized (permitLock) {
+                            connectionCount--;
+                        }
+                        releasePermit();
+                        return;
+                    }
+                    statistics.connectionCreated();
+                    mci.setLastUsed(System.currentTimeMillis());
+                    addIdle(mci);
+                    releasePermit();
+                }
+            } finally {
+                synchronized (permitLock) {
+                    filling = false;
+                }
+            }
+        }
+    }
+}
@@ -17,7 +17,10 @@
 
 package org.apache.geronimo.connector.outbound.connectionmanagerconfig;
 
+import javax.resource.spi.ManagedConnectionFactory;
+
 import org.apache.geronimo.connector.outbound.ConnectionInterceptor;
+import org.apache.geronimo.connector.outbound.ConnectionPoolStatistics;
 
 /**
  *
@@ -30,6 +33,13 @@ public class NoPool implements PoolingSupport {
         return tail;
     }
 
+    public ConnectionPoolStatistics getStatistics() {
+        return null;
+    }
+
+    public void prefill(ManagedConnectionFactory managedConnectionFactory) {
+    }
+
     public int getPartitionCount() {
         return 0;
     }
@@ -17,7 +17,10 @@
 
 package org.apache.geronimo.connector.outbound.connectionmanagerconfig;
 
+import javax.resource.spi.ManagedConnectionFactory;
+
 import org.apache.geronimo.connector.outbound.ConnectionInterceptor;
+import org.apache.geronimo.connector.outbound.ConnectionPoolStatistics;
 import org.apache.geronimo.connector.outbound.MultiPoolConnectionInterceptor;
 import org.apache.geronimo.connector.outbound.PoolingAttributes;
 
@@ -28,6 +31,7 @@ public class PartitionedPool implements PoolingSupport {
 
     private boolean partitionByConnectionRequestInfo;
     private boolean partitionBySubject;
+    private int maxTotalConnections;
 
     private final SinglePool singlePool;
 
@@ -103,15 +107,71 @@ public class PartitionedPool implements PoolingSupport {
         singlePool.setSelectOneAssumeMatch(selectOneAssumeMatch);
     }
 
+    public int getMaxTotalConnections() {
+        return maxTotalConnections;
+    }
+
+    /**
+     * Caps the number of connections held by all partitions together; 0 means no cap.
+     */
+    public void setMaxTotalConnections(int maxTotalConnections) {
+        this.maxTotalConnections = maxTotalConnections;
+    }
+
+    public boolean isStriped() {
+        return singlePool.isStriped();
+    }
+
+    public void setStriped(boolean striped) {
+        singlePool.setStriped(striped);
+    }
+
+    public long getBackgroundValidationMilliseconds() {
+        return singlePool.getBackgroundValidationMilliseconds();
+    }
+
+    /**
+     * Takes effect for partitions created after the change.
+     */
+    public void setBackgroundValidationMilliseconds(long backgroundValidationMilliseconds) {
+        singlePool.setBackgroundValidationMilliseconds(backgroundValidationMilliseconds);
+    }
+
+    public int getMaxLifetimeMinutes() {
+        return singlePool.getMaxLifetimeMinutes();
+    }
+
+    /**
+     * Takes effect for partitions created after the change.
+     */
+    public void setMaxLifetimeMinutes(int maxLifetimeMinutes) {
+        singlePool.setMaxLifetimeMinutes(maxLifetimeMinutes);
+    }
+
     public ConnectionInterceptor addPoolingInterceptors(ConnectionInterceptor tail) {
         MultiPoolConnectionInterceptor pool = new MultiPoolConnectionInterceptor(tail,
                 singlePool,
                 isPartitionBySubject(),
-                isPartitionByConnectionRequestInfo());
+                isPartitionByConnectionRequestInfo(),
+                getMaxTotalConnections());
         this.poolingAttributes = pool;
         return pool;
     }
 
+    /**
+     * Partitions are only created for the Subject and ConnectionRequestInfo of actual requests,
+     * so there is nothing to fill in advance.
+     */
+    public void prefill(ManagedConnectionFactory managedConnectionFactory) {
+    }
+
+    /**
+     * All partitions share the statistics of the SinglePool that creates them.
+     */
+    public ConnectionPoolStatistics getStatistics() {
+        return singlePool.getStatistics();
+    }
+
     public int getPartitionCount() {
         return poolingAttributes.getPartitionCount();
     }
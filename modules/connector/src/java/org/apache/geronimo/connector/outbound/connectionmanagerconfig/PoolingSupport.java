@@ -18,8 +18,10 @@
 package org.apache.geronimo.connector.outbound.connectionmanagerconfig;
 
 import java.io.Serializable;
+import javax.resource.spi.ManagedConnectionFactory;
 
 import org.apache.geronimo.connector.outbound.ConnectionInterceptor;
+import org.apache.geronimo.connector.outbound.ConnectionPoolStatistics;
 import org.apache.geronimo.connector.outbound.PoolingAttributes;
 
 /**
@@ -29,4 +31,14 @@ public interface PoolingSupport extends Serializable, PoolingAttributes {
 
     ConnectionInterceptor addPoolingInterceptors(ConnectionInterceptor tail);
 
+    /**
+     * @return the statistics collected by the pool interceptors, or null if there is no pool
+     */
+    ConnectionPoolStatistics getStatistics();
+
+    /**
+     * Starts filling the pool to its minimum size in the background.
+     */
+    void prefill(ManagedConnectionFactory managedConnectionFactory);
+
 }
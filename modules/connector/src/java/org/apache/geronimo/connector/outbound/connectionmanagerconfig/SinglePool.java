@@ -17,10 +17,15 @@
 
 package org.apache.geronimo.connector.outbound.connectionmanagerconfig;
 
+import javax.resource.spi.ManagedConnectionFactory;
+
 import org.apache.geronimo.connector.outbound.ConnectionInterceptor;
+import org.apache.geronimo.connector.outbound.ConnectionPoolStatistics;
+import org.apache.geronimo.connector.outbound.PoolMaintenance;
 import org.apache.geronimo.connector.outbound.SinglePoolConnectionInterceptor;
 import org.apache.geronimo.connector.outbound.SinglePoolMatchAllConnectionInterceptor;
 import org.apache.geronimo.connector.outbound.PoolingAttributes;
+import org.apache.geronimo.connector.outbound.StripedSinglePoolConnectionInterceptor;
 
 /**
  * @version $Rev$ $Date$
@@ -33,8 +38,12 @@ public class SinglePool implements PoolingSupport {
     private boolean matchOne;
     private boolean matchAll;
     private boolean selectOneAssumeMatch;
+    private boolean striped;
+    private long backgroundValidationMilliseconds;
+    private int maxLifetimeMinutes;
 
     private transient PoolingAttributes pool;
+    private transient ConnectionPoolStatistics statistics;
 
     public SinglePool(int maxSize, int minSize, int blockingTimeoutMilliseconds, int idleTimeoutMinutes, boolean matchOne, boolean matchAll, boolean selectOneAssumeMatch) {
         this.maxSize = maxSize;
@@ -108,6 +117,47 @@ public class SinglePool implements PoolingSupport {
         this.selectOneAssumeMatch = selectOneAssumeMatch;
     }
 
+    /**
+     * If true, and matchAll is not set, the pool keeps its idle connections in several
+     * independently locked stripes and creates new connections without holding a pool lock.
+     */
+    public boolean isStriped() {
+        return striped;
+    }
+
+    public void setStriped(boolean striped) {
+        this.striped = striped;
+    }
+
+    public long getBackgroundValidationMilliseconds() {
+        return backgroundValidationMilliseconds;
+    }
+
+    /**
+     * How often idle connections are checked, if the ManagedConnectionFactory is a
+     * ValidatingManagedConnectionFactory; 0 turns background validation off.
+     */
+    public void setBackgroundValidationMilliseconds(long backgroundValidationMilliseconds) {
+        this.backgroundValidationMilliseconds = backgroundValidationMilliseconds;
+        if (pool != null) {
+            ((PoolMaintenance.Pool) pool).setBackgroundValidationMilliseconds(backgroundValidationMilliseconds);
+        }
+    }
+
+    public int getMaxLifetimeMinutes() {
+        return maxLifetimeMinutes;
+    }
+
+    /**
+     * Connections older than this are destroyed instead of being pooled; 0 means no limit.
+     */
+    public void setMaxLifetimeMinutes(int maxLifetimeMinutes) {
+        this.maxLifetimeMinutes = maxLifetimeMinutes;
+        if (pool != null) {
+            ((PoolMaintenance.Pool) pool).setMaxLifetimeMinutes(maxLifetimeMinutes);
+        }
+    }
+
     public ConnectionInterceptor addPoolingInterceptors(ConnectionInterceptor tail) {
         if (isMatchAll()) {
             SinglePoolMatchAllConnectionInterceptor pool = new SinglePoolMatchAllConnectionInterceptor(tail,
@@ -115,9 +165,24 @@ public class SinglePool implements PoolingSupport {
                     getMinSize(),
                     getBlockingTimeoutMilliseconds(),
                     getIdleTimeoutMinutes());
+            pool.setStatistics(getStatistics());
+            pool.setBackgroundValidationMilliseconds(getBackgroundValidationMilliseconds());
+            pool.setMaxLifetimeMinutes(getMaxLifetimeMinutes());
             this.pool = pool;
             return pool;
 
+        } else if (isStriped()) {
+            StripedSinglePoolConnectionInterceptor pool = new StripedSinglePoolConnectionInterceptor(tail,
+                    getMaxSize(),
+                    getMinSize(),
+                    getBlockingTimeoutMilliseconds(),
+                    getIdleTimeoutMinutes(),
+                    isSelectOneAssumeMatch());
+            pool.setStatistics(getStatistics());
+            pool.setBackgroundValidationMilliseconds(getBackgroundValidationMilliseconds());
+            pool.setMaxLifetimeMinutes(getMaxLifetimeMinutes());
+            this.pool = pool;
+            return pool;
         } else {
             SinglePoolConnectionInterceptor pool = new SinglePoolConnectionInterceptor(tail,
                     getMaxSize(),
@@ -125,11 +190,31 @@ public class SinglePool implements PoolingSupport {
                     getBlockingTimeoutMilliseconds(),
                     getIdleTimeoutMinutes(),
                     isSelectOneAssumeMatch());
+            pool.setStatistics(getStatistics());
+            pool.setBackgroundValidationMilliseconds(getBackgroundValidationMilliseconds());
+            pool.setMaxLifetimeMinutes(getMaxLifetimeMinutes());
             this.pool = pool;
             return pool;
         }
     }
 
+    public void prefill(ManagedConnectionFactory managedConnectionFactory) {
+        if (pool != null) {
+            ((PoolMaintenance.Pool) pool).prefill(managedConnectionFactory);
+        }
+    }
+
+    /**
+     * Every pool interceptor this SinglePool creates reports to the same statistics, so the
+     * partitions of a PartitionedPool are counted together.
+     */
+    public synchronized ConnectionPoolStatistics getStatistics() {
+        if (statistics == null) {
+            statistics = new ConnectionPoolStatistics();
+        }
+        return statistics;
+    }
+
     public int getPartitionCount() {
         return 1;
     }
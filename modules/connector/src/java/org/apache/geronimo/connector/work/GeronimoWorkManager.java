@@ -68,6 +68,8 @@ public class GeronimoWorkManager implements WorkManager {
 
     private final TransactionContextManager transactionContextManager;
 
+    private final boolean workStealing;
+
     private final WorkExecutor scheduleWorkExecutor = new ScheduleWorkExecutor();
     private final WorkExecutor startWorkExecutor = new StartWorkExecutor();
     private final WorkExecutor syncWorkExecutor = new SyncWorkExecutor();
@@ -84,10 +86,19 @@ public class GeronimoWorkManager implements WorkManager {
     }
 
     public GeronimoWorkManager(int syncSize, int startSize, int schedSize, TransactionContextManager transactionContextManager) {
-        syncWorkExecutorPool = new NullWorkExecutorPool(syncSize);
-        startWorkExecutorPool = new NullWorkExecutorPool(startSize);
-        scheduledWorkExecutorPool = new NullWorkExecutorPool(schedSize);
+        this(syncSize, startSize, schedSize, false, transactionContextManager);
+    }
+
+    /**
+     * @param workStealing whether the pools are WorkStealingWorkExecutorPools,
+     * giving each thread its own queue, instead of PooledExecutors sharing one.
+     */
+    public GeronimoWorkManager(int syncSize, int startSize, int schedSize, boolean workStealing, TransactionContextManager transactionContextManager) {
+        syncWorkExecutorPool = new NullWorkExecutorPool(syncSize, workStealing);
+        startWorkExecutorPool = new NullWorkExecutorPool(startSize, workStealing);
+        scheduledWorkExecutorPool = new NullWorkExecutorPool(schedSize, workStealing);
         this.transactionContextManager = transactionContextManager;
+        this.workStealing = workStealing;
     }
 
     public void doStart() throws Exception {
@@ -114,6 +125,10 @@ public class GeronimoWorkManager implements WorkManager {
         return transactionContextManager;
     }
 
+    public boolean isWorkStealing() {
+        return workStealing;
+    }
+
     public int getSyncThreadCount() {
         return syncWorkExecutorPool.getPoolSize();
     }
@@ -126,6 +141,22 @@ public class GeronimoWorkManager implements WorkManager {
         syncWorkExecutorPool.setMaximumPoolSize(maxSize);
     }
 
+    public int getSyncQueueSize() {
+        return syncWorkExecutorPool.getQueueSize();
+    }
+
+    public long getSyncAverageWaitMilliseconds() {
+        return syncWorkExecutorPool.getAverageWaitMilliseconds();
+    }
+
+    public long getSyncMaxWaitMilliseconds() {
+        return syncWorkExecutorPool.getMaxWaitMilliseconds();
+    }
+
+    public long getSyncRejectedCount() {
+        return syncWorkExecutorPool.getRejectedCount();
+    }
+
     public int getStartThreadCount() {
         return startWorkExecutorPool.getPoolSize();
     }
@@ -138,6 +169,22 @@ public class GeronimoWorkManager implements WorkManager {
         startWorkExecutorPool.setMaximumPoolSize(maxSize);
     }
 
+    public int getStartQueueSize() {
+        return startWorkExecutorPool.getQueueSize();
+    }
+
+    public long getStartAverageWaitMilliseconds() {
+        return startWorkExecutorPool.getAverageWaitMilliseconds();
+    }
+
+    public long getStartMaxWaitMilliseconds() {
+        return startWorkExecutorPool.getMaxWaitMilliseconds();
+    }
+
+    public long getStartRejectedCount() {
+        return startWorkExecutorPool.getRejectedCount();
+    }
+
     public int getScheduledThreadCount() {
         return scheduledWorkExecutorPool.getPoolSize();
     }
@@ -150,6 +197,22 @@ public class GeronimoWorkManager implements WorkManager {
         scheduledWorkExecutorPool.setMaximumPoolSize(maxSize);
     }
 
+    public int getScheduledQueueSize() {
+        return scheduledWorkExecutorPool.getQueueSize();
+    }
+
+    public long getScheduledAverageWaitMilliseconds() {
+        return scheduledWorkExecutorPool.getAverageWaitMilliseconds();
+    }
+
+    public long getScheduledMaxWaitMilliseconds() {
+        return scheduledWorkExecutorPool.getMaxWaitMilliseconds();
+    }
+
+    public long getScheduledRejectedCount() {
+        return scheduledWorkExecutorPool.getRejectedCount();
+    }
+
     /* (non-Javadoc)
     * @see javax.resource.spi.work.WorkManager#doWork(javax.resource.spi.work.Work)
     */
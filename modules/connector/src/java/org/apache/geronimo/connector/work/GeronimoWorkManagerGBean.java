@@ -42,6 +42,10 @@ public class GeronimoWorkManagerGBean extends GeronimoWorkManager implements GBe
         super(syncSize, startSize, schedSize, transactionContextManager);
     }
 
+    public GeronimoWorkManagerGBean(int syncSize, int startSize, int schedSize, boolean workStealing, TransactionContextManager transactionContextManager) {
+        super(syncSize, startSize, schedSize, workStealing, transactionContextManager);
+    }
+
     public static final GBeanInfo GBEAN_INFO;
 
     static {
@@ -51,6 +55,23 @@ public class GeronimoWorkManagerGBean extends GeronimoWorkManager implements GBe
         infoFactory.addAttribute("syncMaximumPoolSize", Integer.TYPE, true);
         infoFactory.addAttribute("startMaximumPoolSize", Integer.TYPE, true);
         infoFactory.addAttribute("scheduledMaximumPoolSize", Integer.TYPE, true);
+        infoFactory.addAttribute("workStealing", Boolean.TYPE, true);
+
+        infoFactory.addAttribute("syncThreadCount", Integer.TYPE, false);
+        infoFactory.addAttribute("syncQueueSize", Integer.TYPE, false);
+        infoFactory.addAttribute("syncAverageWaitMilliseconds", Long.TYPE, false);
+        infoFactory.addAttribute("syncMaxWaitMilliseconds", Long.TYPE, false);
+        infoFactory.addAttribute("syncRejectedCount", Long.TYPE, false);
+        infoFactory.addAttribute("startThreadCount", Integer.TYPE, false);
+        infoFactory.addAttribute("startQueueSize", Integer.TYPE, false);
+        infoFactory.addAttribute("startAverageWaitMilliseconds", Long.TYPE, false);
+        infoFactory.addAttribute("startMaxWaitMilliseconds", Long.TYPE, false);
+        infoFactory.addAttribute("startRejectedCount", Long.TYPE, false);
+        infoFactory.addAttribute("scheduledThreadCount", Integer.TYPE, false);
+        infoFactory.addAttribute("scheduledQueueSize", Integer.TYPE, false);
+        infoFactory.addAttribute("scheduledAverageWaitMilliseconds", Long.TYPE, false);
+        infoFactory.addAttribute("scheduledMaxWaitMilliseconds", Long.TYPE, false);
+        infoFactory.addAttribute("scheduledRejectedCount", Long.TYPE, false);
 
         infoFactory.addOperation("getXATerminator");
 
@@ -60,6 +81,7 @@ public class GeronimoWorkManagerGBean extends GeronimoWorkManager implements GBe
             "syncMaximumPoolSize",
             "startMaximumPoolSize",
             "scheduledMaximumPoolSize",
+            "workStealing",
             "TransactionContextManager"});
 
         GBEAN_INFO = infoFactory.getBeanInfo();
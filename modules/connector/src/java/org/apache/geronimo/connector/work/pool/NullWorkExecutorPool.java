@@ -26,9 +26,23 @@ package org.apache.geronimo.connector.work.pool;
 public class NullWorkExecutorPool implements WorkExecutorPool {
 
     private int maxSize;
+    private final boolean workStealing;
 
     public NullWorkExecutorPool(int maxSize) {
+        this(maxSize, false);
+    }
+
+    /**
+     * @param workStealing whether start() creates a WorkStealingWorkExecutorPool
+     * rather than a WorkExecutorPoolImpl.
+     */
+    public NullWorkExecutorPool(int maxSize, boolean workStealing) {
         this.maxSize = maxSize;
+        this.workStealing = workStealing;
+    }
+
+    public boolean isWorkStealing() {
+        return workStealing;
     }
 
     public int getPoolSize() {
@@ -43,7 +57,26 @@ public class NullWorkExecutorPool implements WorkExecutorPool {
         this.maxSize = maxSize;
     }
 
+    public int getQueueSize() {
+        return 0;
+    }
+
+    public long getAverageWaitMilliseconds() {
+        return 0;
+    }
+
+    public long getMaxWaitMilliseconds() {
+        return 0;
+    }
+
+    public long getRejectedCount() {
+        return 0;
+    }
+
     public WorkExecutorPool start() {
+        if (workStealing) {
+            return new WorkStealingWorkExecutorPool(maxSize);
+        }
         return new WorkExecutorPoolImpl(maxSize);
     }
 
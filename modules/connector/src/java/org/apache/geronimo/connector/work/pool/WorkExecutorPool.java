@@ -51,6 +51,36 @@ public interface WorkExecutorPool extends Executor {
      */
     public void setMaximumPoolSize(int aSize);
 
+    /**
+     * Gets the number of Work instances queued and not yet started.
+     *
+     * @return Queue depth.
+     */
+    public int getQueueSize();
+
+    /**
+     * Gets the average time Work instances waited in the queue before they
+     * were started.
+     *
+     * @return Average wait time in milliseconds.
+     */
+    public long getAverageWaitMilliseconds();
+
+    /**
+     * Gets the longest time a Work instance waited in the queue.
+     *
+     * @return Maximum wait time in milliseconds.
+     */
+    public long getMaxWaitMilliseconds();
+
+    /**
+     * Gets the number of Work instances refused by the pool or whose start
+     * timeout expired while they were queued.
+     *
+     * @return Number of rejected Work instances.
+     */
+    public long getRejectedCount();
+
     public WorkExecutorPool start();
 
     public WorkExecutorPool stop();
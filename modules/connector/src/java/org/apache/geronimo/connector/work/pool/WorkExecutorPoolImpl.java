@@ -23,6 +23,7 @@ import javax.resource.spi.work.WorkException;
 import EDU.oswego.cs.dl.util.concurrent.Channel;
 import EDU.oswego.cs.dl.util.concurrent.PooledExecutor;
 import EDU.oswego.cs.dl.util.concurrent.LinkedQueue;
+import EDU.oswego.cs.dl.util.concurrent.SynchronizedInt;
 import org.apache.geronimo.connector.work.WorkerContext;
 
 /**
@@ -39,6 +40,10 @@ public class WorkExecutorPoolImpl implements WorkExecutorPool {
      */
     private PooledExecutor pooledExecutor;
 
+    private final SynchronizedInt queueSize = new SynchronizedInt(0);
+
+    private final WorkTimings timings = new WorkTimings();
+
     /**
      * Creates a pool with the specified minimum and maximum sizes. The Channel
      * used to enqueue the submitted Work instances is queueless synchronous
@@ -76,7 +81,19 @@ public class WorkExecutorPoolImpl implements WorkExecutorPool {
      * unsuccessful.
      */
     public void execute(Runnable work) throws InterruptedException {
-        pooledExecutor.execute(work);
+        queueSize.increment();
+        boolean queued = false;
+        try {
+            pooledExecutor.execute(new TimedWork(work, System.currentTimeMillis()));
+            queued = true;
+        } finally {
+            if (!queued) {
+                queueSize.decrement();
+                synchronized (timings) {
+                    timings.workRejected();
+                }
+            }
+        }
     }
 
     /**
@@ -101,6 +118,28 @@ public class WorkExecutorPoolImpl implements WorkExecutorPool {
         pooledExecutor.setMaximumPoolSize(maxSize);
     }
 
+    public int getQueueSize() {
+        return queueSize.get();
+    }
+
+    public long getAverageWaitMilliseconds() {
+        synchronized (timings) {
+            return timings.getAverageWaitMilliseconds();
+        }
+    }
+
+    public long getMaxWaitMilliseconds() {
+        synchronized (timings) {
+            return timings.getMaxWaitMilliseconds();
+        }
+    }
+
+    public long getRejectedCount() {
+        synchronized (timings) {
+            return timings.getRejectedCount();
+        }
+    }
+
     public WorkExecutorPool start() {
         throw new IllegalStateException("This pooled executor is already started");
     }
@@ -115,4 +154,29 @@ public class WorkExecutorPoolImpl implements WorkExecutorPool {
         return new NullWorkExecutorPool(maxSize);
     }
 
+    /**
+     * Records how long the Work waited for a pooled thread.
+     */
+    private class TimedWork implements Runnable {
+        private final Runnable work;
+        private final long queuedTime;
+
+        public TimedWork(Runnable work, long queuedTime) {
+            this.work = work;
+            this.queuedTime = queuedTime;
+        }
+
+        public void run() {
+            queueSize.decrement();
+            long waitMilliseconds = System.currentTimeMillis() - queuedTime;
+            try {
+                work.run();
+            } finally {
+                synchronized (timings) {
+                    timings.workRun(work, waitMilliseconds);
+                }
+            }
+        }
+    }
+
 }
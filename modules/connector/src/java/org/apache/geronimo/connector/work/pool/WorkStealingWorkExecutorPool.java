@@ -0,0 +1,406 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.connector.work.pool;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * WorkExecutorPool giving each of its threads its own queue of Work instead
+ * of one queue shared by all of them.  Work submitted by other threads is
+ * spread over the queues round robin, Work submitted from a pool thread goes
+ * to that thread's queue, and a thread whose queue is empty steals the
+ * oldest Work of another thread before going idle.  Submitters and workers
+ * therefore contend for one of many queue locks rather than one, and a
+ * submitter only touches the idle lock when some thread is actually idle.
+ * <p/>
+ * Like WorkExecutorPoolImpl the queues are unbounded and stop() lets the
+ * queued Work complete.
+ *
+ * @version $Rev$ $Date$
+ */
+public class WorkStealingWorkExecutorPool implements WorkExecutorPool {
+
+    private static final Log log = LogFactory.getLog(WorkStealingWorkExecutorPool.class);
+
+    private static final int INITIAL_QUEUE_CAPACITY = 16;
+
+    private static int poolNumber;
+
+    private final String name;
+    private final Object idleLock = new Object();
+
+    /**
+     * Rejections and the timings of workers that have ended, guarded by the pool.
+     */
+    private final WorkTimings timings = new WorkTimings();
+
+    /**
+     * Workers accepting new Work.  Replaced, never modified, under the pool lock.
+     */
+    private volatile Worker[] workers = new Worker[0];
+    private volatile int idleWorkers;
+    private volatile boolean stopped;
+    private int nextWorker;
+    private int nextWorkerNumber;
+
+    public WorkStealingWorkExecutorPool(int maxSize) {
+        synchronized (WorkStealingWorkExecutorPool.class) {
+            name = "WorkStealingWorkExecutorPool-" + poolNumber++;
+        }
+        setMaximumPoolSize(maxSize);
+    }
+
+    /**
+     * Queues the specified Work.
+     *
+     * @throws IllegalStateException if this pool has been stopped.
+     */
+    public void execute(Runnable work) throws InterruptedException {
+        long now = System.currentTimeMillis();
+        Thread current = Thread.currentThread();
+        if (current instanceof WorkerThread && ((WorkerThread) current).getWorker().pool == this) {
+            if (((WorkerThread) current).getWorker().offer(work, now)) {
+                wakeIdleWorker();
+                return;
+            }
+        }
+        while (true) {
+            Worker[] workers = this.workers;
+            if (stopped || workers.length == 0) {
+                synchronized (this) {
+                    timings.workRejected();
+                }
+                throw new IllegalStateException("Stopped");
+            }
+            // a racy round robin is good enough to spread the work
+            int index = nextWorker++ & Integer.MAX_VALUE;
+            if (workers[index % workers.length].offer(work, now)) {
+                wakeIdleWorker();
+                return;
+            }
+            // that worker retired meanwhile; try again with the current workers
+        }
+    }
+
+    private void wakeIdleWorker() {
+        if (idleWorkers > 0) {
+            synchronized (idleLock) {
+                idleLock.notify();
+            }
+        }
+    }
+
+    public int getPoolSize() {
+        return workers.length;
+    }
+
+    public int getMaximumPoolSize() {
+        return workers.length;
+    }
+
+    /**
+     * Starts or retires threads to match the new size.  A retired thread
+     * completes the Work already in its queue before it ends.
+     */
+    public synchronized void setMaximumPoolSize(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1: " + maxSize);
+        }
+        if (stopped) {
+            return;
+        }
+        Worker[] oldWorkers = workers;
+        Worker[] newWorkers = new Worker[maxSize];
+        System.arraycopy(oldWorkers, 0, newWorkers, 0, Math.min(oldWorkers.length, maxSize));
+        for (int i = oldWorkers.length; i < maxSize; i++) {
+            newWorkers[i] = new Worker(this);
+        }
+        workers = newWorkers;
+        for (int i = oldWorkers.length; i < maxSize; i++) {
+            WorkerThread thread = new WorkerThread(newWorkers[i], name + "-" + nextWorkerNumber++);
+            thread.start();
+        }
+        if (maxSize < oldWorkers.length) {
+            for (int i = maxSize; i < oldWorkers.length; i++) {
+                oldWorkers[i].retire();
+            }
+            synchronized (idleLock) {
+                idleLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of Work queued and not yet started.
+     */
+    public int getQueueSize() {
+        Worker[] workers = this.workers;
+        int size = 0;
+        for (int i = 0; i < workers.length; i++) {
+            size += workers[i].size();
+        }
+        return size;
+    }
+
+    public long getAverageWaitMilliseconds() {
+        return getTimings().getAverageWaitMilliseconds();
+    }
+
+    public long getMaxWaitMilliseconds() {
+        return getTimings().getMaxWaitMilliseconds();
+    }
+
+    public long getRejectedCount() {
+        return getTimings().getRejectedCount();
+    }
+
+    private WorkTimings getTimings() {
+        WorkTimings sum = new WorkTimings();
+        Worker[] workers = this.workers;
+        for (int i = 0; i < workers.length; i++) {
+            workers[i].addTimings(sum);
+        }
+        synchronized (this) {
+            sum.add(timings);
+        }
+        return sum;
+    }
+
+    public WorkExecutorPool start() {
+        throw new IllegalStateException("This pooled executor is already started");
+    }
+
+    /**
+     * Stops this pool. The threads complete the queued Work before they end.
+     */
+    public WorkExecutorPool stop() {
+        int maxSize;
+        synchronized (this) {
+            maxSize = workers.length;
+            stopped = true;
+        }
+        synchronized (idleLock) {
+            idleLock.notifyAll();
+        }
+        return new NullWorkExecutorPool(maxSize, true);
+    }
+
+    /**
+     * Moves Work from another worker's queue to the thief's, returning false
+     * if all are empty.
+     */
+    private boolean steal(Worker thief, long[] queuedTime) {
+        Worker[] workers = this.workers;
+        int start = thief.hashCode() & Integer.MAX_VALUE;
+        for (int i = 0; i < workers.length; i++) {
+            Worker victim = workers[(start + i) % workers.length];
+            if (victim != thief && victim.stealFirst(thief, queuedTime)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isWorkQueued() {
+        Worker[] workers = this.workers;
+        for (int i = 0; i < workers.length; i++) {
+            if (workers[i].size() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Blocks an idle worker until Work is queued or it has to end.
+     */
+    private void awaitWork(Worker worker) {
+        synchronized (idleLock) {
+            idleWorkers++;
+            try {
+                // a submitter reads idleWorkers after queueing its work, so
+                // anything it queued before we counted ourselves shows up here
+                if (!isWorkQueued() && !stopped && !worker.isRetired()) {
+                    idleLock.wait();
+                }
+            } catch (InterruptedException e) {
+                // look for work again
+            } finally {
+                idleWorkers--;
+            }
+        }
+    }
+
+    private synchronized void workerStopped(Worker worker) {
+        // workers ended by stop() are still counted through the workers array
+        if (worker.isRetired()) {
+            worker.addTimings(timings);
+        }
+    }
+
+    private static class WorkerThread extends Thread {
+        private final Worker worker;
+
+        public WorkerThread(Worker worker, String name) {
+            super(worker, name);
+            this.worker = worker;
+        }
+
+        public Worker getWorker() {
+            return worker;
+        }
+    }
+
+    /**
+     * A pool thread and its queue.  The queue is a ring buffer of Work and
+     * the time each was queued, guarded by the Worker.  Timings are only
+     * written by the pool thread, under the same lock.
+     */
+    private static class Worker implements Runnable {
+        private final WorkStealingWorkExecutorPool pool;
+        private final WorkTimings timings = new WorkTimings();
+        private Runnable[] queue = new Runnable[INITIAL_QUEUE_CAPACITY];
+        private long[] queuedTimes = new long[INITIAL_QUEUE_CAPACITY];
+        private int head;
+        private int size;
+        private boolean retired;
+        private boolean closed;
+
+        public Worker(WorkStealingWorkExecutorPool pool) {
+            this.pool = pool;
+        }
+
+        /**
+         * Queues the work, unless this worker has already ended.
+         */
+        public synchronized boolean offer(Runnable work, long queuedTime) {
+            if (closed) {
+                return false;
+            }
+            if (size == queue.length) {
+                grow();
+            }
+            int tail = (head + size) % queue.length;
+            queue[tail] = work;
+            queuedTimes[tail] = queuedTime;
+            size++;
+            return true;
+        }
+
+        private void grow() {
+            Runnable[] newQueue = new Runnable[queue.length * 2];
+            long[] newQueuedTimes = new long[queue.length * 2];
+            for (int i = 0; i < size; i++) {
+                newQueue[i] = queue[(head + i) % queue.length];
+                newQueuedTimes[i] = queuedTimes[(head + i) % queue.length];
+            }
+            queue = newQueue;
+            queuedTimes = newQueuedTimes;
+            head = 0;
+        }
+
+        public synchronized int size() {
+            return size;
+        }
+
+        /**
+         * Takes the oldest Work of the queue.
+         */
+        public synchronized Runnable pollFirst(long[] queuedTime) {
+            if (size == 0) {
+                return null;
+            }
+            Runnable work = queue[head];
+            queuedTime[0] = queuedTimes[head];
+            queue[head] = null;
+            head = (head + 1) % queue.length;
+            size--;
+            return work;
+        }
+
+        /**
+         * Moves the oldest Work of this worker's queue to the thief, keeping
+         * its queued time.
+         */
+        public boolean stealFirst(Worker thief, long[] queuedTime) {
+            Runnable work = pollFirst(queuedTime);
+            if (work == null) {
+                return false;
+            }
+            thief.offer(work, queuedTime[0]);
+            return true;
+        }
+
+        public synchronized void retire() {
+            retired = true;
+        }
+
+        public synchronized boolean isRetired() {
+            return retired;
+        }
+
+        /**
+         * Ends this worker if it has nothing left to do.
+         */
+        private synchronized boolean close() {
+            if (size > 0) {
+                return false;
+            }
+            closed = true;
+            return true;
+        }
+
+        public synchronized void addTimings(WorkTimings sum) {
+            sum.add(timings);
+        }
+
+        public void run() {
+            long[] queuedTime = new long[1];
+            try {
+                while (true) {
+                    Runnable work = pollFirst(queuedTime);
+                    if (work == null) {
+                        // stolen work is moved to our own queue
+                        if (!isRetired() && pool.steal(this, queuedTime)) {
+                            continue;
+                        }
+                        if ((pool.stopped || isRetired()) && close()) {
+                            break;
+                        }
+                        if (!isRetired()) {
+                            pool.awaitWork(this);
+                        }
+                        continue;
+                    }
+                    long waitMilliseconds = System.currentTimeMillis() - queuedTime[0];
+                    try {
+                        work.run();
+                    } catch (Throwable t) {
+                        log.error("Work threw an exception", t);
+                    }
+                    synchronized (this) {
+                        timings.workRun(work, waitMilliseconds);
+                    }
+                }
+            } finally {
+                pool.workerStopped(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.connector.work.pool;
+
+import javax.resource.spi.work.WorkException;
+import javax.resource.spi.work.WorkRejectedException;
+
+import org.apache.geronimo.connector.work.WorkerContext;
+
+/**
+ * Wait time and rejection counters of a WorkExecutorPool.  Not thread safe:
+ * callers either synchronize on it or keep one per thread and add them up.
+ *
+ * @version $Rev$ $Date$
+ */
+class WorkTimings {
+    private long startedCount;
+    private long totalWaitMilliseconds;
+    private long maxWaitMilliseconds;
+    private long rejectedCount;
+
+    /**
+     * Records a work that waited waitMilliseconds in the queue and has now
+     * been run.  A WorkerContext whose start timeout had expired by then is
+     * counted as rejected.
+     */
+    void workRun(Runnable work, long waitMilliseconds) {
+        startedCount++;
+        totalWaitMilliseconds += waitMilliseconds;
+        if (waitMilliseconds > maxWaitMilliseconds) {
+            maxWaitMilliseconds = waitMilliseconds;
+        }
+        if (work instanceof WorkerContext) {
+            WorkException workException = ((WorkerContext) work).getWorkException();
+            if (workException instanceof WorkRejectedException && WorkException.START_TIMED_OUT.equals(workException.getErrorCode())) {
+                rejectedCount++;
+            }
+        }
+    }
+
+    void workRejected() {
+        rejectedCount++;
+    }
+
+    void add(WorkTimings other) {
+        startedCount += other.startedCount;
+        totalWaitMilliseconds += other.totalWaitMilliseconds;
+        if (other.maxWaitMilliseconds > maxWaitMilliseconds) {
+            maxWaitMilliseconds = other.maxWaitMilliseconds;
+        }
+        rejectedCount += other.rejectedCount;
+    }
+
+    long getStartedCount() {
+        return startedCount;
+    }
+
+    long getAverageWaitMilliseconds() {
+        return startedCount == 0 ? 0 : totalWaitMilliseconds / startedCount;
+    }
+
+    long getMaxWaitMilliseconds() {
+        return maxWaitMilliseconds;
+    }
+
+    long getRejectedCount() {
+        return rejectedCount;
+    }
+}
@@ -46,6 +46,8 @@ public class MockManagedConnectionFactory implements ManagedConnectionFactory {
 
     private boolean reauthentication;
 
+    private volatile long connectLatencyMilliseconds;
+
     public String getOutboundStringProperty1() {
         return outboundStringProperty1;
     }
@@ -102,6 +104,13 @@ public class MockManagedConnectionFactory implements ManagedConnectionFactory {
     }
 
     public ManagedConnection createManagedConnection(Subject subject, ConnectionRequestInfo connectionRequestInfo) throws ResourceException {
+        if (connectLatencyMilliseconds > 0) {
+            try {
+                Thread.sleep(connectLatencyMilliseconds);
+            } catch (InterruptedException e) {
+                throw new ResourceException("Interrupted while connecting");
+            }
+        }
         MockManagedConnection managedConnection = new MockManagedConnection(this, subject, (MockConnectionRequestInfo) connectionRequestInfo);
         managedConnections.add(managedConnection);
         return managedConnection;
@@ -147,6 +156,17 @@ public class MockManagedConnectionFactory implements ManagedConnectionFactory {
         this.reauthentication = reauthentication;
     }
 
+    public long getConnectLatencyMilliseconds() {
+        return connectLatencyMilliseconds;
+    }
+
+    /**
+     * Makes every createManagedConnection call take at least this long, like a slow database connect.
+     */
+    public void setConnectLatencyMilliseconds(long connectLatencyMilliseconds) {
+        this.connectLatencyMilliseconds = connectLatencyMilliseconds;
+    }
+
     public Set getManagedConnections() {
         return managedConnections;
     }
@@ -0,0 +1,153 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.connector.outbound;
+
+import javax.resource.ResourceException;
+import javax.security.auth.Subject;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.connector.mock.MockManagedConnectionFactory;
+import org.apache.geronimo.connector.outbound.connectionmanagerconfig.SinglePool;
+import org.apache.geronimo.management.stats.HistogramStatisticImpl;
+import org.apache.geronimo.management.stats.JCAConnectionPoolStatsImpl;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ConnectionPoolStatisticsTest extends TestCase {
+    private MockManagedConnectionFactory managedConnectionFactory;
+    private SinglePool singlePool;
+    private ConnectionInterceptor pool;
+
+    public void testHistogramBuckets() {
+        assertEquals(0, HistogramStatisticImpl.getBucket(0));
+        assertEquals(1, HistogramStatisticImpl.getBucket(1));
+        assertEquals(2, HistogramStatisticImpl.getBucket(3));
+        assertEquals(3, HistogramStatisticImpl.getBucket(4));
+        assertEquals(HistogramStatisticImpl.BUCKET_COUNT - 1, HistogramStatisticImpl.getBucket(Long.MAX_VALUE));
+
+        HistogramStatisticImpl histogram = new HistogramStatisticImpl("test", null, null);
+        histogram.addTime(0);
+        histogram.addTime(5);
+        histogram.addTime(7);
+        assertEquals(3, histogram.getCount());
+        assertEquals(0, histogram.getMinTime());
+        assertEquals(7, histogram.getMaxTime());
+        assertEquals(12, histogram.getTotalTime());
+        assertEquals(1, histogram.getBucketCounts()[0]);
+        assertEquals(2, histogram.getBucketCounts()[3]);
+        assertEquals(7, histogram.getBucketUpperBounds()[3]);
+    }
+
+    public void testCreateAndClose() throws Exception {
+        createPool(false);
+        ConnectionInfo first = getConnection(null);
+        ConnectionInfo second = getConnection(null);
+        pool.returnConnection(first, ConnectionReturnAction.RETURN_HANDLE);
+        pool.returnConnection(second, ConnectionReturnAction.DESTROY);
+
+        JCAConnectionPoolStatsImpl stats = getStats();
+        assertEquals(2, stats.getCreateCount().getCount());
+        assertEquals(1, stats.getCloseCount().getCount());
+        assertEquals(1, stats.getPoolSize().getCurrent());
+        assertEquals(2, stats.getPoolSize().getHighWaterMark());
+        assertEquals(2, stats.getPoolSize().getUpperBound());
+        assertEquals(1, stats.getFreePoolSize().getCurrent());
+        assertEquals(2, stats.getWaitTime().getCount());
+        assertEquals(2, stats.getUseTime().getCount());
+        assertEquals(0, stats.getTimeoutCount().getCount());
+    }
+
+    public void testTimeout() throws Exception {
+        createPool(false);
+        getConnection(null);
+        getConnection(null);
+        try {
+            getConnection(null);
+            fail("expected ResourceException");
+        } catch (ResourceException expected) {
+        }
+
+        JCAConnectionPoolStatsImpl stats = getStats();
+        assertEquals(1, stats.getTimeoutCount().getCount());
+        assertEquals(3, stats.getWaitTime().getCount());
+        assertTrue(stats.getWaitTime().getMaxTime() >= 90);
+        assertEquals(1, stats.getWaitingThreadCount().getHighWaterMark());
+        assertEquals(0, stats.getWaitingThreadCount().getCurrent());
+    }
+
+    public void testMatchFailure() throws Exception {
+        createPool(false);
+        ConnectionInfo first = getConnection(null);
+        pool.returnConnection(first, ConnectionReturnAction.RETURN_HANDLE);
+        try {
+            getConnection(new Subject());
+            fail("expected ResourceException");
+        } catch (ResourceException expected) {
+        }
+        assertEquals(1, getStats().getMatchFailureCount().getCount());
+    }
+
+    public void testStripedPool() throws Exception {
+        createPool(true);
+        ConnectionInfo first = getConnection(null);
+        pool.returnConnection(first, ConnectionReturnAction.DESTROY);
+        getConnection(null);
+        getConnection(null);
+        try {
+            getConnection(null);
+            fail("expected ResourceException");
+        } catch (ResourceException expected) {
+        }
+
+        JCAConnectionPoolStatsImpl stats = getStats();
+        assertEquals(3, stats.getCreateCount().getCount());
+        assertEquals(1, stats.getCloseCount().getCount());
+        assertEquals(1, stats.getUseTime().getCount());
+        assertEquals(1, stats.getTimeoutCount().getCount());
+    }
+
+    private void createPool(boolean striped) {
+        MCFConnectionInterceptor tail = new MCFConnectionInterceptor();
+        singlePool = new SinglePool(2, 0, 100, 0, true, false, false);
+        singlePool.setStriped(striped);
+        pool = singlePool.addPoolingInterceptors(tail);
+        tail.setStack(pool);
+    }
+
+    private JCAConnectionPoolStatsImpl getStats() {
+        return singlePool.getStatistics().getStats(null, null, singlePool);
+    }
+
+    private ConnectionInfo getConnection(Subject subject) throws ResourceException {
+        ManagedConnectionInfo mci = new ManagedConnectionInfo(managedConnectionFactory, null);
+        mci.setSubject(subject);
+        ConnectionInfo connectionInfo = new ConnectionInfo(mci);
+        pool.getConnection(connectionInfo);
+        return connectionInfo;
+    }
+
+    protected void setUp() throws Exception {
+        managedConnectionFactory = new MockManagedConnectionFactory();
+    }
+
+    protected void tearDown() throws Exception {
+        if (pool != null) {
+            pool.destroy();
+        }
+    }
+}
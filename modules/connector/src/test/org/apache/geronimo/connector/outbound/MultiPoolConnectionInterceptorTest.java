@@ -0,0 +1,169 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.connector.outbound;
+
+import java.security.Principal;
+import javax.resource.ResourceException;
+import javax.security.auth.Subject;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.connector.mock.MockManagedConnection;
+import org.apache.geronimo.connector.mock.MockManagedConnectionFactory;
+import org.apache.geronimo.connector.outbound.connectionmanagerconfig.SinglePool;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class MultiPoolConnectionInterceptorTest extends TestCase {
+    private MockManagedConnectionFactory managedConnectionFactory;
+    private MultiPoolConnectionInterceptor pool;
+    private Subject subject1;
+    private Subject subject2;
+
+    public void testPartitionsBySubject() throws Exception {
+        createPool(0);
+        ConnectionInfo first = getConnection(subject1);
+        ConnectionInfo second = getConnection(subject2);
+        assertEquals(2, pool.getPartitionCount());
+        assertNotSame(first.getManagedConnectionInfo().getPoolInterceptor(), second.getManagedConnectionInfo().getPoolInterceptor());
+
+        pool.returnConnection(first, ConnectionReturnAction.RETURN_HANDLE);
+        pool.returnConnection(second, ConnectionReturnAction.RETURN_HANDLE);
+        assertEquals(2, pool.getConnectionCount());
+        assertEquals(2, pool.getIdleConnectionCount());
+
+        ConnectionInfo again = getConnection(subject1);
+        assertSame(first.getManagedConnectionInfo(), again.getManagedConnectionInfo());
+        assertEquals(2, pool.getPartitionCount());
+    }
+
+    public void testEvictsEmptySubPools() throws Exception {
+        createPool(0);
+        ConnectionInfo destroyed = getConnection(subject1);
+        ConnectionInfo idle = getConnection(subject2);
+        pool.returnConnection(destroyed, ConnectionReturnAction.DESTROY);
+        pool.returnConnection(idle, ConnectionReturnAction.RETURN_HANDLE);
+
+        pool.evictIdleSubPools(System.currentTimeMillis() + 1);
+        // the sub-pool still holding an idle connection is kept
+        assertEquals(1, pool.getPartitionCount());
+        assertEquals(1, pool.getConnectionCount());
+
+        // and a new request for the evicted partition gets a new sub-pool
+        ConnectionInfo again = getConnection(subject1);
+        assertNotSame(destroyed.getManagedConnectionInfo().getPoolInterceptor(), again.getManagedConnectionInfo().getPoolInterceptor());
+        assertEquals(2, pool.getPartitionCount());
+    }
+
+    public void testMaxTotalConnections() throws Exception {
+        createPool(2);
+        ConnectionInfo first = getConnection(subject1);
+        getConnection(subject2);
+        long start = System.currentTimeMillis();
+        try {
+            getConnection(subject1);
+            fail("expected ResourceException");
+        } catch (ResourceException expected) {
+        }
+        assertTrue(System.currentTimeMillis() - start >= 90);
+
+        // destroying a connection in one partition makes room in another
+        pool.returnConnection(first, ConnectionReturnAction.DESTROY);
+        getConnection(subject2);
+        assertEquals(2, pool.getConnectionCount());
+    }
+
+    public void testMaxTotalConnectionsReleasesIdleConnection() throws Exception {
+        createPool(2);
+        ConnectionInfo idle = getConnection(subject1);
+        getConnection(subject2);
+        pool.returnConnection(idle, ConnectionReturnAction.RETURN_HANDLE);
+
+        // the idle connection of the other partition makes room
+        long start = System.currentTimeMillis();
+        ConnectionInfo second = getConnection(subject2);
+        assertTrue(System.currentTimeMillis() - start < 90);
+        assertTrue(((MockManagedConnection) idle.getManagedConnectionInfo().getManagedConnection()).isDestroyed());
+        assertNotSame(idle.getManagedConnectionInfo(), second.getManagedConnectionInfo());
+        // the other partition counts the connection as gone once its destroy returns
+        for (int i = 0; i < 50 && pool.getConnectionCount() != 2; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(2, pool.getConnectionCount());
+    }
+
+    public void testFillDoesNotWaitForMaxTotalConnections() throws Exception {
+        MCFConnectionInterceptor tail = new MCFConnectionInterceptor();
+        SinglePool singlePool = new SinglePool(10, 2, 5000, 0, true, false, false);
+        // fills after every new connection
+        singlePool.setStriped(true);
+        pool = new MultiPoolConnectionInterceptor(tail, singlePool, true, false, 1);
+        tail.setStack(pool);
+        ConnectionInfo first = getConnection(subject1);
+        // let the fill to the minimum size find the limit reached
+        Thread.sleep(100);
+        pool.returnConnection(first, ConnectionReturnAction.DESTROY);
+        Thread.sleep(100);
+        // a fill waiting for room would have taken it
+        assertEquals(0, pool.getConnectionCount());
+    }
+
+    public void testDestroy() throws Exception {
+        createPool(0);
+        getConnection(subject1);
+        pool.destroy();
+        assertEquals(0, pool.getPartitionCount());
+        try {
+            getConnection(subject1);
+            fail("expected ResourceException");
+        } catch (ResourceException expected) {
+        }
+    }
+
+    private void createPool(int maxTotalConnections) {
+        MCFConnectionInterceptor tail = new MCFConnectionInterceptor();
+        SinglePool singlePool = new SinglePool(10, 0, 100, 0, true, false, false);
+        pool = new MultiPoolConnectionInterceptor(tail, singlePool, true, false, maxTotalConnections);
+        tail.setStack(pool);
+    }
+
+    private ConnectionInfo getConnection(Subject subject) throws ResourceException {
+        ManagedConnectionInfo mci = new ManagedConnectionInfo(managedConnectionFactory, null);
+        mci.setSubject(subject);
+        ConnectionInfo connectionInfo = new ConnectionInfo(mci);
+        pool.getConnection(connectionInfo);
+        assertNotNull(connectionInfo.getManagedConnectionInfo().getManagedConnection());
+        return connectionInfo;
+    }
+
+    protected void setUp() throws Exception {
+        managedConnectionFactory = new MockManagedConnectionFactory();
+        subject1 = new Subject();
+        subject1.getPrincipals().add(new Principal() {
+            public String getName() {
+                return "one";
+            }
+        });
+        subject2 = new Subject();
+    }
+
+    protected void tearDown() throws Exception {
+        if (pool != null) {
+            pool.destroy();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.connector.outbound;
+
+import EDU.oswego.cs.dl.util.concurrent.CountDown;
+import org.apache.geronimo.connector.mock.MockManagedConnectionFactory;
+
+/**
+ * Measures get/return throughput of SinglePoolConnectionInterceptor and
+ * StripedSinglePoolConnectionInterceptor as the number of client threads grows.
+ * Every DESTROY_EVERY calls a thread destroys its connection, as if the connection
+ * had failed, so the pools keep making new connections against a
+ * ManagedConnectionFactory with a configurable connect latency.
+ *
+ * usage: PoolContentionSpeed [connect latency ms]
+ *
+ * @version $Rev$ $Date$
+ */
+public class PoolContentionSpeed {
+    private static final int TOTAL_CALLS = 2000000;
+    private static final int DESTROY_EVERY = 5000;
+    private static final int MAX_SIZE = 16;
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+
+    public static void main(String[] args) throws Exception {
+        long connectLatency = args.length > 0 ? Long.parseLong(args[0]) : 20;
+        MockManagedConnectionFactory managedConnectionFactory = new MockManagedConnectionFactory();
+        managedConnectionFactory.setConnectLatencyMilliseconds(connectLatency);
+
+        System.out.println("Pool Timings (connect latency " + connectLatency + "ms)");
+        System.out.println("-------------------------------------");
+        poolTimings(managedConnectionFactory);
+        System.out.println();
+        System.out.println();
+        System.out.println();
+        poolTimings(managedConnectionFactory);
+    }
+
+    private static void poolTimings(MockManagedConnectionFactory managedConnectionFactory) throws Exception {
+        for (int i = 0; i < THREAD_COUNTS.length; i++) {
+            int threadCount = THREAD_COUNTS[i];
+
+            MCFConnectionInterceptor tail = new MCFConnectionInterceptor();
+            SinglePoolConnectionInterceptor singlePool = new SinglePoolConnectionInterceptor(tail, MAX_SIZE, 0, 60000, 0, false);
+            tail.setStack(singlePool);
+            long elapsed = runCalls(singlePool, managedConnectionFactory, threadCount);
+            singlePool.destroy();
+            printResults("SinglePool " + threadCount + " threads", elapsed, TOTAL_CALLS);
+
+            tail = new MCFConnectionInterceptor();
+            StripedSinglePoolConnectionInterceptor stripedPool = new StripedSinglePoolConnectionInterceptor(tail, MAX_SIZE, 0, 60000, 0, false);
+            tail.setStack(stripedPool);
+            elapsed = runCalls(stripedPool, managedConnectionFactory, threadCount);
+            stripedPool.destroy();
+            printResults("StripedSinglePool " + threadCount + " threads", elapsed, TOTAL_CALLS);
+        }
+    }
+
+    private static long runCalls(final ConnectionInterceptor pool, final MockManagedConnectionFactory managedConnectionFactory, int threadCount) throws Exception {
+        final CountDown startSignal = new CountDown(1);
+        final CountDown doneSignal = new CountDown(threadCount);
+        final int callsPerThread = TOTAL_CALLS / threadCount;
+        for (int t = 0; t < threadCount; t++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        startSignal.acquire();
+                        for (int i = 1; i <= callsPerThread; i++) {
+                            ConnectionInfo connectionInfo = new ConnectionInfo(new ManagedConnectionInfo(managedConnectionFactory, null));
+                            pool.getConnection(connectionInfo);
+                            if (i % DESTROY_EVERY == 0) {
+                                pool.returnConnection(connectionInfo, ConnectionReturnAction.DESTROY);
+                            } else {
+                                pool.returnConnection(connectionInfo, ConnectionReturnAction.RETURN_HANDLE);
+                            }
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    } finally {
+                        doneSignal.release();
+                    }
+                }
+            });
+            thread.start();
+        }
+        long start = System.currentTimeMillis();
+        startSignal.release();
+        doneSignal.acquire();
+        return System.currentTimeMillis() - start;
+    }
+
+    private static void printResults(String invocationType, long elapsed, int calls) {
+        if (elapsed < 400) {
+            System.out.println(invocationType + ": elapse time to short to calculate throughput (total " + elapsed + "ms)");
+        } else {
+            System.out.println(invocationType + ": " + (calls * 1000L / elapsed) + " calls/s  (total " + elapsed + "ms)");
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.connector.outbound;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import javax.resource.ResourceException;
+import javax.resource.spi.ManagedConnection;
+import javax.resource.spi.ValidatingManagedConnectionFactory;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.connector.mock.MockManagedConnection;
+import org.apache.geronimo.connector.mock.MockManagedConnectionFactory;
+import org.apache.geronimo.connector.outbound.connectionmanagerconfig.SinglePool;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class PoolMaintenanceTest extends TestCase {
+    private ValidatingMockManagedConnectionFactory managedConnectionFactory;
+    private SinglePool singlePool;
+    private ConnectionInterceptor pool;
+
+    public void testPrefill() throws Exception {
+        checkPrefill(false);
+    }
+
+    public void testPrefillStriped() throws Exception {
+        checkPrefill(true);
+    }
+
+    private void checkPrefill(boolean striped) throws Exception {
+        createPool(striped, 2, 0);
+        singlePool.prefill(managedConnectionFactory);
+        waitForConnectionCount(2);
+        assertEquals(2, singlePool.getIdleConnectionCount());
+    }
+
+    public void testBackgroundValidation() throws Exception {
+        checkBackgroundValidation(false);
+    }
+
+    public void testBackgroundValidationStriped() throws Exception {
+        checkBackgroundValidation(true);
+    }
+
+    private void checkBackgroundValidation(boolean striped) throws Exception {
+        createPool(striped, 0, 50);
+        ConnectionInfo good = getConnection();
+        ConnectionInfo bad = getConnection();
+        pool.returnConnection(good, ConnectionReturnAction.RETURN_HANDLE);
+        pool.returnConnection(bad, ConnectionReturnAction.RETURN_HANDLE);
+        long lastUsed = good.getManagedConnectionInfo().getLastUsed();
+        managedConnectionFactory.invalidate(bad.getManagedConnectionInfo().getManagedConnection());
+
+        waitForConnectionCount(1);
+        assertEquals(1, singlePool.getIdleConnectionCount());
+        assertEquals(lastUsed, good.getManagedConnectionInfo().getLastUsed());
+        ConnectionInfo again = getConnection();
+        assertSame(good.getManagedConnectionInfo(), again.getManagedConnectionInfo());
+    }
+
+    public void testConnectionErrorDuringValidation() throws Exception {
+        checkConnectionErrorDuringValidation(false);
+    }
+
+    public void testConnectionErrorDuringValidationStriped() throws Exception {
+        checkConnectionErrorDuringValidation(true);
+    }
+
+    private void checkConnectionErrorDuringValidation(boolean striped) throws Exception {
+        createPool(striped, 0, 50);
+        final ConnectionInfo failing = getConnection();
+        managedConnectionFactory.setDuringValidation(new Runnable() {
+            public void run() {
+                pool.returnConnection(failing, ConnectionReturnAction.DESTROY);
+            }
+        });
+        pool.returnConnection(failing, ConnectionReturnAction.RETURN_HANDLE);
+        for (int i = 0; i < 100 && managedConnectionFactory.getDuringValidation() != null; i++) {
+            Thread.sleep(20);
+        }
+        assertNull(managedConnectionFactory.getDuringValidation());
+
+        // destroyed once, and neither the validation's nor the connection's permit is handed back twice
+        waitForConnectionCount(0);
+        assertTrue(((MockManagedConnection) failing.getManagedConnectionInfo().getManagedConnection()).isDestroyed());
+        for (int i = 0; i < 4; i++) {
+            assertNotSame(failing.getManagedConnectionInfo(), getConnection().getManagedConnectionInfo());
+        }
+        try {
+            getConnection();
+            fail("expected ResourceException");
+        } catch (ResourceException expected) {
+        }
+    }
+
+    public void testRefillAfterValidation() throws Exception {
+        createPool(true, 1, 50);
+        singlePool.prefill(managedConnectionFactory);
+        waitForConnectionCount(1);
+        ConnectionInfo bad = getConnection();
+        pool.returnConnection(bad, ConnectionReturnAction.RETURN_HANDLE);
+        managedConnectionFactory.invalidate(bad.getManagedConnectionInfo().getManagedConnection());
+
+        for (int i = 0; i < 100 && managedConnectionFactory.getManagedConnections().size() < 2; i++) {
+            Thread.sleep(20);
+        }
+        waitForConnectionCount(1);
+        ConnectionInfo again = getConnection();
+        assertNotSame(bad.getManagedConnectionInfo(), again.getManagedConnectionInfo());
+    }
+
+    public void testMaxLifetime() throws Exception {
+        checkMaxLifetime(false);
+    }
+
+    public void testMaxLifetimeStriped() throws Exception {
+        checkMaxLifetime(true);
+    }
+
+    private void checkMaxLifetime(boolean striped) throws Exception {
+        createPool(striped, 0, 0);
+        singlePool.setMaxLifetimeMinutes(1);
+        ConnectionInfo young = getConnection();
+        ConnectionInfo old = getConnection();
+        old.getManagedConnectionInfo().setCreatedTime(System.currentTimeMillis() - 2 * 60 * 1000);
+        pool.returnConnection(young, ConnectionReturnAction.RETURN_HANDLE);
+        pool.returnConnection(old, ConnectionReturnAction.RETURN_HANDLE);
+        assertEquals(1, singlePool.getConnectionCount());
+        assertEquals(1, singlePool.getIdleConnectionCount());
+
+        // an idle connection that ages past the lifetime is released by the maintenance task
+        young.getManagedConnectionInfo().setCreatedTime(System.currentTimeMillis() - 2 * 60 * 1000);
+        ((PoolMaintenance.Pool) pool).maintain();
+        assertEquals(0, singlePool.getConnectionCount());
+    }
+
+    private void waitForConnectionCount(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && singlePool.getConnectionCount() != count; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(count, singlePool.getConnectionCount());
+    }
+
+    private void createPool(boolean striped, int minSize, long backgroundValidationMilliseconds) {
+        MCFConnectionInterceptor tail = new MCFConnectionInterceptor();
+        singlePool = new SinglePool(4, minSize, 100, 0, true, false, false);
+        singlePool.setStriped(striped);
+        singlePool.setBackgroundValidationMilliseconds(backgroundValidationMilliseconds);
+        pool = singlePool.addPoolingInterceptors(tail);
+        tail.setStack(pool);
+    }
+
+    private ConnectionInfo getConnection() throws ResourceException {
+        ConnectionInfo connectionInfo = new ConnectionInfo(new ManagedConnectionInfo(managedConnectionFactory, null));
+        pool.getConnection(connectionInfo);
+        return connectionInfo;
+    }
+
+    protected void setUp() throws Exception {
+        managedConnectionFactory = new ValidatingMockManagedConnectionFactory();
+    }
+
+    protected void tearDown() throws Exception {
+        if (pool != null) {
+            pool.destroy();
+        }
+    }
+
+    private static class ValidatingMockManagedConnectionFactory extends MockManagedConnectionFactory implements ValidatingManagedConnectionFactory {
+        private final Set invalid = Collections.synchronizedSet(new HashSet());
+        private volatile Runnable duringValidation;
+
+        public void invalidate(ManagedConnection managedConnection) {
+            invalid.add(managedConnection);
+        }
+
+        /**
+         * Runs the task, once, while the pool validates connections.
+         */
+        public void setDuringValidation(Runnable duringValidation) {
+            this.duringValidation = duringValidation;
+        }
+
+        public Runnable getDuringValidation() {
+            return duringValidation;
+        }
+
+        public Set getInvalidConnections(Set connectionSet) throws ResourceException {
+            Runnable task = duringValidation;
+            if (task != null) {
+                task.run();
+                duringValidation = null;
+            }
+            Set result = new HashSet();
+            for (Iterator iterator = connectionSet.iterator(); iterator.hasNext();) {
+                Object managedConnection = iterator.next();
+                if (invalid.contains(managedConnection)) {
+                    result.add(managedConnection);
+                }
+            }
+            return result;
+        }
+    }
+}
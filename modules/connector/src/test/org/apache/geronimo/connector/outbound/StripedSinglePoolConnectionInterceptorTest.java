@@ -0,0 +1,218 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.connector.outbound;
+
+import javax.resource.ResourceException;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.connector.mock.MockManagedConnectionFactory;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class StripedSinglePoolConnectionInterceptorTest extends TestCase {
+    private MockManagedConnectionFactory managedConnectionFactory;
+    private StripedSinglePoolConnectionInterceptor pool;
+
+    public void testReturnedConnectionIsReused() throws Exception {
+        createPool(4, 0);
+        ConnectionInfo first = getConnection();
+        pool.returnConnection(first, ConnectionReturnAction.RETURN_HANDLE);
+        assertEquals(1, pool.getIdleConnectionCount());
+
+        ConnectionInfo second = getConnection();
+        assertSame(first.getManagedConnectionInfo(), second.getManagedConnectionInfo());
+        assertEquals(1, pool.getConnectionCount());
+        assertEquals(0, pool.getIdleConnectionCount());
+    }
+
+    public void testBlockingTimeout() throws Exception {
+        createPool(1, 0);
+        getConnection();
+        long start = System.currentTimeMillis();
+        try {
+            getConnection();
+            fail("expected ResourceException");
+        } catch (ResourceException expected) {
+        }
+        assertTrue(System.currentTimeMillis() - start >= 90);
+    }
+
+    public void testWaiterGetsReturnedConnection() throws Exception {
+        createPool(1, 0);
+        pool.setBlockingTimeoutMilliseconds(5000);
+        final ConnectionInfo first = getConnection();
+        Thread returner = new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                }
+                pool.returnConnection(first, ConnectionReturnAction.RETURN_HANDLE);
+            }
+        };
+        returner.start();
+        ConnectionInfo second = getConnection();
+        returner.join();
+        assertSame(first.getManagedConnectionInfo(), second.getManagedConnectionInfo());
+    }
+
+    public void testSlowConnectDoesNotBlockPool() throws Exception {
+        createPool(4, 0);
+        ConnectionInfo pooled = getConnection();
+        managedConnectionFactory.setConnectLatencyMilliseconds(2000);
+
+        final Exception[] failure = new Exception[1];
+        Thread connector = new Thread() {
+            public void run() {
+                try {
+                    getConnection();
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        };
+        connector.start();
+        // let the other thread start its slow connect
+        Thread.sleep(200);
+
+        long start = System.currentTimeMillis();
+        pool.returnConnection(pooled, ConnectionReturnAction.RETURN_HANDLE);
+        ConnectionInfo again = getConnection();
+        long elapsed = System.currentTimeMillis() - start;
+        assertSame(pooled.getManagedConnectionInfo(), again.getManagedConnectionInfo());
+        assertTrue("pooled connection took " + elapsed + "ms", elapsed < 1000);
+
+        connector.join();
+        assertNull(failure[0]);
+        assertEquals(2, pool.getConnectionCount());
+    }
+
+    public void testDestroyReleasesPermit() throws Exception {
+        createPool(1, 0);
+        ConnectionInfo first = getConnection();
+        pool.returnConnection(first, ConnectionReturnAction.DESTROY);
+        assertEquals(0, pool.getConnectionCount());
+
+        ConnectionInfo second = getConnection();
+        assertNotSame(first.getManagedConnectionInfo(), second.getManagedConnectionInfo());
+        assertEquals(1, pool.getConnectionCount());
+    }
+
+    public void testShrink() throws Exception {
+        createPool(4, 0);
+        ConnectionInfo[] connections = new ConnectionInfo[4];
+        for (int i = 0; i < connections.length; i++) {
+            connections[i] = getConnection();
+        }
+        pool.returnConnection(connections[0], ConnectionReturnAction.RETURN_HANDLE);
+
+        pool.setPartitionMaxSize(2);
+        // the idle connection and one checked out connection are over the new size
+        assertEquals(3, pool.getConnectionCount());
+        for (int i = 1; i < connections.length; i++) {
+            pool.returnConnection(connections[i], ConnectionReturnAction.RETURN_HANDLE);
+        }
+        assertEquals(2, pool.getConnectionCount());
+        assertEquals(2, pool.getIdleConnectionCount());
+
+        getConnection();
+        getConnection();
+        try {
+            getConnection();
+            fail("expected ResourceException");
+        } catch (ResourceException expected) {
+        }
+    }
+
+    public void testFillToMinSize() throws Exception {
+        createPool(4, 3);
+        getConnection();
+        for (int i = 0; i < 50 && pool.getConnectionCount() < 3; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(3, pool.getConnectionCount());
+        assertEquals(2, pool.getIdleConnectionCount());
+    }
+
+    public void testFillCountsAgainstMaxSize() throws Exception {
+        createPool(2, 2);
+        pool.setBlockingTimeoutMilliseconds(5000);
+        managedConnectionFactory.setConnectLatencyMilliseconds(300);
+        pool.prefill(managedConnectionFactory);
+        // let the fill start its slow connect
+        Thread.sleep(100);
+
+        final Exception[] failure = new Exception[1];
+        Thread connector = new Thread() {
+            public void run() {
+                try {
+                    getConnection();
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        };
+        connector.start();
+        getConnection();
+        connector.join();
+        assertNull(failure[0]);
+        // one of the two got the connection the fill created
+        assertEquals(2, pool.getConnectionCount());
+    }
+
+    public void testDestroy() throws Exception {
+        createPool(2, 0);
+        ConnectionInfo checkedOut = getConnection();
+        ConnectionInfo idle = getConnection();
+        pool.returnConnection(idle, ConnectionReturnAction.RETURN_HANDLE);
+
+        pool.destroy();
+        assertEquals(0, pool.getIdleConnectionCount());
+        try {
+            getConnection();
+            fail("expected ResourceException");
+        } catch (ResourceException expected) {
+        }
+        pool.returnConnection(checkedOut, ConnectionReturnAction.RETURN_HANDLE);
+        assertEquals(0, pool.getIdleConnectionCount());
+        assertEquals(0, pool.getConnectionCount());
+    }
+
+    private void createPool(int maxSize, int minSize) {
+        MCFConnectionInterceptor tail = new MCFConnectionInterceptor();
+        pool = new StripedSinglePoolConnectionInterceptor(tail, maxSize, minSize, 100, 0, false, 4);
+        tail.setStack(pool);
+    }
+
+    private ConnectionInfo getConnection() throws ResourceException {
+        ConnectionInfo connectionInfo = new ConnectionInfo(new ManagedConnectionInfo(managedConnectionFactory, null));
+        pool.getConnection(connectionInfo);
+        assertNotNull(connectionInfo.getManagedConnectionInfo().getManagedConnection());
+        return connectionInfo;
+    }
+
+    protected void setUp() throws Exception {
+        managedConnectionFactory = new MockManagedConnectionFactory();
+    }
+
+    protected void tearDown() throws Exception {
+        if (pool != null) {
+            pool.destroy();
+        }
+    }
+}
@@ -39,10 +39,14 @@ public class PooledWorkManagerTest extends TestCase {
 
     protected void setUp() throws Exception {
         TransactionContextManager transactionContextManager = new TransactionContextManager();
-        workManager = new GeronimoWorkManager(1, transactionContextManager);
+        workManager = createWorkManager(transactionContextManager);
         workManager.doStart();
     }
 
+    protected GeronimoWorkManager createWorkManager(TransactionContextManager transactionContextManager) {
+        return new GeronimoWorkManager(1, transactionContextManager);
+    }
+
     public void testDoWork() throws Exception {
         int nbThreads = 2;
         AbstractDummyWork threads[] =
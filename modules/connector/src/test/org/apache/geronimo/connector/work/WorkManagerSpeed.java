@@ -0,0 +1,153 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.connector.work;
+
+import javax.resource.spi.work.Work;
+
+import EDU.oswego.cs.dl.util.concurrent.CountDown;
+import org.apache.geronimo.transaction.context.TransactionContextManager;
+
+/**
+ * Measures doWork, startWork and scheduleWork throughput of GeronimoWorkManager
+ * with the PooledExecutor based pools and with WorkStealingWorkExecutorPools,
+ * as the number of submitting threads grows.  Each Work only increments a
+ * counter, so the numbers are dominated by queueing and handoff.
+ *
+ * usage: WorkManagerSpeed [pool size]
+ *
+ * @version $Rev$ $Date$
+ */
+public class WorkManagerSpeed {
+    private static final int TOTAL_WORK = 1000000;
+    private static final int[] THREAD_COUNTS = {1, 4, 16, 64};
+    private static final int DO_WORK = 0;
+    private static final int START_WORK = 1;
+    private static final int SCHEDULE_WORK = 2;
+    private static final String[] METHODS = {"doWork", "startWork", "scheduleWork"};
+
+    public static void main(String[] args) throws Exception {
+        int poolSize = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        TransactionContextManager transactionContextManager = new TransactionContextManager();
+
+        System.out.println("Work Manager Timings (pool size " + poolSize + ")");
+        System.out.println("-------------------------------------");
+        workManagerTimings(poolSize, transactionContextManager);
+        System.out.println();
+        System.out.println();
+        System.out.println();
+        workManagerTimings(poolSize, transactionContextManager);
+    }
+
+    private static void workManagerTimings(int poolSize, TransactionContextManager transactionContextManager) throws Exception {
+        for (int method = 0; method < METHODS.length; method++) {
+            for (int i = 0; i < THREAD_COUNTS.length; i++) {
+                int threadCount = THREAD_COUNTS[i];
+                for (int workStealing = 0; workStealing < 2; workStealing++) {
+                    GeronimoWorkManager workManager = new GeronimoWorkManager(poolSize, poolSize, poolSize, workStealing == 1, transactionContextManager);
+                    workManager.doStart();
+                    long elapsed = runWork(workManager, method, threadCount);
+                    String name = (workStealing == 1 ? "WorkStealingWorkExecutorPool " : "WorkExecutorPoolImpl ") + METHODS[method] + " " + threadCount + " threads";
+                    printResults(name, elapsed, TOTAL_WORK);
+                    System.out.println("    average wait " + getAverageWait(workManager, method) + "ms, max wait " + getMaxWait(workManager, method) + "ms");
+                    workManager.doStop();
+                }
+            }
+        }
+    }
+
+    private static long runWork(final GeronimoWorkManager workManager, final int method, int threadCount) throws Exception {
+        final CountDown startSignal = new CountDown(1);
+        final CountDown doneSignal = new CountDown(threadCount);
+        final CountDown workDone = new CountDown(TOTAL_WORK);
+        final Work work = new CountingWork(workDone);
+        final int workPerThread = TOTAL_WORK / threadCount;
+        for (int t = 0; t < threadCount; t++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        startSignal.acquire();
+                        for (int i = 0; i < workPerThread; i++) {
+                            if (method == DO_WORK) {
+                                workManager.doWork(work);
+                            } else if (method == START_WORK) {
+                                workManager.startWork(work);
+                            } else {
+                                workManager.scheduleWork(work);
+                            }
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    } finally {
+                        doneSignal.release();
+                    }
+                }
+            });
+            thread.start();
+        }
+        // work lost to the integer division is accounted for here
+        for (int i = workPerThread * threadCount; i < TOTAL_WORK; i++) {
+            workDone.release();
+        }
+        long start = System.currentTimeMillis();
+        startSignal.release();
+        doneSignal.acquire();
+        workDone.acquire();
+        return System.currentTimeMillis() - start;
+    }
+
+    private static long getAverageWait(GeronimoWorkManager workManager, int method) {
+        if (method == DO_WORK) {
+            return workManager.getSyncAverageWaitMilliseconds();
+        } else if (method == START_WORK) {
+            return workManager.getStartAverageWaitMilliseconds();
+        }
+        return workManager.getScheduledAverageWaitMilliseconds();
+    }
+
+    private static long getMaxWait(GeronimoWorkManager workManager, int method) {
+        if (method == DO_WORK) {
+            return workManager.getSyncMaxWaitMilliseconds();
+        } else if (method == START_WORK) {
+            return workManager.getStartMaxWaitMilliseconds();
+        }
+        return workManager.getScheduledMaxWaitMilliseconds();
+    }
+
+    private static void printResults(String invocationType, long elapsed, int calls) {
+        if (elapsed < 400) {
+            System.out.println(invocationType + ": elapse time to short to calculate throughput (total " + elapsed + "ms)");
+        } else {
+            System.out.println(invocationType + ": " + (calls * 1000L / elapsed) + " calls/s  (total " + elapsed + "ms)");
+        }
+    }
+
+    private static class CountingWork implements Work {
+        private final CountDown done;
+
+        public CountingWork(CountDown done) {
+            this.done = done;
+        }
+
+        public void release() {
+        }
+
+        public void run() {
+            done.release();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.connector.work;
+
+import org.apache.geronimo.transaction.context.TransactionContextManager;
+
+/**
+ * Runs the PooledWorkManagerTest synchronization cases against
+ * WorkStealingWorkExecutorPools.
+ *
+ * @version $Rev$ $Date$
+ */
+
+public class WorkStealingWorkManagerTest extends PooledWorkManagerTest {
+
+    protected GeronimoWorkManager createWorkManager(TransactionContextManager transactionContextManager) {
+        return new GeronimoWorkManager(1, 1, 1, true, transactionContextManager);
+    }
+}
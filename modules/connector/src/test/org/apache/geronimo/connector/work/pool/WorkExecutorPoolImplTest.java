@@ -0,0 +1,72 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.connector.work.pool;
+
+import EDU.oswego.cs.dl.util.concurrent.BoundedBuffer;
+import EDU.oswego.cs.dl.util.concurrent.Latch;
+import junit.framework.TestCase;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class WorkExecutorPoolImplTest extends TestCase {
+    private WorkExecutorPoolImpl pool;
+    private Latch release;
+
+    public void testInterruptedSubmitIsRejected() throws Exception {
+        pool = new WorkExecutorPoolImpl(new BoundedBuffer(1), 1);
+        release = new Latch();
+        final Latch started = new Latch();
+        pool.execute(new Runnable() {
+            public void run() {
+                started.release();
+                try {
+                    release.acquire();
+                } catch (InterruptedException e) {
+                }
+            }
+        });
+        started.acquire();
+        // fills the channel, so the next submit has to wait
+        pool.execute(new NullWork());
+        assertEquals(1, pool.getQueueSize());
+
+        Thread.currentThread().interrupt();
+        try {
+            pool.execute(new NullWork());
+            fail("expected InterruptedException");
+        } catch (InterruptedException expected) {
+        }
+        assertEquals(1, pool.getQueueSize());
+        assertEquals(1, pool.getRejectedCount());
+    }
+
+    protected void tearDown() throws Exception {
+        if (release != null) {
+            release.release();
+        }
+        if (pool != null) {
+            pool.stop();
+        }
+    }
+
+    private static class NullWork implements Runnable {
+        public void run() {
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.connector.work.pool;
+
+import EDU.oswego.cs.dl.util.concurrent.CountDown;
+import EDU.oswego.cs.dl.util.concurrent.Latch;
+import junit.framework.TestCase;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class WorkStealingWorkExecutorPoolTest extends TestCase {
+    private WorkStealingWorkExecutorPool pool;
+
+    public void testRunsAllWork() throws Exception {
+        pool = new WorkStealingWorkExecutorPool(4);
+        CountDown done = new CountDown(1000);
+        for (int i = 0; i < 1000; i++) {
+            pool.execute(new CountingWork(done));
+        }
+        done.acquire();
+        assertEquals(0, pool.getQueueSize());
+        assertEquals(0, pool.getRejectedCount());
+    }
+
+    public void testIdleWorkerStealsFromBusyWorker() throws Exception {
+        pool = new WorkStealingWorkExecutorPool(2);
+        Latch release = new Latch();
+        CountDown blocked = new CountDown(1);
+        CountDown done = new CountDown(10);
+        // queued round robin, so half of the work sits behind the blocked work
+        pool.execute(new BlockingWork(blocked, release));
+        blocked.acquire();
+        for (int i = 0; i < 10; i++) {
+            pool.execute(new CountingWork(done));
+        }
+        assertTrue("work queued to the blocked worker was not stolen", done.attempt(5000));
+        release.release();
+    }
+
+    public void testWorkSubmittedFromWorkerThread() throws Exception {
+        pool = new WorkStealingWorkExecutorPool(2);
+        final CountDown done = new CountDown(100);
+        pool.execute(new Runnable() {
+            public void run() {
+                try {
+                    for (int i = 0; i < 100; i++) {
+                        pool.execute(new CountingWork(done));
+                    }
+                } catch (InterruptedException e) {
+                    fail();
+                }
+            }
+        });
+        assertTrue(done.attempt(5000));
+    }
+
+    public void testWaitTimeAndQueueSize() throws Exception {
+        pool = new WorkStealingWorkExecutorPool(1);
+        Latch release = new Latch();
+        CountDown blocked = new CountDown(1);
+        CountDown done = new CountDown(3);
+        pool.execute(new BlockingWork(blocked, release));
+        blocked.acquire();
+        for (int i = 0; i < 3; i++) {
+            pool.execute(new CountingWork(done));
+        }
+        assertEquals(3, pool.getQueueSize());
+        Thread.sleep(100);
+        release.release();
+        done.acquire();
+        assertTrue(pool.getMaxWaitMilliseconds() >= 90);
+        assertTrue(pool.getAverageWaitMilliseconds() > 0);
+    }
+
+    public void testStopCompletesQueuedWorkAndRejectsNewWork() throws Exception {
+        pool = new WorkStealingWorkExecutorPool(1);
+        Latch release = new Latch();
+        CountDown blocked = new CountDown(1);
+        CountDown done = new CountDown(5);
+        pool.execute(new BlockingWork(blocked, release));
+        blocked.acquire();
+        for (int i = 0; i < 5; i++) {
+            pool.execute(new CountingWork(done));
+        }
+        WorkExecutorPool stopped = pool.stop();
+        assertTrue(stopped instanceof NullWorkExecutorPool);
+        assertTrue(((NullWorkExecutorPool) stopped).isWorkStealing());
+        try {
+            pool.execute(new CountingWork(done));
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(1, pool.getRejectedCount());
+        release.release();
+        assertTrue(done.attempt(5000));
+        pool = null;
+    }
+
+    public void testResize() throws Exception {
+        pool = new WorkStealingWorkExecutorPool(4);
+        assertEquals(4, pool.getPoolSize());
+        pool.setMaximumPoolSize(2);
+        assertEquals(2, pool.getPoolSize());
+        CountDown done = new CountDown(100);
+        for (int i = 0; i < 100; i++) {
+            pool.execute(new CountingWork(done));
+        }
+        assertTrue(done.attempt(5000));
+        pool.setMaximumPoolSize(3);
+        assertEquals(3, pool.getPoolSize());
+        done = new CountDown(100);
+        for (int i = 0; i < 100; i++) {
+            pool.execute(new CountingWork(done));
+        }
+        assertTrue(done.attempt(5000));
+    }
+
+    protected void tearDown() throws Exception {
+        if (pool != null) {
+            pool.stop();
+        }
+    }
+
+    private static class CountingWork implements Runnable {
+        private final CountDown done;
+
+        public CountingWork(CountDown done) {
+            this.done = done;
+        }
+
+        public void run() {
+            done.release();
+        }
+    }
+
+    private static class BlockingWork implements Runnable {
+        private final CountDown blocked;
+        private final Latch release;
+
+        public BlockingWork(CountDown blocked, Latch release) {
+            this.blocked = blocked;
+            this.release = release;
+        }
+
+        public void run() {
+            blocked.release();
+            try {
+                release.acquire();
+            } catch (InterruptedException e) {
+            }
+        }
+    }
+}
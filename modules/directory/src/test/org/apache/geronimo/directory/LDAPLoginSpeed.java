@@ -0,0 +1,241 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.directory;
+
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Properties;
+import javax.management.ObjectName;
+import javax.naming.Context;
+import javax.naming.NameAlreadyBoundException;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+import javax.security.auth.Subject;
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.NameCallback;
+import javax.security.auth.callback.PasswordCallback;
+
+import org.apache.geronimo.gbean.GBeanData;
+import org.apache.geronimo.kernel.Kernel;
+import org.apache.geronimo.kernel.KernelFactory;
+import org.apache.geronimo.security.realm.providers.LDAPLoginModule;
+import org.apache.geronimo.system.serverinfo.BasicServerInfo;
+
+/**
+ * Measures logins through the LDAPLoginModule, configured like the ldap-realm
+ * plan, against the embedded directory server: with a new connection for every
+ * login, with pooled connections, and with pooled connections and cached role
+ * searches.
+ *
+ * usage: LDAPLoginSpeed [threads]
+ *
+ * @version $Rev$ $Date$
+ */
+public class LDAPLoginSpeed {
+    private static final String PRINCIPAL = "uid=admin,ou=system";
+    private static final String CREDENTIALS = "secret";
+    private static final String URL = "ldap://localhost:9389";
+    private static final int USERS = 20;
+    private static final int LOGINS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+
+        Kernel kernel = KernelFactory.newInstance().createKernel("speed.kernel");
+        kernel.boot();
+        try {
+            startDirectory(kernel);
+            createUsers();
+
+            System.out.println("LDAP Login Timings (" + threads + " threads)");
+            System.out.println("-------------------------------------");
+            loginTimings(threads);
+            System.out.println();
+            System.out.println();
+            System.out.println();
+            loginTimings(threads);
+        } finally {
+            kernel.shutdown();
+        }
+    }
+
+    private static void loginTimings(int threads) throws Exception {
+        Properties options = getOptions();
+        options.put("connectionPoolMaxIdle", "0");
+        printResults("new connection", login(options, threads), LOGINS);
+
+        options = getOptions();
+        printResults("pooled", login(options, threads), LOGINS);
+
+        options = getOptions();
+        options.put("roleSearchCacheTimeoutMilliseconds", "60000");
+        printResults("pooled, cached roles", login(options, threads), LOGINS);
+    }
+
+    private static long login(final Properties options, int threads) throws Exception {
+        final Exception[] failure = new Exception[1];
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int offset = i;
+            final int logins = LOGINS / threads;
+            workers[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < logins; j++) {
+                            login(options, "speed" + ((offset + j) % USERS));
+                        }
+                    } catch (Exception e) {
+                        failure[0] = e;
+                    }
+                }
+            };
+        }
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < threads; i++) {
+            workers[i].start();
+        }
+        for (int i = 0; i < threads; i++) {
+            workers[i].join();
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return elapsed;
+    }
+
+    private static void login(Properties options, final String username) throws Exception {
+        Subject subject = new Subject();
+        LDAPLoginModule loginModule = new LDAPLoginModule();
+        loginModule.initialize(subject, new CallbackHandler() {
+            public void handle(Callback[] callbacks) {
+                ((NameCallback) callbacks[0]).setName(username);
+                ((PasswordCallback) callbacks[1]).setPassword(username.toCharArray());
+            }
+        }, new HashMap(), options);
+        if (!loginModule.login() || !loginModule.commit() || subject.getPrincipals().size() != 2) {
+            throw new IllegalStateException("Login of " + username + " failed: " + subject);
+        }
+    }
+
+    /**
+     * The options of the ldap-realm plan.
+     */
+    private static Properties getOptions() {
+        Properties options = new Properties();
+        options.put("initialContextFactory", "com.sun.jndi.ldap.LdapCtxFactory");
+        options.put("connectionURL", URL);
+        options.put("connectionUsername", PRINCIPAL);
+        options.put("connectionPassword", CREDENTIALS);
+        options.put("connectionProtocol", "");
+        options.put("authentication", "simple");
+        options.put("userBase", "ou=users,ou=system");
+        options.put("userSearchMatching", "uid={0}");
+        options.put("userSearchSubtree", "false");
+        options.put("roleBase", "ou=groups,ou=system");
+        options.put("roleName", "cn");
+        options.put("roleSearchMatching", "(uniqueMember={0})");
+        options.put("roleSearchSubtree", "false");
+        return options;
+    }
+
+    /**
+     * Adds users speed0..speedN, each with its name as password, and a group
+     * for each of them.
+     */
+    private static void createUsers() throws Exception {
+        Hashtable env = new Hashtable();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+        env.put(Context.PROVIDER_URL, URL);
+        env.put(Context.SECURITY_PRINCIPAL, PRINCIPAL);
+        env.put(Context.SECURITY_CREDENTIALS, CREDENTIALS);
+        DirContext context = new InitialDirContext(env);
+        try {
+            for (int i = 0; i < USERS; i++) {
+                String uid = "speed" + i;
+                BasicAttributes user = new BasicAttributes(true);
+                BasicAttribute objectClass = new BasicAttribute("objectClass");
+                objectClass.add("top");
+                objectClass.add("person");
+                objectClass.add("organizationalPerson");
+                objectClass.add("inetOrgPerson");
+                user.put(objectClass);
+                user.put("uid", uid);
+                user.put("cn", uid);
+                user.put("sn", uid);
+                user.put("userPassword", uid);
+                bind(context, "uid=" + uid + ",ou=users,ou=system", user);
+
+                BasicAttributes group = new BasicAttributes(true);
+                objectClass = new BasicAttribute("objectClass");
+                objectClass.add("top");
+                objectClass.add("groupOfUniqueNames");
+                group.put(objectClass);
+                group.put("cn", uid + "-group");
+                group.put("uniqueMember", "uid=" + uid + ",ou=users,ou=system");
+                bind(context, "cn=" + uid + "-group,ou=groups,ou=system", group);
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    private static void bind(DirContext context, String name, BasicAttributes attributes) throws Exception {
+        try {
+            context.createSubcontext(name, attributes);
+        } catch (NameAlreadyBoundException e) {
+            // left from an earlier run
+        }
+    }
+
+    private static void startDirectory(Kernel kernel) throws Exception {
+        ClassLoader cl = LDAPLoginSpeed.class.getClassLoader();
+
+        ObjectName serverInfoName = new ObjectName("geronimo.system:role=ServerInfo");
+        GBeanData serverInfoGBean = new GBeanData(serverInfoName, BasicServerInfo.GBEAN_INFO);
+        serverInfoGBean.setAttribute("baseDirectory", "./target");
+        kernel.loadGBean(serverInfoGBean, cl);
+        kernel.startGBean(serverInfoName);
+
+        ObjectName directoryName = new ObjectName("geronimo.system:type=Directory");
+        GBeanData directoryGBean = new GBeanData(directoryName, DirectoryGBean.GBEAN_INFO);
+        directoryGBean.setReferencePattern("ServerInfo", serverInfoName);
+        directoryGBean.setAttribute("classLoader", cl);
+        directoryGBean.setAttribute("providerURL", "ou=system");
+        directoryGBean.setAttribute("securityAuthentication", "simple");
+        directoryGBean.setAttribute("securityPrincipal", PRINCIPAL);
+        directoryGBean.setAttribute("securityCredentials", CREDENTIALS);
+        directoryGBean.setAttribute("anonymousAccess", new Boolean(true));
+        directoryGBean.setAttribute("enableNetworking", new Boolean(true));
+        directoryGBean.setAttribute("port", new Integer(9389));
+        directoryGBean.setAttribute("configFile", "var/directory.xml");
+        kernel.loadGBean(directoryGBean, cl);
+        kernel.startGBean(directoryName);
+    }
+
+    private static void printResults(String invocationType, long elapsed, int logins) {
+        if (elapsed < 400) {
+            System.out.println(invocationType + ": elapse time to short to calculate throughput (total " + elapsed + "ms)");
+        } else {
+            System.out.println(invocationType + ": " + (logins * 1000L / elapsed) + " logins/s  (total " + elapsed + "ms)");
+        }
+    }
+}
@@ -20,16 +20,18 @@ import java.security.AccessControlContext;
 import java.security.AccessControlException;
 import java.security.Principal;
 import java.security.cert.X509Certificate;
-import java.util.HashMap;
+import java.util.Map;
 import javax.security.auth.Subject;
 import javax.security.auth.login.LoginContext;
 import javax.security.auth.login.LoginException;
 import javax.security.jacc.WebRoleRefPermission;
 
+import EDU.oswego.cs.dl.util.concurrent.ConcurrentHashMap;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.geronimo.jetty.interceptor.SecurityContextBeforeAfter;
 import org.apache.geronimo.security.ContextManager;
+import org.apache.geronimo.security.realm.AuthenticationCache;
 import org.apache.geronimo.security.realm.providers.CertificateCallbackHandler;
 import org.apache.geronimo.security.realm.providers.ClearableCallbackHandler;
 import org.apache.geronimo.security.realm.providers.PasswordCallbackHandler;
@@ -45,7 +47,7 @@ public class JAASJettyRealm implements UserRealm {
 
     private final String realmName;
     private final String loginDomainName;
-    private final HashMap userMap = new HashMap();
+    private final Map userMap = new ConcurrentHashMap();
 
     public JAASJettyRealm(String realmName, String loginDomainName) {
         this.realmName = realmName;
@@ -57,6 +59,7 @@ public class JAASJettyRealm implements UserRealm {
     }
 
     public Principal getPrincipal(String username) {
+        if (username == null) return null;
         return (Principal) userMap.get(username);
     }
 
@@ -89,12 +92,24 @@ public class JAASJettyRealm implements UserRealm {
                     throw new LoginException("Cannot extract credentials from class: " + credentials.getClass().getName());
                 }
 
-                //set up the login context
-                LoginContext loginContext = new LoginContext(loginDomainName, callbackHandler);
-                loginContext.login();
-                callbackHandler.clear();
+                //reuse the subject of an earlier login with the same credentials
+                AuthenticationCache authenticationCache = AuthenticationCache.getCache(loginDomainName);
+                Object cacheKey = authenticationCache == null ? null : authenticationCache.createKey(username, credentials);
+                Subject subject = authenticationCache == null ? null : authenticationCache.get(cacheKey);
 
-                Subject subject = ContextManager.getServerSideSubject(loginContext.getSubject());
+                if (subject == null) {
+                    //set up the login context
+                    LoginContext loginContext = new LoginContext(loginDomainName, callbackHandler);
+                    loginContext.login();
+                    callbackHandler.clear();
+
+                    subject = ContextManager.getServerSideSubject(loginContext.getSubject());
+                    if (authenticationCache != null) {
+                        authenticationCache.put(cacheKey, subject);
+                    }
+                } else {
+                    callbackHandler.clear();
+                }
                 ContextManager.setCurrentCaller(subject);
 
                 //login success
@@ -121,7 +136,11 @@ public class JAASJettyRealm implements UserRealm {
         JAASJettyPrincipal principal = (JAASJettyPrincipal) user;
 
         userMap.remove(principal.getName());
-        ContextManager.unregisterSubject(principal.getSubject());
+        //a cached subject is shared with other clients; it stays registered until its login expires
+        AuthenticationCache authenticationCache = AuthenticationCache.getCache(loginDomainName);
+        if (authenticationCache == null || !authenticationCache.isCached(principal.getSubject())) {
+            ContextManager.unregisterSubject(principal.getSubject());
+        }
     }
 
     public boolean reauthenticate(Principal user) {
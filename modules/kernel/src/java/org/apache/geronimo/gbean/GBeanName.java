@@ -18,6 +18,7 @@ package org.apache.geronimo.gbean;
 
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Hashtable;
@@ -120,6 +121,24 @@ public final class GBeanName implements Serializable {
         return props;
     }
 
+    /**
+     * Return the domain of this name.
+     *
+     * @return the domain
+     */
+    public String getDomain() {
+        return domain;
+    }
+
+    /**
+     * Return the properties that qualify this name.
+     *
+     * @return an unmodifiable Map<String,String> of the properties
+     */
+    public Map getProperties() {
+        return Collections.unmodifiableMap(props);
+    }
+
     /**
      * Determine if this name matches the supplied pattern.
      * This performs a fast but simplistic pattern match which is true if:
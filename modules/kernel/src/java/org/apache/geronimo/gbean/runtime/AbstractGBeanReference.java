@@ -128,7 +128,7 @@ public abstract class AbstractGBeanReference implements GBeanReference {
             try {
                 String setterName = referenceInfo.getSetterName();
                 Method setterMethod = gbeanInstance.getType().getMethod(setterName, new Class[] {proxyType});
-                setInvoker = new FastMethodInvoker(setterMethod);
+                setInvoker = gbeanInstance.getMethodInvokerFactory().createMethodInvoker(setterMethod);
             } catch (NoSuchMethodException e) {
                 throw new InvalidConfigurationException("Setter method not found " + getDescription());
             }
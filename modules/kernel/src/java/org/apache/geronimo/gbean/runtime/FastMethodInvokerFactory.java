@@ -0,0 +1,31 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.gbean.runtime;
+
+import java.lang.reflect.Method;
+
+/**
+ * Creates FastMethodInvokers, which dispatch through a cglib FastClass shared by every
+ * method of the declaring class.  This is the default strategy.
+ *
+ * @version $Rev$ $Date$
+ */
+public class FastMethodInvokerFactory implements MethodInvokerFactory {
+    public MethodInvoker createMethodInvoker(Method method) {
+        return new FastMethodInvoker(method);
+    }
+}
@@ -238,7 +238,7 @@ public class GBeanAttribute {
                     if (!getterMethod.getReturnType().equals(type)) {
                         throw new InvalidConfigurationException("Getter method of wrong type: " + getterMethod.getReturnType() + " expected " +getDescription());
                     }
-                    getInvoker = new FastMethodInvoker(getterMethod);
+                    getInvoker = gbeanInstance.getMethodInvokerFactory().createMethodInvoker(getterMethod);
                 } catch (NoSuchMethodException e) {
                     throw new InvalidConfigurationException("Getter method not found " +getDescription());
                 }
@@ -252,7 +252,7 @@ public class GBeanAttribute {
                 try {
                     String setterName = attributeInfo.getSetterName();
                     Method setterMethod = gbeanInstance.getType().getMethod(setterName, new Class[] {type});
-                    setInvoker = new FastMethodInvoker(setterMethod);
+                    setInvoker = gbeanInstance.getMethodInvokerFactory().createMethodInvoker(setterMethod);
                 } catch (NoSuchMethodException e) {
                     throw new InvalidConfigurationException("Setter method not found " + getDescription());
                 }
@@ -400,7 +400,11 @@ public class GBeanAttribute {
         }
 
         // call the setter
-        setInvoker.invoke(target, new Object[]{value});
+        if (setInvoker instanceof GeneratedMethodInvoker) {
+            ((GeneratedMethodInvoker) setInvoker).invokeWithArgument(target, value);
+        } else {
+            setInvoker.invoke(target, new Object[]{value});
+        }
     }
 
     public String getDescription() {
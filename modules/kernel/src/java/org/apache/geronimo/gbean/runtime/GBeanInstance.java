@@ -58,11 +58,21 @@ public final class GBeanInstance implements StateManageable {
     /** Attribute name used to retrieve the RawInvoker for the GBean */
     public static final String RAW_INVOKER = "$$RAW_INVOKER$$";
 
+    /**
+     * The strategy used when no MethodInvokerFactory is specified.
+     */
+    private static final MethodInvokerFactory DEFAULT_METHOD_INVOKER_FACTORY = new FastMethodInvokerFactory();
+
     /**
      * The kernel in which this server is registered.
      */
     private final Kernel kernel;
 
+    /**
+     * Creates the invokers for the attributes, references and operations of this GBean.
+     */
+    private final MethodInvokerFactory methodInvokerFactory;
+
     /**
      * The ManageableAttributeStore notified of any changes to manageable
      * attributes.  This is lazy-loaded as manageable attributes are set.
@@ -195,8 +205,22 @@ public final class GBeanInstance implements StateManageable {
      * mismatched attribute types or the intial data cannot be set
      */
     public GBeanInstance(GBeanData gbeanData, Kernel kernel, DependencyManager dependencyManager, LifecycleBroadcaster lifecycleBroadcaster, ClassLoader classLoader) throws InvalidConfigurationException {
+        this(gbeanData, kernel, dependencyManager, lifecycleBroadcaster, classLoader, DEFAULT_METHOD_INVOKER_FACTORY);
+    }
+
+    /**
+     * Construct a GBeanMBean using the supplied GBeanData and class loader
+     *
+     * @param gbeanData the data for the new GBean including GBeanInfo, intial attribute values, and reference patterns
+     * @param classLoader the class loader used to load the gbean instance and attribute/reference types
+     * @param methodInvokerFactory creates the invokers used to call the gbean instance
+     * @throws org.apache.geronimo.gbean.InvalidConfigurationException if the gbeanInfo is inconsistent with the actual java classes, such as
+     * mismatched attribute types or the intial data cannot be set
+     */
+    public GBeanInstance(GBeanData gbeanData, Kernel kernel, DependencyManager dependencyManager, LifecycleBroadcaster lifecycleBroadcaster, ClassLoader classLoader, MethodInvokerFactory methodInvokerFactory) throws InvalidConfigurationException {
         this.objectName = gbeanData.getName();
         this.kernel = kernel;
+        this.methodInvokerFactory = methodInvokerFactory;
         this.lifecycleBroadcaster = lifecycleBroadcaster;
         this.gbeanInstanceState = new GBeanInstanceState(objectName, kernel, dependencyManager, this, lifecycleBroadcaster);
         this.classLoader = classLoader;
@@ -413,6 +437,15 @@ public final class GBeanInstance implements StateManageable {
         return classLoader;
     }
 
+    /**
+     * The factory used to create the invokers for the attributes, references and operations of this gbean.
+     *
+     * @return the method invoker factory of this gbean
+     */
+    MethodInvokerFactory getMethodInvokerFactory() {
+        return methodInvokerFactory;
+    }
+
     /**
      * Has this gbean instance been destroyed. An destroyed gbean can no longer be used.
      *
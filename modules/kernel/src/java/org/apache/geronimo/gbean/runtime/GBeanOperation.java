@@ -88,7 +88,7 @@ public final class GBeanOperation {
         } else {
             try {
                 Method javaMethod = gbeanInstance.getType().getMethod(operationInfo.getMethodName(), types);
-                methodInvoker = new FastMethodInvoker(javaMethod);
+                methodInvoker = gbeanInstance.getMethodInvokerFactory().createMethodInvoker(javaMethod);
             } catch (Exception e) {
                 throw new InvalidConfigurationException("Target does not have specified method (declared in a GBeanInfo operation):" +
                         " name=" + operationInfo.getName() +
@@ -0,0 +1,36 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.gbean.runtime;
+
+/**
+ * Base class of the invokers created by GeneratedMethodInvokerFactory.  Each subclass is
+ * generated for a single method and calls it directly, so there is no index dispatch and
+ * exceptions thrown by the target are not wrapped.
+ *
+ * @version $Rev$ $Date$
+ */
+public abstract class GeneratedMethodInvoker implements MethodInvoker {
+    public abstract Object invoke(Object target, Object[] arguments) throws Exception;
+
+    /**
+     * Invokes a method that takes a single argument without creating an arguments array.
+     * The generated subclass overrides this for single argument methods.
+     */
+    public Object invokeWithArgument(Object target, Object argument) throws Exception {
+        return invoke(target, new Object[]{argument});
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.gbean.runtime;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import net.sf.cglib.asm.ClassVisitor;
+import net.sf.cglib.asm.Type;
+import net.sf.cglib.core.AbstractClassGenerator;
+import net.sf.cglib.core.ClassEmitter;
+import net.sf.cglib.core.CodeEmitter;
+import net.sf.cglib.core.Constants;
+import net.sf.cglib.core.EmitUtils;
+import net.sf.cglib.core.MethodInfo;
+import net.sf.cglib.core.ReflectUtils;
+import net.sf.cglib.core.Signature;
+import net.sf.cglib.core.TypeUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Creates a GeneratedMethodInvoker class for each method with cglib.  The generated class
+ * casts the target and arguments and calls the method directly, and single argument methods
+ * such as attribute and reference setters can be called without an arguments array.
+ * <p/>
+ * Methods that a class defined next to the declaring class could not link against (non-public
+ * classes or parameter types, or a class loader that can not see the kernel) fall back to a
+ * FastMethodInvoker.
+ *
+ * @version $Rev$ $Date$
+ */
+public class GeneratedMethodInvokerFactory implements MethodInvokerFactory {
+    private static final Log log = LogFactory.getLog(GeneratedMethodInvokerFactory.class);
+
+    public MethodInvoker createMethodInvoker(Method method) {
+        if (canGenerate(method)) {
+            try {
+                return new Generator(method).create();
+            } catch (RuntimeException e) {
+                log.debug("Could not generate an invoker for " + method + "; using a FastMethodInvoker", e);
+            } catch (LinkageError e) {
+                log.debug("Could not generate an invoker for " + method + "; using a FastMethodInvoker", e);
+            }
+        }
+        return new FastMethodInvoker(method);
+    }
+
+    private static boolean canGenerate(Method method) {
+        if (!Modifier.isPublic(method.getModifiers()) || !isPublic(method.getDeclaringClass())) {
+            return false;
+        }
+        Class[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (!isPublic(parameterTypes[i])) {
+                return false;
+            }
+        }
+        if (!isPublic(method.getReturnType())) {
+            return false;
+        }
+
+        // the invoker is defined in the class loader of the declaring class, which must see this kernel
+        ClassLoader classLoader = method.getDeclaringClass().getClassLoader();
+        if (classLoader == null) {
+            return false;
+        }
+        try {
+            return classLoader.loadClass(GeneratedMethodInvoker.class.getName()) == GeneratedMethodInvoker.class;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static boolean isPublic(Class type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        for (; type != null; type = type.getDeclaringClass()) {
+            if (!type.isPrimitive() && !Modifier.isPublic(type.getModifiers())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Generator extends AbstractClassGenerator {
+        private static final Source SOURCE = new Source(GeneratedMethodInvoker.class.getName());
+        private static final Type GENERATED_METHOD_INVOKER = TypeUtils.parseType(GeneratedMethodInvoker.class.getName());
+        private static final Signature INVOKE = TypeUtils.parseSignature("Object invoke(Object, Object[])");
+        private static final Signature INVOKE_WITH_ARGUMENT = TypeUtils.parseSignature("Object invokeWithArgument(Object, Object)");
+
+        private final Method method;
+
+        public Generator(Method method) {
+            super(SOURCE);
+            this.method = method;
+            setNamePrefix(method.getDeclaringClass().getName());
+        }
+
+        public MethodInvoker create() {
+            return (MethodInvoker) super.create(method);
+        }
+
+        protected ClassLoader getDefaultClassLoader() {
+            return method.getDeclaringClass().getClassLoader();
+        }
+
+        public void generateClass(ClassVisitor visitor) {
+            MethodInfo methodInfo = ReflectUtils.getMethodInfo(method);
+            Type[] parameterTypes = methodInfo.getSignature().getArgumentTypes();
+
+            ClassEmitter ce = new ClassEmitter(visitor);
+            ce.begin_class(Constants.V1_2, Constants.ACC_PUBLIC, getClassName(), GENERATED_METHOD_INVOKER, null, Constants.SOURCE_FILE);
+            EmitUtils.null_constructor(ce);
+
+            // Object invoke(Object target, Object[] arguments)
+            CodeEmitter e = ce.begin_method(Constants.ACC_PUBLIC, INVOKE, null, null);
+            loadTarget(e, methodInfo);
+            for (int i = 0; i < parameterTypes.length; i++) {
+                e.load_arg(1);
+                e.aaload(i);
+                e.unbox(parameterTypes[i]);
+            }
+            invokeAndReturn(e, methodInfo);
+
+            // Object invokeWithArgument(Object target, Object argument)
+            if (parameterTypes.length == 1) {
+                e = ce.begin_method(Constants.ACC_PUBLIC, INVOKE_WITH_ARGUMENT, null, null);
+                loadTarget(e, methodInfo);
+                e.load_arg(1);
+                e.unbox(parameterTypes[0]);
+                invokeAndReturn(e, methodInfo);
+            }
+
+            ce.end_class();
+        }
+
+        private static void loadTarget(CodeEmitter e, MethodInfo methodInfo) {
+            if (!TypeUtils.isStatic(methodInfo.getModifiers())) {
+                e.load_arg(0);
+                e.checkcast(methodInfo.getClassInfo().getType());
+            }
+        }
+
+        private static void invokeAndReturn(CodeEmitter e, MethodInfo methodInfo) {
+            e.invoke(methodInfo);
+            Type returnType = methodInfo.getSignature().getReturnType();
+            if (Type.VOID_TYPE.equals(returnType)) {
+                e.aconst_null();
+            } else {
+                e.box(returnType);
+            }
+            e.return_value();
+            e.end_method();
+        }
+
+        protected Object firstInstance(Class type) {
+            return ReflectUtils.newInstance(type);
+        }
+
+        protected Object nextInstance(Object instance) {
+            return instance;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.gbean.runtime;
+
+import java.lang.reflect.Method;
+
+/**
+ * Creates the MethodInvokers used by a GBeanInstance to call the attribute accessors,
+ * reference setters and operations of its target.  Each kernel uses a single factory
+ * so the invocation strategy can be chosen per kernel.
+ *
+ * @version $Rev$ $Date$
+ */
+public interface MethodInvokerFactory {
+    MethodInvoker createMethodInvoker(Method method);
+}
@@ -19,7 +19,6 @@ package org.apache.geronimo.kernel.basic;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -28,6 +27,7 @@ import java.util.Map;
 import java.util.Set;
 import javax.management.ObjectName;
 
+import EDU.oswego.cs.dl.util.concurrent.ConcurrentHashMap;
 import org.apache.geronimo.kernel.lifecycle.LifecycleAdapter;
 import org.apache.geronimo.kernel.lifecycle.LifecycleListener;
 import org.apache.geronimo.kernel.lifecycle.LifecycleMonitor;
@@ -42,6 +42,11 @@ import org.apache.geronimo.kernel.DependencyManager;
  * <p/>
  * The DependencyManager uses the nomenclature of parent-child where a child is dependent on a parent.
  * The names parent and child have no other meaning are just a convience to make the code readable.
+ * <p/>
+ * The dependency graph is kept in concurrent maps so configurations can declare and query their
+ * dependencies in parallel without contending on a single monitor.  Start holds are also indexed
+ * by the names they can match, so checkBlocker only examines the holds that could apply to the
+ * component being started.
  *
  * @version $Rev$ $Date$
  */
@@ -58,20 +63,39 @@ public class BasicDependencyManager implements DependencyManager {
     private final LifecycleListener lifecycleListener = new DependencyManagerLifecycleListener();
 
     /**
-     * A map from child names to a list of parents.
+     * A map from child names to a set (stored as the keys of a concurrent map) of parents.
      */
-    private final Map childToParentMap = new HashMap();
+    private final Map childToParentMap = new ConcurrentHashMap();
 
     /**
-     * A map from parent back to a list of its children.
+     * A map from parent back to a set (stored as the keys of a concurrent map) of its children.
      */
-    private final Map parentToChildMap = new HashMap();
+    private final Map parentToChildMap = new ConcurrentHashMap();
 
     /**
      * A map from a component's ObjectName to the list of ObjectPatterns that the component is blocking
      * from starting.
      */
-    private final Map startHoldsMap = new HashMap();
+    private final Map startHoldsMap = new ConcurrentHashMap();
+
+    /**
+     * Reverse index of the start holds from the canonical name of a non-pattern hold
+     * to the StartHolds with that name.
+     */
+    private final Map exactHoldIndex = new ConcurrentHashMap();
+
+    /**
+     * Reverse index of the start holds from a "key=value" property the hold pattern requires
+     * to the StartHolds requiring it.
+     */
+    private final Map propertyHoldIndex = new ConcurrentHashMap();
+
+    /**
+     * The StartHolds whose pattern has no property that can be indexed, all filed under WILDCARD_KEY;
+     * these are always checked.
+     */
+    private final Map wildcardHoldIndex = new ConcurrentHashMap();
+    private static final String WILDCARD_KEY = "*";
 
     public BasicDependencyManager(LifecycleMonitor lifecycleMonitor) throws Exception {
         assert lifecycleMonitor != null;
@@ -79,11 +103,14 @@ public class BasicDependencyManager implements DependencyManager {
         lifecycleMonitor.addLifecycleListener(lifecycleListener, new ObjectName("*:*"));
     }
 
-    public synchronized void close() {
+    public void close() {
         lifecycleMonitor.removeLifecycleListener(lifecycleListener);
         childToParentMap.clear();
         parentToChildMap.clear();
         startHoldsMap.clear();
+        exactHoldIndex.clear();
+        propertyHoldIndex.clear();
+        wildcardHoldIndex.clear();
     }
 
     /**
@@ -92,20 +119,9 @@ public class BasicDependencyManager implements DependencyManager {
      * @param child the dependent component
      * @param parent the component the child is depending on
      */
-    public synchronized void addDependency(ObjectName child, ObjectName parent) {
-        Set parents = (Set) childToParentMap.get(child);
-        if (parents == null) {
-            parents = new HashSet();
-            childToParentMap.put(child, parents);
-        }
-        parents.add(parent);
-
-        Set children = (Set) parentToChildMap.get(parent);
-        if (children == null) {
-            children = new HashSet();
-            parentToChildMap.put(parent, children);
-        }
-        children.add(child);
+    public void addDependency(ObjectName child, ObjectName parent) {
+        getOrCreate(childToParentMap, child).put(parent, parent);
+        getOrCreate(parentToChildMap, parent).put(child, child);
     }
 
     /**
@@ -114,13 +130,13 @@ public class BasicDependencyManager implements DependencyManager {
      * @param child the dependnet component
      * @param parent the component that the child wil no longer depend on
      */
-    public synchronized void removeDependency(ObjectName child, ObjectName parent) {
-        Set parents = (Set) childToParentMap.get(child);
+    public void removeDependency(ObjectName child, ObjectName parent) {
+        Map parents = (Map) childToParentMap.get(child);
         if (parents != null) {
             parents.remove(parent);
         }
 
-        Set children = (Set) parentToChildMap.get(parent);
+        Map children = (Map) parentToChildMap.get(parent);
         if (children != null) {
             children.remove(child);
         }
@@ -131,14 +147,14 @@ public class BasicDependencyManager implements DependencyManager {
      *
      * @param child the component that will no longer depend on anything
      */
-    public synchronized void removeAllDependencies(ObjectName child) {
-        Set parents = (Set) childToParentMap.remove(child);
+    public void removeAllDependencies(ObjectName child) {
+        Map parents = (Map) childToParentMap.remove(child);
         if (parents == null) {
             return;
         }
-        for (Iterator iterator = parents.iterator(); iterator.hasNext();) {
+        for (Iterator iterator = parents.keySet().iterator(); iterator.hasNext();) {
             ObjectName parent = (ObjectName) iterator.next();
-            Set children = (Set) parentToChildMap.get(parent);
+            Map children = (Map) parentToChildMap.get(parent);
             if (children != null) {
                 children.remove(child);
             }
@@ -152,23 +168,12 @@ public class BasicDependencyManager implements DependencyManager {
      * @param child the dependent component
      * @param parents the set of components the child is depending on
      */
-    public synchronized void addDependencies(ObjectName child, Set parents) {
-        Set existingParents = (Set) childToParentMap.get(child);
-        if (existingParents == null) {
-            existingParents = new HashSet(parents);
-            childToParentMap.put(child, existingParents);
-        } else {
-            existingParents.addAll(parents);
-        }
-
+    public void addDependencies(ObjectName child, Set parents) {
+        Map existingParents = getOrCreate(childToParentMap, child);
         for (Iterator i = parents.iterator(); i.hasNext();) {
             Object startParent = i.next();
-            Set children = (Set) parentToChildMap.get(startParent);
-            if (children == null) {
-                children = new HashSet();
-                parentToChildMap.put(startParent, children);
-            }
-            children.add(child);
+            existingParents.put(startParent, startParent);
+            getOrCreate(parentToChildMap, startParent).put(child, child);
         }
     }
 
@@ -178,12 +183,12 @@ public class BasicDependencyManager implements DependencyManager {
      * @param child the dependent component
      * @return a collection containing all of the components the child depends on; will never be null
      */
-    public synchronized Set getParents(ObjectName child) {
-        Set parents = (Set) childToParentMap.get(child);
+    public Set getParents(ObjectName child) {
+        Map parents = (Map) childToParentMap.get(child);
         if (parents == null) {
             return Collections.EMPTY_SET;
         }
-        return new HashSet(parents);
+        return new HashSet(parents.keySet());
     }
 
     /**
@@ -192,12 +197,12 @@ public class BasicDependencyManager implements DependencyManager {
      * @param parent the component the returned childen set depend on
      * @return a collection containing all of the components that depend on the parent; will never be null
      */
-    public synchronized Set getChildren(ObjectName parent) {
-        Set children = (Set) parentToChildMap.get(parent);
+    public Set getChildren(ObjectName parent) {
+        Map children = (Map) parentToChildMap.get(parent);
         if (children == null) {
             return Collections.EMPTY_SET;
         }
-        return new HashSet(children);
+        return new HashSet(children.keySet());
     }
 
     /**
@@ -207,13 +212,18 @@ public class BasicDependencyManager implements DependencyManager {
      * @param objectName the name of the component placing the holds
      * @param holds a collection of object name patterns which should not start
      */
-    public synchronized void addStartHolds(ObjectName objectName, Collection holds) {
-        Collection currentHolds = (Collection) startHoldsMap.get(objectName);
-        if (currentHolds == null) {
-            currentHolds = new LinkedList(holds);
-            startHoldsMap.put(objectName, currentHolds);
-        } else {
+    public void addStartHolds(ObjectName objectName, Collection holds) {
+        List currentHolds = getOrCreateHolds(objectName);
+        synchronized (currentHolds) {
             currentHolds.addAll(holds);
+            for (Iterator iterator = holds.iterator(); iterator.hasNext();) {
+                ObjectName pattern = (ObjectName) iterator.next();
+                StartHold startHold = new StartHold(objectName, pattern);
+                Map holdIndex = getHoldIndex(pattern);
+                synchronized (holdIndex) {
+                    getOrCreate(holdIndex, startHold.getIndexKey()).put(startHold, startHold);
+                }
+            }
         }
     }
 
@@ -223,10 +233,15 @@ public class BasicDependencyManager implements DependencyManager {
      * @param objectName the object name of the components owning the holds
      * @param holds a collection of the holds to remove
      */
-    public synchronized void removeStartHolds(ObjectName objectName, Collection holds) {
-        Collection currentHolds = (Collection) startHoldsMap.get(objectName);
+    public void removeStartHolds(ObjectName objectName, Collection holds) {
+        List currentHolds = (List) startHoldsMap.get(objectName);
         if (currentHolds != null) {
-            currentHolds.removeAll(holds);
+            synchronized (currentHolds) {
+                currentHolds.removeAll(holds);
+                for (Iterator iterator = holds.iterator(); iterator.hasNext();) {
+                    unindexStartHold(new StartHold(objectName, (ObjectName) iterator.next()));
+                }
+            }
         }
     }
 
@@ -235,8 +250,16 @@ public class BasicDependencyManager implements DependencyManager {
      *
      * @param objectName the object name of the component that will no longer have any holds
      */
-    public synchronized void removeAllStartHolds(ObjectName objectName) {
-        startHoldsMap.remove(objectName);
+    public void removeAllStartHolds(ObjectName objectName) {
+        List currentHolds = (List) startHoldsMap.remove(objectName);
+        if (currentHolds != null) {
+            synchronized (currentHolds) {
+                for (Iterator iterator = currentHolds.iterator(); iterator.hasNext();) {
+                    unindexStartHold(new StartHold(objectName, (ObjectName) iterator.next()));
+                }
+                currentHolds.clear();
+            }
+        }
     }
 
     /**
@@ -245,28 +268,163 @@ public class BasicDependencyManager implements DependencyManager {
      * @param objectName the mbean to check for blockers
      * @return the mbean blocking the specified mbean, or null if there are no blockers
      */
-    public synchronized ObjectName checkBlocker(ObjectName objectName) {
-        // check if objectName name is on one of the hold lists
-        for (Iterator iterator = startHoldsMap.keySet().iterator(); iterator.hasNext();) {
-            ObjectName blocker = (ObjectName) iterator.next();
-            List holds = (List) startHoldsMap.get(blocker);
-            for (Iterator holdsIterator = holds.iterator(); holdsIterator.hasNext();) {
-                ObjectName pattern = (ObjectName) holdsIterator.next();
-                if (pattern.apply(objectName)) {
-                    return blocker;
-                }
+    public ObjectName checkBlocker(ObjectName objectName) {
+        // holds naming exactly this component
+        ObjectName blocker = checkBlocker((Map) exactHoldIndex.get(objectName.getCanonicalName()), objectName);
+        if (blocker != null) {
+            return blocker;
+        }
+
+        // pattern holds that require one of our properties
+        for (Iterator iterator = objectName.getKeyPropertyList().entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry entry = (Map.Entry) iterator.next();
+            blocker = checkBlocker((Map) propertyHoldIndex.get(entry.getKey() + "=" + entry.getValue()), objectName);
+            if (blocker != null) {
+                return blocker;
+            }
+        }
+
+        // pattern holds that could match anything
+        return checkBlocker((Map) wildcardHoldIndex.get(WILDCARD_KEY), objectName);
+    }
+
+    private static ObjectName checkBlocker(Map startHolds, ObjectName objectName) {
+        if (startHolds == null) {
+            return null;
+        }
+        for (Iterator iterator = startHolds.keySet().iterator(); iterator.hasNext();) {
+            StartHold startHold = (StartHold) iterator.next();
+            if (startHold.pattern.apply(objectName)) {
+                return startHold.blocker;
             }
         }
         return null;
     }
 
-    private class DependencyManagerLifecycleListener extends LifecycleAdapter {
-        public void unloaded(ObjectName objectName) {
-            synchronized (BasicDependencyManager.this) {
-                removeAllDependencies(objectName);
-                removeAllStartHolds(objectName);
+    private List getOrCreateHolds(ObjectName objectName) {
+        List holds = (List) startHoldsMap.get(objectName);
+        if (holds == null) {
+            synchronized (startHoldsMap) {
+                holds = (List) startHoldsMap.get(objectName);
+                if (holds == null) {
+                    holds = new LinkedList();
+                    startHoldsMap.put(objectName, holds);
+                }
             }
+        }
+        return holds;
+    }
 
+    /**
+     * Removes the start hold from the reverse index unless the blocker still holds the same pattern.
+     * Must be called while holding the lock on the blocker's hold list.
+     */
+    private void unindexStartHold(StartHold startHold) {
+        List currentHolds = (List) startHoldsMap.get(startHold.blocker);
+        if (currentHolds != null && currentHolds.contains(startHold.pattern)) {
+            return;
+        }
+        Map holdIndex = getHoldIndex(startHold.pattern);
+        Object indexKey = startHold.getIndexKey();
+        synchronized (holdIndex) {
+            Map startHolds = (Map) holdIndex.get(indexKey);
+            if (startHolds != null) {
+                startHolds.remove(startHold);
+                if (startHolds.isEmpty()) {
+                    holdIndex.remove(indexKey);
+                }
+            }
+        }
+    }
+
+    private Map getHoldIndex(ObjectName pattern) {
+        if (!pattern.isPattern()) {
+            return exactHoldIndex;
+        }
+        if (StartHold.getIndexProperty(pattern) != null) {
+            return propertyHoldIndex;
+        }
+        return wildcardHoldIndex;
+    }
+
+    /**
+     * Gets the concurrent map stored under the key, creating it if necessary.
+     */
+    private static Map getOrCreate(Map map, Object key) {
+        Map value = (Map) map.get(key);
+        if (value == null) {
+            synchronized (map) {
+                value = (Map) map.get(key);
+                if (value == null) {
+                    value = new ConcurrentHashMap();
+                    map.put(key, value);
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * A single pattern held by a blocker.
+     */
+    private static final class StartHold {
+        private final ObjectName blocker;
+        private final ObjectName pattern;
+        private final int hashCode;
+
+        public StartHold(ObjectName blocker, ObjectName pattern) {
+            this.blocker = blocker;
+            this.pattern = pattern;
+            this.hashCode = blocker.hashCode() * 37 + pattern.hashCode();
+        }
+
+        /**
+         * Gets the key this hold is filed under in its reverse index.
+         */
+        public Object getIndexKey() {
+            if (!pattern.isPattern()) {
+                return pattern.getCanonicalName();
+            }
+            String indexProperty = getIndexProperty(pattern);
+            return indexProperty == null ? WILDCARD_KEY : indexProperty;
+        }
+
+        /**
+         * Gets a "key=value" property every name matching the pattern must have, or null if there is none.
+         * The property with the lowest key is used so equal patterns are always filed under the same key;
+         * values containing wildcards are never used.
+         */
+        public static String getIndexProperty(ObjectName pattern) {
+            String indexKey = null;
+            String indexValue = null;
+            for (Iterator iterator = pattern.getKeyPropertyList().entrySet().iterator(); iterator.hasNext();) {
+                Map.Entry entry = (Map.Entry) iterator.next();
+                String key = (String) entry.getKey();
+                String value = (String) entry.getValue();
+                if (value.indexOf('*') < 0 && value.indexOf('?') < 0 && (indexKey == null || key.compareTo(indexKey) < 0)) {
+                    indexKey = key;
+                    indexValue = value;
+                }
+            }
+            return indexKey == null ? null : indexKey + "=" + indexValue;
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(Object obj) {
+            if (obj == this) return true;
+            if (obj instanceof StartHold == false) return false;
+            StartHold other = (StartHold) obj;
+            return blocker.equals(other.blocker) && pattern.equals(other.pattern);
+        }
+    }
+
+    private class DependencyManagerLifecycleListener extends LifecycleAdapter {
+        public void unloaded(ObjectName objectName) {
+            removeAllDependencies(objectName);
+            removeAllStartHolds(objectName);
         }
     }
 }
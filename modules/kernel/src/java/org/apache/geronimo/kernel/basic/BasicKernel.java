@@ -31,7 +31,9 @@ import org.apache.geronimo.gbean.GBeanData;
 import org.apache.geronimo.gbean.GBeanInfo;
 import org.apache.geronimo.gbean.GBeanName;
 import org.apache.geronimo.gbean.GBeanQuery;
+import org.apache.geronimo.gbean.runtime.FastMethodInvokerFactory;
 import org.apache.geronimo.gbean.runtime.GBeanInstance;
+import org.apache.geronimo.gbean.runtime.MethodInvokerFactory;
 import org.apache.geronimo.kernel.DependencyManager;
 import org.apache.geronimo.kernel.GBeanAlreadyExistsException;
 import org.apache.geronimo.kernel.GBeanNotFoundException;
@@ -98,6 +100,11 @@ public class BasicKernel implements Kernel {
      */
     private final BasicRegistry registry;
 
+    /**
+     * Creates the invokers used by the GBeans loaded into this kernel
+     */
+    private final MethodInvokerFactory methodInvokerFactory;
+
     /**
      * Listeners for when the kernel shutdown
      */
@@ -125,11 +132,40 @@ public class BasicKernel implements Kernel {
      * @param kernelName the name of the kernel
      */
     public BasicKernel(String kernelName) {
+        this(kernelName, new BasicRegistry());
+    }
+
+    /**
+     * Construct a Kernel with the specified name that stores its GBeans in the supplied registry.
+     *
+     * @param kernelName the name of the kernel
+     * @param registry the registry used to hold the GBeans loaded into this kernel
+     */
+    public BasicKernel(String kernelName, BasicRegistry registry) {
+        this(kernelName, registry, new FastMethodInvokerFactory());
+    }
+
+    /**
+     * Construct a Kernel with the specified name that stores its GBeans in the supplied registry
+     * and calls them with invokers from the supplied factory.
+     *
+     * @param kernelName the name of the kernel
+     * @param registry the registry used to hold the GBeans loaded into this kernel
+     * @param methodInvokerFactory creates the invokers for the attributes, references and operations of each GBean
+     */
+    public BasicKernel(String kernelName, BasicRegistry registry, MethodInvokerFactory methodInvokerFactory) {
         if (kernelName.indexOf(':') >= 0 || kernelName.indexOf('*') >= 0 || kernelName.indexOf('?') >= 0) {
             throw new IllegalArgumentException("Kernel name may not contain a ':', '*' or '?' character");
         }
+        if (registry == null) {
+            throw new IllegalArgumentException("registry is null");
+        }
+        if (methodInvokerFactory == null) {
+            throw new IllegalArgumentException("methodInvokerFactory is null");
+        }
         this.kernelName = kernelName;
-        this.registry = new BasicRegistry();
+        this.registry = registry;
+        this.methodInvokerFactory = methodInvokerFactory;
     }
 
     public String getKernelName() {
@@ -194,7 +230,7 @@ public class BasicKernel implements Kernel {
 
     public void loadGBean(GBeanData gbeanData, ClassLoader classLoader) throws GBeanAlreadyExistsException, InternalKernelException {
         ObjectName objectName = gbeanData.getName();
-        GBeanInstance gbeanInstance = new GBeanInstance(gbeanData, this, dependencyManager, lifecycleMonitor.createLifecycleBroadcaster(objectName), classLoader);
+        GBeanInstance gbeanInstance = new GBeanInstance(gbeanData, this, dependencyManager, lifecycleMonitor.createLifecycleBroadcaster(objectName), classLoader, methodInvokerFactory);
         registry.register(gbeanInstance);
     }
 
@@ -16,6 +16,9 @@
  */
 package org.apache.geronimo.kernel.basic;
 
+import org.apache.geronimo.gbean.runtime.FastMethodInvokerFactory;
+import org.apache.geronimo.gbean.runtime.GeneratedMethodInvokerFactory;
+import org.apache.geronimo.gbean.runtime.MethodInvokerFactory;
 import org.apache.geronimo.kernel.Kernel;
 import org.apache.geronimo.kernel.KernelFactory;
 
@@ -23,7 +26,46 @@ import org.apache.geronimo.kernel.KernelFactory;
  * @version $Rev$ $Date$
  */
 public class BasicKernelFactory extends KernelFactory {
+    /**
+     * System property that, when set to true, makes kernels use a ConcurrentRegistry by default.
+     */
+    public static final String CONCURRENT_REGISTRY_KEY = BasicKernelFactory.class.getName() + ".concurrentRegistry";
+
+    /**
+     * System property that, when set to true, makes kernels call GBeans through generated invokers by default.
+     */
+    public static final String GENERATED_INVOKERS_KEY = BasicKernelFactory.class.getName() + ".generatedInvokers";
+
+    private boolean concurrentRegistry = getBooleanProperty(CONCURRENT_REGISTRY_KEY);
+    private boolean generatedInvokers = getBooleanProperty(GENERATED_INVOKERS_KEY);
+
+    public boolean isConcurrentRegistry() {
+        return concurrentRegistry;
+    }
+
+    public void setConcurrentRegistry(boolean concurrentRegistry) {
+        this.concurrentRegistry = concurrentRegistry;
+    }
+
+    public boolean isGeneratedInvokers() {
+        return generatedInvokers;
+    }
+
+    public void setGeneratedInvokers(boolean generatedInvokers) {
+        this.generatedInvokers = generatedInvokers;
+    }
+
     public Kernel createKernel(String kernelName) {
-        return new BasicKernel(kernelName);
+        BasicRegistry registry = concurrentRegistry ? new ConcurrentRegistry() : new BasicRegistry();
+        MethodInvokerFactory methodInvokerFactory = generatedInvokers ? (MethodInvokerFactory) new GeneratedMethodInvokerFactory() : new FastMethodInvokerFactory();
+        return new BasicKernel(kernelName, registry, methodInvokerFactory);
+    }
+
+    private static boolean getBooleanProperty(String key) {
+        try {
+            return Boolean.getBoolean(key);
+        } catch (SecurityException se) {
+            return false;
+        }
     }
 }
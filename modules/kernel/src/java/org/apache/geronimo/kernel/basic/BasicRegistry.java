@@ -19,8 +19,6 @@ package org.apache.geronimo.kernel.basic;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Set;
-import java.util.HashSet;
-import java.util.Iterator;
 
 import javax.management.ObjectName;
 import javax.management.MalformedObjectNameException;
@@ -36,9 +34,22 @@ import org.apache.geronimo.gbean.runtime.GBeanInstance;
  * @version $Rev$ $Date$
  */
 public class BasicRegistry {
-    private final Map registry = new HashMap();
+    private final Map registry;
+    private final GBeanNameIndex index = new GBeanNameIndex();
     private String kernelName = "";
 
+    public BasicRegistry() {
+        this(new HashMap());
+    }
+
+    /**
+     * @param registry the empty map to keep the GBeanName -> GBeanInstance entries in;
+     * subclasses that read without the registry lock pass a map that allows it
+     */
+    protected BasicRegistry(Map registry) {
+        this.registry = registry;
+    }
+
     /**
      * Start the registry and associate it with a kernel.
      *
@@ -53,6 +64,7 @@ public class BasicRegistry {
      */
     public synchronized void stop() {
         registry.clear();
+        index.clear();
         kernelName = "";
     }
 
@@ -63,7 +75,7 @@ public class BasicRegistry {
      * @return true if there is a GBean registered with that name
      */
     public synchronized boolean isRegistered(GBeanName name) {
-        return registry.containsKey(name);
+        return containsGBean(name);
     }
 
     /**
@@ -78,6 +90,7 @@ public class BasicRegistry {
             throw new GBeanAlreadyExistsException("GBean already registered: " + name);
         }
         registry.put(name, gbeanInstance);
+        index.add(name, gbeanInstance);
     }
 
     /**
@@ -94,6 +107,7 @@ public class BasicRegistry {
                 throw new InternalKernelException(e);
             }
         }
+        index.remove(name);
     }
 
     /**
@@ -104,18 +118,9 @@ public class BasicRegistry {
      * @throws GBeanNotFoundException if there is no GBean registered with the supplied name
      */
     public synchronized GBeanInstance getGBeanInstance(GBeanName name) throws GBeanNotFoundException {
-        GBeanInstance instance = (GBeanInstance) registry.get(name);
-        if (instance == null) {
-            try {
-                throw new GBeanNotFoundException(name.getObjectName());
-            } catch (MalformedObjectNameException e) {
-                throw new InternalKernelException(e);
-            }
-        }
-        return instance;
+        return findGBeanInstance(name);
     }
 
-
     /**
      * Search the registry for GBeans matching a name pattern.
      *
@@ -123,24 +128,34 @@ public class BasicRegistry {
      * @param properties the properties the GBeans must have
      * @return an unordered Set<GBeanInstance> of GBeans that matched the pattern
      */
-    public Set listGBeans(String domain, Map properties) {
-        // fairly dumb implementation that iterates the list of all registered GBeans
-        Map clone;
-        synchronized(this) {
-            clone = new HashMap(registry);
-        }
-        Set result = new HashSet(clone.size());
-        for (Iterator i = clone.entrySet().iterator(); i.hasNext();) {
-            Map.Entry entry = (Map.Entry) i.next();
-            GBeanName name = (GBeanName) entry.getKey();
-            if (name.matches(domain, properties)) {
-                result.add(entry.getValue());
+    public synchronized Set listGBeans(String domain, Map properties) {
+        return queryGBeans(domain, properties);
+    }
+
+    /**
+     * The lookups behind isRegistered, getGBeanInstance and listGBeans, without the registry lock.
+     */
+    protected final boolean containsGBean(GBeanName name) {
+        return registry.containsKey(name);
+    }
+
+    protected final GBeanInstance findGBeanInstance(GBeanName name) throws GBeanNotFoundException {
+        GBeanInstance instance = (GBeanInstance) registry.get(name);
+        if (instance == null) {
+            try {
+                throw new GBeanNotFoundException(name.getObjectName());
+            } catch (MalformedObjectNameException e) {
+                throw new InternalKernelException(e);
             }
         }
-        return result;
+        return instance;
+    }
+
+    protected final Set queryGBeans(String domain, Map properties) {
+        return index.query(registry, domain, properties);
     }
 
-    private GBeanName createGBeanName(ObjectName objectName) {
+    protected GBeanName createGBeanName(ObjectName objectName) {
         if (objectName.getDomain().length() == 0) {
             return new GBeanName(kernelName, objectName.getKeyPropertyList());
         }
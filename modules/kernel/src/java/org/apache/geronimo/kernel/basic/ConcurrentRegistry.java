@@ -0,0 +1,51 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.kernel.basic;
+
+import java.util.Map;
+import java.util.Set;
+
+import EDU.oswego.cs.dl.util.concurrent.ConcurrentReaderHashMap;
+import org.apache.geronimo.gbean.GBeanName;
+import org.apache.geronimo.gbean.runtime.GBeanInstance;
+import org.apache.geronimo.kernel.GBeanNotFoundException;
+
+/**
+ * A registry that allows lookups to proceed without taking a lock.
+ * Registration and unregistration are serialized, but getGBeanInstance and isRegistered
+ * are served straight from a ConcurrentReaderHashMap.  Pattern queries are answered
+ * from the GBeanNameIndex without copying or locking the registry.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ConcurrentRegistry extends BasicRegistry {
+    public ConcurrentRegistry() {
+        super(new ConcurrentReaderHashMap());
+    }
+
+    public boolean isRegistered(GBeanName name) {
+        return containsGBean(name);
+    }
+
+    public GBeanInstance getGBeanInstance(GBeanName name) throws GBeanNotFoundException {
+        return findGBeanInstance(name);
+    }
+
+    public Set listGBeans(String domain, Map properties) {
+        return queryGBeans(domain, properties);
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.kernel.basic;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import EDU.oswego.cs.dl.util.concurrent.ConcurrentReaderHashMap;
+import org.apache.geronimo.gbean.GBeanName;
+import org.apache.geronimo.gbean.runtime.GBeanInstance;
+
+/**
+ * Inverted index of registered GBeans by domain and by key property name and value.
+ * A pattern query is answered from the smallest bucket that every match must be in,
+ * so its cost is proportional to the number of GBeans sharing the most selective
+ * property rather than to the number of registered GBeans.
+ * <p/>
+ * Updates must be serialized by the caller; queries may run concurrently with updates
+ * and see a weakly consistent view.
+ *
+ * @version $Rev$ $Date$
+ */
+final class GBeanNameIndex {
+    /**
+     * domain -> Map<GBeanName,GBeanInstance>
+     */
+    private final Map domains = new ConcurrentReaderHashMap();
+
+    /**
+     * property key -> (property value -> Map<GBeanName,GBeanInstance>)
+     */
+    private final Map properties = new ConcurrentReaderHashMap();
+
+    public void add(GBeanName name, GBeanInstance gbeanInstance) {
+        addToBucket(domains, name.getDomain(), name, gbeanInstance);
+        for (Iterator i = name.getProperties().entrySet().iterator(); i.hasNext();) {
+            Map.Entry entry = (Map.Entry) i.next();
+            Map values = (Map) properties.get(entry.getKey());
+            if (values == null) {
+                values = new ConcurrentReaderHashMap();
+                properties.put(entry.getKey(), values);
+            }
+            addToBucket(values, entry.getValue(), name, gbeanInstance);
+        }
+    }
+
+    public void remove(GBeanName name) {
+        removeFromBucket(domains, name.getDomain(), name);
+        for (Iterator i = name.getProperties().entrySet().iterator(); i.hasNext();) {
+            Map.Entry entry = (Map.Entry) i.next();
+            Map values = (Map) properties.get(entry.getKey());
+            if (values != null) {
+                removeFromBucket(values, entry.getValue(), name);
+                if (values.isEmpty()) {
+                    properties.remove(entry.getKey());
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        domains.clear();
+        properties.clear();
+    }
+
+    /**
+     * Search for GBeans matching a name pattern.
+     *
+     * @param all the Map<GBeanName,GBeanInstance> of every registered GBean; only scanned when
+     * the pattern has neither a domain nor any properties
+     * @param domain the domain to query in; null indicates all
+     * @param pattern the properties the GBeans must have
+     * @return an unordered Set<GBeanInstance> of GBeans that matched the pattern
+     */
+    public Set query(Map all, String domain, Map pattern) {
+        Map candidates = all;
+        if (domain != null) {
+            candidates = (Map) domains.get(domain);
+            if (candidates == null) {
+                return Collections.EMPTY_SET;
+            }
+        }
+        if (pattern != null) {
+            for (Iterator i = pattern.entrySet().iterator(); i.hasNext();) {
+                Map.Entry entry = (Map.Entry) i.next();
+                Map values = (Map) properties.get(entry.getKey());
+                Map bucket = values == null ? null : (Map) values.get(entry.getValue());
+                if (bucket == null) {
+                    return Collections.EMPTY_SET;
+                }
+                if (bucket.size() < candidates.size()) {
+                    candidates = bucket;
+                }
+            }
+        }
+
+        Set result = new HashSet();
+        for (Iterator i = candidates.entrySet().iterator(); i.hasNext();) {
+            Map.Entry entry = (Map.Entry) i.next();
+            GBeanName name = (GBeanName) entry.getKey();
+            if (name.matches(domain, pattern)) {
+                result.add(entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    private static void addToBucket(Map buckets, Object key, GBeanName name, GBeanInstance gbeanInstance) {
+        Map bucket = (Map) buckets.get(key);
+        if (bucket == null) {
+            bucket = new ConcurrentReaderHashMap();
+            buckets.put(key, bucket);
+        }
+        bucket.put(name, gbeanInstance);
+    }
+
+    private static void removeFromBucket(Map buckets, Object key, GBeanName name) {
+        Map bucket = (Map) buckets.get(key);
+        if (bucket != null) {
+            bucket.remove(name);
+            if (bucket.isEmpty()) {
+                buckets.remove(key);
+            }
+        }
+    }
+}
@@ -56,9 +56,10 @@ public class ProxyMethodInterceptor implements MethodInterceptor {
     private final ObjectName objectName;
 
     /**
-     * GBeanInvokers keyed on the proxy interface method index
+     * GBeanInvokers keyed on the proxy interface method index.  The array is never modified
+     * after it is assigned; it is only replaced as a whole, so intercept reads it without a lock.
      */
-    private ProxyInvoker[] gbeanInvokers;
+    private volatile ProxyInvoker[] gbeanInvokers;
 
     public ProxyMethodInterceptor(Class proxyType, Kernel kernel, ObjectName objectName) {
         assert proxyType != null;
@@ -70,7 +71,7 @@ public class ProxyMethodInterceptor implements MethodInterceptor {
         gbeanInvokers = createGBeanInvokers(kernel, objectName);
     }
 
-    public synchronized void destroy() {
+    public void destroy() {
         gbeanInvokers = null;
     }
 
@@ -79,15 +80,11 @@ public class ProxyMethodInterceptor implements MethodInterceptor {
     }
 
     public final Object intercept(final Object object, final Method method, final Object[] args, final MethodProxy proxy) throws Throwable {
-        ProxyInvoker gbeanInvoker;
-
-        int interfaceIndex = proxy.getSuperIndex();
-        synchronized (this) {
-            if (gbeanInvokers == null) {
-                throw new DeadProxyException("Proxy is no longer valid");
-            }
-            gbeanInvoker = gbeanInvokers[interfaceIndex];
+        ProxyInvoker[] invokers = gbeanInvokers;
+        if (invokers == null) {
+            throw new DeadProxyException("Proxy is no longer valid");
         }
+        ProxyInvoker gbeanInvoker = invokers[proxy.getSuperIndex()];
 
         if (gbeanInvoker == null) {
             throw new UnsupportedOperationException("No implementation method: objectName=" + objectName + ", method=" + method);
@@ -103,7 +103,7 @@ public class ConfigurationManagerImpl implements ConfigurationManager, GBeanLife
         }
     }
 
-    public ObjectName load(URI configID) throws NoSuchConfigException, IOException, InvalidConfigException {
+    public synchronized ObjectName load(URI configID) throws NoSuchConfigException, IOException, InvalidConfigException {
         List storeSnapshot = getStores();
 
         for (int i = 0; i < storeSnapshot.size(); i++) {
@@ -165,7 +165,7 @@ public class ConfigurationManagerImpl implements ConfigurationManager, GBeanLife
         }
     }
 
-    public List loadRecursive(URI configID) throws NoSuchConfigException, IOException, InvalidConfigException {
+    public synchronized List loadRecursive(URI configID) throws NoSuchConfigException, IOException, InvalidConfigException {
         LinkedList ancestors = new LinkedList();
         Set preloaded = kernel.listGBeans(CONFIGURATION_NAME_QUERY);
         for (Iterator it = preloaded.iterator(); it.hasNext();) {
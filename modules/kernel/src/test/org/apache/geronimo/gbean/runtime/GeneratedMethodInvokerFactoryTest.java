@@ -0,0 +1,114 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.gbean.runtime;
+
+import java.lang.reflect.InvocationTargetException;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.gbean.GBeanData;
+import org.apache.geronimo.kernel.Kernel;
+import org.apache.geronimo.kernel.MockGBean;
+import org.apache.geronimo.kernel.basic.BasicKernelFactory;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class GeneratedMethodInvokerFactoryTest extends TestCase {
+    private final MethodInvokerFactory factory = new GeneratedMethodInvokerFactory();
+    private MockGBean target;
+
+    public void testInvoke() throws Exception {
+        MethodInvoker echo = factory.createMethodInvoker(MockGBean.class.getMethod("echo", new Class[]{String.class}));
+        assertTrue(echo instanceof GeneratedMethodInvoker);
+        assertEquals("hello", echo.invoke(target, new Object[]{"hello"}));
+        assertEquals("hello", ((GeneratedMethodInvoker) echo).invokeWithArgument(target, "hello"));
+
+        MethodInvoker doNothing = factory.createMethodInvoker(MockGBean.class.getMethod("doNothing", null));
+        assertNull(doNothing.invoke(target, null));
+    }
+
+    public void testPrimitives() throws Exception {
+        MethodInvoker getter = factory.createMethodInvoker(MockGBean.class.getMethod("getMutableInt", null));
+        GeneratedMethodInvoker setter = (GeneratedMethodInvoker) factory.createMethodInvoker(MockGBean.class.getMethod("setMutableInt", new Class[]{int.class}));
+        setter.invoke(target, new Object[]{new Integer(42)});
+        assertEquals(new Integer(42), getter.invoke(target, null));
+        setter.invokeWithArgument(target, new Integer(7));
+        assertEquals(new Integer(7), getter.invoke(target, null));
+    }
+
+    public void testStatic() throws Exception {
+        MethodInvoker invoker = factory.createMethodInvoker(MockGBean.class.getMethod("getGBeanInfo", null));
+        assertTrue(invoker instanceof GeneratedMethodInvoker);
+        assertSame(MockGBean.getGBeanInfo(), invoker.invoke(null, null));
+    }
+
+    public void testExceptionNotWrapped() throws Exception {
+        MethodInvoker invoker = factory.createMethodInvoker(MockGBean.class.getMethod("setExceptionMutableInt", new Class[]{int.class}));
+        try {
+            invoker.invoke(target, new Object[]{new Integer(-1)});
+            fail("expected InvocationTargetException");
+        } catch (InvocationTargetException expected) {
+            // thrown by the target itself
+            assertEquals("Thrown when -1", expected.getTargetException().getMessage());
+        }
+    }
+
+    public void testSameClassForSameMethod() throws Exception {
+        MethodInvoker first = factory.createMethodInvoker(MockGBean.class.getMethod("echo", new Class[]{String.class}));
+        MethodInvoker second = factory.createMethodInvoker(MockGBean.class.getMethod("echo", new Class[]{String.class}));
+        assertSame(first.getClass(), second.getClass());
+    }
+
+    public void testNonPublicFallsBack() throws Exception {
+        MethodInvoker invoker = factory.createMethodInvoker(Hidden.class.getMethod("getName", null));
+        assertTrue(invoker instanceof FastMethodInvoker);
+        assertEquals("hidden", invoker.invoke(new Hidden(), null));
+    }
+
+    public void testKernel() throws Exception {
+        BasicKernelFactory kernelFactory = new BasicKernelFactory();
+        kernelFactory.setGeneratedInvokers(true);
+        Kernel kernel = kernelFactory.createKernel("test");
+        kernel.boot();
+        try {
+            ObjectName name = new ObjectName("test:name=MyMockGMBean");
+            GBeanData gbean = new GBeanData(name, MockGBean.getGBeanInfo());
+            gbean.setAttribute("name", "Test");
+            gbean.setAttribute("finalInt", new Integer(123));
+            kernel.loadGBean(gbean, MockGBean.class.getClassLoader());
+            kernel.startGBean(name);
+
+            kernel.setAttribute(name, "mutableInt", new Integer(44));
+            assertEquals(new Integer(44), kernel.getAttribute(name, "mutableInt"));
+            assertEquals("Test", kernel.getAttribute(name, "name"));
+            assertEquals("hello", kernel.invoke(name, "echo", new Object[]{"hello"}, new String[]{String.class.getName()}));
+        } finally {
+            kernel.shutdown();
+        }
+    }
+
+    protected void setUp() throws Exception {
+        target = new MockGBean("foo", 12);
+    }
+
+    private static class Hidden {
+        public String getName() {
+            return "hidden";
+        }
+    }
+}
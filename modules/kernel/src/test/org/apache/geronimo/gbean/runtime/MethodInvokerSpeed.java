@@ -0,0 +1,114 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.gbean.runtime;
+
+import java.lang.reflect.Method;
+
+import org.apache.geronimo.kernel.MockGBean;
+
+/**
+ * Compares the cost of calling a GBean method through reflection, a FastMethodInvoker
+ * and a GeneratedMethodInvoker.
+ *
+ * @version $Rev$ $Date$
+ */
+public class MethodInvokerSpeed {
+    private static final int ITERATIONS = 100000000;
+
+    public static void main(String[] ignored) throws Exception {
+        System.out.println("Method Invoker Timings");
+        System.out.println("----------------------");
+        timings();
+        System.out.println();
+        System.out.println();
+        System.out.println();
+        timings();
+    }
+
+    private static void timings() throws Exception {
+        MockGBean instance = new MockGBean("foo", 12);
+
+        Method getter = MockGBean.class.getMethod("getMutableInt", null);
+        Method setter = MockGBean.class.getMethod("setMutableInt", new Class[]{int.class});
+        Method echo = MockGBean.class.getMethod("echo", new Class[]{String.class});
+
+        MethodInvokerFactory fastFactory = new FastMethodInvokerFactory();
+        MethodInvokerFactory generatedFactory = new GeneratedMethodInvokerFactory();
+
+        System.out.println("getMutableInt()");
+        reflectionTimings(getter, instance, null);
+        invokerTimings("FastMethodInvoker", fastFactory.createMethodInvoker(getter), instance, null);
+        invokerTimings("GeneratedMethodInvoker", generatedFactory.createMethodInvoker(getter), instance, null);
+
+        System.out.println("setMutableInt(int)");
+        Object[] setterArgs = new Object[]{new Integer(42)};
+        reflectionTimings(setter, instance, setterArgs);
+        invokerTimings("FastMethodInvoker", fastFactory.createMethodInvoker(setter), instance, setterArgs);
+        invokerTimings("GeneratedMethodInvoker", generatedFactory.createMethodInvoker(setter), instance, setterArgs);
+        singleArgumentTimings((GeneratedMethodInvoker) generatedFactory.createMethodInvoker(setter), instance, setterArgs[0]);
+
+        System.out.println("echo(String)");
+        Object[] echoArgs = new Object[]{"hello"};
+        reflectionTimings(echo, instance, echoArgs);
+        invokerTimings("FastMethodInvoker", fastFactory.createMethodInvoker(echo), instance, echoArgs);
+        invokerTimings("GeneratedMethodInvoker", generatedFactory.createMethodInvoker(echo), instance, echoArgs);
+    }
+
+    private static void reflectionTimings(Method method, Object instance, Object[] args) throws Exception {
+        for (int i = 0; i < ITERATIONS; i++) {
+            method.invoke(instance, args);
+        }
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < ITERATIONS; i++) {
+            method.invoke(instance, args);
+        }
+        long end = System.currentTimeMillis();
+        printResults("Reflection", end, start, ITERATIONS);
+    }
+
+    private static void invokerTimings(String name, MethodInvoker invoker, Object instance, Object[] args) throws Exception {
+        for (int i = 0; i < ITERATIONS; i++) {
+            invoker.invoke(instance, args);
+        }
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < ITERATIONS; i++) {
+            invoker.invoke(instance, args);
+        }
+        long end = System.currentTimeMillis();
+        printResults(name, end, start, ITERATIONS);
+    }
+
+    private static void singleArgumentTimings(GeneratedMethodInvoker invoker, Object instance, Object argument) throws Exception {
+        for (int i = 0; i < ITERATIONS; i++) {
+            invoker.invokeWithArgument(instance, argument);
+        }
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < ITERATIONS; i++) {
+            invoker.invokeWithArgument(instance, argument);
+        }
+        long end = System.currentTimeMillis();
+        printResults("GeneratedMethodInvoker (no array)", end, start, ITERATIONS);
+    }
+
+    private static void printResults(String invocationType, long end, long start, int iterations) {
+        if (end - start < 400) {
+            System.out.println("  " + invocationType + ": elapse time to short to calculate cost (total " + (end - start) + "ms)");
+        } else {
+            System.out.println("  " + invocationType + ": " + ((end - start) * 1000000.0 / iterations) + "ns  (total " + (end - start) + "ms)");
+        }
+    }
+}
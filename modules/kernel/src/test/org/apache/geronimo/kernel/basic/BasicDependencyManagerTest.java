@@ -0,0 +1,115 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.kernel.basic;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.kernel.DependencyManager;
+import org.apache.geronimo.kernel.Kernel;
+import org.apache.geronimo.kernel.KernelFactory;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class BasicDependencyManagerTest extends TestCase {
+    private Kernel kernel;
+    private DependencyManager dependencyManager;
+    private ObjectName parent;
+    private ObjectName child1;
+    private ObjectName child2;
+
+    public void testDependencies() throws Exception {
+        dependencyManager.addDependency(child1, parent);
+        dependencyManager.addDependencies(child2, Collections.singleton(parent));
+        assertEquals(Collections.singleton(parent), dependencyManager.getParents(child1));
+        assertEquals(Collections.singleton(parent), dependencyManager.getParents(child2));
+        assertEquals(new HashSet(Arrays.asList(new ObjectName[]{child1, child2})), dependencyManager.getChildren(parent));
+
+        dependencyManager.removeDependency(child1, parent);
+        assertTrue(dependencyManager.getParents(child1).isEmpty());
+        assertEquals(Collections.singleton(child2), dependencyManager.getChildren(parent));
+
+        dependencyManager.removeAllDependencies(child2);
+        assertTrue(dependencyManager.getParents(child2).isEmpty());
+        assertTrue(dependencyManager.getChildren(parent).isEmpty());
+    }
+
+    public void testExactStartHold() throws Exception {
+        List holds = Collections.singletonList(child1);
+        dependencyManager.addStartHolds(parent, holds);
+        assertEquals(parent, dependencyManager.checkBlocker(child1));
+        assertNull(dependencyManager.checkBlocker(child2));
+
+        dependencyManager.removeStartHolds(parent, holds);
+        assertNull(dependencyManager.checkBlocker(child1));
+    }
+
+    public void testPatternStartHold() throws Exception {
+        List holds = Collections.singletonList(new ObjectName("test:type=Child,*"));
+        dependencyManager.addStartHolds(parent, holds);
+        assertEquals(parent, dependencyManager.checkBlocker(child1));
+        assertEquals(parent, dependencyManager.checkBlocker(child2));
+        assertNull(dependencyManager.checkBlocker(new ObjectName("test:type=Other,name=child1")));
+        assertNull(dependencyManager.checkBlocker(new ObjectName("other:type=Child,name=child1")));
+
+        dependencyManager.removeAllStartHolds(parent);
+        assertNull(dependencyManager.checkBlocker(child1));
+    }
+
+    public void testWildcardStartHold() throws Exception {
+        List holds = Collections.singletonList(new ObjectName("test:*"));
+        dependencyManager.addStartHolds(parent, holds);
+        assertEquals(parent, dependencyManager.checkBlocker(child1));
+        assertEquals(parent, dependencyManager.checkBlocker(new ObjectName("test:name=child3")));
+        assertNull(dependencyManager.checkBlocker(new ObjectName("other:name=child1")));
+
+        dependencyManager.removeStartHolds(parent, holds);
+        assertNull(dependencyManager.checkBlocker(child1));
+    }
+
+    public void testDuplicateStartHolds() throws Exception {
+        ObjectName other = new ObjectName("test:type=Other,name=other");
+        List holds = Collections.singletonList(new ObjectName("test:type=Child,*"));
+        dependencyManager.addStartHolds(parent, holds);
+        dependencyManager.addStartHolds(other, holds);
+        dependencyManager.addStartHolds(other, holds);
+        assertNotNull(dependencyManager.checkBlocker(child1));
+
+        dependencyManager.removeStartHolds(parent, holds);
+        assertEquals(other, dependencyManager.checkBlocker(child1));
+        dependencyManager.removeStartHolds(other, holds);
+        assertNull(dependencyManager.checkBlocker(child1));
+    }
+
+    protected void setUp() throws Exception {
+        kernel = KernelFactory.newInstance().createKernel("test");
+        kernel.boot();
+        dependencyManager = kernel.getDependencyManager();
+        parent = new ObjectName("test:type=Parent,name=parent");
+        child1 = new ObjectName("test:type=Child,name=child1");
+        child2 = new ObjectName("test:type=Child,name=child2");
+    }
+
+    protected void tearDown() throws Exception {
+        kernel.shutdown();
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.kernel.basic;
+
+import java.util.HashSet;
+import java.util.Set;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.gbean.GBeanData;
+import org.apache.geronimo.kernel.GBeanAlreadyExistsException;
+import org.apache.geronimo.kernel.GBeanNotFoundException;
+import org.apache.geronimo.kernel.Kernel;
+import org.apache.geronimo.kernel.MockGBean;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class BasicRegistryTest extends TestCase {
+    private Kernel kernel;
+
+    public void testLoadAndUnload() throws Exception {
+        ObjectName name = new ObjectName("test:name=One,j2eeType=Mock");
+        assertFalse(kernel.isLoaded(name));
+        loadGBean(name);
+        assertTrue(kernel.isLoaded(name));
+        try {
+            loadGBean(name);
+            fail("expected GBeanAlreadyExistsException");
+        } catch (GBeanAlreadyExistsException expected) {
+        }
+        kernel.unloadGBean(name);
+        assertFalse(kernel.isLoaded(name));
+        try {
+            kernel.getGBeanState(name);
+            fail("expected GBeanNotFoundException");
+        } catch (GBeanNotFoundException expected) {
+        }
+    }
+
+    public void testListGBeans() throws Exception {
+        ObjectName one = new ObjectName("test:name=One,j2eeType=Mock");
+        ObjectName two = new ObjectName("test:name=Two,j2eeType=Mock");
+        ObjectName three = new ObjectName("other:name=Three,j2eeType=Mock,J2EEApplication=app");
+        loadGBean(one);
+        loadGBean(two);
+        loadGBean(three);
+
+        assertEquals(set(one, two, null), kernel.listGBeans(new ObjectName("test:j2eeType=Mock,*")));
+        assertEquals(set(one, two, three), kernel.listGBeans(new ObjectName("*:j2eeType=Mock,*")));
+        assertEquals(set(three, null, null), kernel.listGBeans(new ObjectName("*:J2EEApplication=app,*")));
+        assertEquals(set(two, null, null), kernel.listGBeans(new ObjectName("*:name=Two,*")));
+        assertEquals(set(one, null, null), kernel.listGBeans(one));
+        assertTrue(kernel.listGBeans(new ObjectName("missing:*")).isEmpty());
+        assertTrue(kernel.listGBeans(new ObjectName("*:missing=key,*")).isEmpty());
+        assertTrue(kernel.listGBeans(new ObjectName("test:J2EEApplication=app,*")).isEmpty());
+        assertTrue(kernel.listGBeans(new ObjectName("*:j2eeType=Other,*")).isEmpty());
+        assertTrue(kernel.listGBeans(new ObjectName("test:name=Three,j2eeType=Mock")).isEmpty());
+
+        kernel.unloadGBean(three);
+        assertEquals(set(one, two, null), kernel.listGBeans(new ObjectName("*:j2eeType=Mock,*")));
+        assertTrue(kernel.listGBeans(new ObjectName("other:*")).isEmpty());
+        assertTrue(kernel.listGBeans(new ObjectName("*:J2EEApplication=app,*")).isEmpty());
+    }
+
+    private void loadGBean(ObjectName name) throws Exception {
+        GBeanData gbean = new GBeanData(name, MockGBean.getGBeanInfo());
+        gbean.setAttribute("finalInt", new Integer(123));
+        kernel.loadGBean(gbean, getClass().getClassLoader());
+    }
+
+    private static Set set(ObjectName one, ObjectName two, ObjectName three) {
+        Set set = new HashSet();
+        if (one != null) set.add(one);
+        if (two != null) set.add(two);
+        if (three != null) set.add(three);
+        return set;
+    }
+
+    protected boolean isConcurrentRegistry() {
+        return false;
+    }
+
+    protected void setUp() throws Exception {
+        BasicKernelFactory kernelFactory = new BasicKernelFactory();
+        kernelFactory.setConcurrentRegistry(isConcurrentRegistry());
+        kernel = kernelFactory.createKernel("test");
+        kernel.boot();
+    }
+
+    protected void tearDown() throws Exception {
+        kernel.shutdown();
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.kernel.basic;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import javax.management.ObjectName;
+
+import org.apache.geronimo.gbean.GBeanData;
+import org.apache.geronimo.gbean.GBeanName;
+import org.apache.geronimo.kernel.Kernel;
+import org.apache.geronimo.kernel.MockGBean;
+
+/**
+ * Measures kernel pattern queries against a kernel loaded with the GBeans of many
+ * deployed applications, compared with a linear scan of every registered name.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ListGBeansSpeed {
+    private static final int APPLICATION_COUNT = 200;
+    private static final String[] MODULE_TYPES = {"WebModule", "EJBModule", "ResourceAdapterModule"};
+    private static final String[] COMPONENT_TYPES = {"Servlet", "StatelessSessionBean", "JCAManagedConnectionFactory", "JCAResource"};
+    private static final int COMPONENTS_PER_TYPE = 10;
+    private static final String[] QUERIES = {
+        "geronimo.server:J2EEApplication=app17,*",
+        "geronimo.server:J2EEApplication=app42,j2eeType=Servlet,*",
+        "*:j2eeType=JCAManagedConnectionFactory,name=component3,*",
+        "geronimo.server:j2eeType=J2EEApplication,*",
+        "*:name=missing,*",
+    };
+
+    public static void main(String[] ignored) throws Exception {
+        System.out.println("listGBeans Timings");
+        System.out.println("------------------");
+        queryTimings(false);
+        queryTimings(true);
+        System.out.println();
+        System.out.println();
+        System.out.println();
+        queryTimings(false);
+        queryTimings(true);
+    }
+
+    private static void queryTimings(boolean concurrentRegistry) throws Exception {
+        BasicKernelFactory kernelFactory = new BasicKernelFactory();
+        kernelFactory.setConcurrentRegistry(concurrentRegistry);
+        Kernel kernel = kernelFactory.createKernel("speed");
+        kernel.boot();
+        try {
+            List names = new ArrayList();
+            for (int app = 0; app < APPLICATION_COUNT; app++) {
+                String application = "app" + app;
+                names.add(new ObjectName("geronimo.server:J2EEServer=geronimo,j2eeType=J2EEApplication,name=" + application));
+                for (int m = 0; m < MODULE_TYPES.length; m++) {
+                    String module = application + "-" + MODULE_TYPES[m];
+                    names.add(new ObjectName("geronimo.server:J2EEServer=geronimo,J2EEApplication=" + application + ",j2eeType=" + MODULE_TYPES[m] + ",name=" + module));
+                    for (int c = 0; c < COMPONENT_TYPES.length; c++) {
+                        for (int i = 0; i < COMPONENTS_PER_TYPE; i++) {
+                            names.add(new ObjectName("geronimo.server:J2EEServer=geronimo,J2EEApplication=" + application + "," + MODULE_TYPES[m] + "=" + module + ",j2eeType=" + COMPONENT_TYPES[c] + ",name=component" + i));
+                        }
+                    }
+                }
+            }
+            for (Iterator iterator = names.iterator(); iterator.hasNext();) {
+                ObjectName name = (ObjectName) iterator.next();
+                GBeanData mockGBean = new GBeanData(name, MockGBean.getGBeanInfo());
+                mockGBean.setAttribute("finalInt", new Integer(1));
+                kernel.loadGBean(mockGBean, ListGBeansSpeed.class.getClassLoader());
+            }
+
+            String registryType = concurrentRegistry ? "ConcurrentRegistry" : "BasicRegistry";
+            System.out.println(registryType + " with " + names.size() + " GBeans");
+            for (int q = 0; q < QUERIES.length; q++) {
+                ObjectName pattern = new ObjectName(QUERIES[q]);
+
+                int iterations = 5000;
+                Set result = null;
+                for (int i = 0; i < iterations; i++) {
+                    result = kernel.listGBeans(pattern);
+                }
+                long start = System.currentTimeMillis();
+                for (int i = 0; i < iterations; i++) {
+                    result = kernel.listGBeans(pattern);
+                }
+                long end = System.currentTimeMillis();
+                printResults("  indexed " + QUERIES[q] + " (" + result.size() + " matches)", end, start, iterations);
+
+                iterations = 50;
+                start = System.currentTimeMillis();
+                for (int i = 0; i < iterations; i++) {
+                    linearScan(names, pattern);
+                }
+                end = System.currentTimeMillis();
+                printResults("  linear  " + QUERIES[q], end, start, iterations);
+            }
+        } finally {
+            kernel.shutdown();
+        }
+    }
+
+    private static int linearScan(List names, ObjectName pattern) {
+        String domain = pattern.isDomainPattern() ? null : pattern.getDomain();
+        int count = 0;
+        for (Iterator iterator = names.iterator(); iterator.hasNext();) {
+            GBeanName name = new GBeanName((ObjectName) iterator.next());
+            if (name.matches(domain, pattern.getKeyPropertyList())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void printResults(String invocationType, long end, long start, int iterations) {
+        if (end - start < 400) {
+            System.out.println(invocationType + ": elapse time to short to calculate cost (total " + (end - start) + "ms)");
+        } else {
+            System.out.println(invocationType + ": " + ((end - start) * 1000000.0 / iterations) + "ns  (total " + (end - start) + "ms)");
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.kernel.basic;
+
+import javax.management.ObjectName;
+
+import EDU.oswego.cs.dl.util.concurrent.CountDown;
+import org.apache.geronimo.gbean.GBeanData;
+import org.apache.geronimo.kernel.Kernel;
+import org.apache.geronimo.kernel.KernelFactory;
+import org.apache.geronimo.kernel.MockEndpoint;
+import org.apache.geronimo.kernel.MockGBean;
+
+/**
+ * Measures the throughput of calls through a single proxy shared by a growing number of
+ * client threads.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ProxyContentionSpeed {
+    private static final int TOTAL_CALLS = 64000000;
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+
+    public static void main(String[] ignored) throws Exception {
+        Kernel kernel = KernelFactory.newInstance().createKernel("speed");
+        kernel.boot();
+        try {
+            ObjectName objectName = new ObjectName("speed:type=MockGBean");
+            GBeanData mockGBean = new GBeanData(objectName, MockGBean.getGBeanInfo());
+            mockGBean.setAttribute("name", "bar");
+            mockGBean.setAttribute("finalInt", new Integer(57));
+            kernel.loadGBean(mockGBean, ProxyContentionSpeed.class.getClassLoader());
+            kernel.startGBean(objectName);
+
+            MockEndpoint proxy = (MockEndpoint) kernel.getProxyManager().createProxy(objectName, MockEndpoint.class);
+
+            System.out.println("Shared Proxy Timings");
+            System.out.println("--------------------");
+            callTimings(proxy);
+            System.out.println();
+            System.out.println();
+            System.out.println();
+            callTimings(proxy);
+        } finally {
+            kernel.shutdown();
+        }
+    }
+
+    private static void callTimings(MockEndpoint proxy) throws Exception {
+        for (int i = 0; i < THREAD_COUNTS.length; i++) {
+            int threadCount = THREAD_COUNTS[i];
+            long elapsed = runCalls(proxy, threadCount);
+            printResults(threadCount + " threads", elapsed, TOTAL_CALLS);
+        }
+    }
+
+    private static long runCalls(final MockEndpoint proxy, int threadCount) throws Exception {
+        final CountDown startSignal = new CountDown(1);
+        final CountDown doneSignal = new CountDown(threadCount);
+        final int callsPerThread = TOTAL_CALLS / threadCount;
+        for (int t = 0; t < threadCount; t++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        startSignal.acquire();
+                        for (int i = 0; i < callsPerThread; i++) {
+                            proxy.doNothing();
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    } finally {
+                        doneSignal.release();
+                    }
+                }
+            });
+            thread.start();
+        }
+        long start = System.currentTimeMillis();
+        startSignal.release();
+        doneSignal.acquire();
+        return System.currentTimeMillis() - start;
+    }
+
+    private static void printResults(String invocationType, long elapsed, int calls) {
+        if (elapsed < 400) {
+            System.out.println(invocationType + ": elapse time to short to calculate throughput (total " + elapsed + "ms)");
+        } else {
+            System.out.println(invocationType + ": " + (calls * 1000L / elapsed) + " calls/s  (total " + elapsed + "ms)");
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.kernel.basic;
+
+import javax.management.ObjectName;
+
+import EDU.oswego.cs.dl.util.concurrent.CountDown;
+import org.apache.geronimo.gbean.GBeanData;
+import org.apache.geronimo.kernel.Kernel;
+import org.apache.geronimo.kernel.MockGBean;
+
+/**
+ * Measures GBean lookup throughput through the kernel as the number of client threads grows,
+ * comparing the synchronized BasicRegistry with the ConcurrentRegistry.
+ *
+ * @version $Rev$ $Date$
+ */
+public class RegistrySpeed {
+    private static final int GBEAN_COUNT = 10000;
+    private static final int TOTAL_LOOKUPS = 1280000;
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+
+    public static void main(String[] ignored) throws Exception {
+        System.out.println("Registry Lookup Timings (" + GBEAN_COUNT + " GBeans)");
+        System.out.println("------------------");
+        lookupTimings(false);
+        lookupTimings(true);
+        System.out.println();
+        System.out.println();
+        System.out.println();
+        lookupTimings(false);
+        lookupTimings(true);
+    }
+
+    private static void lookupTimings(boolean concurrentRegistry) throws Exception {
+        BasicKernelFactory kernelFactory = new BasicKernelFactory();
+        kernelFactory.setConcurrentRegistry(concurrentRegistry);
+        Kernel kernel = kernelFactory.createKernel("speed");
+        kernel.boot();
+        try {
+            ObjectName[] names = new ObjectName[GBEAN_COUNT];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = new ObjectName("speed:j2eeType=MockGBean,name=Mock" + i);
+                GBeanData mockGBean = new GBeanData(names[i], MockGBean.getGBeanInfo());
+                mockGBean.setAttribute("finalInt", new Integer(i));
+                kernel.loadGBean(mockGBean, RegistrySpeed.class.getClassLoader());
+            }
+
+            String registryType = concurrentRegistry ? "ConcurrentRegistry" : "BasicRegistry";
+            for (int i = 0; i < THREAD_COUNTS.length; i++) {
+                int threadCount = THREAD_COUNTS[i];
+                long elapsed = runLookups(kernel, names, threadCount);
+                printResults(registryType + " " + threadCount + " threads", elapsed, TOTAL_LOOKUPS);
+            }
+        } finally {
+            kernel.shutdown();
+        }
+    }
+
+    private static long runLookups(final Kernel kernel, final ObjectName[] names, int threadCount) throws Exception {
+        final CountDown startSignal = new CountDown(1);
+        final CountDown doneSignal = new CountDown(threadCount);
+        final int lookupsPerThread = TOTAL_LOOKUPS / threadCount;
+        for (int t = 0; t < threadCount; t++) {
+            final int offset = t * 7919;
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        startSignal.acquire();
+                        for (int i = 0; i < lookupsPerThread; i++) {
+                            ObjectName name = names[(offset + i) % names.length];
+                            if (!kernel.isLoaded(name)) {
+                                throw new IllegalStateException("Not loaded " + name);
+                            }
+                            kernel.getGBeanInfo(name);
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    } finally {
+                        doneSignal.release();
+                    }
+                }
+            });
+            thread.start();
+        }
+        long start = System.currentTimeMillis();
+        startSignal.release();
+        doneSignal.acquire();
+        return System.currentTimeMillis() - start;
+    }
+
+    private static void printResults(String invocationType, long elapsed, int lookups) {
+        if (elapsed < 400) {
+            System.out.println(invocationType + ": elapse time to short to calculate throughput (total " + elapsed + "ms)");
+        } else {
+            System.out.println(invocationType + ": " + (lookups * 1000L / elapsed) + " lookups/s  (total " + elapsed + "ms)");
+        }
+    }
+}
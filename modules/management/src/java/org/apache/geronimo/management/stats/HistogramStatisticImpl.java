@@ -0,0 +1,91 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.management.stats;
+
+/**
+ * A TimeStatistic that also keeps a histogram of the recorded times.  Bucket 0 counts
+ * times of 0, bucket i counts times from 2^(i-1) to 2^i - 1, and the last bucket
+ * counts everything longer.  Recording a time is not synchronized; callers that record
+ * from several threads must do so under their own lock.
+ *
+ * @version $Rev$ $Date$
+ */
+public class HistogramStatisticImpl extends TimeStatisticImpl {
+    public static final int BUCKET_COUNT = 18;
+
+    private long[] bucketCounts = new long[BUCKET_COUNT];
+
+    public HistogramStatisticImpl(String name, String unit, String description) {
+        super(name, unit, description);
+    }
+
+    /**
+     * Adds one recorded time to the count, min, max, total and the histogram.
+     */
+    public void addTime(long time) {
+        if (count == 0 || time < minTime) {
+            minTime = time;
+        }
+        if (time > maxTime) {
+            maxTime = time;
+        }
+        count++;
+        totalTime += time;
+        bucketCounts[getBucket(time)]++;
+    }
+
+    /**
+     * Copies the values of another histogram into this one.
+     */
+    public void setValues(HistogramStatisticImpl other) {
+        count = other.count;
+        minTime = other.minTime;
+        maxTime = other.maxTime;
+        totalTime = other.totalTime;
+        bucketCounts = (long[]) other.bucketCounts.clone();
+        setStartTime(other.getStartTime());
+        setLastSampleTime(other.getLastSampleTime());
+    }
+
+    /**
+     * @return the number of recorded times in each bucket
+     */
+    public long[] getBucketCounts() {
+        return (long[]) bucketCounts.clone();
+    }
+
+    /**
+     * @return the largest time counted in each bucket; the last bucket is unbounded
+     */
+    public long[] getBucketUpperBounds() {
+        long[] upperBounds = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT - 1; i++) {
+            upperBounds[i] = (1L << i) - 1;
+        }
+        upperBounds[BUCKET_COUNT - 1] = Long.MAX_VALUE;
+        return upperBounds;
+    }
+
+    public static int getBucket(long time) {
+        int bucket = 0;
+        while (time > 0 && bucket < BUCKET_COUNT - 1) {
+            time >>= 1;
+            bucket++;
+        }
+        return bucket;
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.management.stats;
+
+import javax.management.j2ee.statistics.BoundedRangeStatistic;
+import javax.management.j2ee.statistics.CountStatistic;
+import javax.management.j2ee.statistics.JCAConnectionPoolStats;
+import javax.management.j2ee.statistics.RangeStatistic;
+import javax.management.j2ee.statistics.TimeStatistic;
+
+/**
+ * Geronimo implementation of the JSR-77 JCAConnectionPoolStats interface.  Besides the
+ * standard statistics it counts blocking timeouts and failed matches, and the wait and
+ * use times carry histograms.
+ *
+ * @version $Rev$ $Date$
+ */
+public class JCAConnectionPoolStatsImpl extends StatsImpl implements JCAConnectionPoolStats {
+    private final String connectionFactory;
+    private final String managedConnectionFactory;
+    private final HistogramStatisticImpl waitTime;
+    private final HistogramStatisticImpl useTime;
+    private final CountStatisticImpl closeCount;
+    private final CountStatisticImpl createCount;
+    private final BoundedRangeImpl freePoolSize;
+    private final BoundedRangeImpl poolSize;
+    private final RangeStatisticImpl waitingThreadCount;
+    private final CountStatisticImpl timeoutCount;
+    private final CountStatisticImpl matchFailureCount;
+
+    public JCAConnectionPoolStatsImpl(String connectionFactory, String managedConnectionFactory) {
+        this.connectionFactory = connectionFactory;
+        this.managedConnectionFactory = managedConnectionFactory;
+        waitTime = new HistogramStatisticImpl("Wait Time", StatisticImpl.UNIT_TIME_MILLISECOND,
+                "The time spent waiting for a connection to be available");
+        useTime = new HistogramStatisticImpl("Use Time", StatisticImpl.UNIT_TIME_MILLISECOND,
+                "The time connections were held by the application");
+        closeCount = new CountStatisticImpl("Close Count", StatisticImpl.UNIT_COUNT,
+                "The number of connections closed", 0);
+        createCount = new CountStatisticImpl("Create Count", StatisticImpl.UNIT_COUNT,
+                "The number of connections created", 0);
+        freePoolSize = new BoundedRangeImpl("Free Pool Size", StatisticImpl.UNIT_COUNT,
+                "The number of free connections in the pool");
+        poolSize = new BoundedRangeImpl("Pool Size", StatisticImpl.UNIT_COUNT,
+                "The size of the connection pool");
+        waitingThreadCount = new RangeStatisticImpl("Waiting Thread Count", StatisticImpl.UNIT_COUNT,
+                "The number of threads waiting for a connection");
+        timeoutCount = new CountStatisticImpl("Timeout Count", StatisticImpl.UNIT_COUNT,
+                "The number of requests that gave up waiting for a connection", 0);
+        matchFailureCount = new CountStatisticImpl("Match Failure Count", StatisticImpl.UNIT_COUNT,
+                "The number of pooled connections the ManagedConnectionFactory refused to match", 0);
+        addStat("WaitTime", waitTime);
+        addStat("UseTime", useTime);
+        addStat("CloseCount", closeCount);
+        addStat("CreateCount", createCount);
+        addStat("FreePoolSize", freePoolSize);
+        addStat("PoolSize", poolSize);
+        addStat("WaitingThreadCount", waitingThreadCount);
+        addStat("TimeoutCount", timeoutCount);
+        addStat("MatchFailureCount", matchFailureCount);
+    }
+
+    public String getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    public String getManagedConnectionFactory() {
+        return managedConnectionFactory;
+    }
+
+    public TimeStatistic getWaitTime() {
+        return waitTime;
+    }
+
+    public TimeStatistic getUseTime() {
+        return useTime;
+    }
+
+    public CountStatistic getCloseCount() {
+        return closeCount;
+    }
+
+    public CountStatistic getCreateCount() {
+        return createCount;
+    }
+
+    public BoundedRangeStatistic getFreePoolSize() {
+        return freePoolSize;
+    }
+
+    public BoundedRangeStatistic getPoolSize() {
+        return poolSize;
+    }
+
+    public RangeStatistic getWaitingThreadCount() {
+        return waitingThreadCount;
+    }
+
+    public CountStatistic getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    public CountStatistic getMatchFailureCount() {
+        return matchFailureCount;
+    }
+
+    /**
+     * Used to access the native implementation in order to call setters
+     */
+    public HistogramStatisticImpl getWaitTimeImpl() {
+        return waitTime;
+    }
+
+    /**
+     * Used to access the native implementation in order to call setters
+     */
+    public HistogramStatisticImpl getUseTimeImpl() {
+        return useTime;
+    }
+
+    /**
+     * Used to access the native implementation in order to call setters
+     */
+    public CountStatisticImpl getCloseCountImpl() {
+        return closeCount;
+    }
+
+    /**
+     * Used to access the native implementation in order to call setters
+     */
+    public CountStatisticImpl getCreateCountImpl() {
+        return createCount;
+    }
+
+    /**
+     * Used to access the native implementation in order to call setters
+     */
+    public BoundedRangeImpl getFreePoolSizeImpl() {
+        return freePoolSize;
+    }
+
+    /**
+     * Used to access the native implementation in order to call setters
+     */
+    public BoundedRangeImpl getPoolSizeImpl() {
+        return poolSize;
+    }
+
+    /**
+     * Used to access the native implementation in order to call setters
+     */
+    public RangeStatisticImpl getWaitingThreadCountImpl() {
+        return waitingThreadCount;
+    }
+
+    /**
+     * Used to access the native implementation in order to call setters
+     */
+    public CountStatisticImpl getTimeoutCountImpl() {
+        return timeoutCount;
+    }
+
+    /**
+     * Used to access the native implementation in order to call setters
+     */
+    public CountStatisticImpl getMatchFailureCountImpl() {
+        return matchFailureCount;
+    }
+}
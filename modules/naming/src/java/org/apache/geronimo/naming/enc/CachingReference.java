@@ -16,6 +16,7 @@
  */
 package org.apache.geronimo.naming.enc;
 
+import org.apache.geronimo.naming.reference.CachingGBeanReference;
 import org.apache.geronimo.naming.reference.SimpleReference;
 
 import javax.naming.NamingException;
@@ -31,7 +32,7 @@ public class CachingReference {
     private final String fullName;
     private final Reference reference;
     private final String className;
-    private Object value;
+    private volatile Object value;
 
     public CachingReference(String fullName, Reference reference) {
         this.fullName = fullName;
@@ -40,11 +41,19 @@ public class CachingReference {
     }
 
     public Object get() throws NamingException {
+        // a CachingGBeanReference keeps its content only while the target GBean runs
+        if (reference instanceof CachingGBeanReference) {
+            return resolveReference();
+        }
+        Object value = this.value;
+        if (value != null) {
+            return value;
+        }
         synchronized(lock) {
-            if (value == null) {
-                value = resolveReference();
+            if (this.value == null) {
+                this.value = resolveReference();
             }
-            return value;
+            return this.value;
         }
     }
 
@@ -0,0 +1,167 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.naming.reference;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import javax.management.ObjectName;
+
+import org.apache.geronimo.kernel.Kernel;
+import org.apache.geronimo.kernel.lifecycle.LifecycleAdapter;
+import org.apache.geronimo.kernel.lifecycle.LifecycleMonitor;
+
+/**
+ * A reference to a GBean that keeps the content it resolved until the target
+ * GBean stops, fails or is unloaded, so repeated lookups of the same name
+ * return the same object without going through the kernel again.  The
+ * lifecycle listener registered with the kernel only holds this reference
+ * weakly.  Listeners whose reference is gone are removed the next time any
+ * caching reference registers a listener, or on their next event.
+ *
+ * @version $Rev$ $Date$
+ */
+public abstract class CachingGBeanReference extends SimpleAwareReference {
+    /**
+     * ReferenceQueue that watches the weak references held by our listeners
+     */
+    private static final ReferenceQueue queue = new ReferenceQueue();
+
+    private transient volatile Resolved resolved;
+    private transient InvalidatingListener listener;
+    private transient int generation;
+
+    /**
+     * Gets the GBean whose lifecycle invalidates the resolved content.
+     */
+    public abstract ObjectName getTarget();
+
+    /**
+     * Resolves the content from the kernel, bypassing the cache.
+     */
+    protected abstract Object resolveContent() throws IllegalStateException;
+
+    public final Object getContent() throws IllegalStateException {
+        Kernel kernel = getKernel();
+        Resolved resolved = this.resolved;
+        if (resolved != null && resolved.kernel == kernel) {
+            return resolved.content;
+        }
+
+        // the listener is in place before we resolve, and a lifecycle event
+        // during the resolution keeps the result out of the cache
+        int generation;
+        synchronized (this) {
+            if (listener == null || listener.kernel != kernel) {
+                if (listener != null) {
+                    listener.remove();
+                }
+                processQueue();
+                listener = new InvalidatingListener(this, kernel);
+                kernel.getLifecycleMonitor().addLifecycleListener(listener, getTarget());
+            }
+            generation = this.generation;
+        }
+        Object content = resolveContent();
+        synchronized (this) {
+            if (generation == this.generation) {
+                this.resolved = new Resolved(kernel, content);
+            }
+        }
+        return content;
+    }
+
+    /**
+     * Drops the resolved content; the next lookup resolves it again.
+     */
+    public synchronized void invalidate() {
+        generation++;
+        resolved = null;
+    }
+
+    public boolean isResolved() {
+        return resolved != null;
+    }
+
+    private static void processQueue() {
+        ListenerReference listenerRef;
+        while ((listenerRef = (ListenerReference) queue.poll()) != null) {
+            listenerRef.listener.remove();
+        }
+    }
+
+    private static final class Resolved {
+        private final Kernel kernel;
+        private final Object content;
+
+        private Resolved(Kernel kernel, Object content) {
+            this.kernel = kernel;
+            this.content = content;
+        }
+    }
+
+    private static final class ListenerReference extends WeakReference {
+        private final InvalidatingListener listener;
+
+        private ListenerReference(CachingGBeanReference reference, InvalidatingListener listener) {
+            super(reference, queue);
+            this.listener = listener;
+        }
+    }
+
+    private static final class InvalidatingListener extends LifecycleAdapter {
+        private final ListenerReference reference;
+        private final Kernel kernel;
+
+        private InvalidatingListener(CachingGBeanReference reference, Kernel kernel) {
+            this.reference = new ListenerReference(reference, this);
+            this.kernel = kernel;
+        }
+
+        public void stopping(ObjectName objectName) {
+            invalidate();
+        }
+
+        public void stopped(ObjectName objectName) {
+            invalidate();
+        }
+
+        public void failed(ObjectName objectName) {
+            invalidate();
+        }
+
+        public void unloaded(ObjectName objectName) {
+            invalidate();
+        }
+
+        private void invalidate() {
+            CachingGBeanReference cachingReference = (CachingGBeanReference) reference.get();
+            if (cachingReference == null) {
+                remove();
+            } else {
+                cachingReference.invalidate();
+            }
+        }
+
+        private void remove() {
+            LifecycleMonitor lifecycleMonitor = kernel.getLifecycleMonitor();
+            if (lifecycleMonitor != null) {
+                lifecycleMonitor.removeLifecycleListener(this);
+            }
+        }
+    }
+}
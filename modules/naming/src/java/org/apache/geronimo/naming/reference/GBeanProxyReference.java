@@ -24,7 +24,7 @@ import org.apache.geronimo.kernel.proxy.ProxyManager;
 /**
  * @version $Rev$ $Date$
  */
-public class GBeanProxyReference extends SimpleAwareReference {
+public class GBeanProxyReference extends CachingGBeanReference {
     private final ObjectName target;
     private final Class type;
 
@@ -37,7 +37,11 @@ public class GBeanProxyReference extends SimpleAwareReference {
         return type.getName();
     }
 
-    public Object getContent() throws IllegalStateException {
+    public ObjectName getTarget() {
+        return target;
+    }
+
+    protected Object resolveContent() throws IllegalStateException {
         Kernel kernel = getKernel();
         // todo HACK: this is a very bad idea
         ProxyManager proxyManager = kernel.getProxyManager();
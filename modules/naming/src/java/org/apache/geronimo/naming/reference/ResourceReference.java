@@ -25,9 +25,10 @@ import org.apache.geronimo.kernel.Kernel;
 /**
  * @version $Rev$ $Date$
  */
-public class ResourceReference extends SimpleAwareReference {
+public class ResourceReference extends CachingGBeanReference {
     private final String containerId;
     private final Class iface;
+    private transient ObjectName target;
 
     public ResourceReference(String containerId, Class iface) {
         this.containerId = containerId;
@@ -38,15 +39,20 @@ public class ResourceReference extends SimpleAwareReference {
         return iface.getName();
     }
 
-    public Object getContent() {
-        Kernel kernel = getKernel();
-
-        ObjectName target = null;
-        try {
-            target = ObjectName.getInstance(containerId);
-        } catch (MalformedObjectNameException e) {
-            throw (IllegalArgumentException) new IllegalArgumentException("Invalid object name in jmxRefAddr: " + containerId).initCause(e);
+    public ObjectName getTarget() {
+        if (target == null) {
+            try {
+                target = ObjectName.getInstance(containerId);
+            } catch (MalformedObjectNameException e) {
+                throw (IllegalArgumentException) new IllegalArgumentException("Invalid object name in jmxRefAddr: " + containerId).initCause(e);
+            }
         }
+        return target;
+    }
+
+    protected Object resolveContent() {
+        Kernel kernel = getKernel();
+        ObjectName target = getTarget();
 
         Object proxy = null;
         try {
@@ -0,0 +1,140 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.naming.reference;
+
+import java.util.Collections;
+import javax.management.ObjectName;
+import javax.naming.Context;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.gbean.GBeanData;
+import org.apache.geronimo.gbean.GBeanInfo;
+import org.apache.geronimo.gbean.GBeanInfoBuilder;
+import org.apache.geronimo.kernel.Kernel;
+import org.apache.geronimo.kernel.KernelFactory;
+import org.apache.geronimo.naming.java.SimpleReadOnlyContext;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class CachingGBeanReferenceTest extends TestCase {
+    private Kernel kernel;
+    private ObjectName resourceName;
+    private ResourceReference reference;
+    private Context context;
+
+    public void testLookupResolvesOnce() throws Exception {
+        Object first = context.lookup("env/jdbc/resource");
+        assertTrue(reference.isResolved());
+        assertSame(first, context.lookup("env/jdbc/resource"));
+        assertSame(first, context.lookup("env/jdbc/resource"));
+        assertEquals(new Integer(1), kernel.getAttribute(resourceName, "resolveCount"));
+    }
+
+    public void testStopInvalidates() throws Exception {
+        Object first = context.lookup("env/jdbc/resource");
+        kernel.stopGBean(resourceName);
+        assertFalse(reference.isResolved());
+        try {
+            context.lookup("env/jdbc/resource");
+            fail("expected the lookup of a stopped resource to fail");
+        } catch (javax.naming.NamingException expected) {
+        }
+
+        kernel.startGBean(resourceName);
+        Object second = context.lookup("env/jdbc/resource");
+        assertNotSame(first, second);
+        assertSame(second, context.lookup("env/jdbc/resource"));
+    }
+
+    public void testUnloadInvalidates() throws Exception {
+        context.lookup("env/jdbc/resource");
+        kernel.stopGBean(resourceName);
+        kernel.unloadGBean(resourceName);
+        assertFalse(reference.isResolved());
+
+        loadResource();
+        context.lookup("env/jdbc/resource");
+        assertTrue(reference.isResolved());
+        kernel.stopGBean(resourceName);
+        assertFalse(reference.isResolved());
+    }
+
+    public void testNewKernelResolvesAgain() throws Exception {
+        context.lookup("env/jdbc/resource");
+        Kernel otherKernel = KernelFactory.newInstance().createKernel("test.other.kernel");
+        otherKernel.boot();
+        try {
+            reference.setKernel(otherKernel);
+            try {
+                context.lookup("env/jdbc/resource");
+                fail("expected the resource to be missing from the other kernel");
+            } catch (javax.naming.NamingException expected) {
+            }
+        } finally {
+            otherKernel.shutdown();
+        }
+    }
+
+    protected void setUp() throws Exception {
+        kernel = KernelFactory.newInstance().createKernel("test.kernel");
+        kernel.boot();
+        resourceName = ObjectName.getInstance("test:type=Resource,name=DataSource");
+        loadResource();
+
+        reference = new ResourceReference(resourceName.getCanonicalName(), Object.class);
+        reference.setKernel(kernel);
+        context = new SimpleReadOnlyContext(Collections.singletonMap("env/jdbc/resource", reference));
+    }
+
+    private void loadResource() throws Exception {
+        GBeanData gbeanData = new GBeanData(resourceName, MockResource.GBEAN_INFO);
+        kernel.loadGBean(gbeanData, getClass().getClassLoader());
+        kernel.startGBean(resourceName);
+    }
+
+    protected void tearDown() throws Exception {
+        kernel.shutdown();
+    }
+
+    public static class MockResource {
+        private int resolveCount;
+
+        public Object $getResource() {
+            resolveCount++;
+            return new Object();
+        }
+
+        public int getResolveCount() {
+            return resolveCount;
+        }
+
+        public static final GBeanInfo GBEAN_INFO;
+
+        static {
+            GBeanInfoBuilder infoBuilder = GBeanInfoBuilder.createStatic(MockResource.class);
+            infoBuilder.addAttribute("resolveCount", Integer.TYPE, false);
+            infoBuilder.addOperation("$getResource");
+            GBEAN_INFO = infoBuilder.getBeanInfo();
+        }
+
+        public static GBeanInfo getGBeanInfo() {
+            return GBEAN_INFO;
+        }
+    }
+}
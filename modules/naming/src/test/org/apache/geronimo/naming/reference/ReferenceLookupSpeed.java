@@ -0,0 +1,112 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.naming.reference;
+
+import java.util.HashMap;
+import java.util.Map;
+import javax.management.ObjectName;
+import javax.naming.Context;
+
+import org.apache.geronimo.gbean.GBeanData;
+import org.apache.geronimo.kernel.Kernel;
+import org.apache.geronimo.kernel.KernelFactory;
+import org.apache.geronimo.naming.java.SimpleReadOnlyContext;
+
+/**
+ * Measures java:comp/env lookup throughput of a ResourceReference and a
+ * GBeanProxyReference with their resolved content cached, against resolving
+ * them through the kernel on every lookup as before.
+ *
+ * usage: ReferenceLookupSpeed [lookups]
+ *
+ * @version $Rev$ $Date$
+ */
+public class ReferenceLookupSpeed {
+    public static void main(String[] args) throws Exception {
+        int lookups = args.length > 0 ? Integer.parseInt(args[0]) : 100000000;
+
+        Kernel kernel = KernelFactory.newInstance().createKernel("speed");
+        kernel.boot();
+        try {
+            ObjectName resourceName = ObjectName.getInstance("test:type=Resource,name=DataSource");
+            GBeanData gbeanData = new GBeanData(resourceName, CachingGBeanReferenceTest.MockResource.GBEAN_INFO);
+            kernel.loadGBean(gbeanData, ReferenceLookupSpeed.class.getClassLoader());
+            kernel.startGBean(resourceName);
+
+            Map bindings = new HashMap();
+            bindings.put("env/jdbc/cached", new ResourceReference(resourceName.getCanonicalName(), Object.class));
+            bindings.put("env/jdbc/uncached", new UncachedReference(new ResourceReference(resourceName.getCanonicalName(), Object.class)));
+            bindings.put("env/gbean/cached", new GBeanProxyReference(resourceName, Runnable.class));
+            bindings.put("env/gbean/uncached", new UncachedReference(new GBeanProxyReference(resourceName, Runnable.class)));
+            SimpleReadOnlyContext context = new SimpleReadOnlyContext(bindings);
+            context.setKernel(kernel);
+            context.setClassLoader(ReferenceLookupSpeed.class.getClassLoader());
+
+            System.out.println("Reference Lookup Timings");
+            System.out.println("-------------------------------------");
+            lookupTimings(context, lookups);
+            System.out.println();
+            System.out.println();
+            System.out.println();
+            lookupTimings(context, lookups);
+        } finally {
+            kernel.shutdown();
+        }
+    }
+
+    private static void lookupTimings(Context context, int lookups) throws Exception {
+        // the uncached paths are much slower, so they get fewer lookups
+        printResults("ResourceReference uncached", lookup(context, "env/jdbc/uncached", lookups / 25), lookups / 25);
+        printResults("ResourceReference cached", lookup(context, "env/jdbc/cached", lookups), lookups);
+        printResults("GBeanProxyReference uncached", lookup(context, "env/gbean/uncached", lookups / 1000), lookups / 1000);
+        printResults("GBeanProxyReference cached", lookup(context, "env/gbean/cached", lookups), lookups);
+    }
+
+    private static long lookup(Context context, String name, int lookups) throws Exception {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < lookups; i++) {
+            context.lookup(name);
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    private static void printResults(String invocationType, long elapsed, int lookups) {
+        if (elapsed < 400) {
+            System.out.println(invocationType + ": elapse time to short to calculate throughput (total " + elapsed + "ms)");
+        } else {
+            System.out.println(invocationType + ": " + (lookups * 1000L / elapsed) + " lookups/s  (total " + elapsed + "ms)");
+        }
+    }
+
+    /**
+     * Resolves the wrapped reference on every lookup, like the references did
+     * before they cached their content.
+     */
+    private static class UncachedReference extends SimpleAwareReference {
+        private final CachingGBeanReference reference;
+
+        public UncachedReference(CachingGBeanReference reference) {
+            this.reference = reference;
+        }
+
+        public Object getContent() {
+            reference.setKernel(getKernel());
+            return reference.resolveContent();
+        }
+    }
+}
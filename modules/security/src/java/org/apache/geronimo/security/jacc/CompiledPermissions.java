@@ -0,0 +1,406 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.security.jacc;
+
+import java.security.Permission;
+import java.security.PermissionCollection;
+import java.security.Permissions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import javax.security.jacc.WebResourcePermission;
+import javax.security.jacc.WebUserDataPermission;
+
+
+/**
+ * A read only collection of permissions compiled when a policy configuration is
+ * committed.  WebResourcePermissions and WebUserDataPermissions are indexed by the
+ * first URL pattern of their name in exact, path-prefix, extension and default
+ * tables, and their actions are kept as method and transport bit masks.  The
+ * qualifying patterns of each name are indexed the same way, so checking the
+ * permission of a request costs a walk over its path instead of a comparison
+ * with every permission granted and every pattern qualifying it.  All other
+ * permissions are checked by a plain Permissions collection.
+ * <p/>
+ * The decisions are those of the JACC permission classes themselves: a granted
+ * permission implies a checked one when its first URL pattern matches the checked
+ * pattern, none of its qualifying patterns does, and its methods and transport
+ * include the checked ones.  Checked permissions with a qualified name are
+ * compared with every indexed permission.  The actions of a WebUserDataPermission
+ * without a transport read the same whether it was created with NONE or with no
+ * transport at all, so for those the permission itself decides once the tables
+ * have found it.
+ *
+ * @version $Rev$ $Date$
+ */
+final class CompiledPermissions extends PermissionCollection {
+    private final static String[] HTTP_METHODS = {"GET", "POST", "PUT", "DELETE", "HEAD", "OPTIONS", "TRACE"};
+    private final static int ALL_METHODS = 0x7F;
+    private final static int INTEGRAL = 0x01;
+    private final static int CONFIDENTIAL = 0x02;
+    private final static int NONE = 0x03;
+
+    private final List permissions = new ArrayList();
+    private final Permissions others = new Permissions();
+    private final URLPatternIndex resourceIndex = new URLPatternIndex(false);
+    private final URLPatternIndex userDataIndex = new URLPatternIndex(true);
+
+    CompiledPermissions(PermissionCollection source) {
+        for (Enumeration e = source.elements(); e.hasMoreElements();) {
+            Permission permission = (Permission) e.nextElement();
+            permissions.add(permission);
+
+            Class type = permission.getClass();
+            if (type == WebResourcePermission.class) {
+                if (resourceIndex.add(permission)) continue;
+            } else if (type == WebUserDataPermission.class) {
+                if (userDataIndex.add(permission)) continue;
+            }
+            others.add(permission);
+        }
+        setReadOnly();
+    }
+
+    public void add(Permission permission) {
+        throw new SecurityException("attempt to add a Permission to a readonly PermissionCollection");
+    }
+
+    public boolean implies(Permission permission) {
+        Class type = permission.getClass();
+        if (type == WebResourcePermission.class) {
+            if (resourceIndex.implies(permission)) return true;
+        } else if (type == WebUserDataPermission.class) {
+            if (userDataIndex.implies(permission)) return true;
+        }
+        return others.implies(permission);
+    }
+
+    public Enumeration elements() {
+        return Collections.enumeration(permissions);
+    }
+
+    /**
+     * Whether the URL pattern <code>base</code> matches <code>test</code>, as
+     * defined for the URLPatternSpec of the JACC web permissions.
+     */
+    static boolean matches(String base, String test) {
+        if (base.equals(test)) return true;
+
+        if (base.equals("/") || base.equals("/*")) return true;
+
+        if (base.charAt(0) == '/' && base.endsWith("/*")) {
+            int length = base.length() - 2;
+            return test.regionMatches(0, base, 0, length) && (test.length() == length || test.charAt(length) == '/');
+        }
+
+        if (base.charAt(0) == '*') return test.endsWith(base.substring(1));
+
+        return false;
+    }
+
+    /**
+     * Parses the actions of a web permission into its method mask in the low
+     * bits and its transport above them.
+     *
+     * @return the parsed actions, or -1 if they hold something we do not index
+     */
+    static int parseActions(String actions, boolean userData) {
+        int separator = actions == null ? -1 : actions.indexOf(':');
+        int methodsEnd = separator < 0 ? (actions == null ? 0 : actions.length()) : separator;
+
+        int mask = 0;
+        if (methodsEnd == 0) {
+            mask = ALL_METHODS;
+        } else {
+            for (int start = 0; start <= methodsEnd;) {
+                int end = actions.indexOf(',', start);
+                if (end < 0 || end > methodsEnd) end = methodsEnd;
+                int method = 0;
+                for (int i = 0; i < HTTP_METHODS.length; i++) {
+                    if (end - start == HTTP_METHODS[i].length() && actions.regionMatches(start, HTTP_METHODS[i], 0, end - start)) {
+                        method = 1 << i;
+                        break;
+                    }
+                }
+                if (method == 0) return -1;
+                mask |= method;
+                start = end + 1;
+            }
+        }
+
+        int transport = 0;
+        if (userData) {
+            if (separator < 0) {
+                transport = NONE;
+            } else {
+                String transportType = actions.substring(separator + 1);
+                if ("NONE".equals(transportType)) {
+                    transport = NONE;
+                } else if ("INTEGRAL".equals(transportType)) {
+                    transport = INTEGRAL;
+                } else if ("CONFIDENTIAL".equals(transportType)) {
+                    transport = CONFIDENTIAL;
+                } else {
+                    return -1;
+                }
+            }
+        } else if (separator >= 0) {
+            return -1;
+        }
+        return mask | (transport << HTTP_METHODS.length);
+    }
+
+    /**
+     * Whether the actions of a WebUserDataPermission leave its transport to the
+     * way it was created.
+     */
+    private static boolean isTransportImplicit(String actions) {
+        return actions == null || actions.indexOf(':') < 0;
+    }
+
+    private static String getFirstPattern(String name) {
+        return name.length() == 0 ? "/" : name;
+    }
+
+    /**
+     * The web permissions of one class, indexed by the first URL pattern of their name.
+     */
+    private static final class URLPatternIndex {
+        private final boolean userData;
+        private final List permissions = new ArrayList();
+        private final HashMap exact = new HashMap();
+        private final Node prefixes = new Node();
+        private final HashMap extensions = new HashMap();
+        private final List defaults = new ArrayList();
+
+        URLPatternIndex(boolean userData) {
+            this.userData = userData;
+        }
+
+        boolean add(Permission permission) {
+            int actions = parseActions(permission.getActions(), userData);
+            if (actions < 0) return false;
+
+            String[] patterns = getFirstPattern(permission.getName()).split(":", -1);
+            String first = patterns[0];
+            URLPatternSet qualifiers = new URLPatternSet();
+            for (int i = 1; i < patterns.length; i++) {
+                qualifiers.add(patterns[i]);
+            }
+            Entry entry = new Entry(permission, first, qualifiers, actions, userData && isTransportImplicit(permission.getActions()));
+
+            if (first.equals("/") || first.equals("/*")) {
+                defaults.add(entry);
+            } else if (first.charAt(0) == '/' && first.endsWith("/*")) {
+                prefixes.getNode(first).entries.add(entry);
+            } else if (first.startsWith("*.")) {
+                add(extensions, first.substring(1), entry);
+            } else if (first.charAt(0) == '*') {
+                // a suffix we can't find by its leading dot is tried on every path
+                defaults.add(entry);
+            } else {
+                add(exact, first, entry);
+            }
+            permissions.add(permission);
+            return true;
+        }
+
+        boolean implies(Permission permission) {
+            if (permissions.isEmpty()) return false;
+
+            String name = getFirstPattern(permission.getName());
+            int actions = parseActions(permission.getActions(), userData);
+            if (actions < 0 || name.indexOf(':') >= 0) {
+                for (int i = 0; i < permissions.size(); i++) {
+                    if (((Permission) permissions.get(i)).implies(permission)) return true;
+                }
+                return false;
+            }
+
+            boolean transportImplicit = userData && isTransportImplicit(permission.getActions());
+            if (transportImplicit) actions &= ALL_METHODS;
+
+            if (implies((List) exact.get(name), name, actions, permission, transportImplicit)) return true;
+
+            if (name.charAt(0) == '/') {
+                Node node = prefixes;
+                for (int start = 1; ;) {
+                    int end = name.indexOf('/', start);
+                    if (end < 0) end = name.length();
+                    node = node.getChild(name.substring(start, end), false);
+                    if (node == null) break;
+                    if (implies(node.entries, name, actions, permission, transportImplicit)) return true;
+                    if (end == name.length()) break;
+                    start = end + 1;
+                }
+            }
+
+            if (!extensions.isEmpty()) {
+                for (int dot = name.indexOf('.'); dot >= 0; dot = name.indexOf('.', dot + 1)) {
+                    if (implies((List) extensions.get(name.substring(dot)), name, actions, permission, transportImplicit)) return true;
+                }
+            }
+
+            for (int i = 0; i < defaults.size(); i++) {
+                Entry entry = (Entry) defaults.get(i);
+                if (matches(entry.first, name) && entry.implies(name, actions, permission, transportImplicit)) return true;
+            }
+            return false;
+        }
+
+        private static boolean implies(List entries, String name, int actions, Permission permission, boolean transportImplicit) {
+            if (entries == null) return false;
+            for (int i = 0; i < entries.size(); i++) {
+                if (((Entry) entries.get(i)).implies(name, actions, permission, transportImplicit)) return true;
+            }
+            return false;
+        }
+
+        private static void add(HashMap table, String key, Entry entry) {
+            List entries = (List) table.get(key);
+            if (entries == null) {
+                entries = new ArrayList();
+                table.put(key, entries);
+            }
+            entries.add(entry);
+        }
+    }
+
+    /**
+     * A node of the path-prefix trie, one per path segment.
+     */
+    private static final class Node {
+        private final HashMap children = new HashMap();
+        private final List entries = new ArrayList();
+        private boolean prefix;
+
+        Node getChild(String segment, boolean create) {
+            Node child = (Node) children.get(segment);
+            if (child == null && create) {
+                child = new Node();
+                children.put(segment, child);
+            }
+            return child;
+        }
+
+        /**
+         * @param pattern a path-prefix pattern
+         * @return the node for the prefix of the pattern, created as needed
+         */
+        Node getNode(String pattern) {
+            Node node = this;
+            String prefix = pattern.substring(0, pattern.length() - 2);
+            for (int start = 1; ;) {
+                int end = prefix.indexOf('/', start);
+                if (end < 0) end = prefix.length();
+                node = node.getChild(prefix.substring(start, end), true);
+                if (end == prefix.length()) return node;
+                start = end + 1;
+            }
+        }
+    }
+
+    /**
+     * The qualifying patterns of a permission name, indexed like the first patterns.
+     */
+    private static final class URLPatternSet {
+        private boolean matchesAll;
+        private final HashSet exact = new HashSet();
+        private final Node prefixes = new Node();
+        private final HashSet extensions = new HashSet();
+        private final List others = new ArrayList();
+        private boolean empty = true;
+
+        void add(String pattern) {
+            empty = false;
+            if (pattern.equals("/") || pattern.equals("/*")) {
+                matchesAll = true;
+            } else if (pattern.charAt(0) == '/' && pattern.endsWith("/*")) {
+                prefixes.getNode(pattern).prefix = true;
+            } else if (pattern.startsWith("*.")) {
+                extensions.add(pattern.substring(1));
+            } else if (pattern.charAt(0) == '*') {
+                others.add(pattern);
+            } else {
+                exact.add(pattern);
+            }
+        }
+
+        /**
+         * Whether any of the patterns matches <code>name</code>.
+         */
+        boolean matches(String name) {
+            if (empty) return false;
+            if (matchesAll || exact.contains(name)) return true;
+
+            if (name.charAt(0) == '/') {
+                Node node = prefixes;
+                for (int start = 1; ;) {
+                    int end = name.indexOf('/', start);
+                    if (end < 0) end = name.length();
+                    node = node.getChild(name.substring(start, end), false);
+                    if (node == null) break;
+                    if (node.prefix) return true;
+                    if (end == name.length()) break;
+                    start = end + 1;
+                }
+            }
+
+            if (!extensions.isEmpty()) {
+                for (int dot = name.indexOf('.'); dot >= 0; dot = name.indexOf('.', dot + 1)) {
+                    if (extensions.contains(name.substring(dot))) return true;
+                }
+            }
+
+            for (int i = 0; i < others.size(); i++) {
+                if (CompiledPermissions.matches((String) others.get(i), name)) return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class Entry {
+        private final Permission permission;
+        private final String first;
+        private final URLPatternSet qualifiers;
+        private final int actions;
+        private final boolean transportImplicit;
+
+        Entry(Permission permission, String first, URLPatternSet qualifiers, int actions, boolean transportImplicit) {
+            this.permission = permission;
+            this.first = first;
+            this.qualifiers = qualifiers;
+            this.actions = actions;
+            this.transportImplicit = transportImplicit;
+        }
+
+        /**
+         * The first pattern is known to match; check the methods, the transport
+         * and that no qualifier carves the path out.
+         */
+        boolean implies(String name, int checkedActions, Permission checked, boolean checkedTransportImplicit) {
+            if ((actions & checkedActions) != checkedActions) return false;
+            if (qualifiers.matches(name)) return false;
+            if (transportImplicit || checkedTransportImplicit) return permission.implies(checked);
+            return true;
+        }
+    }
+}
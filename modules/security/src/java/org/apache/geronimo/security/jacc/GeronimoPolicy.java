@@ -66,6 +66,10 @@ public class GeronimoPolicy extends Policy {
     }
 
     public void refresh() {
+        GeronimoPolicyConfigurationFactory factory = GeronimoPolicyConfigurationFactory.getSingleton();
+        if (factory != null) {
+            factory.refresh();
+        }
     }
 
     public boolean implies(ProtectionDomain domain, Permission permission) {
@@ -35,4 +35,9 @@ public interface GeronimoPolicyConfiguration extends PolicyConfiguration {
     void open(boolean remove);
 
     void setPrincipalRoleMapping(Map principalRoleMap) throws PolicyContextException;
+
+    /**
+     * Drops any decisions cached from the current policy statements.
+     */
+    void refresh();
 }
\ No newline at end of file
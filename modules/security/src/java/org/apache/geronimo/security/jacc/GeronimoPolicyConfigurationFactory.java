@@ -17,7 +17,9 @@
 
 package org.apache.geronimo.security.jacc;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import javax.security.jacc.PolicyConfiguration;
 import javax.security.jacc.PolicyConfigurationFactory;
@@ -88,6 +90,16 @@ public class GeronimoPolicyConfigurationFactory extends PolicyConfigurationFacto
         return configuration.inService();
     }
 
+    /**
+     * Refreshes every policy configuration, dropping their cached decisions.
+     */
+    public void refresh() {
+        for (Iterator iterator = new ArrayList(configurations.values()).iterator(); iterator.hasNext();) {
+            GeronimoPolicyConfiguration configuration = (GeronimoPolicyConfiguration) iterator.next();
+            configuration.refresh();
+        }
+    }
+
     static GeronimoPolicyConfigurationFactory getSingleton() {
         return singleton;
     }
@@ -0,0 +1,196 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.security.jacc;
+
+import java.security.Permission;
+import java.security.Principal;
+import javax.security.jacc.WebResourcePermission;
+import javax.security.jacc.WebRoleRefPermission;
+import javax.security.jacc.WebUserDataPermission;
+
+import EDU.oswego.cs.dl.util.concurrent.ConcurrentHashMap;
+import EDU.oswego.cs.dl.util.concurrent.SynchronizedLong;
+
+/**
+ * Remembers the decisions of a policy configuration for web permissions.  A
+ * decision is keyed by the permission, whose equality covers the canonical
+ * URL pattern, the HTTP methods and the transport, and by the principals the
+ * configuration grants permissions to; principals that play no part in the
+ * decision are left out of the key, so users in the same roles share entries.
+ * <p/>
+ * The owner clears the cache whenever its permissions change.  A decision is
+ * only stored if the cache was not cleared since the owner read the generation
+ * before computing it, so a decision made on the old permissions cannot
+ * survive a clear.  Since request
+ * URIs are unbounded, the cache is cleared as well when it grows past its
+ * maximum size.
+ *
+ * @version $Rev$ $Date$
+ */
+public class PermissionDecisionCache {
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    private final ConcurrentHashMap decisions = new ConcurrentHashMap();
+    private final int maxSize;
+    private final SynchronizedLong hits = new SynchronizedLong(0);
+    private final SynchronizedLong misses = new SynchronizedLong(0);
+    // incremented by clear, holding the lock on this
+    private volatile int generation;
+
+    public PermissionDecisionCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public PermissionDecisionCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Web permissions are final classes with value equality and are checked
+     * on every request, so they are the ones worth caching.
+     */
+    public static boolean isCacheable(Permission permission) {
+        return permission instanceof WebResourcePermission
+                || permission instanceof WebUserDataPermission
+                || permission instanceof WebRoleRefPermission;
+    }
+
+    /**
+     * @return the cached decision, or null if there is none.
+     */
+    public Boolean get(Permission permission, Principal[] principals, int principalCount) {
+        Boolean decision = (Boolean) decisions.get(new DecisionKey(permission, principals, principalCount, false));
+        if (decision == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return decision;
+    }
+
+    /**
+     * Read before computing a decision, and passed to put.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Stores the decision, unless the cache was cleared since the generation was read.
+     */
+    public void put(Permission permission, Principal[] principals, int principalCount, boolean decision, int generation) {
+        DecisionKey key = new DecisionKey(permission, principals, principalCount, true);
+        synchronized (this) {
+            if (generation != this.generation) {
+                return;
+            }
+            if (decisions.size() >= maxSize) {
+                decisions.clear();
+            }
+            decisions.put(key, decision ? Boolean.TRUE : Boolean.FALSE);
+        }
+    }
+
+    public synchronized void clear() {
+        generation++;
+        decisions.clear();
+    }
+
+    public int getSize() {
+        return decisions.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the share of lookups answered from the cache, 0 before the first lookup.
+     */
+    public double getHitRatio() {
+        long hits = this.hits.get();
+        long total = hits + misses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * The principals are a set, in the first principalCount slots of the array.
+     */
+    private static final class DecisionKey {
+        private final Permission permission;
+        private final Principal[] principals;
+        private final int principalCount;
+        private final int hashCode;
+
+        private DecisionKey(Permission permission, Principal[] principals, int principalCount, boolean copy) {
+            this.permission = permission;
+            if (copy) {
+                this.principals = new Principal[principalCount];
+                System.arraycopy(principals, 0, this.principals, 0, principalCount);
+            } else {
+                this.principals = principals;
+            }
+            this.principalCount = principalCount;
+            int hashCode = permission.hashCode();
+            for (int i = 0; i < principalCount; i++) {
+                hashCode += 31 * principals[i].hashCode();
+            }
+            this.hashCode = hashCode;
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(Object object) {
+            if (this == object) {
+                return true;
+            }
+            if (!(object instanceof DecisionKey)) {
+                return false;
+            }
+            DecisionKey other = (DecisionKey) object;
+            if (hashCode != other.hashCode || principalCount != other.principalCount || !permission.equals(other.permission)) {
+                return false;
+            }
+            for (int i = 0; i < principalCount; i++) {
+                if (!other.contains(principals[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean contains(Principal principal) {
+            for (int i = 0; i < principalCount; i++) {
+                if (principals[i].equals(principal)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
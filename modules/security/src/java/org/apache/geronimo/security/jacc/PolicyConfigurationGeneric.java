@@ -48,10 +48,23 @@ public class PolicyConfigurationGeneric implements GeronimoPolicyConfiguration {
     private Permissions excluded = null;
 
     private final HashMap principalPermissionsMap = new HashMap();
+    private final PermissionDecisionCache decisionCache;
+
+    private PermissionCollection compiledUnchecked = null;
+    private PermissionCollection compiledExcluded = null;
+    private final HashMap compiledPrincipalPermissionsMap = new HashMap();
 
     PolicyConfigurationGeneric(String contextID) {
+        this(contextID, PermissionDecisionCache.DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param decisionCacheSize maximum number of cached decisions, 0 to check every permission
+     */
+    PolicyConfigurationGeneric(String contextID, int decisionCacheSize) {
         this.contextID = contextID;
         this.state = OPEN;
+        this.decisionCache = decisionCacheSize > 0 ? new PermissionDecisionCache(decisionCacheSize) : null;
     }
 
     public String getContextID() throws PolicyContextException {
@@ -59,18 +72,43 @@ public class PolicyConfigurationGeneric implements GeronimoPolicyConfiguration {
     }
 
     public boolean implies(ProtectionDomain domain, Permission permission) {
+        Principal[] principals = domain.getPrincipals();
+        if (decisionCache == null || !PermissionDecisionCache.isCacheable(permission)) {
+            return implies(principals, principals.length, permission);
+        }
+
+        // read before the permissions, so a decision on permissions that change meanwhile is not cached
+        int generation = decisionCache.getGeneration();
+
+        // only the principals we have permissions for take part in the decision
+        Principal[] grantedPrincipals = new Principal[principals.length];
+        int grantedCount = 0;
+        for (int i = 0; i < principals.length; i++) {
+            if (principalPermissionsMap.containsKey(principals[i])) {
+                grantedPrincipals[grantedCount++] = principals[i];
+            }
+        }
 
-        if (excluded != null && excluded.implies(permission)) return false;
+        Boolean decision = decisionCache.get(permission, grantedPrincipals, grantedCount);
+        if (decision != null) return decision.booleanValue();
 
-        if (unchecked != null && unchecked.implies(permission)) return true;
+        boolean implies = implies(grantedPrincipals, grantedCount, permission);
+        decisionCache.put(permission, grantedPrincipals, grantedCount, implies, generation);
+        return implies;
+    }
 
-        Principal[] principals = domain.getPrincipals();
-        if (principals.length == 0) return false;
+    private boolean implies(Principal[] principals, int principalCount, Permission permission) {
 
-        for (int i = 0; i < principals.length; i++) {
+        if (compiledExcluded != null && compiledExcluded.implies(permission)) return false;
+
+        if (compiledUnchecked != null && compiledUnchecked.implies(permission)) return true;
+
+        if (principalCount == 0) return false;
+
+        for (int i = 0; i < principalCount; i++) {
             Principal principal = principals[i];
 
-            Permissions permissions = (Permissions) principalPermissionsMap.get(principal);
+            PermissionCollection permissions = (PermissionCollection) compiledPrincipalPermissionsMap.get(principal);
 
             if (permissions != null && permissions.implies(permission)) return true;
         }
@@ -161,6 +199,7 @@ public class PolicyConfigurationGeneric implements GeronimoPolicyConfiguration {
 
     public void delete() throws PolicyContextException {
         state = DELETED;
+        clearDecisionCache();
     }
 
     public void commit() throws PolicyContextException {
@@ -186,9 +225,24 @@ public class PolicyConfigurationGeneric implements GeronimoPolicyConfiguration {
             }
 
         }
+        compile();
+        clearDecisionCache();
         state = IN_SERVICE;
     }
 
+    /**
+     * Indexes the committed permissions for checking; see {@link CompiledPermissions}.
+     */
+    private void compile() {
+        compiledUnchecked = unchecked == null ? null : new CompiledPermissions(unchecked);
+        compiledExcluded = excluded == null ? null : new CompiledPermissions(excluded);
+        compiledPrincipalPermissionsMap.clear();
+        for (Iterator principalEntries = principalPermissionsMap.entrySet().iterator(); principalEntries.hasNext(); ) {
+            Map.Entry principalEntry = (Map.Entry) principalEntries.next();
+            compiledPrincipalPermissionsMap.put(principalEntry.getKey(), new CompiledPermissions((Permissions) principalEntry.getValue()));
+        }
+    }
+
     public boolean inService() throws PolicyContextException {
         return (state == IN_SERVICE);
     }
@@ -205,8 +259,29 @@ public class PolicyConfigurationGeneric implements GeronimoPolicyConfiguration {
             unchecked = null;
             excluded = null;
             principalPermissionsMap.clear();
+            compiledUnchecked = null;
+            compiledExcluded = null;
+            compiledPrincipalPermissionsMap.clear();
         }
         state = OPEN;
+        clearDecisionCache();
+    }
+
+    public void refresh() {
+        clearDecisionCache();
+    }
+
+    private void clearDecisionCache() {
+        if (decisionCache != null) {
+            decisionCache.clear();
+        }
+    }
+
+    /**
+     * @return the cache of decisions on web permissions, or null if caching is disabled.
+     */
+    public PermissionDecisionCache getDecisionCache() {
+        return decisionCache;
     }
 
     int getState() {
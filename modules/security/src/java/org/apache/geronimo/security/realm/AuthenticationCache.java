@@ -0,0 +1,291 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.security.realm;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.security.auth.Subject;
+
+import EDU.oswego.cs.dl.util.concurrent.ConcurrentHashMap;
+import org.apache.geronimo.security.ContextManager;
+
+
+/**
+ * Remembers the subjects the web containers obtained by logging in to a security
+ * realm, so a client that sends the same credentials with every request (BASIC
+ * or CLIENT-CERT authentication) does not run the login module chain each time.
+ * A cached subject is used until it is older than the timeout; the least recently
+ * used subjects are dropped once the cache holds its maximum number of entries.
+ * Only successful logins are cached, and only a salted digest of the credentials
+ * is kept.  A cached subject is no longer used once it is unregistered from the
+ * ContextManager, as happens when its login session expires on the server.
+ * <p/>
+ * Clients logging in with the same credentials share the cached subject, so a web
+ * container must not unregister a subject on logout while it is still cached.
+ * <p/>
+ * Each GenericSecurityRealm registers its cache under its realm name while it is
+ * running, which is the name the web containers use for their login contexts.  The
+ * cache is disabled while its timeout or its maximum size is 0.
+ *
+ * @version $Rev$ $Date$
+ */
+public class AuthenticationCache {
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private static final Map caches = new ConcurrentHashMap();
+
+    private final byte[] salt = new byte[16];
+    private final LinkedHashMap entries = new LinkedHashMap(16, 0.75f, true);
+    private long timeoutMilliseconds;
+    private int maxSize;
+    private long hitCount;
+    private long missCount;
+
+    public AuthenticationCache(long timeoutMilliseconds, int maxSize) {
+        this.timeoutMilliseconds = timeoutMilliseconds;
+        this.maxSize = maxSize;
+        new SecureRandom().nextBytes(salt);
+    }
+
+    /**
+     * @return the cache of the running security realm with this name, or null if there is none
+     */
+    public static AuthenticationCache getCache(String realmName) {
+        if (realmName == null) return null;
+        return (AuthenticationCache) caches.get(realmName);
+    }
+
+    static void register(String realmName, AuthenticationCache cache) {
+        synchronized (caches) {
+            caches.put(realmName, cache);
+        }
+    }
+
+    static void unregister(String realmName, AuthenticationCache cache) {
+        synchronized (caches) {
+            if (caches.get(realmName) == cache) {
+                caches.remove(realmName);
+            }
+        }
+        cache.invalidate();
+    }
+
+    public synchronized long getTimeoutMilliseconds() {
+        return timeoutMilliseconds;
+    }
+
+    /**
+     * Applies to the subjects already cached too.
+     */
+    public synchronized void setTimeoutMilliseconds(long timeoutMilliseconds) {
+        this.timeoutMilliseconds = timeoutMilliseconds;
+        if (!isEnabled()) {
+            entries.clear();
+        }
+    }
+
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        trim();
+    }
+
+    public synchronized boolean isEnabled() {
+        return timeoutMilliseconds > 0 && maxSize > 0;
+    }
+
+    /**
+     * Creates the key under which a login with these credentials is cached.  This
+     * must be called before the login, which may clear the credentials.
+     *
+     * @param username    the name the client logs in with
+     * @param credentials a password as a String or char[], or an X509Certificate chain
+     * @return the key, or null if the cache is disabled or the credentials can't be cached
+     */
+    public Object createKey(String username, Object credentials) {
+        if (username == null || !isEnabled()) return null;
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(salt);
+            if (credentials instanceof char[]) {
+                update(digest, (char[]) credentials);
+            } else if (credentials instanceof String) {
+                update(digest, ((String) credentials).toCharArray());
+            } else if (credentials instanceof X509Certificate[] && ((X509Certificate[]) credentials).length > 0) {
+                digest.update(((X509Certificate[]) credentials)[0].getEncoded());
+            } else {
+                return null;
+            }
+            return new CredentialKey(username, digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        } catch (CertificateEncodingException e) {
+            return null;
+        }
+    }
+
+    private static void update(MessageDigest digest, char[] password) {
+        for (int i = 0; i < password.length; i++) {
+            digest.update((byte) (password[i] >> 8));
+            digest.update((byte) password[i]);
+        }
+    }
+
+    /**
+     * @param key a key from {@link #createKey}, may be null
+     * @return the subject of an earlier login with the same credentials, or null
+     */
+    public synchronized Subject get(Object key) {
+        if (key == null) return null;
+
+        Entry entry = (Entry) entries.get(key);
+        if (entry != null && System.currentTimeMillis() - entry.created >= timeoutMilliseconds) {
+            entries.remove(key);
+            entry = null;
+        }
+        if (entry != null && ContextManager.getSubjectId(entry.subject) == null) {
+            // the server expired the login
+            entries.remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.subject;
+    }
+
+    /**
+     * Caches the subject of a successful login.
+     *
+     * @param key a key from {@link #createKey}, may be null
+     */
+    public synchronized void put(Object key, Subject subject) {
+        if (key == null || !isEnabled()) return;
+
+        entries.put(key, new Entry(subject, System.currentTimeMillis()));
+        trim();
+    }
+
+    private void trim() {
+        for (Iterator iterator = entries.values().iterator(); entries.size() > maxSize && iterator.hasNext();) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Forgets all cached subjects, so every client logs in again.
+     */
+    public synchronized void invalidate() {
+        entries.clear();
+    }
+
+    /**
+     * Forgets the cached subjects of one user, e.g. after the password was changed.
+     */
+    public synchronized void invalidate(String username) {
+        for (Iterator iterator = entries.keySet().iterator(); iterator.hasNext();) {
+            CredentialKey key = (CredentialKey) iterator.next();
+            if (key.username.equals(username)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Forgets a subject that is logged out.
+     */
+    public synchronized void invalidate(Subject subject) {
+        for (Iterator iterator = entries.values().iterator(); iterator.hasNext();) {
+            Entry entry = (Entry) iterator.next();
+            if (entry.subject == subject) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return whether the subject may still be handed to clients logging in
+     */
+    public synchronized boolean isCached(Subject subject) {
+        for (Iterator iterator = entries.values().iterator(); iterator.hasNext();) {
+            if (((Entry) iterator.next()).subject == subject) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    private static final class CredentialKey {
+        private final String username;
+        private final byte[] digest;
+        private final int hashCode;
+
+        CredentialKey(String username, byte[] digest) {
+            this.username = username;
+            this.digest = digest;
+            this.hashCode = username.hashCode() ^ (digest[0] << 24 | (digest[1] & 0xFF) << 16 | (digest[2] & 0xFF) << 8 | (digest[3] & 0xFF));
+        }
+
+        public boolean equals(Object obj) {
+            if (obj == this) return true;
+            if (!(obj instanceof CredentialKey)) return false;
+            CredentialKey other = (CredentialKey) obj;
+            return username.equals(other.username) && Arrays.equals(digest, other.digest);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class Entry {
+        private final Subject subject;
+        private final long created;
+
+        Entry(Subject subject, long created) {
+            this.subject = subject;
+            this.created = created;
+        }
+    }
+}
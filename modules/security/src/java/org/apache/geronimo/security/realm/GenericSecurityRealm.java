@@ -26,6 +26,7 @@ import java.util.Set;
 
 import org.apache.geronimo.gbean.GBeanInfo;
 import org.apache.geronimo.gbean.GBeanInfoBuilder;
+import org.apache.geronimo.gbean.GBeanLifecycle;
 import org.apache.geronimo.j2ee.j2eeobjectnames.NameFactory;
 import org.apache.geronimo.kernel.Kernel;
 import org.apache.geronimo.security.deploy.PrincipalInfo;
@@ -55,10 +56,14 @@ import org.apache.geronimo.system.serverinfo.ServerInfo;
  * </pre>
  * These options can be safely ignored by login modules that don't need them
  * (such as any custom LoginModules you may already have lying around).
+ * <p/>
+ * While it is running the realm provides an {@link AuthenticationCache} to the
+ * web containers logging in to it.  The cache is disabled until
+ * authenticationCacheTimeoutMilliseconds is set.
  *
  * @version $Rev$ $Date$
  */
-public class GenericSecurityRealm implements SecurityRealm, ConfigurationEntryFactory {
+public class GenericSecurityRealm implements SecurityRealm, ConfigurationEntryFactory, GBeanLifecycle {
 
     private final JaasLoginServiceMBean loginService;
     private final String realmName;
@@ -71,6 +76,7 @@ public class GenericSecurityRealm implements SecurityRealm, ConfigurationEntryFa
     private final boolean restrictPrincipalsToServer;
     private final boolean wrapPrincipals;
     private final JaasLoginModuleUse loginModuleUse;
+    private final AuthenticationCache authenticationCache = new AuthenticationCache(0, AuthenticationCache.DEFAULT_MAX_SIZE);
 
     public GenericSecurityRealm(String realmName,
                                 JaasLoginModuleUse loginModuleUse,
@@ -152,6 +158,66 @@ public class GenericSecurityRealm implements SecurityRealm, ConfigurationEntryFa
         return wrapPrincipals;
     }
 
+    public long getAuthenticationCacheTimeoutMilliseconds() {
+        return authenticationCache.getTimeoutMilliseconds();
+    }
+
+    /**
+     * A GBean property.  How long a subject from a web login is reused for
+     * requests with the same credentials; 0 (the default) disables the cache.
+     */
+    public void setAuthenticationCacheTimeoutMilliseconds(long authenticationCacheTimeoutMilliseconds) {
+        authenticationCache.setTimeoutMilliseconds(authenticationCacheTimeoutMilliseconds);
+    }
+
+    public int getAuthenticationCacheMaxSize() {
+        return authenticationCache.getMaxSize();
+    }
+
+    /**
+     * A GBean property.  The number of subjects cached before the least
+     * recently used ones are dropped.
+     */
+    public void setAuthenticationCacheMaxSize(int authenticationCacheMaxSize) {
+        authenticationCache.setMaxSize(authenticationCacheMaxSize);
+    }
+
+    public long getAuthenticationCacheHitCount() {
+        return authenticationCache.getHitCount();
+    }
+
+    public long getAuthenticationCacheMissCount() {
+        return authenticationCache.getMissCount();
+    }
+
+    public int getAuthenticationCacheSize() {
+        return authenticationCache.getSize();
+    }
+
+    public void invalidateAuthenticationCache() {
+        authenticationCache.invalidate();
+    }
+
+    public void invalidateAuthenticationCache(String username) {
+        authenticationCache.invalidate(username);
+    }
+
+    AuthenticationCache getAuthenticationCache() {
+        return authenticationCache;
+    }
+
+    public void doStart() throws Exception {
+        AuthenticationCache.register(realmName, authenticationCache);
+    }
+
+    public void doStop() throws Exception {
+        AuthenticationCache.unregister(realmName, authenticationCache);
+    }
+
+    public void doFail() {
+        AuthenticationCache.unregister(realmName, authenticationCache);
+    }
+
     public String getConfigurationName() {
         return realmName;
     }
@@ -181,12 +247,19 @@ public class GenericSecurityRealm implements SecurityRealm, ConfigurationEntryFa
         infoFactory.addAttribute("deploymentSupport", Properties.class, true);
         infoFactory.addAttribute("restrictPrincipalsToServer", boolean.class, true);
         infoFactory.addAttribute("wrapPrincipals", boolean.class, true);
+        infoFactory.addAttribute("authenticationCacheTimeoutMilliseconds", long.class, true);
+        infoFactory.addAttribute("authenticationCacheMaxSize", int.class, true);
+        infoFactory.addAttribute("authenticationCacheHitCount", long.class, false);
+        infoFactory.addAttribute("authenticationCacheMissCount", long.class, false);
+        infoFactory.addAttribute("authenticationCacheSize", int.class, false);
 
         infoFactory.addReference("LoginModuleConfiguration", JaasLoginModuleUse.class, "LoginModuleUse");
         infoFactory.addReference("ServerInfo", ServerInfo.class, NameFactory.GERONIMO_SERVICE);
         infoFactory.addReference("LoginService", JaasLoginServiceMBean.class, "JaasLoginService");
 
         infoFactory.addOperation("getAppConfigurationEntries", new Class[0]);
+        infoFactory.addOperation("invalidateAuthenticationCache", new Class[0]);
+        infoFactory.addOperation("invalidateAuthenticationCache", new Class[]{String.class});
 
         infoFactory.setConstructor(new String[]{"realmName",
                                                 "LoginModuleConfiguration",
@@ -67,4 +67,31 @@ public interface SecurityRealm {
      * @return The ObjectName, in String form.
      */
     public String getLoginModuleChainName();
+
+    /**
+     * Gets the number of web logins answered with a cached subject.
+     */
+    public long getAuthenticationCacheHitCount();
+
+    /**
+     * Gets the number of web logins that had to run the login modules
+     * while the authentication cache was enabled.
+     */
+    public long getAuthenticationCacheMissCount();
+
+    /**
+     * Gets the number of subjects in the authentication cache.
+     */
+    public int getAuthenticationCacheSize();
+
+    /**
+     * Drops all cached subjects, so every web client logs in again.
+     */
+    public void invalidateAuthenticationCache();
+
+    /**
+     * Drops the cached subjects of one user, so the next request of that
+     * user runs the login modules again.
+     */
+    public void invalidateAuthenticationCache(String username);
 }
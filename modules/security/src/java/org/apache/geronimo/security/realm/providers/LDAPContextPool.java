@@ -0,0 +1,309 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.security.realm.providers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+
+import EDU.oswego.cs.dl.util.concurrent.ClockDaemon;
+import EDU.oswego.cs.dl.util.concurrent.ThreadFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Directory contexts bound as the service user of an LDAPLoginModule, kept open
+ * between logins so a login does not pay for a new connection and bind, together
+ * with the results of recent role searches.  There is one pool for each distinct
+ * connection environment, shared by all the login modules configured with it.
+ * <p/>
+ * A context is used by one login at a time: it is taken from the pool with
+ * {@link #getContext} and handed back with {@link #releaseContext}, or with
+ * {@link #discardContext} if it failed.
+ * <p/>
+ * A background sweep closes the contexts that idled past the idle timeout and
+ * drops expired role searches.  A pool with nothing left in it is removed, and
+ * the next login module initialized with its environment gets a new one.
+ *
+ * @version $Rev$ $Date$
+ */
+final class LDAPContextPool {
+    private static final Log log = LogFactory.getLog(LDAPContextPool.class);
+    private static final int MAX_ROLE_SEARCHES = 10000;
+    private static final long SWEEP_INTERVAL_MILLISECONDS = 30 * 1000;
+    private static final Map pools = new HashMap();
+    private static final ClockDaemon clockDaemon;
+    // guarded by pools
+    private static Object sweepIdentifier;
+
+    static {
+        clockDaemon = new ClockDaemon();
+        clockDaemon.setThreadFactory(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "LDAPContextPool idle context monitor");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    private final Hashtable environment;
+    private final LinkedList idle = new LinkedList();
+    private final HashMap roleSearches = new HashMap();
+    private int maxIdle;
+    private long idleTimeoutMilliseconds;
+    private long roleSearchTimeoutMilliseconds;
+    private long createdCount;
+    private long roleSearchHitCount;
+    // contexts taken and not yet handed back
+    private int activeCount;
+    // no longer in pools, so nothing sweeps it
+    private boolean removed;
+
+    private LDAPContextPool(Hashtable environment) {
+        this.environment = environment;
+    }
+
+    static LDAPContextPool getPool(Hashtable environment) {
+        synchronized (pools) {
+            LDAPContextPool pool = (LDAPContextPool) pools.get(environment);
+            if (pool == null) {
+                pool = new LDAPContextPool((Hashtable) environment.clone());
+                pools.put(pool.environment, pool);
+                if (sweepIdentifier == null) {
+                    sweepIdentifier = clockDaemon.executePeriodically(SWEEP_INTERVAL_MILLISECONDS, new Runnable() {
+                        public void run() {
+                            sweep();
+                        }
+                    }, false);
+                }
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Closes the contexts that idled past the idle timeout and removes the pools
+     * that have nothing left in them.
+     */
+    static void sweep() {
+        List expired = new ArrayList();
+        synchronized (pools) {
+            for (Iterator iterator = pools.values().iterator(); iterator.hasNext();) {
+                LDAPContextPool pool = (LDAPContextPool) iterator.next();
+                if (pool.expire(expired)) {
+                    iterator.remove();
+                }
+            }
+            if (pools.isEmpty() && sweepIdentifier != null) {
+                ClockDaemon.cancel(sweepIdentifier);
+                sweepIdentifier = null;
+            }
+        }
+        close(expired);
+    }
+
+    /**
+     * @return true if the pool is unused and is removed
+     */
+    private synchronized boolean expire(List expired) {
+        long now = System.currentTimeMillis();
+        expireIdle(now, expired);
+        for (Iterator iterator = roleSearches.values().iterator(); iterator.hasNext();) {
+            if (now - ((CachedRoles) iterator.next()).created >= roleSearchTimeoutMilliseconds) {
+                iterator.remove();
+            }
+        }
+        removed = activeCount == 0 && idle.isEmpty() && roleSearches.isEmpty();
+        return removed;
+    }
+
+    // called holding the lock on this; the idle contexts are in the order they were released
+    private void expireIdle(long now, List expired) {
+        while (!idle.isEmpty() && now - ((IdleContext) idle.getFirst()).since >= idleTimeoutMilliseconds) {
+            expired.add(((IdleContext) idle.removeFirst()).context);
+        }
+    }
+
+    /**
+     * The login modules sharing a pool are normally configured alike; the last
+     * one initialized wins.
+     */
+    synchronized void configure(int maxIdle, long idleTimeoutMilliseconds, long roleSearchTimeoutMilliseconds) {
+        this.maxIdle = maxIdle;
+        this.idleTimeoutMilliseconds = idleTimeoutMilliseconds;
+        if (roleSearchTimeoutMilliseconds <= 0) {
+            roleSearches.clear();
+        }
+        this.roleSearchTimeoutMilliseconds = roleSearchTimeoutMilliseconds;
+    }
+
+    /**
+     * @return the most recently used idle context, or a new one if there is none
+     */
+    DirContext getContext() throws NamingException {
+        DirContext context = null;
+        List expired = new ArrayList();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            while (context == null && !idle.isEmpty()) {
+                IdleContext idleContext = (IdleContext) idle.removeLast();
+                if (now - idleContext.since < idleTimeoutMilliseconds) {
+                    context = idleContext.context;
+                } else {
+                    expired.add(idleContext.context);
+                }
+            }
+            // the rest idled even longer
+            expireIdle(now, expired);
+            if (context == null) {
+                createdCount++;
+            }
+            activeCount++;
+        }
+        close(expired);
+
+        if (context == null) {
+            try {
+                context = new InitialDirContext(environment);
+            } catch (NamingException e) {
+                synchronized (this) {
+                    activeCount--;
+                }
+                throw e;
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    activeCount--;
+                }
+                throw e;
+            }
+        }
+        return context;
+    }
+
+    void releaseContext(DirContext context) {
+        synchronized (this) {
+            activeCount--;
+            if (!removed && idle.size() < maxIdle) {
+                idle.addLast(new IdleContext(context, System.currentTimeMillis()));
+                return;
+            }
+        }
+        close(context);
+    }
+
+    void discardContext(DirContext context) {
+        synchronized (this) {
+            activeCount--;
+        }
+        close(context);
+    }
+
+    /**
+     * Closes all idle contexts, e.g. when one of them found the connection broken.
+     */
+    void clear() {
+        List contexts = new ArrayList();
+        synchronized (this) {
+            for (Iterator iterator = idle.iterator(); iterator.hasNext();) {
+                contexts.add(((IdleContext) iterator.next()).context);
+            }
+            idle.clear();
+        }
+        close(contexts);
+    }
+
+    /**
+     * @return the role names a search found within the role search timeout, or null
+     */
+    synchronized List getRoles(String search) {
+        if (roleSearchTimeoutMilliseconds <= 0) return null;
+
+        CachedRoles cachedRoles = (CachedRoles) roleSearches.get(search);
+        if (cachedRoles == null) return null;
+        if (System.currentTimeMillis() - cachedRoles.created >= roleSearchTimeoutMilliseconds) {
+            roleSearches.remove(search);
+            return null;
+        }
+        roleSearchHitCount++;
+        return cachedRoles.roles;
+    }
+
+    synchronized void putRoles(String search, List roles) {
+        if (roleSearchTimeoutMilliseconds <= 0) return;
+
+        if (roleSearches.size() >= MAX_ROLE_SEARCHES) {
+            roleSearches.clear();
+        }
+        roleSearches.put(search, new CachedRoles(new ArrayList(roles), System.currentTimeMillis()));
+    }
+
+    synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    synchronized long getCreatedCount() {
+        return createdCount;
+    }
+
+    synchronized long getRoleSearchHitCount() {
+        return roleSearchHitCount;
+    }
+
+    private static void close(List contexts) {
+        for (int i = 0; i < contexts.size(); i++) {
+            close((DirContext) contexts.get(i));
+        }
+    }
+
+    private static void close(DirContext context) {
+        try {
+            context.close();
+        } catch (Exception e) {
+            log.error(e);
+        }
+    }
+
+    private static final class IdleContext {
+        private final DirContext context;
+        private final long since;
+
+        IdleContext(DirContext context, long since) {
+            this.context = context;
+            this.since = since;
+        }
+    }
+
+    private static final class CachedRoles {
+        private final List roles;
+        private final long created;
+
+        CachedRoles(List roles, long created) {
+            this.roles = roles;
+            this.created = created;
+        }
+    }
+}
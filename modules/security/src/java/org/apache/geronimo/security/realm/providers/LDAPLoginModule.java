@@ -36,7 +36,6 @@ import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.DirContext;
-import javax.naming.directory.InitialDirContext;
 import javax.naming.CommunicationException;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
@@ -78,6 +77,12 @@ public class LDAPLoginModule implements LoginModule {
     private static final String ROLE_SEARCH_MATCHING = "roleSearchMatching";
     private static final String ROLE_SEARCH_SUBTREE = "roleSearchSubtree";
     private static final String USER_ROLE_NAME = "userRoleName";
+    private static final String CONNECTION_POOL_MAX_IDLE = "connectionPoolMaxIdle";
+    private static final String CONNECTION_POOL_IDLE_TIMEOUT = "connectionPoolIdleTimeoutMilliseconds";
+    private static final String ROLE_SEARCH_CACHE_TIMEOUT = "roleSearchCacheTimeoutMilliseconds";
+
+    private static final int DEFAULT_CONNECTION_POOL_MAX_IDLE = 8;
+    private static final long DEFAULT_CONNECTION_POOL_IDLE_TIMEOUT = 5 * 60 * 1000;
 
     private String initialContextFactory;
     private String connectionURL;
@@ -98,7 +103,7 @@ public class LDAPLoginModule implements LoginModule {
     private String cbUsername;
     private String cbPassword;
 
-    protected DirContext context = null;
+    private LDAPContextPool pool;
 
     private MessageFormat userSearchMatchingFormat;
     private MessageFormat roleSearchMatchingFormat;
@@ -108,6 +113,16 @@ public class LDAPLoginModule implements LoginModule {
 
     Set groups = new HashSet();
 
+    /**
+     * Besides the connection and search options, understands
+     * <ul>
+     * <li>connectionPoolMaxIdle: the number of contexts, bound as connectionUsername, kept open
+     * between logins for the same directory; 0 opens and closes a context for every login</li>
+     * <li>connectionPoolIdleTimeoutMilliseconds: how long an idle context is kept</li>
+     * <li>roleSearchCacheTimeoutMilliseconds: how long the roles found by a role search are reused
+     * for later logins of the same user; 0, the default, searches on every login</li>
+     * </ul>
+     */
     public void initialize(Subject subject, CallbackHandler callbackHandler, Map sharedState, Map options) {
         this.subject = subject;
         this.handler = callbackHandler;
@@ -129,6 +144,36 @@ public class LDAPLoginModule implements LoginModule {
         roleSearchMatchingFormat = new MessageFormat(roleSearchMatching);
         userSearchSubtreeBool = new Boolean(userSearchSubtree).booleanValue();
         roleSearchSubtreeBool = new Boolean(roleSearchSubtree).booleanValue();
+
+        Hashtable env = new Hashtable();
+        put(env, Context.INITIAL_CONTEXT_FACTORY, initialContextFactory);
+        if (connectionUsername != null && !"".equals(connectionUsername)) {
+            env.put(Context.SECURITY_PRINCIPAL, connectionUsername);
+        }
+        if (connectionPassword != null && !"".equals(connectionPassword)) {
+            env.put(Context.SECURITY_CREDENTIALS, connectionPassword);
+        }
+        put(env, Context.SECURITY_PROTOCOL, connectionProtocol);
+        put(env, Context.PROVIDER_URL, connectionURL);
+        put(env, Context.SECURITY_AUTHENTICATION, authentication);
+        pool = LDAPContextPool.getPool(env);
+        pool.configure((int) getLong(options, CONNECTION_POOL_MAX_IDLE, DEFAULT_CONNECTION_POOL_MAX_IDLE),
+                       getLong(options, CONNECTION_POOL_IDLE_TIMEOUT, DEFAULT_CONNECTION_POOL_IDLE_TIMEOUT),
+                       getLong(options, ROLE_SEARCH_CACHE_TIMEOUT, 0));
+    }
+
+    private static void put(Hashtable env, String name, String value) {
+        if (value != null) {
+            env.put(name, value);
+        }
+    }
+
+    private static long getLong(Map options, String name, long defaultValue) {
+        String value = (String) options.get(name);
+        if (value == null || "".equals(value.trim())) {
+            return defaultValue;
+        }
+        return Long.parseLong(value.trim());
     }
 
     public boolean login() throws LoginException {
@@ -195,78 +240,96 @@ public class LDAPLoginModule implements LoginModule {
     }
 
     protected boolean authenticate(String username, String password) throws Exception {
-
-        DirContext context = null;
-        context = open();
-
         try {
+            return authenticate(open(), username, password);
+        } catch (CommunicationException e) {
+            // most likely an idle connection the server has since dropped, and so have the others
+            log.debug("Retrying LDAP authentication on a new connection", e);
+            pool.clear();
+            return authenticate(open(), username, password);
+        }
+    }
 
-            String filter = userSearchMatchingFormat.format(new String[]{username});
-            SearchControls constraints = new SearchControls();
-            if (userSearchSubtreeBool) {
-                constraints.setSearchScope(SearchControls.SUBTREE_SCOPE);
-            } else {
-                constraints.setSearchScope(SearchControls.ONELEVEL_SCOPE);
-            }
-
-            //setup attributes
-            ArrayList list = new ArrayList();
-            if (userRoleName != null) {
-                list.add(userRoleName);
-            }
-            String[] attribs = new String[list.size()];
-            list.toArray(attribs);
-            constraints.setReturningAttributes(attribs);
+    /**
+     * Authenticates on a context from the pool and hands it back, or discards it
+     * if it failed.
+     */
+    private boolean authenticate(DirContext context, String username, String password) throws NamingException {
+        boolean result;
+        try {
+            result = authenticateOnContext(context, username, password);
+        } catch (CommunicationException e) {
+            pool.discardContext(context);
+            throw e;
+        } catch (NamingException e) {
+            pool.discardContext(context);
+            return false;
+        } catch (RuntimeException e) {
+            pool.discardContext(context);
+            throw e;
+        }
+        pool.releaseContext(context);
+        return result;
+    }
 
+    private boolean authenticateOnContext(DirContext context, String username, String password) throws NamingException {
+        String filter = userSearchMatchingFormat.format(new String[]{username});
+        SearchControls constraints = new SearchControls();
+        if (userSearchSubtreeBool) {
+            constraints.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        } else {
+            constraints.setSearchScope(SearchControls.ONELEVEL_SCOPE);
+        }
 
-            NamingEnumeration results = context.search(userBase, filter, constraints);
+        //setup attributes
+        ArrayList list = new ArrayList();
+        if (userRoleName != null) {
+            list.add(userRoleName);
+        }
+        String[] attribs = new String[list.size()];
+        list.toArray(attribs);
+        constraints.setReturningAttributes(attribs);
 
-            if (results == null || !results.hasMore()) {
-                return false;
-            }
 
-            SearchResult result = (SearchResult) results.next();
+        NamingEnumeration results = context.search(userBase, filter, constraints);
 
-            if (results.hasMore()) {
-                //ignore for now
-            }
-            NameParser parser = context.getNameParser("");
-            Name contextName = parser.parse(context.getNameInNamespace());
-            Name baseName = parser.parse(userBase);
-            Name entryName = parser.parse(result.getName());
-            Name name = contextName.addAll(baseName);
-            name = name.addAll(entryName);
-            String dn = name.toString();
+        if (results == null || !results.hasMore()) {
+            return false;
+        }
 
-            Attributes attrs = result.getAttributes();
-            if (attrs == null) {
-                return false;
-            }
-            ArrayList roles = null;
-            if (userRoleName != null) {
-                roles = addAttributeValues(userRoleName, attrs, roles);
-            }
+        SearchResult result = (SearchResult) results.next();
 
-            //check the credentials by binding to server
-            if (bindUser(context, dn, password)) {
-                //if authenticated add more roles
-                roles = getRoles(context, dn, username, roles);
-                for (int i = 0; i < roles.size(); i++) {
-                    groups.add(new GeronimoGroupPrincipal((String) roles.get(i)));
-                }
-            } else {
-                return false;
-            }
-        } catch (CommunicationException e) {
+        if (results.hasMore()) {
+            //ignore for now
+        }
+        NameParser parser = context.getNameParser("");
+        Name contextName = parser.parse(context.getNameInNamespace());
+        Name baseName = parser.parse(userBase);
+        Name entryName = parser.parse(result.getName());
+        Name name = contextName.addAll(baseName);
+        name = name.addAll(entryName);
+        String dn = name.toString();
+
+        Attributes attrs = result.getAttributes();
+        if (attrs == null) {
+            return false;
+        }
+        ArrayList roles = null;
+        if (userRoleName != null) {
+            roles = addAttributeValues(userRoleName, attrs, roles);
+        }
 
-        } catch (NamingException e) {
-            if (context != null) {
-                close(context);
+        //check the credentials by binding to server
+        if (bindUser(context, dn, password)) {
+            //if authenticated add more roles
+            roles = getRoles(context, dn, username, roles);
+            for (int i = 0; i < roles.size(); i++) {
+                groups.add(new GeronimoGroupPrincipal((String) roles.get(i)));
             }
+        } else {
             return false;
         }
 
-
         return true;
     }
 
@@ -279,6 +342,12 @@ public class LDAPLoginModule implements LoginModule {
             return list;
         }
         String filter = roleSearchMatchingFormat.format(new String[]{doRFC2254Encoding(dn), username});
+        String search = roleBase + '\n' + roleName + '\n' + roleSearchSubtreeBool + '\n' + filter;
+        List cachedRoles = pool.getRoles(search);
+        if (cachedRoles != null) {
+            list.addAll(cachedRoles);
+            return list;
+        }
 
         SearchControls constraints = new SearchControls();
         if (roleSearchSubtreeBool) {
@@ -288,14 +357,17 @@ public class LDAPLoginModule implements LoginModule {
         }
         NamingEnumeration results =
                 context.search(roleBase, filter, constraints);
+        ArrayList found = new ArrayList();
         while (results.hasMore()) {
             SearchResult result = (SearchResult) results.next();
             Attributes attrs = result.getAttributes();
             if (attrs == null) {
                 continue;
             }
-            list = addAttributeValues(roleName, attrs, list);
+            found = addAttributeValues(roleName, attrs, found);
         }
+        pool.putRoles(search, found);
+        list.addAll(found);
         return list;
 
     }
@@ -406,29 +478,12 @@ public class LDAPLoginModule implements LoginModule {
     }
 
     protected DirContext open() throws NamingException {
-        if (context != null) {
-            return context;
-        }
-
         try {
-            Hashtable env = new Hashtable();
-            env.put(Context.INITIAL_CONTEXT_FACTORY, initialContextFactory);
-            if (connectionUsername != null || !"".equals(connectionUsername)) {
-                env.put(Context.SECURITY_PRINCIPAL, connectionUsername);
-            }
-            if (connectionPassword != null || !"".equals(connectionPassword)) {
-                env.put(Context.SECURITY_CREDENTIALS, connectionPassword);
-            }
-            env.put(Context.SECURITY_PROTOCOL, connectionProtocol);
-            env.put(Context.PROVIDER_URL, connectionURL);
-            env.put(Context.SECURITY_AUTHENTICATION, authentication);
-            context = new InitialDirContext(env);
-
+            return pool.getContext();
         } catch (NamingException e) {
             log.error(e);
             throw e;
         }
-        return context;
     }
 
 }
@@ -33,6 +33,7 @@ import org.apache.geronimo.security.ContextManager;
 import org.apache.geronimo.security.IdentificationPrincipal;
 import org.apache.geronimo.security.RealmPrincipal;
 import org.apache.geronimo.security.DomainPrincipal;
+import org.apache.geronimo.security.realm.AuthenticationCache;
 import org.apache.geronimo.security.realm.GenericSecurityRealm;
 import org.apache.geronimo.system.serverinfo.BasicServerInfo;
 import org.apache.geronimo.system.serverinfo.ServerInfo;
@@ -171,6 +172,47 @@ public class LoginPropertiesFileTest extends AbstractTest {
         assertTrue("id of server subject should be null", ContextManager.getSubjectId(subject) == null);
     }
 
+    public void testAuthenticationCache() throws Exception {
+        kernel.setAttribute(testRealm, "authenticationCacheTimeoutMilliseconds", new Long(60000));
+        AuthenticationCache cache = AuthenticationCache.getCache("properties-realm");
+        assertNotNull(cache);
+
+        Subject subject = webLogin(cache, "alan", "starcraft");
+        assertSame(subject, webLogin(cache, "alan", "starcraft"));
+        assertEquals(new Long(1), kernel.getAttribute(testRealm, "authenticationCacheHitCount"));
+        assertEquals(new Long(1), kernel.getAttribute(testRealm, "authenticationCacheMissCount"));
+        assertEquals(new Integer(1), kernel.getAttribute(testRealm, "authenticationCacheSize"));
+
+        try {
+            webLogin(cache, "alan", "warcraft");
+            fail("Should not allow this login with a wrong password");
+        } catch (LoginException e) {
+        }
+
+        kernel.invoke(testRealm, "invalidateAuthenticationCache", new Object[]{"alan"}, new String[]{String.class.getName()});
+        assertEquals(new Integer(0), kernel.getAttribute(testRealm, "authenticationCacheSize"));
+        assertNotSame(subject, webLogin(cache, "alan", "starcraft"));
+
+        kernel.stopGBean(testRealm);
+        assertNull(AuthenticationCache.getCache("properties-realm"));
+        kernel.startGBean(testRealm);
+    }
+
+    /**
+     * Logs in the way the web containers do for a request with BASIC authentication.
+     */
+    private Subject webLogin(AuthenticationCache cache, String username, String password) throws LoginException {
+        Object key = cache.createKey(username, password);
+        Subject subject = cache.get(key);
+        if (subject == null) {
+            LoginContext context = new LoginContext("properties-realm", new UsernamePasswordCallback(username, password));
+            context.login();
+            subject = ContextManager.getServerSideSubject(context.getSubject());
+            cache.put(key, subject);
+        }
+        return subject;
+    }
+
     public void testNullUserLogin() throws Exception {
         LoginContext context = new LoginContext("properties-client", new UsernamePasswordCallback(null, "starcraft"));
 
@@ -0,0 +1,296 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.security.jacc;
+
+import java.security.AllPermission;
+import java.security.Permission;
+import java.security.Permissions;
+import java.security.Principal;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import javax.security.jacc.WebResourcePermission;
+import javax.security.jacc.WebRoleRefPermission;
+import javax.security.jacc.WebUserDataPermission;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.security.realm.providers.GeronimoGroupPrincipal;
+import org.apache.geronimo.security.util.URLPattern;
+
+/**
+ * Checks that the compiled permissions decide exactly as the JACC permission
+ * classes do, on policies translated from generated security constraints.
+ *
+ * @version $Rev$ $Date$
+ */
+public class CompiledPermissionsTest extends TestCase {
+    private static final String[] METHODS = {"GET", "POST", "PUT", "DELETE", "HEAD", "OPTIONS", "TRACE"};
+    private static final String[] TRANSPORTS = {"NONE", "INTEGRAL", "CONFIDENTIAL"};
+    private static final String[] SEGMENTS = {"a", "b", "admin", "x.jsp", "y.do", "z.jsp.bak", ""};
+    private static final String[] EXTENSIONS = {".jsp", ".do", ".html", ".jsp.bak"};
+    private static final int ROLES = 4;
+
+    private final Random random = new Random(20050601L);
+
+    public void testMatchesFollowsURLPatternSpec() {
+        assertTrue(CompiledPermissions.matches("/", "/a/b"));
+        assertTrue(CompiledPermissions.matches("/*", "*.jsp"));
+        assertTrue(CompiledPermissions.matches("/a/*", "/a"));
+        assertTrue(CompiledPermissions.matches("/a/*", "/a/"));
+        assertTrue(CompiledPermissions.matches("/a/*", "/a/b/c"));
+        assertFalse(CompiledPermissions.matches("/a/*", "/ab"));
+        assertTrue(CompiledPermissions.matches("*.jsp", "/a/b.jsp"));
+        assertFalse(CompiledPermissions.matches("*.jsp", "/a.jsp/b"));
+        assertTrue(CompiledPermissions.matches("/a/b.jsp", "/a/b.jsp"));
+        assertFalse(CompiledPermissions.matches("/a/b.jsp", "/a/b.jspx"));
+    }
+
+    public void testParseActions() {
+        assertEquals(0x7F, CompiledPermissions.parseActions("", false));
+        assertEquals(0x7F, CompiledPermissions.parseActions(null, false));
+        assertEquals(0x03, CompiledPermissions.parseActions("GET,POST", false));
+        assertEquals(-1, CompiledPermissions.parseActions("GET,PATCH", false));
+        assertEquals(-1, CompiledPermissions.parseActions("GET:CONFIDENTIAL", false));
+        assertEquals(0x01 | 0x02 << 7, CompiledPermissions.parseActions("GET:CONFIDENTIAL", true));
+        assertEquals(0x7F | 0x03 << 7, CompiledPermissions.parseActions("", true));
+    }
+
+    public void testRandomPoliciesMatchPermissions() throws Exception {
+        for (int policy = 0; policy < 20; policy++) {
+            List permissions = translate(randomConstraints(5 + random.nextInt(40)));
+            Permissions reference = new Permissions();
+            for (Iterator iterator = permissions.iterator(); iterator.hasNext();) {
+                reference.add((Permission) iterator.next());
+            }
+            CompiledPermissions compiled = new CompiledPermissions(reference);
+            assertEquals(Collections.list(reference.elements()).size(), Collections.list(compiled.elements()).size());
+
+            for (int i = 0; i < 2000; i++) {
+                Permission checked = randomRequestPermission();
+                assertEquals(checked + " in " + permissions, reference.implies(checked), compiled.implies(checked));
+            }
+            // checks with the granted names themselves, qualifiers and all
+            for (Iterator iterator = permissions.iterator(); iterator.hasNext();) {
+                Permission granted = (Permission) iterator.next();
+                Permission checked = granted instanceof WebResourcePermission
+                        ? (Permission) new WebResourcePermission(granted.getName(), randomMethods())
+                        : new WebUserDataPermission(granted.getName(), randomMethods() + ":" + TRANSPORTS[random.nextInt(TRANSPORTS.length)]);
+                assertEquals(checked + " in " + permissions, reference.implies(checked), compiled.implies(checked));
+                assertTrue(compiled.implies(granted));
+            }
+        }
+    }
+
+    public void testImplicitTransport() throws Exception {
+        Permissions reference = new Permissions();
+        reference.add(new WebUserDataPermission("/a/*", new String[]{"GET"}, null));
+        reference.add(new WebUserDataPermission("/b/*", "GET"));
+        reference.add(new WebUserDataPermission("/c/*", "GET:CONFIDENTIAL"));
+        CompiledPermissions compiled = new CompiledPermissions(reference);
+
+        String[] paths = {"/a/x", "/b/x", "/c/x"};
+        String[] transports = {null, "NONE", "INTEGRAL", "CONFIDENTIAL"};
+        for (int i = 0; i < paths.length; i++) {
+            for (int j = 0; j < transports.length; j++) {
+                Permission checked = new WebUserDataPermission(paths[i], new String[]{"GET"}, transports[j]);
+                assertEquals(checked.toString(), reference.implies(checked), compiled.implies(checked));
+            }
+        }
+    }
+
+    public void testOtherPermissions() throws Exception {
+        Permissions reference = new Permissions();
+        reference.add(new WebRoleRefPermission("servlet", "manager"));
+        CompiledPermissions compiled = new CompiledPermissions(reference);
+        assertTrue(compiled.implies(new WebRoleRefPermission("servlet", "manager")));
+        assertFalse(compiled.implies(new WebRoleRefPermission("servlet", "admin")));
+        assertFalse(compiled.implies(new WebResourcePermission("/a", "GET")));
+
+        reference.add(new AllPermission());
+        compiled = new CompiledPermissions(reference);
+        assertTrue(compiled.implies(new WebResourcePermission("/a", "GET")));
+        assertTrue(compiled.implies(new WebUserDataPermission("/a", "GET:CONFIDENTIAL")));
+
+        try {
+            compiled.add(new WebResourcePermission("/a", "GET"));
+            fail("expected SecurityException");
+        } catch (SecurityException expected) {
+        }
+    }
+
+    public void testPolicyConfigurationMatchesPermissions() throws Exception {
+        PolicyConfigurationGeneric policyConfiguration = new PolicyConfigurationGeneric("compiled", 0);
+        Permissions excluded = new Permissions();
+        Permissions unchecked = new Permissions();
+        Permissions[] roles = new Permissions[ROLES];
+        for (int i = 0; i < ROLES; i++) {
+            roles[i] = new Permissions();
+        }
+
+        List permissions = translate(randomConstraints(60));
+        for (Iterator iterator = permissions.iterator(); iterator.hasNext();) {
+            Permission permission = (Permission) iterator.next();
+            int target = random.nextInt(ROLES + 3);
+            if (target == 0) {
+                excluded.add(permission);
+                policyConfiguration.addToExcludedPolicy(permission);
+            } else if (target == 1) {
+                unchecked.add(permission);
+                policyConfiguration.addToUncheckedPolicy(permission);
+            } else {
+                int role = (target - 2) % ROLES;
+                roles[role].add(permission);
+                policyConfiguration.addToRole("role" + role, permission);
+            }
+        }
+        Map principalRoleMap = new HashMap();
+        for (int i = 0; i < ROLES; i++) {
+            principalRoleMap.put(new GeronimoGroupPrincipal("group" + i), new HashSet(Collections.singleton("role" + i)));
+        }
+        policyConfiguration.setPrincipalRoleMapping(principalRoleMap);
+        policyConfiguration.commit();
+
+        for (int i = 0; i < 5000; i++) {
+            int role = random.nextInt(ROLES + 1) - 1;
+            Principal[] principals = role < 0 ? new Principal[0] : new Principal[]{new GeronimoGroupPrincipal("group" + role)};
+            ProtectionDomain domain = new ProtectionDomain(null, null, null, principals);
+            Permission checked = randomRequestPermission();
+
+            boolean expected;
+            if (excluded.implies(checked)) {
+                expected = false;
+            } else {
+                expected = unchecked.implies(checked) || (role >= 0 && roles[role].implies(checked));
+            }
+            assertEquals(checked.toString(), expected, policyConfiguration.implies(domain, checked));
+        }
+    }
+
+    /**
+     * @return constraints as URLPatterns with their methods, transport and roles
+     */
+    private Map randomConstraints(int count) {
+        Map constraints = new HashMap();
+        for (int i = 0; i < count; i++) {
+            String pattern = randomPattern();
+            URLPattern urlPattern = (URLPattern) constraints.get(pattern);
+            if (urlPattern == null) {
+                urlPattern = new URLPattern(pattern);
+                constraints.put(pattern, urlPattern);
+            }
+            int methods = random.nextInt(4);
+            if (methods == 0) {
+                urlPattern.addMethod("");
+            }
+            for (int j = 0; j < methods; j++) {
+                urlPattern.addMethod(METHODS[random.nextInt(METHODS.length)]);
+            }
+            urlPattern.setTransport(TRANSPORTS[random.nextInt(TRANSPORTS.length)]);
+        }
+        return constraints;
+    }
+
+    /**
+     * Translates the constraints the way the web module builders do: each pattern
+     * qualified by the others, with its methods, and the default pattern for the rest.
+     */
+    private List translate(Map constraints) {
+        Set allPatterns = new HashSet(constraints.values());
+        URLPattern defaultPattern = new URLPattern("/");
+        allPatterns.add(defaultPattern);
+
+        List permissions = new ArrayList();
+        for (Iterator iterator = constraints.values().iterator(); iterator.hasNext();) {
+            URLPattern urlPattern = (URLPattern) iterator.next();
+            String name = urlPattern.getQualifiedPattern(allPatterns);
+            try {
+                new WebResourcePermission(name, (String) null);
+            } catch (IllegalArgumentException e) {
+                // the spec classes refuse an extension pattern qualified by an exact one
+                continue;
+            }
+            permissions.add(new WebResourcePermission(name, urlPattern.getMethods()));
+            permissions.add(new WebUserDataPermission(name, urlPattern.getMethodsWithTransport()));
+            if (random.nextBoolean()) {
+                permissions.add(new WebResourcePermission(name, urlPattern.getComplementedMethods()));
+            }
+        }
+        if (!constraints.containsKey("/")) {
+            String name = defaultPattern.getQualifiedPattern(allPatterns);
+            permissions.add(new WebResourcePermission(name, (String) null));
+            permissions.add(new WebUserDataPermission(name, (String) null));
+        }
+        return permissions;
+    }
+
+    private String randomPattern() {
+        switch (random.nextInt(5)) {
+            case 0:
+                return randomPath();
+            case 1:
+                return "*" + EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+            case 2:
+                return "/";
+            default:
+                String path = randomPath();
+                return (path.endsWith("/") ? path.substring(0, path.length() - 1) : path) + "/*";
+        }
+    }
+
+    private String randomPath() {
+        StringBuffer path = new StringBuffer();
+        int segments = 1 + random.nextInt(3);
+        for (int i = 0; i < segments; i++) {
+            path.append('/').append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+        }
+        return path.toString();
+    }
+
+    private String randomMethods() {
+        if (random.nextInt(4) == 0) return "";
+        StringBuffer methods = new StringBuffer(METHODS[random.nextInt(METHODS.length)]);
+        if (random.nextBoolean()) {
+            String method = METHODS[random.nextInt(METHODS.length)];
+            if (methods.indexOf(method) < 0) {
+                methods.append(',').append(method);
+            }
+        }
+        return methods.toString();
+    }
+
+    private Permission randomRequestPermission() {
+        String path = random.nextInt(20) == 0 ? "" : randomPath();
+        String method = METHODS[random.nextInt(METHODS.length)];
+        switch (random.nextInt(4)) {
+            case 0:
+                return new WebResourcePermission(path, method);
+            case 1:
+                return new WebResourcePermission(path, randomMethods());
+            case 2:
+                return new WebUserDataPermission(path, new String[]{method}, random.nextBoolean() ? null : TRANSPORTS[random.nextInt(TRANSPORTS.length)]);
+            default:
+                return new WebUserDataPermission(path, randomMethods() + ":" + TRANSPORTS[random.nextInt(TRANSPORTS.length)]);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.security.jacc;
+
+import java.security.Permission;
+import java.security.Principal;
+import java.security.ProtectionDomain;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import javax.security.jacc.WebResourcePermission;
+import javax.security.jacc.WebUserDataPermission;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.security.realm.providers.GeronimoGroupPrincipal;
+import org.apache.geronimo.security.realm.providers.GeronimoUserPrincipal;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class PolicyConfigurationGenericTest extends TestCase {
+    private final Principal admins = new GeronimoGroupPrincipal("admins");
+    private final Principal users = new GeronimoGroupPrincipal("users");
+    private PolicyConfigurationGeneric policyConfiguration;
+
+    public void testDecisions() throws Exception {
+        ProtectionDomain admin = domain(new Principal[]{new GeronimoUserPrincipal("alice"), admins});
+        ProtectionDomain user = domain(new Principal[]{new GeronimoUserPrincipal("bob"), users});
+        ProtectionDomain anonymous = domain(new Principal[0]);
+
+        for (int i = 0; i < 2; i++) {
+            assertTrue(policyConfiguration.implies(admin, new WebResourcePermission("/admin/index.jsp", "GET")));
+            assertFalse(policyConfiguration.implies(user, new WebResourcePermission("/admin/index.jsp", "GET")));
+            assertTrue(policyConfiguration.implies(user, new WebResourcePermission("/user/index.jsp", "POST")));
+            assertFalse(policyConfiguration.implies(anonymous, new WebResourcePermission("/user/index.jsp", "POST")));
+            assertTrue(policyConfiguration.implies(anonymous, new WebResourcePermission("/public/index.html", "GET")));
+            assertFalse(policyConfiguration.implies(admin, new WebResourcePermission("/admin/secret/key", "GET")));
+            assertTrue(policyConfiguration.implies(anonymous, new WebUserDataPermission("/user/index.jsp", new String[]{"GET"}, "NONE")));
+        }
+        PermissionDecisionCache decisionCache = policyConfiguration.getDecisionCache();
+        assertEquals(7, decisionCache.getMissCount());
+        assertEquals(7, decisionCache.getHitCount());
+        assertEquals(0.5, decisionCache.getHitRatio(), 0.001);
+    }
+
+    public void testPrincipalsWithoutPermissionsShareDecisions() throws Exception {
+        assertTrue(policyConfiguration.implies(domain(new Principal[]{new GeronimoUserPrincipal("alice"), admins}), new WebResourcePermission("/admin/index.jsp", "GET")));
+        // same role, different user, and the principals in another order
+        assertTrue(policyConfiguration.implies(domain(new Principal[]{admins, new GeronimoUserPrincipal("carol")}), new WebResourcePermission("/admin/index.jsp", "GET")));
+        assertEquals(1, policyConfiguration.getDecisionCache().getHitCount());
+        assertEquals(1, policyConfiguration.getDecisionCache().getSize());
+    }
+
+    public void testCommitDropsDecisions() throws Exception {
+        ProtectionDomain user = domain(new Principal[]{users});
+        assertFalse(policyConfiguration.implies(user, new WebResourcePermission("/admin/index.jsp", "GET")));
+
+        policyConfiguration.open(false);
+        assertEquals(0, policyConfiguration.getDecisionCache().getSize());
+        policyConfiguration.addToRole("user", new WebResourcePermission("/admin/*", "GET"));
+        policyConfiguration.commit();
+
+        assertTrue(policyConfiguration.implies(user, new WebResourcePermission("/admin/index.jsp", "GET")));
+    }
+
+    public void testRefreshDropsDecisions() throws Exception {
+        policyConfiguration.implies(domain(new Principal[]{users}), new WebResourcePermission("/user/index.jsp", "GET"));
+        assertEquals(1, policyConfiguration.getDecisionCache().getSize());
+        policyConfiguration.refresh();
+        assertEquals(0, policyConfiguration.getDecisionCache().getSize());
+    }
+
+    public void testDecisionMadeBeforeClearIsNotCached() throws Exception {
+        PermissionDecisionCache decisionCache = policyConfiguration.getDecisionCache();
+        Principal[] principals = new Principal[]{users};
+        Permission permission = new WebResourcePermission("/admin/index.jsp", "GET");
+        int generation = decisionCache.getGeneration();
+        // the permissions change while the decision is computed
+        policyConfiguration.refresh();
+        decisionCache.put(permission, principals, 1, false, generation);
+        assertEquals(0, decisionCache.getSize());
+        assertNull(decisionCache.get(permission, principals, 1));
+
+        decisionCache.put(permission, principals, 1, false, decisionCache.getGeneration());
+        assertEquals(Boolean.FALSE, decisionCache.get(permission, principals, 1));
+    }
+
+    public void testCacheIsBounded() throws Exception {
+        policyConfiguration = createPolicyConfiguration(10);
+        ProtectionDomain user = domain(new Principal[]{users});
+        for (int i = 0; i < 100; i++) {
+            assertTrue(policyConfiguration.implies(user, new WebResourcePermission("/user/page" + i, "GET")));
+            assertTrue(policyConfiguration.getDecisionCache().getSize() <= 10);
+        }
+    }
+
+    public void testCachingDisabled() throws Exception {
+        policyConfiguration = createPolicyConfiguration(0);
+        assertNull(policyConfiguration.getDecisionCache());
+        assertTrue(policyConfiguration.implies(domain(new Principal[]{users}), new WebResourcePermission("/user/index.jsp", "GET")));
+    }
+
+    protected void setUp() throws Exception {
+        policyConfiguration = createPolicyConfiguration(PermissionDecisionCache.DEFAULT_MAX_SIZE);
+    }
+
+    private PolicyConfigurationGeneric createPolicyConfiguration(int decisionCacheSize) throws Exception {
+        PolicyConfigurationGeneric policyConfiguration = new PolicyConfigurationGeneric("test", decisionCacheSize);
+        policyConfiguration.addToExcludedPolicy(new WebResourcePermission("/admin/secret/*", (String) null));
+        policyConfiguration.addToUncheckedPolicy(new WebResourcePermission("/public/*", (String) null));
+        policyConfiguration.addToUncheckedPolicy(new WebUserDataPermission("/*", null));
+        policyConfiguration.addToRole("admin", new WebResourcePermission("/admin/*", (String) null));
+        policyConfiguration.addToRole("user", new WebResourcePermission("/user/*", (String) null));
+
+        Map principalRoleMap = new HashMap();
+        principalRoleMap.put(admins, new HashSet(Collections.singleton("admin")));
+        principalRoleMap.put(users, new HashSet(Collections.singleton("user")));
+        policyConfiguration.setPrincipalRoleMapping(principalRoleMap);
+        policyConfiguration.commit();
+        return policyConfiguration;
+    }
+
+    private static ProtectionDomain domain(Principal[] principals) {
+        return new ProtectionDomain(null, null, null, principals);
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.security.jacc;
+
+import java.security.Principal;
+import java.security.ProtectionDomain;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import javax.security.jacc.WebResourcePermission;
+import javax.security.jacc.WebUserDataPermission;
+
+import org.apache.geronimo.security.realm.providers.GeronimoGroupPrincipal;
+import org.apache.geronimo.security.realm.providers.GeronimoUserPrincipal;
+
+/**
+ * Measures web permission checks against a policy configuration translated
+ * from a web.xml with a few hundred security constraints, with and without
+ * the decision cache.  Like the web containers, every check builds new
+ * WebUserDataPermission and WebResourcePermission instances for the request.
+ *
+ * usage: PolicyDecisionSpeed [constraints] [roles]
+ *
+ * @version $Rev$ $Date$
+ */
+public class PolicyDecisionSpeed {
+    private static final int CHECKS = 5000000;
+    private static final int USERS = 50;
+    private static final String[] METHODS = {"GET", "POST"};
+
+    public static void main(String[] args) throws Exception {
+        int constraints = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int roles = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        PolicyConfigurationGeneric uncached = createPolicyConfiguration(constraints, roles, 0);
+        PolicyConfigurationGeneric cached = createPolicyConfiguration(constraints, roles, PermissionDecisionCache.DEFAULT_MAX_SIZE);
+        ProtectionDomain[] domains = new ProtectionDomain[USERS];
+        for (int i = 0; i < USERS; i++) {
+            domains[i] = new ProtectionDomain(null, null, null, new Principal[]{
+                new GeronimoUserPrincipal("user" + i),
+                new GeronimoGroupPrincipal("group" + (i % roles))});
+        }
+
+        System.out.println("Policy Decision Timings (" + constraints + " constraints, " + roles + " roles)");
+        System.out.println("-------------------------------------");
+        policyTimings(uncached, cached, domains, constraints);
+        System.out.println();
+        System.out.println();
+        System.out.println();
+        policyTimings(uncached, cached, domains, constraints);
+    }
+
+    private static void policyTimings(PolicyConfigurationGeneric uncached, PolicyConfigurationGeneric cached, ProtectionDomain[] domains, int constraints) {
+        printResults("uncached", check(uncached, domains, constraints, CHECKS), CHECKS);
+        printResults("cached", check(cached, domains, constraints, CHECKS), CHECKS);
+        System.out.println("    hit ratio " + cached.getDecisionCache().getHitRatio());
+    }
+
+    private static long check(PolicyConfigurationGeneric policyConfiguration, ProtectionDomain[] domains, int constraints, int checks) {
+        int granted = 0;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < checks; i++) {
+            String path = "/area" + (i % constraints) + "/page" + (i % 7) + ".jsp";
+            String method = METHODS[i % METHODS.length];
+            ProtectionDomain domain = domains[i % domains.length];
+            if (policyConfiguration.implies(domain, new WebUserDataPermission(path, new String[]{method}, "NONE"))
+                    && policyConfiguration.implies(domain, new WebResourcePermission(path, method))) {
+                granted++;
+            }
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        if (granted == 0) {
+            throw new IllegalStateException("Nothing was granted");
+        }
+        return elapsed;
+    }
+
+    /**
+     * Builds the permissions the JACC translation of web.xml produces: one
+     * path prefix constraint per area with a role and a transport guarantee,
+     * and the default pattern qualified by all of them for the rest.
+     */
+    private static PolicyConfigurationGeneric createPolicyConfiguration(int constraints, int roles, int decisionCacheSize) throws Exception {
+        PolicyConfigurationGeneric policyConfiguration = new PolicyConfigurationGeneric("speed", decisionCacheSize);
+        StringBuffer qualifiedDefault = new StringBuffer("/");
+        for (int i = 0; i < constraints; i++) {
+            String pattern = "/area" + i + "/*";
+            qualifiedDefault.append(':').append(pattern);
+            if (i % 25 == 24) {
+                policyConfiguration.addToExcludedPolicy(new WebResourcePermission(pattern, (String) null));
+                policyConfiguration.addToExcludedPolicy(new WebUserDataPermission(pattern, null));
+            } else {
+                policyConfiguration.addToRole("role" + (i % roles), new WebResourcePermission(pattern, "GET,POST"));
+                policyConfiguration.addToUncheckedPolicy(new WebUserDataPermission(pattern, null));
+            }
+        }
+        policyConfiguration.addToUncheckedPolicy(new WebResourcePermission(qualifiedDefault.toString(), (String) null));
+        policyConfiguration.addToUncheckedPolicy(new WebUserDataPermission(qualifiedDefault.toString(), null));
+
+        Map principalRoleMap = new HashMap();
+        for (int i = 0; i < roles; i++) {
+            principalRoleMap.put(new GeronimoGroupPrincipal("group" + i), new HashSet(Collections.singleton("role" + i)));
+        }
+        policyConfiguration.setPrincipalRoleMapping(principalRoleMap);
+        policyConfiguration.commit();
+        return policyConfiguration;
+    }
+
+    private static void printResults(String invocationType, long elapsed, int checks) {
+        if (elapsed < 400) {
+            System.out.println(invocationType + ": elapse time to short to calculate throughput (total " + elapsed + "ms)");
+        } else {
+            System.out.println(invocationType + ": " + (checks * 1000L / elapsed) + " requests/s  (total " + elapsed + "ms)");
+        }
+    }
+}
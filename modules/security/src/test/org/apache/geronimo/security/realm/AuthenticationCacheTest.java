@@ -0,0 +1,135 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.security.realm;
+
+import javax.security.auth.Subject;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.security.ContextManager;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class AuthenticationCacheTest extends TestCase {
+    private final Subject alan = new Subject();
+    private final Subject izumi = new Subject();
+
+    protected void setUp() throws Exception {
+        ContextManager.registerSubject(alan);
+        ContextManager.registerSubject(izumi);
+    }
+
+    protected void tearDown() throws Exception {
+        ContextManager.unregisterSubject(alan);
+        ContextManager.unregisterSubject(izumi);
+    }
+
+    public void testHitsAndMisses() throws Exception {
+        AuthenticationCache cache = new AuthenticationCache(60000, 10);
+        assertNull(cache.get(cache.createKey("alan", "starcraft")));
+        cache.put(cache.createKey("alan", "starcraft"), alan);
+
+        assertSame(alan, cache.get(cache.createKey("alan", "starcraft")));
+        assertSame(alan, cache.get(cache.createKey("alan", "starcraft".toCharArray())));
+        assertNull(cache.get(cache.createKey("alan", "warcraft")));
+        assertNull(cache.get(cache.createKey("izumi", "starcraft")));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    public void testTimeout() throws Exception {
+        AuthenticationCache cache = new AuthenticationCache(100, 10);
+        Object key = cache.createKey("alan", "starcraft");
+        cache.put(key, alan);
+        assertSame(alan, cache.get(key));
+        Thread.sleep(150);
+        assertNull(cache.get(key));
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testLeastRecentlyUsedAreDropped() throws Exception {
+        AuthenticationCache cache = new AuthenticationCache(60000, 2);
+        Object alanKey = cache.createKey("alan", "starcraft");
+        Object izumiKey = cache.createKey("izumi", "violin");
+        cache.put(alanKey, alan);
+        cache.put(izumiKey, izumi);
+        cache.get(alanKey);
+        Subject george = new Subject();
+        ContextManager.registerSubject(george);
+        cache.put(cache.createKey("george", "bone"), george);
+        ContextManager.unregisterSubject(george);
+        assertEquals(2, cache.getSize());
+        assertSame(alan, cache.get(alanKey));
+        assertNull(cache.get(izumiKey));
+
+        cache.setMaxSize(1);
+        assertEquals(1, cache.getSize());
+    }
+
+    public void testInvalidate() throws Exception {
+        AuthenticationCache cache = new AuthenticationCache(60000, 10);
+        Object alanKey = cache.createKey("alan", "starcraft");
+        Object izumiKey = cache.createKey("izumi", "violin");
+        cache.put(alanKey, alan);
+        cache.put(izumiKey, izumi);
+
+        cache.invalidate("alan");
+        assertNull(cache.get(alanKey));
+        assertSame(izumi, cache.get(izumiKey));
+
+        cache.invalidate(izumi);
+        assertEquals(0, cache.getSize());
+
+        cache.put(alanKey, alan);
+        cache.invalidate();
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testUnregisteredSubjectIsDropped() throws Exception {
+        AuthenticationCache cache = new AuthenticationCache(60000, 10);
+        Object key = cache.createKey("alan", "starcraft");
+        cache.put(key, alan);
+        assertTrue(cache.isCached(alan));
+        assertFalse(cache.isCached(izumi));
+
+        // the login session expired on the server
+        ContextManager.unregisterSubject(alan);
+        assertNull(cache.get(key));
+        assertEquals(0, cache.getSize());
+        assertFalse(cache.isCached(alan));
+    }
+
+    public void testDisabled() throws Exception {
+        AuthenticationCache cache = new AuthenticationCache(0, 10);
+        assertFalse(cache.isEnabled());
+        assertNull(cache.createKey("alan", "starcraft"));
+        cache.put(cache.createKey("alan", "starcraft"), alan);
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getMissCount());
+
+        cache.setTimeoutMilliseconds(60000);
+        Object key = cache.createKey("alan", "starcraft");
+        cache.put(key, alan);
+        cache.setTimeoutMilliseconds(0);
+        assertEquals(0, cache.getSize());
+
+        // credentials we can't digest are never cached
+        cache.setTimeoutMilliseconds(60000);
+        assertNull(cache.createKey("alan", new Object()));
+        assertNull(cache.createKey(null, "starcraft"));
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.security.realm.providers;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Hashtable;
+import javax.naming.Context;
+import javax.naming.directory.DirContext;
+import javax.naming.spi.InitialContextFactory;
+
+import EDU.oswego.cs.dl.util.concurrent.SynchronizedInt;
+import junit.framework.TestCase;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class LDAPContextPoolTest extends TestCase {
+    private static final SynchronizedInt closed = new SynchronizedInt(0);
+    private Hashtable environment;
+
+    protected void setUp() throws Exception {
+        closed.set(0);
+        environment = new Hashtable();
+        environment.put(Context.INITIAL_CONTEXT_FACTORY, MockContextFactory.class.getName());
+        environment.put(Context.PROVIDER_URL, "ldap://localhost/" + getName());
+    }
+
+    public void testSweepClosesIdleContextsAndRemovesPool() throws Exception {
+        LDAPContextPool pool = LDAPContextPool.getPool(environment);
+        pool.configure(10, 100, 0);
+        pool.releaseContext(pool.getContext());
+        LDAPContextPool.sweep();
+        assertEquals(1, pool.getIdleCount());
+        assertSame(pool, LDAPContextPool.getPool(environment));
+
+        Thread.sleep(150);
+        LDAPContextPool.sweep();
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(1, closed.get());
+        assertNotSame(pool, LDAPContextPool.getPool(environment));
+
+        // a login module that still holds the removed pool does not leave contexts in it
+        pool.releaseContext(pool.getContext());
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(2, closed.get());
+    }
+
+    public void testPoolInUseIsKept() throws Exception {
+        LDAPContextPool pool = LDAPContextPool.getPool(environment);
+        pool.configure(10, 0, 60000);
+        DirContext context = pool.getContext();
+        LDAPContextPool.sweep();
+        assertSame(pool, LDAPContextPool.getPool(environment));
+        pool.discardContext(context);
+
+        pool.putRoles("search", Collections.singletonList("role"));
+        LDAPContextPool.sweep();
+        assertSame(pool, LDAPContextPool.getPool(environment));
+
+        pool.configure(10, 0, 0);
+        LDAPContextPool.sweep();
+        assertNotSame(pool, LDAPContextPool.getPool(environment));
+    }
+
+    public static class MockContextFactory implements InitialContextFactory {
+        public Context getInitialContext(Hashtable environment) {
+            return (Context) Proxy.newProxyInstance(DirContext.class.getClassLoader(), new Class[]{DirContext.class}, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("close")) {
+                        closed.increment();
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.security.realm.providers;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Properties;
+import javax.naming.AuthenticationException;
+import javax.naming.CommunicationException;
+import javax.naming.CompoundName;
+import javax.naming.Context;
+import javax.naming.Name;
+import javax.naming.NameParser;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchResult;
+import javax.naming.spi.InitialContextFactory;
+import javax.security.auth.Subject;
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.NameCallback;
+import javax.security.auth.callback.PasswordCallback;
+import javax.security.auth.login.LoginException;
+
+import junit.framework.TestCase;
+
+/**
+ * Runs the login module against a directory faked through the initialContextFactory
+ * option, counting the connections it opens and the role searches it makes.
+ *
+ * @version $Rev$ $Date$
+ */
+public class LDAPLoginModuleTest extends TestCase {
+    private static int created;
+    private static int closed;
+    private static int roleSearches;
+    private static int brokenGeneration;
+    private static int generation;
+
+    public void testReusesContexts() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            Subject subject = login("alice", "secret", new Properties());
+            assertTrue(subject.getPrincipals().contains(new GeronimoUserPrincipal("alice")));
+            assertTrue(subject.getPrincipals().contains(new GeronimoGroupPrincipal("admins")));
+        }
+        assertEquals(1, created);
+        assertEquals(0, closed);
+        assertEquals(3, roleSearches);
+    }
+
+    public void testWithoutPooling() throws Exception {
+        Properties options = new Properties();
+        options.put("connectionPoolMaxIdle", "0");
+        for (int i = 0; i < 3; i++) {
+            login("alice", "secret", options);
+        }
+        assertEquals(3, created);
+        assertEquals(3, closed);
+    }
+
+    public void testIdleTimeout() throws Exception {
+        Properties options = new Properties();
+        options.put("connectionPoolIdleTimeoutMilliseconds", "1");
+        login("alice", "secret", options);
+        Thread.sleep(10);
+        login("alice", "secret", options);
+        assertEquals(2, created);
+        assertEquals(1, closed);
+    }
+
+    public void testWrongPassword() throws Exception {
+        try {
+            login("alice", "guess", new Properties());
+            fail("expected LoginException");
+        } catch (LoginException expected) {
+        }
+        try {
+            login("bob", "secret", new Properties());
+            fail("expected LoginException");
+        } catch (LoginException expected) {
+        }
+        // a failed login leaves the context bound as the service user
+        login("alice", "secret", new Properties());
+        assertEquals(1, created);
+    }
+
+    public void testReconnectsAfterConnectionLoss() throws Exception {
+        login("alice", "secret", new Properties());
+        brokenGeneration = generation;
+        generation++;
+        login("alice", "secret", new Properties());
+        assertEquals(2, created);
+        assertEquals(1, closed);
+    }
+
+    public void testConnectionLossFailsLogin() throws Exception {
+        brokenGeneration = Integer.MAX_VALUE;
+        try {
+            login("alice", "secret", new Properties());
+            fail("expected LoginException");
+        } catch (LoginException expected) {
+        }
+        assertEquals(created, closed);
+    }
+
+    public void testRoleSearchCache() throws Exception {
+        Properties options = new Properties();
+        options.put("roleSearchCacheTimeoutMilliseconds", "60000");
+        for (int i = 0; i < 3; i++) {
+            Subject subject = login("alice", "secret", options);
+            assertTrue(subject.getPrincipals().contains(new GeronimoGroupPrincipal("admins")));
+        }
+        assertEquals(1, roleSearches);
+
+        // a wrong password never reaches the role search
+        try {
+            login("alice", "guess", options);
+            fail("expected LoginException");
+        } catch (LoginException expected) {
+        }
+        assertEquals(1, roleSearches);
+    }
+
+    private Subject login(final String username, final String password, Properties overrides) throws LoginException {
+        Properties options = new Properties();
+        options.put("initialContextFactory", MockInitialContextFactory.class.getName());
+        options.put("connectionURL", "ldap://" + getName());
+        options.put("connectionUsername", "uid=admin,ou=system");
+        options.put("connectionPassword", "secret");
+        options.put("authentication", "simple");
+        options.put("userBase", "ou=users,ou=system");
+        options.put("userSearchMatching", "uid={0}");
+        options.put("userSearchSubtree", "false");
+        options.put("roleBase", "ou=groups,ou=system");
+        options.put("roleName", "cn");
+        options.put("roleSearchMatching", "(uniqueMember={0})");
+        options.put("roleSearchSubtree", "false");
+        options.putAll(overrides);
+
+        Subject subject = new Subject();
+        LDAPLoginModule loginModule = new LDAPLoginModule();
+        loginModule.initialize(subject, new CallbackHandler() {
+            public void handle(Callback[] callbacks) {
+                ((NameCallback) callbacks[0]).setName(username);
+                ((PasswordCallback) callbacks[1]).setPassword(password.toCharArray());
+            }
+        }, new HashMap(), options);
+        assertTrue(loginModule.login());
+        assertTrue(loginModule.commit());
+        return subject;
+    }
+
+    protected void setUp() throws Exception {
+        created = 0;
+        closed = 0;
+        roleSearches = 0;
+        brokenGeneration = -1;
+        generation = 0;
+    }
+
+    public static class MockInitialContextFactory implements InitialContextFactory {
+        public Context getInitialContext(Hashtable environment) {
+            created++;
+            return (Context) Proxy.newProxyInstance(DirContext.class.getClassLoader(),
+                                                    new Class[]{DirContext.class},
+                                                    new MockDirContext(environment));
+        }
+    }
+
+    /**
+     * Knows user alice, password secret, in group admins.
+     */
+    private static class MockDirContext implements InvocationHandler {
+        private final Hashtable environment;
+        private final int contextGeneration = generation;
+
+        MockDirContext(Hashtable environment) {
+            this.environment = (Hashtable) environment.clone();
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close")) {
+                closed++;
+                return null;
+            } else if (name.equals("addToEnvironment")) {
+                return environment.put(args[0], args[1]);
+            } else if (name.equals("removeFromEnvironment")) {
+                return environment.remove(args[0]);
+            } else if (name.equals("getNameInNamespace")) {
+                return "";
+            } else if (name.equals("getNameParser")) {
+                return new NameParser() {
+                    public Name parse(String name) throws NamingException {
+                        Properties syntax = new Properties();
+                        syntax.put("jndi.syntax.direction", "right_to_left");
+                        syntax.put("jndi.syntax.separator", ",");
+                        return new CompoundName(name, syntax);
+                    }
+                };
+            } else if (name.equals("hashCode")) {
+                return new Integer(System.identityHashCode(proxy));
+            } else if (name.equals("equals")) {
+                return Boolean.valueOf(proxy == args[0]);
+            } else if (name.equals("toString")) {
+                return "MockDirContext" + environment;
+            }
+
+            if (contextGeneration <= brokenGeneration) {
+                throw new CommunicationException("connection closed");
+            }
+            if (name.equals("search")) {
+                return search((String) args[0], (String) args[1]);
+            } else if (name.equals("getAttributes")) {
+                String principal = (String) environment.get(Context.SECURITY_PRINCIPAL);
+                if (principal.indexOf("uid=alice") >= 0 && !"secret".equals(environment.get(Context.SECURITY_CREDENTIALS))) {
+                    throw new AuthenticationException();
+                }
+                return new BasicAttributes();
+            }
+            throw new UnsupportedOperationException(name);
+        }
+
+        private NamingEnumeration search(String base, String filter) {
+            if (base.equals("ou=users,ou=system")) {
+                if (filter.equals("uid=alice")) {
+                    return new ResultEnumeration(new SearchResult("uid=alice", null, new BasicAttributes()));
+                }
+                return new ResultEnumeration(null);
+            }
+            roleSearches++;
+            if (filter.indexOf("uid=alice") >= 0) {
+                return new ResultEnumeration(new SearchResult("cn=admins", null, new BasicAttributes("cn", "admins")));
+            }
+            return new ResultEnumeration(null);
+        }
+    }
+
+    private static class ResultEnumeration implements NamingEnumeration {
+        private final Iterator iterator;
+
+        ResultEnumeration(SearchResult result) {
+            iterator = result == null ? Collections.EMPTY_LIST.iterator() : Collections.singletonList(result).iterator();
+        }
+
+        public boolean hasMore() {
+            return iterator.hasNext();
+        }
+
+        public Object next() {
+            return iterator.next();
+        }
+
+        public boolean hasMoreElements() {
+            return iterator.hasNext();
+        }
+
+        public Object nextElement() {
+            return iterator.next();
+        }
+
+        public void close() {
+        }
+    }
+}
@@ -59,6 +59,7 @@ public class Daemon {
     private final static String ARGUMENT_MORE_VERBOSE_SHORTFORM = "-vv";
     private final static String ARGUMENT_MORE_VERBOSE = "--veryverbose";
     private final static String ARGUMENT_CONFIG_OVERRIDE = "--override";
+    private final static String ARGUMENT_PARALLEL = "--parallel";
     private static boolean started = false;
     private static Log log;
     private StartupMonitor monitor;
@@ -66,6 +67,7 @@ public class Daemon {
     private String verboseArg = null;
     private String noProgressArg = null;
     private String longProgressArg = null;
+    private String parallelArg = null;
 
     private Daemon(String[] args) {
         // Very first startup tasks
@@ -101,6 +103,10 @@ public class Daemon {
                     "             the server from an IDE or other tool (doesn't use linefeeds to\n" +
                     "             update the progress information that is used by default if you\n" +
                     "             don't specify " +ARGUMENT_NO_PROGRESS +" or "+ARGUMENT_LONG_PROGRESS+").\n");
+        out.println("  "+ARGUMENT_PARALLEL);
+        out.println("             Start configurations that do not depend on each other at the\n" +
+                    "             same time, using one thread per available processor, and\n" +
+                    "             report the slowest chain of dependent configurations.");
         out.println("  "+ARGUMENT_VERBOSE_SHORTFORM +" " +ARGUMENT_VERBOSE);
         out.println("             Reduces the console log level to DEBUG, resulting in more\n" +
                     "             console output than is normally present.");
@@ -143,6 +149,8 @@ public class Daemon {
                 noProgressArg = ARGUMENT_NO_PROGRESS;
             } else if (args[i].equals(ARGUMENT_LONG_PROGRESS)) {
                 longProgressArg = ARGUMENT_LONG_PROGRESS;
+            } else if (args[i].equals(ARGUMENT_PARALLEL)) {
+                parallelArg = ARGUMENT_PARALLEL;
             } else if (args[i].equals(ARGUMENT_VERBOSE_SHORTFORM) ||
                     args[i].equals(ARGUMENT_VERBOSE)) {
                 if (verboseArg == null) {
@@ -323,18 +331,23 @@ public class Daemon {
             try {
                 ConfigurationManager configurationManager = ConfigurationUtil.getConfigurationManager(kernel);
                 try {
-                    for (Iterator i = configs.iterator(); i.hasNext();) {
-                        URI configID = (URI) i.next();
-                        monitor.configurationLoading(configID);
-                        List list = configurationManager.loadRecursive(configID);
-                        monitor.configurationLoaded(configID);
-                        monitor.configurationStarting(configID);
-                        for (Iterator iterator = list.iterator(); iterator.hasNext();) {
-                            URI name = (URI) iterator.next();
-                            configurationManager.loadGBeans(name);
-                            configurationManager.start(name);
+                    if (parallelArg != null) {
+                        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+                        new ParallelConfigurationStarter(kernel, configurationManager, monitor, threads).startConfigurations(configs);
+                    } else {
+                        for (Iterator i = configs.iterator(); i.hasNext();) {
+                            URI configID = (URI) i.next();
+                            monitor.configurationLoading(configID);
+                            List list = configurationManager.loadRecursive(configID);
+                            monitor.configurationLoaded(configID);
+                            monitor.configurationStarting(configID);
+                            for (Iterator iterator = list.iterator(); iterator.hasNext();) {
+                                URI name = (URI) iterator.next();
+                                configurationManager.loadGBeans(name);
+                                configurationManager.start(name);
+                            }
+                            monitor.configurationStarted(configID);
                         }
-                        monitor.configurationStarted(configID);
                     }
                 } finally {
                     ConfigurationUtil.releaseConfigurationManager(kernel, configurationManager);
@@ -46,8 +46,8 @@ public class LongStartupMonitor implements StartupMonitor {
     private int configNum;
     /** Time Geronimo was started */
     private long started;
-    /** Time the current configuration being processed was started */
-    private long configStarted;
+    /** Time each configuration being processed was started (URI -> Long) */
+    private final Map configStarted = new HashMap();
     /** The Kernel of the system being started */
     private Kernel kernel;
 
@@ -74,11 +74,13 @@ public class LongStartupMonitor implements StartupMonitor {
     }
 
     public synchronized void configurationStarting(URI configuration) {
-        configStarted = System.currentTimeMillis();        
+        configStarted.put(configuration, new Long(System.currentTimeMillis()));
     }
 
     public synchronized void configurationStarted(URI configuration) {
-        int time = Math.round((float)(System.currentTimeMillis() - configStarted)/1000f);
+        Long configStartTime = (Long) configStarted.remove(configuration);
+        long startTime = configStartTime == null ? System.currentTimeMillis() : configStartTime.longValue();
+        int time = Math.round((float)(System.currentTimeMillis() - startTime)/1000f);
         StringBuffer buf = new StringBuffer();
         buf.append("Started configuration ");
         // pad config index
@@ -96,6 +98,13 @@ public class LongStartupMonitor implements StartupMonitor {
         out.println(buf.toString());
     }
 
+    public synchronized void startupCriticalPath(URI[] configurations, long time) {
+        out.println("Critical path "+Math.round((float)time/1000f)+"s:");
+        for (int i = 0; i < configurations.length; i++) {
+            out.println("    "+configurations[i]);
+        }
+    }
+
     public synchronized void startupFinished() {
         int time = Math.round((float)(System.currentTimeMillis() - started)/1000f);
         
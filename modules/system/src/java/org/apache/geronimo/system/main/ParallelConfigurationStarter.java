@@ -0,0 +1,264 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.system.main;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import EDU.oswego.cs.dl.util.concurrent.PooledExecutor;
+import EDU.oswego.cs.dl.util.concurrent.ThreadFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.geronimo.kernel.Kernel;
+import org.apache.geronimo.kernel.config.Configuration;
+import org.apache.geronimo.kernel.config.ConfigurationManager;
+
+/**
+ * Starts a list of configurations, running configurations that do not depend on each other
+ * at the same time on a bounded pool of threads.
+ * <p/>
+ * All of the configurations and their ancestors are first loaded in order on the calling thread.
+ * The parentId attributes of the loaded configurations then form a DAG, and a configuration
+ * is handed to the pool as soon as every parent it depends on has started.
+ * When everything is running, the longest chain of dependent starts is reported to the
+ * StartupMonitor as the critical path of the startup.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ParallelConfigurationStarter {
+    private static final Log log = LogFactory.getLog(ParallelConfigurationStarter.class);
+
+    private final Kernel kernel;
+    private final ConfigurationManager configurationManager;
+    private final StartupMonitor monitor;
+    private final int threads;
+
+    private final Map nodes = new LinkedHashMap();
+    private PooledExecutor executor;
+    private int remaining;
+    private Exception failure;
+
+    public ParallelConfigurationStarter(Kernel kernel, ConfigurationManager configurationManager, StartupMonitor monitor, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1: " + threads);
+        }
+        this.kernel = kernel;
+        this.configurationManager = configurationManager;
+        this.monitor = monitor;
+        this.threads = threads;
+    }
+
+    /**
+     * Loads and starts the configurations and all of their ancestors.
+     *
+     * @param configIds a List<URI> of the configurations to start
+     * @throws Exception the first exception thrown while loading or starting a configuration
+     */
+    public void startConfigurations(List configIds) throws Exception {
+        // load every configuration on this thread so the kernel sees them in order
+        Map requested = new LinkedHashMap();
+        for (Iterator i = configIds.iterator(); i.hasNext();) {
+            URI configID = (URI) i.next();
+            monitor.configurationLoading(configID);
+            List list = configurationManager.loadRecursive(configID);
+            monitor.configurationLoaded(configID);
+            for (Iterator iterator = list.iterator(); iterator.hasNext();) {
+                URI name = (URI) iterator.next();
+                if (!nodes.containsKey(name)) {
+                    nodes.put(name, new Node(name));
+                }
+            }
+            requested.put(configID, nodes.get(configID));
+        }
+
+        // link each configuration to the parents it is waiting for; parents
+        // that are not in the map are already running
+        for (Iterator i = nodes.values().iterator(); i.hasNext();) {
+            Node node = (Node) i.next();
+            URI[] parentIds = (URI[]) kernel.getAttribute(node.objectName, "parentId");
+            if (parentIds != null) {
+                for (int j = 0; j < parentIds.length; j++) {
+                    Node parent = (Node) nodes.get(parentIds[j]);
+                    if (parent != null && !node.parents.contains(parent)) {
+                        node.parents.add(parent);
+                        parent.children.add(node);
+                    }
+                }
+            }
+        }
+        for (Iterator i = requested.entrySet().iterator(); i.hasNext();) {
+            Map.Entry entry = (Map.Entry) i.next();
+            Node node = (Node) entry.getValue();
+            if (node == null) {
+                // already running
+                URI configID = (URI) entry.getKey();
+                monitor.configurationStarting(configID);
+                monitor.configurationStarted(configID);
+            } else {
+                node.requested = true;
+            }
+        }
+
+        List ready = new ArrayList();
+        synchronized (this) {
+            executor = new PooledExecutor(threads);
+            executor.setMinimumPoolSize(threads);
+            executor.setThreadFactory(new StartupThreadFactory());
+            remaining = nodes.size();
+            for (Iterator i = nodes.values().iterator(); i.hasNext();) {
+                Node node = (Node) i.next();
+                node.waitingFor = node.parents.size();
+                if (node.waitingFor == 0) {
+                    ready.add(node);
+                }
+            }
+        }
+        try {
+            for (Iterator i = ready.iterator(); i.hasNext();) {
+                executor.execute((Node) i.next());
+            }
+            synchronized (this) {
+                while (remaining > 0 && failure == null) {
+                    wait();
+                }
+            }
+        } finally {
+            executor.shutdownAfterProcessingCurrentlyQueuedTasks();
+            executor.awaitTerminationAfterShutdown();
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+        reportCriticalPath();
+    }
+
+    private void started(Node node) throws InterruptedException {
+        List ready = new ArrayList();
+        synchronized (this) {
+            remaining--;
+            for (Iterator i = node.children.iterator(); i.hasNext();) {
+                Node child = (Node) i.next();
+                child.waitingFor--;
+                if (child.waitingFor == 0 && failure == null) {
+                    ready.add(child);
+                }
+            }
+            notifyAll();
+        }
+        for (Iterator i = ready.iterator(); i.hasNext();) {
+            executor.execute((Node) i.next());
+        }
+    }
+
+    private synchronized void failed(Exception e) {
+        if (failure == null) {
+            failure = e;
+        }
+        notifyAll();
+    }
+
+    private void reportCriticalPath() {
+        Node last = null;
+        for (Iterator i = nodes.values().iterator(); i.hasNext();) {
+            Node node = (Node) i.next();
+            if (last == null || node.criticalPathTime > last.criticalPathTime) {
+                last = node;
+            }
+        }
+        if (last == null) {
+            return;
+        }
+        LinkedList path = new LinkedList();
+        for (Node node = last; node != null; node = node.criticalParent) {
+            path.addFirst(node.configID);
+        }
+        monitor.startupCriticalPath((URI[]) path.toArray(new URI[path.size()]), last.criticalPathTime);
+    }
+
+    private class Node implements Runnable {
+        private final URI configID;
+        private final ObjectName objectName;
+        private final List parents = new ArrayList();
+        private final List children = new ArrayList();
+        private boolean requested;
+
+        // guarded by ParallelConfigurationStarter.this
+        private int waitingFor;
+
+        // written before the children are released, so visible to them
+        private long criticalPathTime;
+        private Node criticalParent;
+
+        public Node(URI configID) throws MalformedObjectNameException {
+            this.configID = configID;
+            this.objectName = Configuration.getConfigurationObjectName(configID);
+        }
+
+        public void run() {
+            try {
+                if (requested) {
+                    monitor.configurationStarting(configID);
+                }
+                long start = System.currentTimeMillis();
+                configurationManager.loadGBeans(configID);
+                configurationManager.start(configID);
+                long time = System.currentTimeMillis() - start;
+
+                synchronized (ParallelConfigurationStarter.this) {
+                    for (Iterator i = parents.iterator(); i.hasNext();) {
+                        Node parent = (Node) i.next();
+                        if (criticalParent == null || parent.criticalPathTime > criticalParent.criticalPathTime) {
+                            criticalParent = parent;
+                        }
+                    }
+                    criticalPathTime = time + (criticalParent == null ? 0 : criticalParent.criticalPathTime);
+                }
+                log.debug("Started configuration " + configID + " in " + time + "ms");
+                if (requested) {
+                    monitor.configurationStarted(configID);
+                }
+
+                started(this);
+            } catch (Exception e) {
+                monitor.startFailed(configID.toString(), e);
+                failed(e);
+            }
+        }
+    }
+
+    private static final class StartupThreadFactory implements ThreadFactory {
+        private int nextWorkerID = 0;
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Geronimo startup " + getNextWorkerID());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+        private synchronized int getNextWorkerID() {
+            return nextWorkerID++;
+        }
+    }
+}
@@ -134,6 +134,10 @@ public class ProgressBarStartupMonitor implements StartupMonitor {
         repaint();
     }
 
+    public synchronized void startupCriticalPath(URI[] configurations, long time) {
+        log.info("Startup critical path ("+time+"ms): "+Arrays.asList(configurations));
+    }
+
     public synchronized void startupFinished() {
         finished = true;
         currentOperation = "Startup complete";
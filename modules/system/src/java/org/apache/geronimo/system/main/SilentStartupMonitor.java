@@ -1,6 +1,7 @@
 package org.apache.geronimo.system.main;
 
 import java.net.URI;
+import java.util.Arrays;
 import java.util.Set;
 import java.util.Iterator;
 
@@ -43,6 +44,10 @@ public class SilentStartupMonitor implements StartupMonitor {
     public void configurationStarted(URI configuration) {
     }
 
+    public void startupCriticalPath(URI[] configurations, long time) {
+        log.info("Startup critical path (" + time + "ms): " + Arrays.asList(configurations));
+    }
+
     public void startupFinished() {
         try {
             Set gbeans = kernel.listGBeans(ObjectName.getInstance("*:*"));
@@ -18,6 +18,8 @@ public interface StartupMonitor {
     void configurationLoaded(URI configuration);
     void configurationStarting(URI configuration);
     void configurationStarted(URI configuration);
+    // Only called when configurations are started in parallel, before startupFinished
+    void startupCriticalPath(URI[] configurations, long time);
     void startupFinished();
 
     // Indicate failures during load
@@ -0,0 +1,234 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.system.main;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.gbean.GBeanData;
+import org.apache.geronimo.gbean.GBeanInfo;
+import org.apache.geronimo.gbean.GBeanInfoBuilder;
+import org.apache.geronimo.kernel.Kernel;
+import org.apache.geronimo.kernel.KernelFactory;
+import org.apache.geronimo.kernel.config.Configuration;
+import org.apache.geronimo.kernel.config.ConfigurationManager;
+import org.apache.geronimo.kernel.config.InvalidConfigException;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ParallelConfigurationStarterTest extends TestCase {
+    private Kernel kernel;
+    private MockConfigurationManager configurationManager;
+    private MockStartupMonitor monitor;
+    private URI a;
+    private URI b;
+    private URI c;
+    private URI d;
+
+    public void testStartsParentsFirst() throws Exception {
+        ParallelConfigurationStarter starter = new ParallelConfigurationStarter(kernel, configurationManager, monitor, 4);
+        starter.startConfigurations(Arrays.asList(new URI[]{d, c}));
+
+        List started = configurationManager.getStarted();
+        assertEquals(4, started.size());
+        assertEquals(a, started.get(0));
+        assertEquals(d, started.get(3));
+        assertTrue(started.contains(b));
+        assertTrue(started.contains(c));
+
+        assertEquals(Arrays.asList(new URI[]{c, d}), monitor.started);
+        assertEquals(a, monitor.criticalPath[0]);
+        assertEquals(3, monitor.criticalPath.length);
+        assertEquals(d, monitor.criticalPath[2]);
+        assertTrue(monitor.criticalPathTime >= 0);
+    }
+
+    public void testFailureStopsDependents() throws Exception {
+        configurationManager.fail = b;
+        ParallelConfigurationStarter starter = new ParallelConfigurationStarter(kernel, configurationManager, monitor, 4);
+        try {
+            starter.startConfigurations(Arrays.asList(new URI[]{d}));
+            fail("expected InvalidConfigException");
+        } catch (InvalidConfigException expected) {
+        }
+        assertFalse(configurationManager.getStarted().contains(d));
+        assertNull(monitor.criticalPath);
+    }
+
+    protected void setUp() throws Exception {
+        kernel = KernelFactory.newInstance().createKernel("test");
+        kernel.boot();
+
+        a = new URI("test/a");
+        b = new URI("test/b");
+        c = new URI("test/c");
+        d = new URI("test/d");
+        loadConfiguration(a, null);
+        loadConfiguration(b, new URI[]{a});
+        loadConfiguration(c, new URI[]{a});
+        loadConfiguration(d, new URI[]{b, c});
+
+        configurationManager = new MockConfigurationManager(kernel);
+        monitor = new MockStartupMonitor();
+    }
+
+    protected void tearDown() throws Exception {
+        kernel.shutdown();
+    }
+
+    private void loadConfiguration(URI configID, URI[] parentId) throws Exception {
+        ObjectName name = Configuration.getConfigurationObjectName(configID);
+        GBeanData data = new GBeanData(name, MockConfiguration.GBEAN_INFO);
+        data.setAttribute("parentId", parentId);
+        kernel.loadGBean(data, getClass().getClassLoader());
+    }
+
+    public static class MockConfiguration {
+        public static final GBeanInfo GBEAN_INFO;
+
+        static {
+            GBeanInfoBuilder infoFactory = new GBeanInfoBuilder(MockConfiguration.class);
+            infoFactory.addAttribute("parentId", URI[].class, true);
+            GBEAN_INFO = infoFactory.getBeanInfo();
+        }
+    }
+
+    private static class MockConfigurationManager implements ConfigurationManager {
+        private final Kernel kernel;
+        private final List started = new ArrayList();
+        private URI fail;
+
+        public MockConfigurationManager(Kernel kernel) {
+            this.kernel = kernel;
+        }
+
+        public synchronized List getStarted() {
+            return new ArrayList(started);
+        }
+
+        public List loadRecursive(URI configID) throws InvalidConfigException {
+            LinkedList ancestors = new LinkedList();
+            loadRecursive(configID, ancestors);
+            return ancestors;
+        }
+
+        private void loadRecursive(URI configID, LinkedList ancestors) throws InvalidConfigException {
+            ancestors.remove(configID);
+            ancestors.addFirst(configID);
+            try {
+                URI[] parents = (URI[]) kernel.getAttribute(Configuration.getConfigurationObjectName(configID), "parentId");
+                if (parents != null) {
+                    for (int i = 0; i < parents.length; i++) {
+                        loadRecursive(parents[i], ancestors);
+                    }
+                }
+            } catch (Exception e) {
+                throw new InvalidConfigException(e);
+            }
+        }
+
+        public void loadGBeans(URI configID) {
+        }
+
+        public void start(URI configID) throws InvalidConfigException {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                throw new InvalidConfigException(e);
+            }
+            if (configID.equals(fail)) {
+                throw new InvalidConfigException("Failed to start " + configID);
+            }
+            synchronized (this) {
+                started.add(configID);
+            }
+        }
+
+        public boolean isLoaded(URI configID) {
+            return true;
+        }
+
+        public List listStores() {
+            return null;
+        }
+
+        public List listConfigurations(ObjectName store) {
+            return null;
+        }
+
+        public ObjectName load(URI configID) {
+            return null;
+        }
+
+        public void unload(URI configID) {
+        }
+
+        public void stop(URI configID) {
+        }
+    }
+
+    private static class MockStartupMonitor implements StartupMonitor {
+        private final List started = new ArrayList();
+        private URI[] criticalPath;
+        private long criticalPathTime;
+
+        public void systemStarting(long startTime) {
+        }
+
+        public void systemStarted(Kernel kernel) {
+        }
+
+        public void foundConfigurations(URI[] configurations) {
+        }
+
+        public void configurationLoading(URI configuration) {
+        }
+
+        public void configurationLoaded(URI configuration) {
+        }
+
+        public void configurationStarting(URI configuration) {
+        }
+
+        public synchronized void configurationStarted(URI configuration) {
+            started.add(configuration);
+        }
+
+        public synchronized void startupCriticalPath(URI[] configurations, long time) {
+            criticalPath = configurations;
+            criticalPathTime = time;
+        }
+
+        public void startupFinished() {
+        }
+
+        public void serverStartFailed(Exception problem) {
+        }
+
+        public void loadFailed(String configuration, Exception problem) {
+        }
+
+        public void startFailed(String configuration, Exception problem) {
+        }
+    }
+}
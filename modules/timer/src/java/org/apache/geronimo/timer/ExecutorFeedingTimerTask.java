@@ -17,8 +17,6 @@
 
 package org.apache.geronimo.timer;
 
-import java.util.TimerTask;
-
 import javax.transaction.RollbackException;
 import javax.transaction.SystemException;
 import javax.transaction.Synchronization;
@@ -33,7 +31,7 @@ import org.apache.commons.logging.LogFactory;
  * @version $Rev$ $Date$
  *
  * */
-public class ExecutorFeedingTimerTask extends TimerTask {
+public class ExecutorFeedingTimerTask extends ScheduledTask {
 
     private static final Log log = LogFactory.getLog(ExecutorFeedingTimerTask.class);
 
@@ -68,7 +66,7 @@ public class ExecutorFeedingTimerTask extends TimerTask {
         // One cancels the task at this specific time. If the transaction is
         // rolled-back, one will recreate it.
         cancelled = true;
-        return super.cancel();
+        return unschedule();
     }
 
     public boolean isCancelled() {
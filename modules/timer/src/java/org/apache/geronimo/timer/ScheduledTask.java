@@ -0,0 +1,56 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.timer;
+
+/**
+ * A task run by a TimerScheduler, once or repeatedly.  The scheduling fields are owned by the
+ * scheduler and only touched while holding its lock; each task records its own position in the
+ * scheduler's heap so it can be unscheduled without a search.
+ *
+ * @version $Rev$ $Date$
+ */
+public abstract class ScheduledTask implements Runnable {
+
+    // guarded by the lock of the scheduler
+    long nextExecutionTime;
+    long period;
+    boolean fixedRate;
+    int heapIndex = -1;
+    // out of the heap while a dispatch thread runs it
+    boolean running;
+
+    private volatile TimerScheduler scheduler;
+
+    void setScheduler(TimerScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Removes this task from its scheduler.
+     *
+     * @return true if this prevented one or more executions of the task
+     */
+    protected boolean unschedule() {
+        TimerScheduler scheduler = this.scheduler;
+        if (scheduler == null) {
+            return false;
+        }
+        return scheduler.unschedule(this);
+    }
+
+}
@@ -19,27 +19,27 @@ package org.apache.geronimo.timer;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 import javax.transaction.RollbackException;
 import javax.transaction.Status;
 import javax.transaction.Synchronization;
 import javax.transaction.SystemException;
 
+import EDU.oswego.cs.dl.util.concurrent.ConcurrentHashMap;
 import EDU.oswego.cs.dl.util.concurrent.Executor;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.geronimo.gbean.GBeanInfo;
+import org.apache.geronimo.gbean.GBeanInfoBuilder;
 import org.apache.geronimo.gbean.GBeanLifecycle;
 import org.apache.geronimo.transaction.context.TransactionContext;
 import org.apache.geronimo.transaction.context.TransactionContextManager;
 
 /**
- *
+ * Schedules timers on a TimerScheduler, whose dispatch threads hand the work to the Executor
+ * when a timer fires.
  *
  * @version $Rev$ $Date$
  *
@@ -48,14 +48,17 @@ public class ThreadPooledTimer implements PersistentTimer, GBeanLifecycle {
 
     private static final Log log = LogFactory.getLog(ThreadPooledTimer.class);
 
+    public static final int DEFAULT_DISPATCH_THREADS = 2;
+
     private final ExecutorTaskFactory executorTaskFactory;
     private final WorkerPersistence workerPersistence;
     private final Executor executor;
     private final TransactionContextManager transactionContextManager;
 
-    private Timer delegate;
+    private int dispatchThreads = DEFAULT_DISPATCH_THREADS;
+    private TimerScheduler delegate;
 
-    private final Map idToWorkInfoMap = Collections.synchronizedMap(new HashMap());
+    private final Map idToWorkInfoMap = new ConcurrentHashMap();
 
     //default constructor for use as reference endpoint.
     public ThreadPooledTimer() {
@@ -69,15 +72,60 @@ public class ThreadPooledTimer implements PersistentTimer, GBeanLifecycle {
         this.transactionContextManager = transactionContextManager;
     }
 
+    public int getDispatchThreads() {
+        return dispatchThreads;
+    }
+
+    /**
+     * Sets the number of threads taking due timers off the schedule; takes effect at the next start.
+     * 0 or less means DEFAULT_DISPATCH_THREADS.
+     */
+    public void setDispatchThreads(int dispatchThreads) {
+        this.dispatchThreads = dispatchThreads > 0 ? dispatchThreads : DEFAULT_DISPATCH_THREADS;
+    }
+
+    public int getScheduledCount() {
+        TimerScheduler delegate = this.delegate;
+        return delegate == null ? 0 : delegate.getPendingCount();
+    }
+
+    /**
+     * Number of timer expirations since the last start.
+     */
+    public long getExecutionCount() {
+        TimerScheduler delegate = this.delegate;
+        return delegate == null ? 0 : delegate.getExecutionCount();
+    }
+
+    /**
+     * Average time between when a timer was scheduled to fire and when it was handed to the executor.
+     */
+    public long getAverageLatenessMilliseconds() {
+        TimerScheduler delegate = this.delegate;
+        return delegate == null ? 0 : delegate.getAverageLatenessMilliseconds();
+    }
+
+    public long getMaxLatenessMilliseconds() {
+        TimerScheduler delegate = this.delegate;
+        return delegate == null ? 0 : delegate.getMaxLatenessMilliseconds();
+    }
+
     public void doStart() throws Exception {
-        delegate = new Timer(true);
+        delegate = new TimerScheduler("ThreadPooledTimer", dispatchThreads);
     }
 
     public void doStop() {
         if (delegate != null) {
-            delegate.cancel();
+            delegate.stop();
             delegate = null;
         }
+        if (workerPersistence != null) {
+            try {
+                workerPersistence.close();
+            } catch (PersistenceException e) {
+                log.warn("Unable to close timer persistence", e);
+            }
+        }
     }
 
     public void doFail() {
@@ -181,10 +229,9 @@ public class ThreadPooledTimer implements PersistentTimer, GBeanLifecycle {
     public void cancelTimerTasks(Collection ids) {
         for (Iterator iterator = ids.iterator(); iterator.hasNext();) {
             Long idLong = (Long) iterator.next();
-            WorkInfo workInfo = getWorkInfo(idLong);
+            WorkInfo workInfo = (WorkInfo) idToWorkInfoMap.remove(idLong);
             if (workInfo != null) {
-                TimerTask timerTask = workInfo.getExecutorFeedingTimerTask();
-                timerTask.cancel();
+                workInfo.getExecutorFeedingTimerTask().unschedule();
             }
         }
     }
@@ -209,7 +256,7 @@ public class ThreadPooledTimer implements PersistentTimer, GBeanLifecycle {
         }
     }
 
-    Timer getTimer() {
+    TimerScheduler getTimer() {
         if (delegate == null) {
             throw new IllegalStateException("Timer is stopped");
         }
@@ -370,4 +417,23 @@ public class ThreadPooledTimer implements PersistentTimer, GBeanLifecycle {
 
     }
 
+    public static final GBeanInfo GBEAN_INFO;
+
+    static {
+        GBeanInfoBuilder infoFactory = GBeanInfoBuilder.createStatic(ThreadPooledTimer.class);
+        infoFactory.addInterface(PersistentTimer.class);
+
+        infoFactory.addAttribute("dispatchThreads", int.class, true);
+        infoFactory.addAttribute("scheduledCount", int.class, false);
+        infoFactory.addAttribute("executionCount", long.class, false);
+        infoFactory.addAttribute("averageLatenessMilliseconds", long.class, false);
+        infoFactory.addAttribute("maxLatenessMilliseconds", long.class, false);
+
+        GBEAN_INFO = infoFactory.getBeanInfo();
+    }
+
+    public static GBeanInfo getGBeanInfo() {
+        return GBEAN_INFO;
+    }
+
 }
@@ -0,0 +1,313 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.timer;
+
+import java.util.Date;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Runs ScheduledTasks at their scheduled times, in place of a java.util.Timer.  Pending tasks
+ * are kept in a binary heap ordered by next execution time, and each task knows its index in
+ * the heap, so scheduling and cancelling are O(log n) however many timers are pending.
+ * <p/>
+ * Several dispatch threads take due tasks off the heap, so one task that is slow to run (for
+ * instance because the thread pool it hands work to is full) does not hold up the others.  A
+ * dispatch thread that takes a task wakes another one if the next task is also due.  A
+ * repeating task is out of the heap while it runs and is put back when run() returns, so
+ * like with java.util.Timer it never runs concurrently with itself.  Tasks should still be
+ * short.  The lateness of every execution, the time between when it was
+ * scheduled and when a dispatch thread took it, is recorded.
+ * <p/>
+ * The scheduling methods have the semantics of the java.util.Timer methods of the same name.
+ *
+ * @version $Rev$ $Date$
+ */
+public class TimerScheduler {
+
+    private static final Log log = LogFactory.getLog(TimerScheduler.class);
+
+    private final Object lock = new Object();
+    private final Thread[] dispatchers;
+    private ScheduledTask[] heap = new ScheduledTask[64];
+    private int size;
+    private boolean stopped;
+
+    private long executionCount;
+    private long totalLateness;
+    private long maxLateness;
+
+    public TimerScheduler(String name, int dispatchThreads) {
+        if (dispatchThreads <= 0) {
+            throw new IllegalArgumentException("dispatchThreads must be positive: attempted value: " + dispatchThreads);
+        }
+        dispatchers = new Thread[dispatchThreads];
+        for (int i = 0; i < dispatchers.length; i++) {
+            dispatchers[i] = new Thread(new Dispatcher(), name + " " + i);
+            dispatchers[i].setDaemon(true);
+            dispatchers[i].start();
+        }
+    }
+
+    public void schedule(ScheduledTask task, Date time) {
+        schedule(task, time.getTime(), 0, false);
+    }
+
+    public void schedule(ScheduledTask task, Date firstTime, long period) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Non-positive period.");
+        }
+        schedule(task, firstTime.getTime(), period, false);
+    }
+
+    public void scheduleAtFixedRate(ScheduledTask task, Date firstTime, long period) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Non-positive period.");
+        }
+        schedule(task, firstTime.getTime(), period, true);
+    }
+
+    /**
+     * Stops the dispatch threads and drops all pending tasks.
+     */
+    public void stop() {
+        synchronized (lock) {
+            stopped = true;
+            for (int i = 0; i < size; i++) {
+                heap[i].heapIndex = -1;
+                heap[i] = null;
+            }
+            size = 0;
+            lock.notifyAll();
+        }
+    }
+
+    public int getPendingCount() {
+        synchronized (lock) {
+            return size;
+        }
+    }
+
+    public int getDispatchThreads() {
+        return dispatchers.length;
+    }
+
+    public long getExecutionCount() {
+        synchronized (lock) {
+            return executionCount;
+        }
+    }
+
+    public long getAverageLatenessMilliseconds() {
+        synchronized (lock) {
+            return executionCount == 0 ? 0 : totalLateness / executionCount;
+        }
+    }
+
+    public long getMaxLatenessMilliseconds() {
+        synchronized (lock) {
+            return maxLateness;
+        }
+    }
+
+    boolean unschedule(ScheduledTask task) {
+        synchronized (lock) {
+            if (task.heapIndex >= 0) {
+                removeAt(task.heapIndex);
+                return true;
+            }
+            if (task.running && task.period != 0) {
+                // not put back when it returns
+                task.period = 0;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private void schedule(ScheduledTask task, long time, long period, boolean fixedRate) {
+        if (time < 0) {
+            throw new IllegalArgumentException("Illegal execution time.");
+        }
+        synchronized (lock) {
+            if (stopped) {
+                throw new IllegalStateException("Timer is stopped");
+            }
+            if (task.heapIndex >= 0 || (task.running && task.period != 0)) {
+                throw new IllegalStateException("Task already scheduled");
+            }
+            task.setScheduler(this);
+            task.nextExecutionTime = time;
+            task.period = period;
+            task.fixedRate = fixedRate;
+            add(task);
+        }
+    }
+
+    /**
+     * Puts a repeating task back into the heap once it has run, unless it was unscheduled
+     * or the scheduler stopped meanwhile.
+     */
+    private void ran(ScheduledTask task) {
+        synchronized (lock) {
+            task.running = false;
+            // a one-shot task may have been scheduled again while it ran and be in the heap already
+            if (task.period != 0 && task.heapIndex < 0 && !stopped) {
+                add(task);
+            }
+        }
+    }
+
+    private ScheduledTask takeDueTask() throws InterruptedException {
+        synchronized (lock) {
+            while (true) {
+                if (stopped) {
+                    return null;
+                }
+                if (size == 0) {
+                    lock.wait();
+                    continue;
+                }
+                ScheduledTask task = heap[0];
+                long now = System.currentTimeMillis();
+                long delay = task.nextExecutionTime - now;
+                if (delay > 0) {
+                    lock.wait(delay);
+                    continue;
+                }
+
+                long lateness = now - task.nextExecutionTime;
+                executionCount++;
+                totalLateness += lateness;
+                if (lateness > maxLateness) {
+                    maxLateness = lateness;
+                }
+
+                removeAt(0);
+                task.running = true;
+                if (task.period != 0) {
+                    if (task.fixedRate) {
+                        task.nextExecutionTime += task.period;
+                    } else {
+                        task.nextExecutionTime = now + task.period;
+                    }
+                }
+                if (size > 0 && heap[0].nextExecutionTime <= now) {
+                    // let another dispatch thread take the next one
+                    lock.notify();
+                }
+                return task;
+            }
+        }
+    }
+
+    // the heap methods below are called holding the lock
+
+    private void add(ScheduledTask task) {
+        if (size == heap.length) {
+            ScheduledTask[] newHeap = new ScheduledTask[heap.length * 2];
+            System.arraycopy(heap, 0, newHeap, 0, size);
+            heap = newHeap;
+        }
+        heap[size] = task;
+        task.heapIndex = size;
+        size++;
+        siftUp(task.heapIndex);
+        if (task.heapIndex == 0) {
+            // the dispatch threads are waiting for a later task
+            lock.notify();
+        }
+    }
+
+    private void removeAt(int index) {
+        ScheduledTask removed = heap[index];
+        removed.heapIndex = -1;
+        size--;
+        if (index == size) {
+            heap[size] = null;
+            return;
+        }
+        ScheduledTask last = heap[size];
+        heap[size] = null;
+        heap[index] = last;
+        last.heapIndex = index;
+        siftDown(index);
+        if (last.heapIndex == index) {
+            siftUp(index);
+        }
+    }
+
+    private void siftUp(int index) {
+        ScheduledTask task = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].nextExecutionTime <= task.nextExecutionTime) {
+                break;
+            }
+            heap[index] = heap[parent];
+            heap[index].heapIndex = index;
+            index = parent;
+        }
+        heap[index] = task;
+        task.heapIndex = index;
+    }
+
+    private void siftDown(int index) {
+        ScheduledTask task = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && heap[right].nextExecutionTime < heap[child].nextExecutionTime) {
+                child = right;
+            }
+            if (task.nextExecutionTime <= heap[child].nextExecutionTime) {
+                break;
+            }
+            heap[index] = heap[child];
+            heap[index].heapIndex = index;
+            index = child;
+        }
+        heap[index] = task;
+        task.heapIndex = index;
+    }
+
+    private class Dispatcher implements Runnable {
+        public void run() {
+            while (true) {
+                ScheduledTask task;
+                try {
+                    task = takeDueTask();
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                if (task == null) {
+                    return;
+                }
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    log.warn("Timer task " + task + " failed", t);
+                } finally {
+                    ran(task);
+                }
+            }
+        }
+    }
+}
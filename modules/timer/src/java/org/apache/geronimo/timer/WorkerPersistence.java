@@ -38,4 +38,15 @@ public interface WorkerPersistence {
     void intervalWorkPerformed(long id, long period) throws PersistenceException;
 
     Collection getIdsByKey(String key, Object userId) throws PersistenceException;
+
+    /**
+     * Makes sure every change made so far is stored, for implementations that delay their writes.
+     */
+    void flush() throws PersistenceException;
+
+    /**
+     * Stores every change made so far and releases the threads the implementation uses to delay
+     * its writes.  Called when the timer stops.
+     */
+    void close() throws PersistenceException;
 }
@@ -0,0 +1,995 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.timer.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.sql.DataSource;
+import javax.transaction.RollbackException;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.SystemException;
+
+import com.thoughtworks.xstream.XStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.geronimo.timer.PersistenceException;
+import org.apache.geronimo.timer.Playback;
+import org.apache.geronimo.timer.WorkInfo;
+import org.apache.geronimo.timer.WorkerPersistence;
+import org.apache.geronimo.transaction.context.TransactionContext;
+import org.apache.geronimo.transaction.context.TransactionContextManager;
+
+/**
+ * A WorkerPersistence that queues the writes made outside a transaction and sends them to the
+ * database from a background thread, as JDBC batches in one transaction per flush.  A flush
+ * happens every flushIntervalMilliseconds, as soon as maxBatchSize writes are queued, and before
+ * every query.  Writes made in a transaction are collected per transaction and sent as batches
+ * on the transaction's own connection just before it commits, so they commit or roll back with
+ * it.  A write outside a transaction to a timer a running transaction inserted is queued once
+ * that transaction commits.  Writes to a timer that is not yet inserted are applied to the
+ * pending insert, so a timer scheduled and cancelled between two flushes, or within one
+ * transaction, never reaches the database.
+ * <p/>
+ * Ids are allocated in blocks from a one row table, so save does not go to the database either.
+ * The timers are kept in their own table, with an index on (serverid, timerkey), since the
+ * identity column of JDBCWorkerPersistence's table cannot be given explicit ids.  The timers
+ * JDBCWorkerPersistence stored for this server are moved into this table on start, keeping
+ * their ids, so turning batching on does not lose them.
+ * <p/>
+ * A write outside a transaction is only durable once it is flushed: timers scheduled or
+ * cancelled within the last flush interval before a crash are lost or come back on playback.
+ * Writes of a flush that fails are lost too; the error is logged.  The flusher thread is started
+ * when there is something to write and stops on close, after a last flush.
+ *
+ * @version $Rev$ $Date$
+ */
+public class BatchingJDBCWorkerPersistence implements WorkerPersistence {
+
+    private static final Log log = LogFactory.getLog(BatchingJDBCWorkerPersistence.class);
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+    public static final int DEFAULT_ID_BLOCK_SIZE = 1000;
+
+    private static final String createTableSQL = "create table batchtimertasks (id NUMERIC(18,0) NOT NULL PRIMARY KEY, serverid varchar(256) not null, timerkey varchar(256) not null, userid varchar(4096), userinfo varchar(4096), firsttime NUMERIC(18,0) not null, period NUMERIC(18, 0), atfixedrate CHAR(1))";
+    private static final String createIndexSQL = "create index batchtimertasks_key on batchtimertasks (serverid, timerkey)";
+    private static final String createIdTableSQL = "create table batchtimertasks_ids (nextid NUMERIC(18,0) NOT NULL)";
+    private static final String countIdRowsSQL = "select count(*) from batchtimertasks_ids";
+    private static final String initializeIdsSQL = "insert into batchtimertasks_ids (nextid) values (1)";
+    private static final String allocateIdsSQL = "update batchtimertasks_ids set nextid = nextid + ?";
+    private static final String nextIdSQL = "select nextid from batchtimertasks_ids";
+    private static final String insertSQL = "insert into batchtimertasks (id, serverid, timerkey, userid, userinfo, firsttime, period, atfixedrate) values (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String deleteSQL = "delete from batchtimertasks where id=?";
+    private static final String selectSQL = "select id, userid, userinfo, firsttime, period, atfixedrate from batchtimertasks where serverid = ? and timerkey=?";
+    private static final String fixedRateUpdateSQL = "update batchtimertasks set firsttime = firsttime + ? * period where id = ?";
+    private static final String intervalUpdateSQL = "update batchtimertasks set firsttime = ? where id = ?";
+    private static final String selectByKeySQL = "select id from batchtimertasks where serverid = ? and timerkey = ? and (userid = ? or ? is null)";
+    private static final String selectUnbatchedSQL = "select id, timerkey, userid, userinfo, firsttime, period, atfixedrate from timertasks where serverid = ?";
+    private static final String deleteUnbatchedSQL = "delete from timertasks where serverid = ?";
+    private static final String countIdSQL = "select count(*) from batchtimertasks where id = ?";
+    private static final String maxIdSQL = "select max(id) from batchtimertasks";
+    private static final String raiseNextIdSQL = "update batchtimertasks_ids set nextid = ? where nextid < ?";
+
+    private final String serverUniqueId;
+    private final DataSource dataSource;
+    private final TransactionContextManager transactionContextManager;
+    private final long flushIntervalMilliseconds;
+    private final int maxBatchSize;
+    private final int idBlockSize;
+
+    private final Object lock = new Object();
+    // the rest is guarded by lock
+    private Thread flusher;
+    private boolean closing;
+    // writes made outside a transaction waiting for the next flush
+    private Batch queued = new Batch();
+    // whether the flusher is writing a batch taken from queued
+    private boolean writing;
+    // TransactionContext to the TransactionBatch of its writes
+    private final Map transactionBatches = new HashMap();
+    // id of a timer inserted by a transaction that has not completed to its TransactionBatch
+    private final Map transactionalInserts = new HashMap();
+    private long flushRequests;
+    private long completedFlushes;
+    private PersistenceException flushFailure;
+    private long flushFailureRequest;
+    private long nextId;
+    private long idLimit;
+    private boolean idsNeeded;
+    private PersistenceException idFailure;
+    private long flushCount;
+    private long batchedWriteCount;
+
+    public BatchingJDBCWorkerPersistence(String serverUniqueId, DataSource datasource, TransactionContextManager transactionContextManager, long flushIntervalMilliseconds) throws SQLException {
+        this(serverUniqueId, datasource, transactionContextManager, flushIntervalMilliseconds, DEFAULT_MAX_BATCH_SIZE, DEFAULT_ID_BLOCK_SIZE);
+    }
+
+    public BatchingJDBCWorkerPersistence(String serverUniqueId, DataSource datasource, TransactionContextManager transactionContextManager, long flushIntervalMilliseconds, int maxBatchSize, int idBlockSize) throws SQLException {
+        if (flushIntervalMilliseconds <= 0) {
+            throw new IllegalArgumentException("flushIntervalMilliseconds must be positive: attempted value: " + flushIntervalMilliseconds);
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive: attempted value: " + maxBatchSize);
+        }
+        if (idBlockSize <= 0) {
+            throw new IllegalArgumentException("idBlockSize must be positive: attempted value: " + idBlockSize);
+        }
+        this.serverUniqueId = serverUniqueId;
+        this.dataSource = datasource;
+        this.transactionContextManager = transactionContextManager;
+        this.flushIntervalMilliseconds = flushIntervalMilliseconds;
+        this.maxBatchSize = maxBatchSize;
+        this.idBlockSize = idBlockSize;
+        execSQL(createTableSQL);
+        execSQL(createIndexSQL);
+        execSQL(createIdTableSQL);
+        initializeIds();
+        moveUnbatchedTimers();
+    }
+
+    public void save(WorkInfo workInfo) throws PersistenceException {
+        PendingInsert insert = new PendingInsert(workInfo.getKey(),
+                serialize(workInfo.getUserId()),
+                serialize(workInfo.getUserInfo()),
+                workInfo.getTime().getTime(),
+                workInfo.getPeriod(),
+                workInfo.getAtFixedRate());
+        long id;
+        synchronized (lock) {
+            while (nextId == idLimit) {
+                if (idFailure != null) {
+                    PersistenceException e = idFailure;
+                    idFailure = null;
+                    throw e;
+                }
+                idsNeeded = true;
+                startFlusher();
+                lock.notifyAll();
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new PersistenceException("Interrupted waiting for timer ids", e);
+                }
+            }
+            id = nextId++;
+        }
+        workInfo.setId(id);
+        write(new InsertWrite(new Long(id), insert));
+    }
+
+    public void cancel(long id) throws PersistenceException {
+        write(new CancelWrite(new Long(id)));
+    }
+
+    public void fixedRateWorkPerformed(long id) throws PersistenceException {
+        write(new FixedRateWrite(new Long(id)));
+    }
+
+    public void intervalWorkPerformed(long id, long period) throws PersistenceException {
+        write(new IntervalWrite(new Long(id), System.currentTimeMillis() + period));
+    }
+
+    public void playback(String key, Playback playback) throws PersistenceException {
+        flush();
+        try {
+            Connection c = dataSource.getConnection();
+            try {
+                PreparedStatement selectStatement = c.prepareStatement(selectSQL);
+                try {
+                    selectStatement.setString(1, serverUniqueId);
+                    selectStatement.setString(2, key);
+                    ResultSet taskRS = selectStatement.executeQuery();
+                    try {
+                        while (taskRS.next()) {
+                            long id = taskRS.getLong(1);
+                            Object userId = deserialize(taskRS.getString(2));
+                            Object userInfo = deserialize(taskRS.getString(3));
+                            Date time = new Date(taskRS.getLong(4));
+                            Long period = new Long(taskRS.getLong(5));
+                            if (taskRS.wasNull()) {
+                                period = null;
+                            }
+                            boolean atFixedRate = taskRS.getBoolean(6);
+                            WorkInfo workInfo = new WorkInfo(key, userId, userInfo, time, period, atFixedRate);
+                            workInfo.setId(id);
+                            playback.schedule(workInfo);
+                        }
+                    } finally {
+                        taskRS.close();
+                    }
+                } finally {
+                    selectStatement.close();
+                }
+            } finally {
+                c.close();
+            }
+        } catch (SQLException e) {
+            throw new PersistenceException(e);
+        }
+    }
+
+    public Collection getIdsByKey(String key, Object userId) throws PersistenceException {
+        flush();
+        Collection ids = new ArrayList();
+        try {
+            Connection c = dataSource.getConnection();
+            try {
+                PreparedStatement selectStatement = c.prepareStatement(selectByKeySQL);
+                try {
+                    selectStatement.setString(1, serverUniqueId);
+                    selectStatement.setString(2, key);
+                    if (userId == null) {
+                        selectStatement.setNull(3, Types.VARCHAR);
+                        selectStatement.setNull(4, Types.VARCHAR);
+                    } else {
+                        String userIdString = serialize(userId);
+                        selectStatement.setString(3, userIdString);
+                        selectStatement.setString(4, userIdString);
+                    }
+                    ResultSet taskRS = selectStatement.executeQuery();
+                    try {
+                        while (taskRS.next()) {
+                            ids.add(new Long(taskRS.getLong(1)));
+                        }
+                    } finally {
+                        taskRS.close();
+                    }
+                } finally {
+                    selectStatement.close();
+                }
+            } finally {
+                c.close();
+            }
+        } catch (SQLException e) {
+            throw new PersistenceException(e);
+        }
+        return ids;
+    }
+
+    /**
+     * Waits until every write queued before the call is in the database.
+     */
+    public void flush() throws PersistenceException {
+        synchronized (lock) {
+            long request = ++flushRequests;
+            startFlusher();
+            lock.notifyAll();
+            while (completedFlushes < request) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new PersistenceException("Interrupted waiting for flush", e);
+                }
+            }
+            if (flushFailure != null && flushFailureRequest >= request) {
+                throw flushFailure;
+            }
+        }
+    }
+
+    /**
+     * Flushes the queued writes and stops the flusher thread.  A write or flush after close
+     * starts a new flusher.
+     */
+    public void close() throws PersistenceException {
+        try {
+            flush();
+        } finally {
+            Thread flusher;
+            synchronized (lock) {
+                flusher = this.flusher;
+                if (flusher != null) {
+                    closing = true;
+                    lock.notifyAll();
+                }
+            }
+            if (flusher != null) {
+                // the flusher is not interrupted, since an interrupt can break the connection it writes on
+                try {
+                    flusher.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new PersistenceException("Interrupted waiting for the flusher to stop", e);
+                }
+            }
+        }
+    }
+
+    public long getFlushIntervalMilliseconds() {
+        return flushIntervalMilliseconds;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public int getIdBlockSize() {
+        return idBlockSize;
+    }
+
+    public long getFlushCount() {
+        synchronized (lock) {
+            return flushCount;
+        }
+    }
+
+    /**
+     * Number of statements sent to the database in batches.
+     */
+    public long getBatchedWriteCount() {
+        synchronized (lock) {
+            return batchedWriteCount;
+        }
+    }
+
+    public int getQueuedWriteCount() {
+        synchronized (lock) {
+            return queued.size();
+        }
+    }
+
+    /**
+     * Queues the write, or if there is a transaction, adds it to the writes made before the
+     * transaction commits.
+     */
+    private void write(Write write) throws PersistenceException {
+        TransactionContext transactionContext = transactionContextManager == null ? null : transactionContextManager.getContext();
+        if (transactionContext != null && transactionContext.isInheritable() && transactionContext.isActive()) {
+            TransactionBatch transactionBatch;
+            synchronized (lock) {
+                transactionBatch = (TransactionBatch) transactionBatches.get(transactionContext);
+            }
+            if (transactionBatch == null) {
+                transactionBatch = new TransactionBatch(transactionContext);
+                try {
+                    transactionContext.registerSynchronization(transactionBatch);
+                } catch (RollbackException e) {
+                    throw new PersistenceException(e);
+                } catch (SystemException e) {
+                    throw new PersistenceException(e);
+                }
+                synchronized (lock) {
+                    transactionBatches.put(transactionContext, transactionBatch);
+                }
+            }
+            synchronized (lock) {
+                write.addTo(transactionBatch.batch);
+                if (write instanceof InsertWrite) {
+                    transactionalInserts.put(write.id, transactionBatch);
+                    transactionBatch.insertedIds.add(write.id);
+                }
+            }
+        } else {
+            synchronized (lock) {
+                TransactionBatch inserting = (TransactionBatch) transactionalInserts.get(write.id);
+                if (inserting != null) {
+                    // the row is not there until the transaction commits
+                    inserting.deferred.add(write);
+                } else {
+                    queue(write);
+                }
+            }
+        }
+    }
+
+    // called holding lock
+    private void queue(Write write) {
+        write.addTo(queued);
+        startFlusher();
+        if (queued.size() >= maxBatchSize) {
+            lock.notifyAll();
+        }
+    }
+
+    // called holding lock
+    private void startFlusher() {
+        if (flusher == null) {
+            flusher = new Thread(new Flusher(), "BatchingJDBCWorkerPersistence flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    private void allocateIds() {
+        try {
+            Connection c = dataSource.getConnection();
+            try {
+                boolean autoCommit = c.getAutoCommit();
+                c.setAutoCommit(false);
+                try {
+                    long limit;
+                    PreparedStatement allocateStatement = c.prepareStatement(allocateIdsSQL);
+                    try {
+                        allocateStatement.setLong(1, idBlockSize);
+                        if (allocateStatement.executeUpdate() != 1) {
+                            throw new SQLException("Timer id table does not have one row");
+                        }
+                    } finally {
+                        allocateStatement.close();
+                    }
+                    PreparedStatement nextIdStatement = c.prepareStatement(nextIdSQL);
+                    try {
+                        ResultSet nextIdRS = nextIdStatement.executeQuery();
+                        try {
+                            nextIdRS.next();
+                            limit = nextIdRS.getLong(1);
+                        } finally {
+                            nextIdRS.close();
+                        }
+                    } finally {
+                        nextIdStatement.close();
+                    }
+                    c.commit();
+                    synchronized (lock) {
+                        nextId = limit - idBlockSize;
+                        idLimit = limit;
+                    }
+                } catch (SQLException e) {
+                    c.rollback();
+                    throw e;
+                } finally {
+                    c.setAutoCommit(autoCommit);
+                }
+            } finally {
+                c.close();
+            }
+        } catch (SQLException e) {
+            log.error("Unable to allocate timer ids", e);
+            synchronized (lock) {
+                idFailure = new PersistenceException("Unable to allocate timer ids", e);
+            }
+        }
+    }
+
+    private void write(Batch batch) throws SQLException {
+        Connection c = dataSource.getConnection();
+        try {
+            boolean autoCommit = c.getAutoCommit();
+            c.setAutoCommit(false);
+            try {
+                write(c, batch);
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(autoCommit);
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    private void write(Connection c, Batch batch) throws SQLException {
+        Map inserts = batch.inserts;
+        Map fixedRateUpdates = batch.fixedRateUpdates;
+        Map intervalUpdates = batch.intervalUpdates;
+        Map deletes = batch.deletes;
+        if (!inserts.isEmpty()) {
+            PreparedStatement insertStatement = c.prepareStatement(insertSQL);
+            try {
+                for (Iterator iterator = inserts.entrySet().iterator(); iterator.hasNext();) {
+                    Map.Entry entry = (Map.Entry) iterator.next();
+                    PendingInsert insert = (PendingInsert) entry.getValue();
+                    insertStatement.setLong(1, ((Long) entry.getKey()).longValue());
+                    insertStatement.setString(2, serverUniqueId);
+                    insertStatement.setString(3, insert.key);
+                    insertStatement.setString(4, insert.userId);
+                    insertStatement.setString(5, insert.userInfo);
+                    insertStatement.setLong(6, insert.firstTime);
+                    if (insert.period == null) {
+                        insertStatement.setNull(7, Types.NUMERIC);
+                    } else {
+                        insertStatement.setLong(7, insert.period.longValue());
+                    }
+                    insertStatement.setBoolean(8, insert.atFixedRate);
+                    insertStatement.addBatch();
+                }
+                insertStatement.executeBatch();
+            } finally {
+                insertStatement.close();
+            }
+        }
+        if (!fixedRateUpdates.isEmpty()) {
+            PreparedStatement updateStatement = c.prepareStatement(fixedRateUpdateSQL);
+            try {
+                for (Iterator iterator = fixedRateUpdates.entrySet().iterator(); iterator.hasNext();) {
+                    Map.Entry entry = (Map.Entry) iterator.next();
+                    updateStatement.setLong(1, ((int[]) entry.getValue())[0]);
+                    updateStatement.setLong(2, ((Long) entry.getKey()).longValue());
+                    updateStatement.addBatch();
+                }
+                updateStatement.executeBatch();
+            } finally {
+                updateStatement.close();
+            }
+        }
+        if (!intervalUpdates.isEmpty()) {
+            PreparedStatement updateStatement = c.prepareStatement(intervalUpdateSQL);
+            try {
+                for (Iterator iterator = intervalUpdates.entrySet().iterator(); iterator.hasNext();) {
+                    Map.Entry entry = (Map.Entry) iterator.next();
+                    updateStatement.setLong(1, ((Long) entry.getValue()).longValue());
+                    updateStatement.setLong(2, ((Long) entry.getKey()).longValue());
+                    updateStatement.addBatch();
+                }
+                updateStatement.executeBatch();
+            } finally {
+                updateStatement.close();
+            }
+        }
+        if (!deletes.isEmpty()) {
+            PreparedStatement deleteStatement = c.prepareStatement(deleteSQL);
+            try {
+                for (Iterator iterator = deletes.keySet().iterator(); iterator.hasNext();) {
+                    deleteStatement.setLong(1, ((Long) iterator.next()).longValue());
+                    deleteStatement.addBatch();
+                }
+                deleteStatement.executeBatch();
+            } finally {
+                deleteStatement.close();
+            }
+        }
+    }
+
+    /**
+     * Moves the timers JDBCWorkerPersistence stored for this server from timertasks into
+     * batchtimertasks, in one transaction.  A timer keeps its id unless a batched timer has
+     * it already, and the ids allocated from now on are above all of them.
+     */
+    private void moveUnbatchedTimers() throws SQLException {
+        Connection c = dataSource.getConnection();
+        try {
+            Map timers = new LinkedHashMap();
+            PreparedStatement selectStatement;
+            try {
+                selectStatement = c.prepareStatement(selectUnbatchedSQL);
+            } catch (SQLException e) {
+                //there is no timertasks table
+                return;
+            }
+            try {
+                selectStatement.setString(1, serverUniqueId);
+                ResultSet taskRS = selectStatement.executeQuery();
+                try {
+                    while (taskRS.next()) {
+                        Long id = new Long(taskRS.getLong(1));
+                        String key = taskRS.getString(2);
+                        String userId = taskRS.getString(3);
+                        String userInfo = taskRS.getString(4);
+                        long firstTime = taskRS.getLong(5);
+                        Long period = new Long(taskRS.getLong(6));
+                        if (taskRS.wasNull()) {
+                            period = null;
+                        }
+                        boolean atFixedRate = taskRS.getBoolean(7);
+                        timers.put(id, new PendingInsert(key, userId, userInfo, firstTime, period, atFixedRate));
+                    }
+                } finally {
+                    taskRS.close();
+                }
+            } finally {
+                selectStatement.close();
+            }
+            if (timers.isEmpty()) {
+                return;
+            }
+
+            boolean autoCommit = c.getAutoCommit();
+            c.setAutoCommit(false);
+            try {
+                long maxId = queryLong(c, maxIdSQL);
+                for (Iterator iterator = timers.keySet().iterator(); iterator.hasNext();) {
+                    maxId = Math.max(maxId, ((Long) iterator.next()).longValue());
+                }
+                Map moved = new LinkedHashMap();
+                PreparedStatement countStatement = c.prepareStatement(countIdSQL);
+                try {
+                    for (Iterator iterator = timers.entrySet().iterator(); iterator.hasNext();) {
+                        Map.Entry entry = (Map.Entry) iterator.next();
+                        Long id = (Long) entry.getKey();
+                        countStatement.setLong(1, id.longValue());
+                        ResultSet countRS = countStatement.executeQuery();
+                        try {
+                            countRS.next();
+                            if (countRS.getInt(1) > 0) {
+                                Long newId = new Long(++maxId);
+                                log.warn("Timer " + id + " is renumbered " + newId + " since a batched timer has its id");
+                                id = newId;
+                            }
+                        } finally {
+                            countRS.close();
+                        }
+                        moved.put(id, entry.getValue());
+                    }
+                } finally {
+                    countStatement.close();
+                }
+                Batch batch = new Batch();
+                batch.inserts.putAll(moved);
+                write(c, batch);
+                PreparedStatement deleteStatement = c.prepareStatement(deleteUnbatchedSQL);
+                try {
+                    deleteStatement.setString(1, serverUniqueId);
+                    deleteStatement.executeUpdate();
+                } finally {
+                    deleteStatement.close();
+                }
+                PreparedStatement raiseStatement = c.prepareStatement(raiseNextIdSQL);
+                try {
+                    raiseStatement.setLong(1, maxId + 1);
+                    raiseStatement.setLong(2, maxId + 1);
+                    raiseStatement.executeUpdate();
+                } finally {
+                    raiseStatement.close();
+                }
+                c.commit();
+                log.info("Moved " + moved.size() + " timers from timertasks to batchtimertasks");
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(autoCommit);
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    private static long queryLong(Connection c, String sql) throws SQLException {
+        PreparedStatement statement = c.prepareStatement(sql);
+        try {
+            ResultSet rs = statement.executeQuery();
+            try {
+                rs.next();
+                return rs.getLong(1);
+            } finally {
+                rs.close();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void initializeIds() throws SQLException {
+        Connection c = dataSource.getConnection();
+        try {
+            int rows;
+            PreparedStatement countStatement = c.prepareStatement(countIdRowsSQL);
+            try {
+                ResultSet countRS = countStatement.executeQuery();
+                try {
+                    countRS.next();
+                    rows = countRS.getInt(1);
+                } finally {
+                    countRS.close();
+                }
+            } finally {
+                countStatement.close();
+            }
+            if (rows == 0) {
+                PreparedStatement initializeStatement = c.prepareStatement(initializeIdsSQL);
+                try {
+                    initializeStatement.execute();
+                } finally {
+                    initializeStatement.close();
+                }
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    private String serialize(Object task) {
+        XStream xStream = new XStream();
+        return xStream.toXML(task);
+    }
+
+    private Object deserialize(String serializedRunnable) {
+        XStream xStream = new XStream();
+        return xStream.fromXML(serializedRunnable);
+    }
+
+    private void execSQL(String sql) throws SQLException {
+        Connection c = dataSource.getConnection();
+        try {
+            PreparedStatement updateStatement = c.prepareStatement(sql);
+            try {
+                updateStatement.execute();
+            } catch (SQLException e) {
+                //ignore... table or index already exists.
+            } finally {
+                updateStatement.close();
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    private class Flusher implements Runnable {
+        public void run() {
+            while (true) {
+                boolean allocate;
+                boolean stop;
+                long request;
+                Batch batch;
+                synchronized (lock) {
+                    long deadline = System.currentTimeMillis() + flushIntervalMilliseconds;
+                    while (!closing && !idsNeeded && flushRequests == completedFlushes && queued.size() < maxBatchSize) {
+                        long wait = deadline - System.currentTimeMillis();
+                        if (wait <= 0) {
+                            break;
+                        }
+                        try {
+                            lock.wait(wait);
+                        } catch (InterruptedException e) {
+                            // keep flushing, there is nothing else to do
+                        }
+                    }
+                    allocate = idsNeeded;
+                    idsNeeded = false;
+                    stop = closing;
+                    request = flushRequests;
+                    batch = queued;
+                    queued = new Batch();
+                    writing = true;
+                }
+
+                if (allocate) {
+                    allocateIds();
+                    synchronized (lock) {
+                        lock.notifyAll();
+                    }
+                }
+
+                int writes = batch.size();
+                PersistenceException failure = null;
+                if (writes > 0) {
+                    try {
+                        write(batch);
+                    } catch (SQLException e) {
+                        log.error("Unable to write " + writes + " timer changes; they are lost", e);
+                        failure = new PersistenceException("Unable to write timer changes", e);
+                    } catch (RuntimeException e) {
+                        log.error("Unable to write " + writes + " timer changes; they are lost", e);
+                        failure = new PersistenceException("Unable to write timer changes", e);
+                    }
+                }
+                synchronized (lock) {
+                    if (writes > 0) {
+                        flushCount++;
+                        batchedWriteCount += writes;
+                    }
+                    if (failure != null) {
+                        flushFailure = failure;
+                        flushFailureRequest = request;
+                    }
+                    completedFlushes = request;
+                    writing = false;
+                    lock.notifyAll();
+                    if (stop) {
+                        closing = false;
+                        flusher = null;
+                        // something written meanwhile gets a new flusher
+                        if (idsNeeded || flushRequests != completedFlushes || queued.size() > 0) {
+                            startFlusher();
+                        }
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The pending changes to the timers table, each timer's changes merged into one statement.
+     */
+    private static final class Batch {
+        private final Map inserts = new LinkedHashMap();
+        private final Map fixedRateUpdates = new HashMap();
+        private final Map intervalUpdates = new HashMap();
+        private final Map deletes = new LinkedHashMap();
+
+        private int size() {
+            return inserts.size() + fixedRateUpdates.size() + intervalUpdates.size() + deletes.size();
+        }
+    }
+
+    /**
+     * A change to the timers table, merged into a batch of pending changes.
+     */
+    private abstract class Write {
+        protected final Long id;
+
+        protected Write(Long id) {
+            this.id = id;
+        }
+
+        // called holding lock
+        protected abstract void addTo(Batch batch);
+    }
+
+    private class InsertWrite extends Write {
+        private final PendingInsert insert;
+
+        private InsertWrite(Long id, PendingInsert insert) {
+            super(id);
+            this.insert = insert;
+        }
+
+        protected void addTo(Batch batch) {
+            batch.inserts.put(id, insert);
+        }
+    }
+
+    private class CancelWrite extends Write {
+        private CancelWrite(Long id) {
+            super(id);
+        }
+
+        protected void addTo(Batch batch) {
+            batch.fixedRateUpdates.remove(id);
+            batch.intervalUpdates.remove(id);
+            if (batch.inserts.remove(id) == null) {
+                batch.deletes.put(id, id);
+            }
+        }
+    }
+
+    private class FixedRateWrite extends Write {
+        private FixedRateWrite(Long id) {
+            super(id);
+        }
+
+        protected void addTo(Batch batch) {
+            PendingInsert insert = (PendingInsert) batch.inserts.get(id);
+            if (insert != null) {
+                insert.firstTime += insert.period.longValue();
+                return;
+            }
+            int[] periods = (int[]) batch.fixedRateUpdates.get(id);
+            if (periods == null) {
+                batch.fixedRateUpdates.put(id, new int[] {1});
+            } else {
+                periods[0]++;
+            }
+        }
+    }
+
+    private class IntervalWrite extends Write {
+        private final long next;
+
+        private IntervalWrite(Long id, long next) {
+            super(id);
+            this.next = next;
+        }
+
+        protected void addTo(Batch batch) {
+            PendingInsert insert = (PendingInsert) batch.inserts.get(id);
+            if (insert != null) {
+                insert.firstTime = next;
+            } else {
+                batch.intervalUpdates.put(id, new Long(next));
+            }
+        }
+    }
+
+    /**
+     * The writes of one transaction, sent on its connection before it commits.
+     */
+    private class TransactionBatch implements Synchronization {
+        private final TransactionContext transactionContext;
+        // guarded by lock
+        private final Batch batch = new Batch();
+        private final List insertedIds = new ArrayList();
+        // writes made outside the transaction to timers it inserted, queued once it commits
+        private final List deferred = new ArrayList();
+
+        private TransactionBatch(TransactionContext transactionContext) {
+            this.transactionContext = transactionContext;
+        }
+
+        public void beforeCompletion() {
+            boolean flush;
+            int writes;
+            synchronized (lock) {
+                // writes from later synchronizations start a new batch
+                forget();
+                // a timer inserted outside the transaction must reach the database before the transaction changes it
+                flush = writing || queued.size() > 0;
+                writes = batch.size();
+            }
+            try {
+                if (writes == 0 || transactionContext.getRollbackOnly()) {
+                    return;
+                }
+                if (flush) {
+                    flush();
+                }
+                Connection c = dataSource.getConnection();
+                try {
+                    write(c, batch);
+                } finally {
+                    c.close();
+                }
+            } catch (SQLException e) {
+                // rolls the transaction back
+                throw new RuntimeException("Unable to write timer changes", e);
+            } catch (SystemException e) {
+                throw new RuntimeException("Unable to write timer changes", e);
+            } catch (PersistenceException e) {
+                throw new RuntimeException("Unable to write timer changes", e);
+            }
+            synchronized (lock) {
+                batchedWriteCount += writes;
+            }
+        }
+
+        public void afterCompletion(int status) {
+            synchronized (lock) {
+                forget();
+                for (int i = 0; i < insertedIds.size(); i++) {
+                    transactionalInserts.remove(insertedIds.get(i));
+                }
+                if (status == Status.STATUS_COMMITTED) {
+                    for (int i = 0; i < deferred.size(); i++) {
+                        queue((Write) deferred.get(i));
+                    }
+                }
+            }
+        }
+
+        // called holding lock
+        private void forget() {
+            if (transactionBatches.get(transactionContext) == this) {
+                transactionBatches.remove(transactionContext);
+            }
+        }
+    }
+
+    private static final class PendingInsert {
+        private final String key;
+        private final String userId;
+        private final String userInfo;
+        private long firstTime;
+        private final Long period;
+        private final boolean atFixedRate;
+
+        private PendingInsert(String key, String userId, String userInfo, long firstTime, Long period, boolean atFixedRate) {
+            this.key = key;
+            this.userId = userId;
+            this.userInfo = userInfo;
+            this.firstTime = firstTime;
+            this.period = period;
+            this.atFixedRate = atFixedRate;
+        }
+    }
+}
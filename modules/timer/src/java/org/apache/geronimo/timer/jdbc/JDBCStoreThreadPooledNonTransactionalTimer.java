@@ -28,7 +28,6 @@ import org.apache.geronimo.gbean.GBeanInfo;
 import org.apache.geronimo.gbean.GBeanInfoBuilder;
 import org.apache.geronimo.kernel.Kernel;
 import org.apache.geronimo.timer.NontransactionalExecutorTaskFactory;
-import org.apache.geronimo.timer.PersistentTimer;
 import org.apache.geronimo.timer.ThreadPooledTimer;
 import org.apache.geronimo.transaction.context.TransactionContextManager;
 import org.apache.geronimo.j2ee.j2eeobjectnames.NameFactory;
@@ -38,22 +37,26 @@ import org.apache.geronimo.j2ee.j2eeobjectnames.NameFactory;
  */
 public class JDBCStoreThreadPooledNonTransactionalTimer extends ThreadPooledTimer {
 
-    public JDBCStoreThreadPooledNonTransactionalTimer(ManagedConnectionFactoryWrapper managedConnectionFactoryWrapper,
+    /**
+     * @param flushIntervalMilliseconds if positive, timer changes are written in batches at this interval
+     */
+    public JDBCStoreThreadPooledNonTransactionalTimer(long flushIntervalMilliseconds,
+                                                      ManagedConnectionFactoryWrapper managedConnectionFactoryWrapper,
                                                       TransactionContextManager transactionContextManager,
                                                       Executor threadPool,
                                                       Serializable derbySystem,
                                                       Kernel kernel) throws SQLException {
         super(new NontransactionalExecutorTaskFactory(transactionContextManager),
-                new JDBCWorkerPersistence(kernel.getKernelName(), (DataSource)managedConnectionFactoryWrapper.$getResource(), false), threadPool, transactionContextManager);
+                JDBCWorkerPersistence.newWorkerPersistence(kernel.getKernelName(), (DataSource)managedConnectionFactoryWrapper.$getResource(), transactionContextManager, flushIntervalMilliseconds), threadPool, transactionContextManager);
     }
 
 
     public static final GBeanInfo GBEAN_INFO;
 
     static {
-        GBeanInfoBuilder infoFactory = GBeanInfoBuilder.createStatic(JDBCStoreThreadPooledNonTransactionalTimer.class);
-        infoFactory.addInterface(PersistentTimer.class);
+        GBeanInfoBuilder infoFactory = GBeanInfoBuilder.createStatic(JDBCStoreThreadPooledNonTransactionalTimer.class, ThreadPooledTimer.GBEAN_INFO);
 
+        infoFactory.addAttribute("flushIntervalMilliseconds", long.class, true);
         infoFactory.addReference("ManagedConnectionFactoryWrapper", ManagedConnectionFactoryWrapper.class, NameFactory.JCA_MANAGED_CONNECTION_FACTORY);
         infoFactory.addReference("ThreadPool", Executor.class, NameFactory.GERONIMO_SERVICE);
         infoFactory.addReference("TransactionContextManager", TransactionContextManager.class, NameFactory.TRANSACTION_CONTEXT_MANAGER);
@@ -61,7 +64,7 @@ public class JDBCStoreThreadPooledNonTransactionalTimer extends ThreadPooledTime
         
         infoFactory.addAttribute("kernel", Kernel.class, false);
 
-        infoFactory.setConstructor(new String[]{"ManagedConnectionFactoryWrapper", "TransactionContextManager", "ThreadPool", "DerbySystem", "kernel"});
+        infoFactory.setConstructor(new String[]{"flushIntervalMilliseconds", "ManagedConnectionFactoryWrapper", "TransactionContextManager", "ThreadPool", "DerbySystem", "kernel"});
         GBEAN_INFO = infoFactory.getBeanInfo();
     }
 
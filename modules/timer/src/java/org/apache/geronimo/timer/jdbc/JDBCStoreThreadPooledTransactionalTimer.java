@@ -28,7 +28,6 @@ import org.apache.geronimo.gbean.GBeanInfo;
 import org.apache.geronimo.gbean.GBeanInfoBuilder;
 import org.apache.geronimo.kernel.Kernel;
 import org.apache.geronimo.transaction.context.TransactionContextManager;
-import org.apache.geronimo.timer.PersistentTimer;
 import org.apache.geronimo.timer.ThreadPooledTimer;
 import org.apache.geronimo.timer.TransactionalExecutorTaskFactory;
 import org.apache.geronimo.j2ee.j2eeobjectnames.NameFactory;
@@ -41,31 +40,35 @@ import org.apache.geronimo.j2ee.j2eeobjectnames.NameFactory;
  */
 public class JDBCStoreThreadPooledTransactionalTimer extends ThreadPooledTimer {
 
+    /**
+     * @param flushIntervalMilliseconds if positive, timer changes are written in batches at this interval
+     */
     public JDBCStoreThreadPooledTransactionalTimer(int repeatCount,
+            long flushIntervalMilliseconds,
             TransactionContextManager transactionContextManager,
             ManagedConnectionFactoryWrapper managedConnectionFactoryWrapper,
             Executor threadPool,
             Serializable derbySystem,
             Kernel kernel) throws SQLException {
         super(new TransactionalExecutorTaskFactory(transactionContextManager, repeatCount),
-                new JDBCWorkerPersistence(kernel.getKernelName(), (DataSource)managedConnectionFactoryWrapper.$getResource(), false), threadPool, transactionContextManager);
+                JDBCWorkerPersistence.newWorkerPersistence(kernel.getKernelName(), (DataSource)managedConnectionFactoryWrapper.$getResource(), transactionContextManager, flushIntervalMilliseconds), threadPool, transactionContextManager);
     }
 
 
     public static final GBeanInfo GBEAN_INFO;
 
     static {
-        GBeanInfoBuilder infoFactory = GBeanInfoBuilder.createStatic(JDBCStoreThreadPooledTransactionalTimer.class);
-        infoFactory.addInterface(PersistentTimer.class);
+        GBeanInfoBuilder infoFactory = GBeanInfoBuilder.createStatic(JDBCStoreThreadPooledTransactionalTimer.class, ThreadPooledTimer.GBEAN_INFO);
 
         infoFactory.addAttribute("repeatCount", int.class, true);
+        infoFactory.addAttribute("flushIntervalMilliseconds", long.class, true);
         infoFactory.addReference("TransactionContextManager", TransactionContextManager.class, NameFactory.TRANSACTION_CONTEXT_MANAGER);
         infoFactory.addReference("ManagedConnectionFactoryWrapper", ManagedConnectionFactoryWrapper.class, NameFactory.JCA_MANAGED_CONNECTION_FACTORY);
         infoFactory.addReference("ThreadPool", Executor.class, NameFactory.GERONIMO_SERVICE);
         infoFactory.addReference("DerbySystem", Serializable.class, NameFactory.GERONIMO_SERVICE);
         infoFactory.addAttribute("kernel", Kernel.class, false);
 
-        infoFactory.setConstructor(new String[] {"repeatCount", "TransactionContextManager", "ManagedConnectionFactoryWrapper", "ThreadPool", "DerbySystem", "kernel"});
+        infoFactory.setConstructor(new String[] {"repeatCount", "flushIntervalMilliseconds", "TransactionContextManager", "ManagedConnectionFactoryWrapper", "ThreadPool", "DerbySystem", "kernel"});
         GBEAN_INFO = infoFactory.getBeanInfo();
     }
 
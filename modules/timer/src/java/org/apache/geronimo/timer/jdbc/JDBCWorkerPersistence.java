@@ -28,10 +28,13 @@ import java.util.Date;
 import javax.sql.DataSource;
 
 import com.thoughtworks.xstream.XStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.geronimo.timer.PersistenceException;
 import org.apache.geronimo.timer.Playback;
 import org.apache.geronimo.timer.WorkInfo;
 import org.apache.geronimo.timer.WorkerPersistence;
+import org.apache.geronimo.transaction.context.TransactionContextManager;
 
 /**
  * TODO use an insert returning or stored procedure to insert.
@@ -40,8 +43,11 @@ import org.apache.geronimo.timer.WorkerPersistence;
  */
 public class JDBCWorkerPersistence implements WorkerPersistence {
 
+    private static final Log log = LogFactory.getLog(JDBCWorkerPersistence.class);
+
     private static final String createSequenceSQL = "create sequence timertasks_seq";
     private static final String createTableSQLWithSequence = "create table timertasks (id long primary key, serverid varchar(256) not null, timerkey varchar(256) not null, userid varchar(4096), userinfo varchar(4096), firsttime long not null, period long, atfixedrate boolean not null)";
+    private static final String createIndexSQL = "create index timertasks_key on timertasks (serverid, timerkey)";
     private static final String createTableSQLWithIdentity = "create table timertasks (id INTEGER NOT NULL GENERATED ALWAYS AS IDENTITY (START WITH 1, INCREMENT BY 1), serverid varchar(256) not null, timerkey varchar(256) not null, userid varchar(4096), userinfo varchar(4096), firsttime NUMERIC(18,0) not null, period NUMERIC(18, 0), atfixedrate CHAR(1))";
     private static final String sequenceSQL = "select timertasks_seq.nextval";
     private static final String identitySQL = "values IDENTITY_VAL_LOCAL()";
@@ -52,6 +58,7 @@ public class JDBCWorkerPersistence implements WorkerPersistence {
     private static final String fixedRateUpdateSQL = "update timertasks set firsttime = firsttime + period where id = ?";
     private static final String intervalUpdateSQL = "update timertasks set firsttime = ? where id = ?";
     private static final String selectByKeySQL = "select id from timertasks where serverid = ? and timerkey = ? and (userid = ? or ? is null)";
+    private static final String countBatchedSQL = "select count(*) from batchtimertasks where serverid = ?";
 
     private final String serverUniqueId;
     private final DataSource dataSource;
@@ -67,9 +74,21 @@ public class JDBCWorkerPersistence implements WorkerPersistence {
         } else {
             execSQL(createTableSQLWithIdentity);
         }
+        execSQL(createIndexSQL);
+        warnOfBatchedTimers();
     }
 
 
+    /**
+     * @param flushIntervalMilliseconds if positive, a BatchingJDBCWorkerPersistence flushing at this interval is returned
+     */
+    static WorkerPersistence newWorkerPersistence(String serverUniqueId, DataSource dataSource, TransactionContextManager transactionContextManager, long flushIntervalMilliseconds) throws SQLException {
+        if (flushIntervalMilliseconds > 0) {
+            return new BatchingJDBCWorkerPersistence(serverUniqueId, dataSource, transactionContextManager, flushIntervalMilliseconds);
+        }
+        return new JDBCWorkerPersistence(serverUniqueId, dataSource, false);
+    }
+
     public void save(WorkInfo workInfo) throws PersistenceException {
         try {
             Connection c = dataSource.getConnection();
@@ -198,7 +217,7 @@ public class JDBCWorkerPersistence implements WorkerPersistence {
                             Date time = new Date(timeMillis);
                             Long period = null;
                             period = new Long(taskRS.getLong(5));
-                            if (!taskRS.wasNull()) {
+                            if (taskRS.wasNull()) {
                                 period = null;
                             }
                             boolean atFixedRate = taskRS.getBoolean(6);
@@ -299,6 +318,46 @@ public class JDBCWorkerPersistence implements WorkerPersistence {
         return ids;
     }
 
+    public void flush() throws PersistenceException {
+    }
+
+    public void close() throws PersistenceException {
+    }
+
+    /**
+     * Timers stored by BatchingJDBCWorkerPersistence can't be moved here, since the identity
+     * column would give them new ids.
+     */
+    private void warnOfBatchedTimers() throws SQLException {
+        Connection c = dataSource.getConnection();
+        try {
+            PreparedStatement countStatement;
+            try {
+                countStatement = c.prepareStatement(countBatchedSQL);
+            } catch (SQLException e) {
+                //there is no batchtimertasks table
+                return;
+            }
+            try {
+                countStatement.setString(1, serverUniqueId);
+                ResultSet countRS = countStatement.executeQuery();
+                try {
+                    countRS.next();
+                    int count = countRS.getInt(1);
+                    if (count > 0) {
+                        log.warn(count + " timers stored with a positive flushIntervalMilliseconds are in table batchtimertasks; they will not run until flushIntervalMilliseconds is set above 0 again");
+                    }
+                } finally {
+                    countRS.close();
+                }
+            } finally {
+                countStatement.close();
+            }
+        } finally {
+            c.close();
+        }
+    }
+
     private String serialize(Object task) {
         XStream xStream = new XStream();
         return xStream.toXML(task);
@@ -316,7 +375,7 @@ public class JDBCWorkerPersistence implements WorkerPersistence {
             try {
                 updateStatement.execute();
             } catch (SQLException e) {
-                //ignore... table already exists.
+                //ignore... table or index already exists.
             } finally {
                 updateStatement.close();
             }
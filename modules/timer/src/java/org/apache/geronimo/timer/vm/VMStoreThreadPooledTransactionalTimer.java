@@ -20,7 +20,6 @@ package org.apache.geronimo.timer.vm;
 import EDU.oswego.cs.dl.util.concurrent.Executor;
 import org.apache.geronimo.gbean.GBeanInfo;
 import org.apache.geronimo.gbean.GBeanInfoBuilder;
-import org.apache.geronimo.timer.PersistentTimer;
 import org.apache.geronimo.timer.ThreadPooledTimer;
 import org.apache.geronimo.timer.TransactionalExecutorTaskFactory;
 import org.apache.geronimo.transaction.context.TransactionContextManager;
@@ -45,8 +44,7 @@ public class VMStoreThreadPooledTransactionalTimer extends ThreadPooledTimer {
     public static final GBeanInfo GBEAN_INFO;
 
     static {
-        GBeanInfoBuilder infoFactory = GBeanInfoBuilder.createStatic(VMStoreThreadPooledTransactionalTimer.class);
-        infoFactory.addInterface(PersistentTimer.class);
+        GBeanInfoBuilder infoFactory = GBeanInfoBuilder.createStatic(VMStoreThreadPooledTransactionalTimer.class, ThreadPooledTimer.GBEAN_INFO);
 
         infoFactory.addAttribute("repeatCount", int.class, true);
         infoFactory.addReference("TransactionContextManager", TransactionContextManager.class, NameFactory.TRANSACTION_CONTEXT_MANAGER);
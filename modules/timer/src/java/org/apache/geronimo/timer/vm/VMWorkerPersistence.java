@@ -92,4 +92,10 @@ public class VMWorkerPersistence implements WorkerPersistence {
         return ids;
     }
 
+    public void flush() throws PersistenceException {
+    }
+
+    public void close() throws PersistenceException {
+    }
+
 }
@@ -0,0 +1,195 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.timer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import EDU.oswego.cs.dl.util.concurrent.CountDown;
+import EDU.oswego.cs.dl.util.concurrent.SynchronizedInt;
+import junit.framework.TestCase;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class TimerSchedulerTest extends TestCase {
+
+    private TimerScheduler scheduler;
+
+    protected void setUp() throws Exception {
+        scheduler = new TimerScheduler("TimerSchedulerTest", 2);
+    }
+
+    protected void tearDown() throws Exception {
+        scheduler.stop();
+    }
+
+    public void testRunsInTimeOrder() throws Exception {
+        final List order = Collections.synchronizedList(new ArrayList());
+        final CountDown done = new CountDown(5);
+        long now = System.currentTimeMillis();
+        for (int i = 4; i >= 0; i--) {
+            final Integer index = new Integer(i);
+            scheduler.schedule(new ScheduledTask() {
+                public void run() {
+                    order.add(index);
+                    done.release();
+                }
+            }, new Date(now + 50 + i * 40));
+        }
+        assertTrue(done.attempt(2000));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(new Integer(i), order.get(i));
+        }
+        assertEquals(0, scheduler.getPendingCount());
+        assertEquals(5, scheduler.getExecutionCount());
+    }
+
+    public void testCancel() throws Exception {
+        int count = 20000;
+        final SynchronizedInt fired = new SynchronizedInt(0);
+        ScheduledTask[] tasks = new ScheduledTask[count];
+        Date time = new Date(System.currentTimeMillis() + 500);
+        for (int i = 0; i < count; i++) {
+            tasks[i] = new CountingTask(fired);
+            scheduler.schedule(tasks[i], time);
+        }
+        assertEquals(count, scheduler.getPendingCount());
+        // cancel in an order that takes tasks from all over the heap
+        for (int i = 0; i < count; i += 2) {
+            assertTrue(tasks[i].unschedule());
+        }
+        for (int i = count - 1; i > 0; i -= 4) {
+            assertTrue(tasks[i].unschedule());
+        }
+        assertFalse(tasks[0].unschedule());
+        int remaining = count - count / 2 - count / 4;
+        assertEquals(remaining, scheduler.getPendingCount());
+
+        Thread.sleep(1000);
+        assertEquals(remaining, fired.get());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    public void testFixedRateCatchesUp() throws Exception {
+        SynchronizedInt fired = new SynchronizedInt(0);
+        // first execution time is 5 periods in the past
+        scheduler.scheduleAtFixedRate(new CountingTask(fired), new Date(System.currentTimeMillis() - 500), 100);
+        Thread.sleep(250);
+        // 6 catching up plus 2 or 3 more
+        assertTrue("fired " + fired.get(), fired.get() >= 8);
+        assertTrue(scheduler.getMaxLatenessMilliseconds() >= 500);
+    }
+
+    public void testFixedRateTaskDoesNotOverlapItself() throws Exception {
+        final SynchronizedInt active = new SynchronizedInt(0);
+        final SynchronizedInt overlaps = new SynchronizedInt(0);
+        final SynchronizedInt fired = new SynchronizedInt(0);
+        ScheduledTask task = new ScheduledTask() {
+            public void run() {
+                if (active.increment() > 1) {
+                    overlaps.increment();
+                }
+                fired.increment();
+                try {
+                    // slower than the period, so the task is always behind schedule
+                    Thread.sleep(30);
+                } catch (InterruptedException e) {
+                }
+                active.decrement();
+            }
+        };
+        scheduler.scheduleAtFixedRate(task, new Date(), 10);
+        Thread.sleep(300);
+        assertTrue(task.unschedule());
+        assertEquals(0, overlaps.get());
+        assertTrue("fired " + fired.get(), fired.get() >= 5);
+        Thread.sleep(100);
+        int firedAfterUnschedule = fired.get();
+        Thread.sleep(100);
+        assertEquals(firedAfterUnschedule, fired.get());
+    }
+
+    public void testFixedDelayDoesNotCatchUp() throws Exception {
+        SynchronizedInt fired = new SynchronizedInt(0);
+        scheduler.schedule(new CountingTask(fired), new Date(System.currentTimeMillis() - 500), 100);
+        Thread.sleep(250);
+        assertTrue("fired " + fired.get(), fired.get() <= 3);
+    }
+
+    public void testSlowTaskDoesNotDelayOthers() throws Exception {
+        final CountDown slowStarted = new CountDown(1);
+        final CountDown release = new CountDown(1);
+        scheduler.schedule(new ScheduledTask() {
+            public void run() {
+                slowStarted.release();
+                try {
+                    release.acquire();
+                } catch (InterruptedException e) {
+                }
+            }
+        }, new Date());
+        assertTrue(slowStarted.attempt(1000));
+
+        SynchronizedInt fired = new SynchronizedInt(0);
+        scheduler.schedule(new CountingTask(fired), new Date(System.currentTimeMillis() + 50));
+        Thread.sleep(300);
+        assertEquals(1, fired.get());
+        release.release();
+    }
+
+    public void testScheduleTwice() throws Exception {
+        ScheduledTask task = new CountingTask(new SynchronizedInt(0));
+        scheduler.schedule(task, new Date(System.currentTimeMillis() + 10000));
+        try {
+            scheduler.schedule(task, new Date());
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testStop() throws Exception {
+        SynchronizedInt fired = new SynchronizedInt(0);
+        ScheduledTask task = new CountingTask(fired);
+        scheduler.schedule(task, new Date(System.currentTimeMillis() + 100));
+        scheduler.stop();
+        assertEquals(0, scheduler.getPendingCount());
+        assertFalse(task.unschedule());
+        try {
+            scheduler.schedule(new CountingTask(fired), new Date());
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+        Thread.sleep(200);
+        assertEquals(0, fired.get());
+    }
+
+    private static class CountingTask extends ScheduledTask {
+        private final SynchronizedInt fired;
+
+        private CountingTask(SynchronizedInt fired) {
+            this.fired = fired;
+        }
+
+        public void run() {
+            fired.increment();
+        }
+    }
+}
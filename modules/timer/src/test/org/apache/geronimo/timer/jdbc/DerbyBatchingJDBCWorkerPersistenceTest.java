@@ -0,0 +1,243 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.timer.jdbc;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.geronimo.timer.WorkInfo;
+import org.apache.geronimo.timer.WorkerPersistence;
+import org.apache.geronimo.transaction.context.TransactionContext;
+import org.apache.geronimo.transaction.context.TransactionContextManager;
+import org.apache.geronimo.transaction.manager.TransactionManagerImpl;
+import org.apache.geronimo.transaction.manager.XidFactoryImpl;
+
+/**
+ * Runs the JDBCWorkerPersistence tests against BatchingJDBCWorkerPersistence, plus tests of
+ * what batching changes.
+ *
+ * @version $Rev$ $Date$
+ */
+public class DerbyBatchingJDBCWorkerPersistenceTest extends DerbyJDBCWorkerPersistenceTest {
+
+    private TransactionContextManager transactionContextManager;
+
+    protected WorkerPersistence createWorkerPersistence() throws Exception {
+        tableName = "batchtimertasks";
+        TransactionManagerImpl transactionManager = new TransactionManagerImpl(10 * 1000,
+                new XidFactoryImpl("WHAT DO WE CALL IT?".getBytes()), null, null);
+        transactionContextManager = new TransactionContextManager(transactionManager, transactionManager);
+        // a long interval, so only flush and full batches write
+        return new BatchingJDBCWorkerPersistence(serverUniqueId, datasource, transactionContextManager, 60000, 10, 4);
+    }
+
+    protected void tearDown() throws Exception {
+        jdbcWorkerPersistence.close();
+        super.tearDown();
+    }
+
+    public void testWritesWaitForFlush() throws Exception {
+        BatchingJDBCWorkerPersistence persistence = (BatchingJDBCWorkerPersistence) jdbcWorkerPersistence;
+        WorkInfo workInfo = newWorkInfo();
+        persistence.save(workInfo);
+        assertEquals(1, persistence.getQueuedWriteCount());
+        persistence.flush();
+        assertEquals(0, persistence.getQueuedWriteCount());
+        assertEquals(1, countRows());
+    }
+
+    public void testCancelBeforeFlushIsNotWritten() throws Exception {
+        BatchingJDBCWorkerPersistence persistence = (BatchingJDBCWorkerPersistence) jdbcWorkerPersistence;
+        WorkInfo workInfo = newWorkInfo();
+        persistence.save(workInfo);
+        persistence.fixedRateWorkPerformed(workInfo.getId());
+        persistence.cancel(workInfo.getId());
+        assertEquals(0, persistence.getQueuedWriteCount());
+        assertEquals(0, countRows());
+        assertEquals(0, persistence.getBatchedWriteCount());
+    }
+
+    public void testFixedRateUpdatesAreMerged() throws Exception {
+        BatchingJDBCWorkerPersistence persistence = (BatchingJDBCWorkerPersistence) jdbcWorkerPersistence;
+        WorkInfo workInfo = newWorkInfo();
+        persistence.save(workInfo);
+        persistence.flush();
+        for (int i = 0; i < 3; i++) {
+            persistence.fixedRateWorkPerformed(workInfo.getId());
+        }
+        assertEquals(1, persistence.getQueuedWriteCount());
+        PlaybackImpl playback = new PlaybackImpl();
+        persistence.playback(key, playback);
+        assertEquals(1, playback.getCount());
+        assertEquals(time.getTime() + 3 * period.longValue(), playback.getTime().getTime());
+    }
+
+    public void testFullBatchIsFlushed() throws Exception {
+        jdbcWorkerPersistence.close();
+        // enough ids for the whole batch, since allocating ids flushes the writes queued so far
+        BatchingJDBCWorkerPersistence persistence = new BatchingJDBCWorkerPersistence(serverUniqueId, datasource, transactionContextManager, 60000, 10, 100);
+        jdbcWorkerPersistence = persistence;
+        for (int i = 0; i < persistence.getMaxBatchSize(); i++) {
+            persistence.save(newWorkInfo());
+        }
+        for (int i = 0; i < 50 && persistence.getFlushCount() == 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, persistence.getFlushCount());
+        assertEquals(persistence.getMaxBatchSize(), countRows());
+    }
+
+    public void testIdsAreUniqueAcrossBlocksAndInstances() throws Exception {
+        WorkerPersistence other = new BatchingJDBCWorkerPersistence(serverUniqueId, datasource, transactionContextManager, 60000, 10, 4);
+        Set ids = new HashSet();
+        for (int i = 0; i < 10; i++) {
+            WorkInfo workInfo = newWorkInfo();
+            jdbcWorkerPersistence.save(workInfo);
+            assertTrue(ids.add(new Long(workInfo.getId())));
+            workInfo = newWorkInfo();
+            other.save(workInfo);
+            assertTrue(ids.add(new Long(workInfo.getId())));
+        }
+        other.close();
+        assertEquals(20, countRows());
+    }
+
+    public void testRolledBackWritesAreDropped() throws Exception {
+        TransactionContext transactionContext = transactionContextManager.newContainerTransactionContext();
+        jdbcWorkerPersistence.save(newWorkInfo());
+        transactionContext.rollback();
+        transactionContextManager.setContext(null);
+        assertEquals(0, countRows());
+
+        transactionContext = transactionContextManager.newContainerTransactionContext();
+        jdbcWorkerPersistence.save(newWorkInfo());
+        assertEquals(0, ((BatchingJDBCWorkerPersistence) jdbcWorkerPersistence).getQueuedWriteCount());
+        transactionContext.commit();
+        transactionContextManager.setContext(null);
+        assertEquals(1, countRows());
+    }
+
+    public void testTransactionalWritesAreNotQueued() throws Exception {
+        BatchingJDBCWorkerPersistence persistence = (BatchingJDBCWorkerPersistence) jdbcWorkerPersistence;
+        TransactionContext transactionContext = transactionContextManager.newContainerTransactionContext();
+        WorkInfo workInfo = newWorkInfo();
+        persistence.save(workInfo);
+        persistence.fixedRateWorkPerformed(workInfo.getId());
+        persistence.save(newWorkInfo());
+        transactionContext.commit();
+        transactionContextManager.setContext(null);
+        assertEquals(2, countRows());
+        // written as one batch per statement type on the transaction's connection, not by the flusher
+        assertEquals(0, persistence.getFlushCount());
+        assertEquals(2, persistence.getBatchedWriteCount());
+        PlaybackImpl playback = new PlaybackImpl();
+        persistence.playback(key, playback);
+        assertEquals(2, playback.getCount());
+    }
+
+    public void testTransactionSeesQueuedInsert() throws Exception {
+        WorkInfo workInfo = newWorkInfo();
+        jdbcWorkerPersistence.save(workInfo);
+        TransactionContext transactionContext = transactionContextManager.newContainerTransactionContext();
+        jdbcWorkerPersistence.cancel(workInfo.getId());
+        transactionContext.commit();
+        transactionContextManager.setContext(null);
+        assertEquals(0, countRows());
+    }
+
+    public void testWriteToTimerInsertedByRunningTransactionWaitsForCommit() throws Exception {
+        TransactionContext transactionContext = transactionContextManager.newContainerTransactionContext();
+        WorkInfo workInfo = newWorkInfo();
+        jdbcWorkerPersistence.save(workInfo);
+        // the timer fires outside the transaction before it commits
+        transactionContextManager.setContext(null);
+        jdbcWorkerPersistence.fixedRateWorkPerformed(workInfo.getId());
+        assertEquals(0, ((BatchingJDBCWorkerPersistence) jdbcWorkerPersistence).getQueuedWriteCount());
+        transactionContextManager.setContext(transactionContext);
+        transactionContext.commit();
+        transactionContextManager.setContext(null);
+
+        PlaybackImpl playback = new PlaybackImpl();
+        jdbcWorkerPersistence.playback(key, playback);
+        assertEquals(1, playback.getCount());
+        assertEquals(time.getTime() + period.longValue(), playback.getTime().getTime());
+    }
+
+    public void testWriteToTimerInsertedByRolledBackTransactionIsDropped() throws Exception {
+        TransactionContext transactionContext = transactionContextManager.newContainerTransactionContext();
+        WorkInfo workInfo = newWorkInfo();
+        jdbcWorkerPersistence.save(workInfo);
+        transactionContextManager.setContext(null);
+        jdbcWorkerPersistence.cancel(workInfo.getId());
+        transactionContextManager.setContext(transactionContext);
+        transactionContext.rollback();
+        transactionContextManager.setContext(null);
+        assertEquals(0, ((BatchingJDBCWorkerPersistence) jdbcWorkerPersistence).getQueuedWriteCount());
+        assertEquals(0, countRows());
+    }
+
+    public void testUnbatchedTimersAreMoved() throws Exception {
+        jdbcWorkerPersistence.close();
+        WorkerPersistence unbatched = new JDBCWorkerPersistence(serverUniqueId, datasource, false);
+        WorkInfo workInfo = newWorkInfo();
+        unbatched.save(workInfo);
+
+        jdbcWorkerPersistence = createWorkerPersistence();
+        PlaybackImpl playback = new PlaybackImpl();
+        jdbcWorkerPersistence.playback(key, playback);
+        assertEquals(1, playback.getCount());
+        assertTrue(jdbcWorkerPersistence.getIdsByKey(key, null).contains(new Long(workInfo.getId())));
+        assertTrue(unbatched.getIdsByKey(key, null).isEmpty());
+
+        // ids allocated from now on don't clash with the moved timer's
+        WorkInfo batched = newWorkInfo();
+        jdbcWorkerPersistence.save(batched);
+        assertTrue(batched.getId() > workInfo.getId());
+    }
+
+    public void testCloseStopsFlusher() throws Exception {
+        BatchingJDBCWorkerPersistence persistence = (BatchingJDBCWorkerPersistence) jdbcWorkerPersistence;
+        persistence.save(newWorkInfo());
+        assertEquals(1, countFlushers());
+        persistence.close();
+        assertEquals(0, countFlushers());
+        assertEquals(0, persistence.getQueuedWriteCount());
+        assertEquals(1, countRows());
+
+        // used again after close
+        persistence.save(newWorkInfo());
+        assertEquals(2, countRows());
+        persistence.close();
+        assertEquals(0, countFlushers());
+    }
+
+    private int countFlushers() {
+        Thread[] threads = new Thread[Thread.activeCount() + 10];
+        int count = 0;
+        for (int i = Thread.enumerate(threads) - 1; i >= 0; i--) {
+            if (threads[i].getName().equals("BatchingJDBCWorkerPersistence flusher")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private WorkInfo newWorkInfo() {
+        return new WorkInfo(key, null, userInfo, new Date(time.getTime()), period, true);
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.timer.jdbc;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import javax.sql.DataSource;
+
+import EDU.oswego.cs.dl.util.concurrent.CountDown;
+import EDU.oswego.cs.dl.util.concurrent.LinkedQueue;
+import EDU.oswego.cs.dl.util.concurrent.PooledExecutor;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.apache.geronimo.timer.NontransactionalExecutorTaskFactory;
+import org.apache.geronimo.timer.ThreadPooledTimer;
+import org.apache.geronimo.timer.UserTaskFactory;
+import org.apache.geronimo.timer.WorkerPersistence;
+import org.apache.geronimo.transaction.context.TransactionContextManager;
+import org.apache.geronimo.transaction.manager.TransactionManagerImpl;
+import org.apache.geronimo.transaction.manager.XidFactoryImpl;
+
+/**
+ * Schedules and fires one-time timers stored in an embedded Derby database, with
+ * JDBCWorkerPersistence writing every change as it happens and with BatchingJDBCWorkerPersistence.
+ * Each timer is inserted when scheduled and deleted when it fires.
+ *
+ * usage: JDBCWorkerPersistenceSpeed [timers] [flush interval ms]
+ *
+ * @version $Rev$ $Date$
+ */
+public class JDBCWorkerPersistenceSpeed {
+    private static final String KEY = "test:service=Timer";
+    private static final long SPREAD = 2000;
+
+    public static void main(String[] args) throws Exception {
+        int timers = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        long flushInterval = args.length > 1 ? Long.parseLong(args[1]) : 100;
+
+        File systemDir = File.createTempFile("derbySpeed", ".tmp");
+        systemDir.delete();
+        systemDir.mkdirs();
+        System.setProperty("derby.system.home", systemDir.getAbsolutePath());
+        System.setProperty("derby.storage.fileSyncTransactionLog", "true");
+        new org.apache.derby.jdbc.EmbeddedDriver();
+        try {
+            System.out.println("Timer Persistence Timings (" + timers + " timers)");
+            System.out.println("-------------------------------------");
+            timings(timers, flushInterval);
+            System.out.println();
+            System.out.println();
+            System.out.println();
+            timings(timers, flushInterval);
+        } finally {
+            try {
+                DriverManager.getConnection("jdbc:derby:;shutdown=true");
+            } catch (SQLException e) {
+                //expected
+            }
+            delete(systemDir);
+        }
+    }
+
+    private static void timings(int timers, long flushInterval) throws Exception {
+        TransactionManagerImpl transactionManager = new TransactionManagerImpl(10 * 1000,
+                new XidFactoryImpl("WHAT DO WE CALL IT?".getBytes()), null, null);
+        TransactionContextManager transactionContextManager = new TransactionContextManager(transactionManager, transactionManager);
+
+        DataSource dataSource = createDataSource("Unbatched" + System.currentTimeMillis());
+        WorkerPersistence persistence = new JDBCWorkerPersistence("server", dataSource, false);
+        run("JDBCWorkerPersistence", persistence, transactionContextManager, timers);
+
+        dataSource = createDataSource("Batched" + System.currentTimeMillis());
+        persistence = new BatchingJDBCWorkerPersistence("server", dataSource, transactionContextManager, flushInterval);
+        run("BatchingJDBCWorkerPersistence " + flushInterval + "ms", persistence, transactionContextManager, timers);
+    }
+
+    private static void run(String persistenceType, WorkerPersistence persistence, TransactionContextManager transactionContextManager, int timers) throws Exception {
+        final CountDown fired = new CountDown(timers);
+        PooledExecutor executor = new PooledExecutor(new LinkedQueue(), 8);
+        executor.setMinimumPoolSize(8);
+        // idle workers only notice the shutdown when their keep alive expires
+        executor.setKeepAliveTime(100);
+        ThreadPooledTimer timer = new ThreadPooledTimer(new NontransactionalExecutorTaskFactory(transactionContextManager),
+                persistence, executor, transactionContextManager);
+        timer.doStart();
+        UserTaskFactory userTaskFactory = new UserTaskFactory() {
+            public Runnable newTask(long id) {
+                return new Runnable() {
+                    public void run() {
+                        fired.release();
+                    }
+                };
+            }
+        };
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < timers; i++) {
+            timer.schedule(userTaskFactory, KEY, null, null, i % SPREAD);
+        }
+        long scheduled = System.currentTimeMillis() - start;
+        fired.acquire();
+        // let the fired timers delete themselves
+        executor.shutdownAfterProcessingCurrentlyQueuedTasks();
+        executor.awaitTerminationAfterShutdown();
+        long averageLateness = timer.getAverageLatenessMilliseconds();
+        long maxLateness = timer.getMaxLatenessMilliseconds();
+        // flushes the batched changes
+        timer.doStop();
+        long elapsed = System.currentTimeMillis() - start;
+
+        printResults(persistenceType + " schedule", scheduled, timers);
+        printResults(persistenceType + " schedule and fire", elapsed, timers);
+        System.out.println(persistenceType + ": average lateness " + averageLateness + "ms, max lateness " + maxLateness + "ms");
+    }
+
+    private static DataSource createDataSource(String databaseName) throws SQLException {
+        EmbeddedDataSource dataSource = new EmbeddedDataSource();
+        dataSource.setDatabaseName(databaseName);
+        dataSource.setCreateDatabase("create");
+        Connection c = dataSource.getConnection();
+        c.close();
+        return dataSource;
+    }
+
+    private static void printResults(String invocationType, long elapsed, int timers) {
+        if (elapsed < 400) {
+            System.out.println(invocationType + ": elapse time to short to calculate throughput (total " + elapsed + "ms)");
+        } else {
+            System.out.println(invocationType + ": " + (timers * 1000L / elapsed) + " timers/s  (total " + elapsed + "ms)");
+        }
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                delete(files[i]);
+            }
+        }
+        file.delete();
+    }
+}
@@ -27,6 +27,7 @@ import javax.sql.DataSource;
 import junit.framework.TestCase;
 import org.apache.geronimo.timer.Playback;
 import org.apache.geronimo.timer.WorkInfo;
+import org.apache.geronimo.timer.WorkerPersistence;
 
 /**
  *
@@ -37,14 +38,14 @@ import org.apache.geronimo.timer.WorkInfo;
 public class JDBCWorkerPersistenceTestAbstract extends TestCase {
 
 
-    private final String countSQL = "select count(*) from timertasks";
+    protected String tableName = "timertasks";
 
-    private final String serverUniqueId = "TestServerUniqueID";
-    private final String key = "test:service=Timer";
-    private final Object userInfo = "test user info";
+    protected final String serverUniqueId = "TestServerUniqueID";
+    protected final String key = "test:service=Timer";
+    protected final Object userInfo = "test user info";
     private Object userId = null;
 
-    private JDBCWorkerPersistence jdbcWorkerPersistence;
+    protected WorkerPersistence jdbcWorkerPersistence;
     protected DataSource datasource;
     protected boolean useSequence;
 
@@ -54,12 +55,15 @@ public class JDBCWorkerPersistenceTestAbstract extends TestCase {
     protected Long period;
 
     protected void setUp() throws Exception {
-        jdbcWorkerPersistence = new JDBCWorkerPersistence(serverUniqueId, datasource, useSequence);
+        jdbcWorkerPersistence = createWorkerPersistence();
         time = new Date(System.currentTimeMillis());
         period = new Long(1000);
         workInfo = new WorkInfo(key, userId, userInfo, time, period, true);
     }
 
+    protected WorkerPersistence createWorkerPersistence() throws Exception {
+        return new JDBCWorkerPersistence(serverUniqueId, datasource, useSequence);
+    }
 
     public void testSaveCancel() throws Exception {
         assertEquals(0, countRows());
@@ -130,10 +134,11 @@ public class JDBCWorkerPersistenceTestAbstract extends TestCase {
         }
     }
 
-    private int countRows() throws Exception {
+    protected int countRows() throws Exception {
+        jdbcWorkerPersistence.flush();
         Connection c = datasource.getConnection();
         try {
-            PreparedStatement p = c.prepareStatement(countSQL);
+            PreparedStatement p = c.prepareStatement("select count(*) from " + tableName);
             try {
                 ResultSet countRS = p.executeQuery();
                 try {
@@ -150,7 +155,7 @@ public class JDBCWorkerPersistenceTestAbstract extends TestCase {
         }
     }
 
-    private static class PlaybackImpl implements Playback {
+    protected static class PlaybackImpl implements Playback {
 
         private int count = 0;
         private Date time;
@@ -28,6 +28,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.geronimo.security.ContextManager;
 import org.apache.geronimo.security.jacc.PolicyContextHandlerContainerSubject;
+import org.apache.geronimo.security.realm.AuthenticationCache;
 import org.apache.geronimo.security.realm.providers.CertificateChainCallbackHandler;
 import org.apache.geronimo.security.realm.providers.PasswordCallbackHandler;
 import org.apache.geronimo.tomcat.JAASTomcatPrincipal;
@@ -279,7 +280,7 @@ public class TomcatGeronimoRealm extends JAASRealm {
 
         char[] cred = credentials == null? null: credentials.toCharArray();
         CallbackHandler callbackHandler = new PasswordCallbackHandler(username, cred);
-        return authenticate(callbackHandler, username);
+        return authenticate(callbackHandler, username, credentials);
     }
 
     public Principal authenticate(X509Certificate[] certs) {
@@ -288,19 +289,41 @@ public class TomcatGeronimoRealm extends JAASRealm {
         }
         CallbackHandler callbackHandler = new CertificateChainCallbackHandler(certs);
         String principalName = certs[0].getSubjectX500Principal().getName();
-        return authenticate(callbackHandler, principalName);
+        return authenticate(callbackHandler, principalName, certs);
     }
 
     public Principal authenticate(CallbackHandler callbackHandler, String principalName) {
+        return authenticate(callbackHandler, principalName, null);
+    }
+
+    /**
+     * @param credentials the password or certificate chain the callback handler supplies,
+     *                    used to reuse the subject of an earlier login; null not to cache
+     */
+    private Principal authenticate(CallbackHandler callbackHandler, String principalName, Object credentials) {
 
         // Establish a LoginContext to use for authentication
         try {
 
             if ( (principalName!=null) && (!principalName.equals("")) ) {
-              LoginContext loginContext = null;
               if (appName == null)
                   appName = "Tomcat";
 
+              // Reuse the subject of an earlier login with the same credentials
+              AuthenticationCache authenticationCache = credentials == null ? null : AuthenticationCache.getCache(appName);
+              Object cacheKey = authenticationCache == null ? null : authenticationCache.createKey(principalName, credentials);
+              Subject subject = authenticationCache == null ? null : authenticationCache.get(cacheKey);
+              if (subject != null) {
+                  ContextManager.setCurrentCaller(subject);
+
+                  JAASTomcatPrincipal jaasPrincipal = new JAASTomcatPrincipal(principalName);
+                  jaasPrincipal.setSubject(subject);
+
+                  return (jaasPrincipal);
+              }
+
+              LoginContext loginContext = null;
+
               if (log.isDebugEnabled())
                   log.debug(sm.getString("jaasRealm.beginLogin", principalName, appName));
 
@@ -327,7 +350,6 @@ public class TomcatGeronimoRealm extends JAASRealm {
                   log.debug("Login context created " + principalName);
 
               // Negotiate a login via this LoginContext
-              Subject subject;
               try {
                   loginContext.login();
                   Subject tempSubject = loginContext.getSubject();
@@ -346,6 +368,10 @@ public class TomcatGeronimoRealm extends JAASRealm {
 
                   ContextManager.setCurrentCaller(subject);
 
+                  if (authenticationCache != null) {
+                      authenticationCache.put(cacheKey, subject);
+                  }
+
               } catch (AccountExpiredException e) {
                   if (log.isDebugEnabled())
                       log.debug(sm.getString("jaasRealm.accountExpired", principalName));
@@ -17,6 +17,7 @@
 
 package org.apache.geronimo.transaction.context;
 
+import EDU.oswego.cs.dl.util.concurrent.ConcurrentHashMap;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.geronimo.transaction.ExtendedTransactionManager;
@@ -29,11 +30,14 @@ import javax.transaction.*;
 import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
 import javax.transaction.xa.Xid;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
 /**
+ * Imported transactions are kept in a ConcurrentHashMap, so work on different imported
+ * transactions does not contend for one lock.  Operations on one xid are serialized by the
+ * lock for that xid, one of IMPORT_LOCK_COUNT locks chosen by the hash of the xid.
+ *
  * @version $Rev$ $Date$
  */
 public class TransactionContextManager implements XATerminator, XAWork {
@@ -44,7 +48,9 @@ public class TransactionContextManager implements XATerminator, XAWork {
     private ThreadLocal CONTEXT = new ThreadLocal();
     private final ExtendedTransactionManager transactionManager;
     private final XidImporter importer;
-    private final Map importedTransactions = new HashMap();
+    private static final int IMPORT_LOCK_COUNT = 64;
+    private final Map importedTransactions = new ConcurrentHashMap();
+    private final Object[] importLocks = new Object[IMPORT_LOCK_COUNT];
 
     private boolean recoveryState = NOT_IN_RECOVERY;
 
@@ -56,6 +62,13 @@ public class TransactionContextManager implements XATerminator, XAWork {
     public TransactionContextManager(ExtendedTransactionManager transactionManager, XidImporter importer) {
         this.transactionManager = transactionManager;
         this.importer = importer;
+        for (int i = 0; i < importLocks.length; i++) {
+            importLocks[i] = new Object();
+        }
+    }
+
+    private Object getImportLock(Xid xid) {
+        return importLocks[(xid.hashCode() & 0x7fffffff) % IMPORT_LOCK_COUNT];
     }
 
     public TransactionManager getTransactionManager() {
@@ -199,7 +212,7 @@ public class TransactionContextManager implements XATerminator, XAWork {
      */
     public void commit(Xid xid, boolean onePhase) throws XAException {
         ContainerTransactionContext containerTransactionContext;
-        synchronized (importedTransactions) {
+        synchronized (getImportLock(xid)) {
             containerTransactionContext = (ContainerTransactionContext) importedTransactions.remove(xid);
         }
         if (containerTransactionContext == null) {
@@ -220,7 +233,7 @@ public class TransactionContextManager implements XATerminator, XAWork {
      */
     public void forget(Xid xid) throws XAException {
         ContainerTransactionContext containerTransactionContext;
-        synchronized (importedTransactions) {
+        synchronized (getImportLock(xid)) {
             containerTransactionContext = (ContainerTransactionContext) importedTransactions.remove(xid);
         }
         if (containerTransactionContext == null) {
@@ -240,10 +253,7 @@ public class TransactionContextManager implements XATerminator, XAWork {
      * @see javax.resource.spi.XATerminator#prepare(javax.transaction.xa.Xid)
      */
     public int prepare(Xid xid) throws XAException {
-        ContainerTransactionContext containerTransactionContext;
-        synchronized (importedTransactions) {
-            containerTransactionContext = (ContainerTransactionContext) importedTransactions.get(xid);
-        }
+        ContainerTransactionContext containerTransactionContext = (ContainerTransactionContext) importedTransactions.get(xid);
         if (containerTransactionContext == null) {
             throw new XAException("No imported transaction for xid: " + xid);
         }
@@ -276,12 +286,12 @@ public class TransactionContextManager implements XATerminator, XAWork {
             Map recoveredXidMap = transactionManager.getExternalXids();
             Xid[] recoveredXids = new Xid[recoveredXidMap.size()];
             int i = 0;
-            synchronized (importedTransactions) {
-                for (Iterator iterator = recoveredXidMap.entrySet().iterator(); iterator.hasNext();) {
-                    Map.Entry entry = (Map.Entry) iterator.next();
-                    Xid xid = (Xid) entry.getKey();
-                    recoveredXids[i++] = xid;
-                    ContainerTransactionContext containerTransactionContext = new ContainerTransactionContext(transactionManager, (Transaction) entry.getValue());
+            for (Iterator iterator = recoveredXidMap.entrySet().iterator(); iterator.hasNext();) {
+                Map.Entry entry = (Map.Entry) iterator.next();
+                Xid xid = (Xid) entry.getKey();
+                recoveredXids[i++] = xid;
+                ContainerTransactionContext containerTransactionContext = new ContainerTransactionContext(transactionManager, (Transaction) entry.getValue());
+                synchronized (getImportLock(xid)) {
                     importedTransactions.put(xid, containerTransactionContext);
                 }
             }
@@ -296,7 +306,7 @@ public class TransactionContextManager implements XATerminator, XAWork {
      */
     public void rollback(Xid xid) throws XAException {
         ContainerTransactionContext containerTransactionContext;
-        synchronized (importedTransactions) {
+        synchronized (getImportLock(xid)) {
             containerTransactionContext = (ContainerTransactionContext) importedTransactions.remove(xid);
         }
         if (containerTransactionContext == null) {
@@ -317,7 +327,7 @@ public class TransactionContextManager implements XATerminator, XAWork {
     //XAWork implementation
     public void begin(Xid xid, long txTimeoutMillis) throws XAException, InvalidTransactionException, SystemException, ImportedTransactionActiveException {
         ContainerTransactionContext containerTransactionContext;
-        synchronized (importedTransactions) {
+        synchronized (getImportLock(xid)) {
             containerTransactionContext = (ContainerTransactionContext) importedTransactions.get(xid);
             if (containerTransactionContext == null) {
                 //this does not associate tx with current thread.
@@ -336,7 +346,7 @@ public class TransactionContextManager implements XATerminator, XAWork {
 
     public void end(Xid xid) throws XAException, SystemException {
         setContext(null);
-        synchronized (importedTransactions) {
+        synchronized (getImportLock(xid)) {
             ContainerTransactionContext containerTransactionContext = (ContainerTransactionContext) importedTransactions.get(xid);
             if (containerTransactionContext == null) {
                 throw new XAException("No imported transaction for xid: " + xid);
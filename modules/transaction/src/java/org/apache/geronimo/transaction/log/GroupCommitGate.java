@@ -0,0 +1,84 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.transaction.log;
+
+/**
+ * Holds back threads about to write a forced log record so that they write together and
+ * share a force.  The first thread to arrive opens a group and waits up to the window; the
+ * threads that arrive meanwhile join it.  All of them go on when the window ends or when
+ * the group reaches its target size.
+ *
+ * @version $Rev$ $Date$
+ */
+public class GroupCommitGate {
+    private final Object lock = new Object();
+    private long generation;
+    private boolean open;
+    private int size;
+    private int target;
+    private long groupCount;
+
+    /**
+     * @param windowMilliseconds longest time to hold a group back; 0 or less passes straight through
+     * @param targetSize size at which a group goes on without waiting for the window to end
+     */
+    public void await(long windowMilliseconds, int targetSize) throws InterruptedException {
+        if (windowMilliseconds <= 0) {
+            return;
+        }
+        synchronized (lock) {
+            if (open) {
+                long myGeneration = generation;
+                size++;
+                if (size >= target) {
+                    lock.notifyAll();
+                }
+                while (myGeneration == generation) {
+                    lock.wait();
+                }
+                return;
+            }
+
+            open = true;
+            size = 1;
+            target = targetSize;
+            try {
+                long deadline = System.currentTimeMillis() + windowMilliseconds;
+                long remaining = windowMilliseconds;
+                while (remaining > 0 && size < target) {
+                    lock.wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+            } finally {
+                open = false;
+                generation++;
+                groupCount++;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return number of groups that have gone on
+     */
+    public long getGroupCount() {
+        synchronized (lock) {
+            return groupCount;
+        }
+    }
+}
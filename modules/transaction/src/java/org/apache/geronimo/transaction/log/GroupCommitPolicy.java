@@ -0,0 +1,86 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.transaction.log;
+
+/**
+ * Chooses how long the log holds back commit records to gather them into one force to
+ * disk.  Every record in a group waits up to this window, so a long window only pays off
+ * when enough other commits arrive during it.
+ * <p/>
+ * The policy follows a smoothed commit rate.  When fewer than two records would arrive in
+ * the longest window it uses the shortest one, since nothing can be grouped anyway.
+ * Otherwise it picks the window in which the target number of records arrives, within
+ * the allowed range.
+ *
+ * @version $Rev$ $Date$
+ */
+public class GroupCommitPolicy {
+    private static final double SMOOTHING = 0.5;
+
+    private final int minWindow;
+    private final int maxWindow;
+    private final int targetRecordsPerForce;
+    private double commitsPerSecond = -1;
+
+    public GroupCommitPolicy(int minWindow, int maxWindow, int targetRecordsPerForce) {
+        if (minWindow < 0) {
+            throw new IllegalArgumentException("minWindow must not be negative: attempted value: " + minWindow);
+        }
+        if (maxWindow < minWindow) {
+            throw new IllegalArgumentException("maxWindow must be at least minWindow: attempted value: " + maxWindow);
+        }
+        if (targetRecordsPerForce <= 0) {
+            throw new IllegalArgumentException("targetRecordsPerForce must be positive: attempted value: " + targetRecordsPerForce);
+        }
+        this.minWindow = minWindow;
+        this.maxWindow = maxWindow;
+        this.targetRecordsPerForce = targetRecordsPerForce;
+    }
+
+    /**
+     * @param commits number of records forced during the last period
+     * @param periodMilliseconds length of the last period
+     * @return window in milliseconds for the next period
+     */
+    public synchronized int nextWindow(long commits, long periodMilliseconds) {
+        if (periodMilliseconds > 0) {
+            double rate = commits * 1000.0 / periodMilliseconds;
+            commitsPerSecond = commitsPerSecond < 0 ? rate : SMOOTHING * rate + (1 - SMOOTHING) * commitsPerSecond;
+        }
+        return getWindow();
+    }
+
+    public synchronized int getWindow() {
+        if (commitsPerSecond * maxWindow / 1000 < 2) {
+            return minWindow;
+        }
+        double window = targetRecordsPerForce * 1000 / commitsPerSecond;
+        return (int) Math.max(minWindow, Math.min(maxWindow, Math.round(window)));
+    }
+
+    public int getTargetRecordsPerForce() {
+        return targetRecordsPerForce;
+    }
+
+    /**
+     * @return smoothed commit rate, or 0 before the first period
+     */
+    public synchronized double getCommitsPerSecond() {
+        return Math.max(commitsPerSecond, 0);
+    }
+}
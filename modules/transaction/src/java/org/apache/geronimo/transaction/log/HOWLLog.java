@@ -23,6 +23,8 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
 import javax.transaction.xa.Xid;
 
 import org.apache.commons.logging.Log;
@@ -51,6 +53,21 @@ import org.objectweb.howl.log.xa.XALogRecord;
 import org.objectweb.howl.log.xa.XALogger;
 
 /**
+ * TransactionLog on a HOWL XALogger.  HOWL forces prepare records to disk in groups: a
+ * prepare waits for its buffer to be written, which happens when the flush sleep time has
+ * passed or the buffer is full, so even a lone commit waits for the flush sleep time.
+ * HOWL copies its configuration when the logger is created, so changes take effect the next
+ * time this log is started.
+ * <p/>
+ * With adaptiveGroupCommit HOWL instead writes a partial buffer as soon as a prepare is
+ * waiting and no other force is in progress, and this log does the grouping itself: a
+ * prepare is held back for a window chosen by a GroupCommitPolicy from the observed commit
+ * rate, no longer than the flush sleep time, so a lone commit is not delayed and
+ * concurrent commits still share forces.
+ * <p/>
+ * The force statistics come from HOWL's own counters; the prepare times are those seen by
+ * the callers of prepare, including the wait for the force.
+ *
  * @version $Rev$ $Date$
  */
 public class HOWLLog implements TransactionLog, GBeanLifecycle {
@@ -62,17 +79,31 @@ public class HOWLLog implements TransactionLog, GBeanLifecycle {
     static final String[] TYPE_NAMES = {null, "PREPARE", "COMMIT", "ROLLBACK"};
 
     private static final Log log = LogFactory.getLog(HOWLLog.class);
+    private static final int DEFAULT_TARGET_RECORDS_PER_FORCE = 16;
+    private static final long GROUP_COMMIT_PERIOD_MILLISECONDS = 1000;
 
     private final ServerInfo serverInfo;
     private String logFileDir;
 
     private final XidFactory xidFactory;
 
-    private final XALogger logger;
+    private XALogger logger;
     private final Configuration configuration = new Configuration();
     private boolean started = false;
     private HashMap recovered;
 
+    private boolean adaptiveGroupCommit;
+    private GroupCommitPolicy groupCommitPolicy;
+    private Timer groupCommitTimer;
+    private final GroupCommitGate groupCommitGate = new GroupCommitGate();
+    private volatile int groupCommitWindow;
+    private volatile int groupCommitTarget = 1;
+
+    private final Object statisticsLock = new Object();
+    private long prepareCount;
+    private long totalPrepareTime;
+    private long maxPrepareTime;
+
     public HOWLLog(String bufferClassName,
                    int bufferSize,
                    boolean checksumEnabled,
@@ -188,6 +219,17 @@ public class HOWLLog implements TransactionLog, GBeanLifecycle {
         configuration.setThreadsWaitingForceThreshold(threadsWaitingForceThreshold == -1 ? Integer.MAX_VALUE : threadsWaitingForceThreshold);
     }
 
+    public boolean isAdaptiveGroupCommit() {
+        return adaptiveGroupCommit;
+    }
+
+    /**
+     * Takes effect the next time the log is started.
+     */
+    public void setAdaptiveGroupCommit(boolean adaptiveGroupCommit) {
+        this.adaptiveGroupCommit = adaptiveGroupCommit;
+    }
+
     public int getMaxBlocksPerFile() {
         return configuration.getMaxBlocksPerFile();
     }
@@ -208,9 +250,11 @@ public class HOWLLog implements TransactionLog, GBeanLifecycle {
         return serverInfo;
     }
 
-    public void doStart() throws Exception {
+    public synchronized void doStart() throws Exception {
         started = true;
         setLogFileDir(logFileDir);
+        configuration.setFlushPartialBuffers(adaptiveGroupCommit);
+        logger = new XALogger(configuration);
         log.debug("Initiating transaction manager recovery");
         recovered = new HashMap();
 
@@ -220,15 +264,38 @@ public class HOWLLog implements TransactionLog, GBeanLifecycle {
         logger.replayActiveTx(replayListener);
 
         log.debug("In doubt transactions recovered from log");
+        if (adaptiveGroupCommit) {
+            startGroupCommit();
+        }
     }
 
-    public void doStop() throws Exception {
+    public synchronized void doStop() throws Exception {
         started = false;
+        stopGroupCommit();
         logger.close();
         recovered = null;
     }
 
-    public void doFail() {
+    public synchronized void doFail() {
+        stopGroupCommit();
+    }
+
+    private void startGroupCommit() {
+        int target = Math.min(configuration.getThreadsWaitingForceThreshold(), DEFAULT_TARGET_RECORDS_PER_FORCE);
+        groupCommitPolicy = new GroupCommitPolicy(0, configuration.getFlushSleepTime(), target);
+        groupCommitTarget = target;
+        groupCommitWindow = groupCommitPolicy.getWindow();
+        groupCommitTimer = new Timer(true);
+        groupCommitTimer.schedule(new GroupCommitTask(groupCommitPolicy), GROUP_COMMIT_PERIOD_MILLISECONDS, GROUP_COMMIT_PERIOD_MILLISECONDS);
+    }
+
+    private void stopGroupCommit() {
+        if (groupCommitTimer != null) {
+            groupCommitTimer.cancel();
+            groupCommitTimer = null;
+        }
+        groupCommitPolicy = null;
+        groupCommitWindow = 0;
     }
 
     public void begin(Xid xid) throws LogException {
@@ -246,8 +313,11 @@ public class HOWLLog implements TransactionLog, GBeanLifecycle {
             data[i++] = transactionBranchInfo.getBranchXid().getBranchQualifier();
             data[i++] = transactionBranchInfo.getResourceName().getBytes();
         }
+        long start = System.currentTimeMillis();
         try {
+            groupCommitGate.await(groupCommitWindow, groupCommitTarget);
             XACommittingTx committingTx = logger.putCommit(data);
+            prepared(System.currentTimeMillis() - start);
             return committingTx;
         } catch (LogClosedException e) {
             throw (IllegalStateException) new IllegalStateException().initCause(e);
@@ -322,13 +392,120 @@ public class HOWLLog implements TransactionLog, GBeanLifecycle {
     }
 
     public int getAverageForceTime() {
-        return 0;//logger.getAverageForceTime();
+        return (int) Math.round(getHOWLStatistic("avgForceTime"));
     }
 
     public int getAverageBytesPerForce() {
         return 0;//logger.getAverageBytesPerForce();
     }
 
+    private void prepared(long elapsed) {
+        synchronized (statisticsLock) {
+            prepareCount++;
+            totalPrepareTime += elapsed;
+            if (elapsed > maxPrepareTime) {
+                maxPrepareTime = elapsed;
+            }
+        }
+    }
+
+    /**
+     * @return number of prepare records written, each of which was forced to disk
+     */
+    public long getPrepareCount() {
+        synchronized (statisticsLock) {
+            return prepareCount;
+        }
+    }
+
+    /**
+     * @return average time in milliseconds a prepare took, including the wait for its force
+     */
+    public double getAveragePrepareTimeMilliseconds() {
+        synchronized (statisticsLock) {
+            return prepareCount == 0 ? 0 : (double) totalPrepareTime / prepareCount;
+        }
+    }
+
+    public long getMaxPrepareTimeMilliseconds() {
+        synchronized (statisticsLock) {
+            return maxPrepareTime;
+        }
+    }
+
+    /**
+     * @return number of times HOWL forced the log to disk
+     */
+    public long getForceCount() {
+        return (long) getHOWLStatistic("forceCount");
+    }
+
+    public double getAverageForceTimeMilliseconds() {
+        return getHOWLStatistic("avgForceTime");
+    }
+
+    /**
+     * @return average number of prepare records made durable by each force
+     */
+    public double getAverageRecordsPerForce() {
+        long forceCount = getForceCount();
+        return forceCount == 0 ? 0 : (double) getPrepareCount() / forceCount;
+    }
+
+    /**
+     * @return average number of threads waiting for each force
+     */
+    public double getAverageWaitersPerForce() {
+        return getHOWLStatistic("avgThreadsWaitingForce");
+    }
+
+    /**
+     * @return how long prepares are currently held back to share a force; always 0 without adaptiveGroupCommit
+     */
+    public int getGroupCommitWindowMilliseconds() {
+        return groupCommitWindow;
+    }
+
+    /**
+     * @return commit rate seen by the adaptive group commit policy, or 0 if it is not in use
+     */
+    public synchronized double getCommitsPerSecond() {
+        return groupCommitPolicy == null ? 0 : groupCommitPolicy.getCommitsPerSecond();
+    }
+
+    /**
+     * HOWL only publishes its force counters in its XML statistics.
+     */
+    private double getHOWLStatistic(String name) {
+        synchronized (this) {
+            if (!started) {
+                return 0;
+            }
+        }
+        return getStatistic(logger.getStats(), name);
+    }
+
+    /**
+     * @return the value attribute of the first element with the given name, or 0 if there is none
+     */
+    static double getStatistic(String stats, String name) {
+        int element = stats.indexOf("<" + name + " ");
+        if (element < 0) {
+            return 0;
+        }
+        int start = stats.indexOf("value='", element);
+        if (start < 0) {
+            return 0;
+        }
+        start += "value='".length();
+        int end = stats.indexOf('\'', start);
+        try {
+            return Double.parseDouble(stats.substring(start, end));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     private byte[] intToBytes(int formatId) {
         byte[] buffer = new byte[4];
         buffer[0] = (byte) (formatId >> 24);
@@ -396,6 +573,24 @@ public class HOWLLog implements TransactionLog, GBeanLifecycle {
 
     }
 
+    private class GroupCommitTask extends TimerTask {
+        private final GroupCommitPolicy policy;
+        private long lastTime = System.currentTimeMillis();
+        private long lastPrepareCount = getPrepareCount();
+
+        public GroupCommitTask(GroupCommitPolicy policy) {
+            this.policy = policy;
+        }
+
+        public void run() {
+            long now = System.currentTimeMillis();
+            long count = getPrepareCount();
+            groupCommitWindow = policy.nextWindow(count - lastPrepareCount, now - lastTime);
+            lastTime = now;
+            lastPrepareCount = count;
+        }
+    }
+
     public static final GBeanInfo GBEAN_INFO;
 
     static {
@@ -412,6 +607,16 @@ public class HOWLLog implements TransactionLog, GBeanLifecycle {
         infoFactory.addAttribute("maxLogFiles", Integer.TYPE, true);
         infoFactory.addAttribute("minBuffers", Integer.TYPE, true);
         infoFactory.addAttribute("threadsWaitingForceThreshold", Integer.TYPE, true);
+        infoFactory.addAttribute("adaptiveGroupCommit", Boolean.TYPE, true);
+        infoFactory.addAttribute("groupCommitWindowMilliseconds", Integer.TYPE, false);
+        infoFactory.addAttribute("commitsPerSecond", Double.TYPE, false);
+        infoFactory.addAttribute("prepareCount", Long.TYPE, false);
+        infoFactory.addAttribute("averagePrepareTimeMilliseconds", Double.TYPE, false);
+        infoFactory.addAttribute("maxPrepareTimeMilliseconds", Long.TYPE, false);
+        infoFactory.addAttribute("forceCount", Long.TYPE, false);
+        infoFactory.addAttribute("averageForceTimeMilliseconds", Double.TYPE, false);
+        infoFactory.addAttribute("averageRecordsPerForce", Double.TYPE, false);
+        infoFactory.addAttribute("averageWaitersPerForce", Double.TYPE, false);
 
         infoFactory.addReference("XidFactory", XidFactory.class, NameFactory.XID_FACTORY);
         infoFactory.addReference("ServerInfo", ServerInfo.class, NameFactory.GERONIMO_SERVICE);
@@ -0,0 +1,927 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.transaction.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import javax.transaction.xa.Xid;
+
+import EDU.oswego.cs.dl.util.concurrent.CountDown;
+import EDU.oswego.cs.dl.util.concurrent.SynchronizedInt;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.geronimo.gbean.GBeanInfo;
+import org.apache.geronimo.gbean.GBeanInfoBuilder;
+import org.apache.geronimo.gbean.GBeanLifecycle;
+import org.apache.geronimo.j2ee.j2eeobjectnames.NameFactory;
+import org.apache.geronimo.system.serverinfo.ServerInfo;
+import org.apache.geronimo.transaction.manager.LogException;
+import org.apache.geronimo.transaction.manager.Recovery;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfo;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfoImpl;
+import org.apache.geronimo.transaction.manager.TransactionLog;
+import org.apache.geronimo.transaction.manager.XidFactory;
+
+/**
+ * TransactionLog that appends records to preallocated, memory-mapped segment files.
+ * <p/>
+ * Each segment starts with a header holding its sequence number; a segment with a higher
+ * sequence was started later.  Each record is its payload length, a CRC32 of the segment
+ * sequence and the payload, and the payload.  Payloads are encoded into a reused buffer, so
+ * logging a transaction allocates only its log mark.  A zero length or a bad checksum ends
+ * a segment; since the checksum covers the sequence, records left over from an earlier use
+ * of the segment never pass.
+ * <p/>
+ * Prepare records are forced before prepare returns.  A thread that finds a force in
+ * progress waits for it, and then one thread forces everything appended meanwhile.  Commit
+ * and rollback records are not forced: if one is lost, recovery finds the transaction
+ * prepared and completes it again.
+ * <p/>
+ * When the current segment is full the log moves on to the oldest segment if every
+ * transaction prepared in it has completed, and otherwise to a new segment file.  It then
+ * compacts the oldest segment by copying the prepare records still live there into the new
+ * current segment, so that the oldest segment is free by the next move.  Segments are only
+ * reused oldest first, which keeps every commit record in a later segment than its prepare
+ * record.
+ * <p/>
+ * On start all segments are read and checked in parallel, and the records are then replayed
+ * in sequence order to find the transactions that were prepared but never completed.
+ *
+ * @version $Rev$ $Date$
+ */
+public class MappedSegmentLog implements TransactionLog, GBeanLifecycle {
+
+    private static final Log log = LogFactory.getLog(MappedSegmentLog.class);
+
+    private static final int MAGIC = 0x47534c31;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int PREALLOCATE_CHUNK_SIZE = 64 * 1024;
+
+    private static final byte PREPARE = 1;
+    private static final byte COMMIT = 2;
+    private static final byte ROLLBACK = 3;
+
+    private final ServerInfo serverInfo;
+    private final XidFactory xidFactory;
+
+    private String logFileDir;
+    private String logFileName;
+    private String logFileExt;
+    private int segmentSizeKBytes;
+    private int segmentCount;
+    private int replayThreads;
+
+    private boolean started;
+    //oldest first, the current segment last
+    private final LinkedList segments = new LinkedList();
+    private Segment current;
+    private int segmentFileCount;
+    private long nextSequence;
+    private long appendPosition;
+    private byte[] encodeBuffer = new byte[1024];
+    private byte[] copyBuffer = new byte[1024];
+    private final CRC32 checksum = new CRC32();
+    private long prepareCount;
+    private long compactionCount;
+    private long compactedRecordCount;
+
+    private final Object forceLock = new Object();
+    private boolean forcing;
+    private long forcedPosition;
+    private long forceCount;
+    private long totalForceTime;
+    private long totalForcedBytes;
+
+    public MappedSegmentLog(String logFileDir,
+                            String logFileName,
+                            String logFileExt,
+                            int segmentSizeKBytes,
+                            int segmentCount,
+                            int replayThreads,
+                            XidFactory xidFactory,
+                            ServerInfo serverInfo) {
+        this.logFileDir = logFileDir;
+        this.logFileName = logFileName;
+        this.logFileExt = logFileExt;
+        setSegmentSizeKBytes(segmentSizeKBytes);
+        setSegmentCount(segmentCount);
+        setReplayThreads(replayThreads);
+        this.xidFactory = xidFactory;
+        this.serverInfo = serverInfo;
+    }
+
+    public String getLogFileDir() {
+        return logFileDir;
+    }
+
+    /**
+     * The log file settings take effect the next time the log is started.
+     */
+    public void setLogFileDir(String logFileDir) {
+        this.logFileDir = logFileDir;
+    }
+
+    public String getLogFileName() {
+        return logFileName;
+    }
+
+    public void setLogFileName(String logFileName) {
+        this.logFileName = logFileName;
+    }
+
+    public String getLogFileExt() {
+        return logFileExt;
+    }
+
+    public void setLogFileExt(String logFileExt) {
+        this.logFileExt = logFileExt;
+    }
+
+    public int getSegmentSizeKBytes() {
+        return segmentSizeKBytes;
+    }
+
+    /**
+     * Size of new segment files; existing files keep their size.
+     */
+    public void setSegmentSizeKBytes(int segmentSizeKBytes) {
+        if (segmentSizeKBytes <= 0) {
+            throw new IllegalArgumentException("segmentSizeKBytes must be positive: attempted value: " + segmentSizeKBytes);
+        }
+        this.segmentSizeKBytes = segmentSizeKBytes;
+    }
+
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Number of segment files preallocated on start.  More are added if all of them hold
+     * transactions that have not completed.
+     */
+    public void setSegmentCount(int segmentCount) {
+        if (segmentCount < 2) {
+            throw new IllegalArgumentException("segmentCount must be at least 2: attempted value: " + segmentCount);
+        }
+        this.segmentCount = segmentCount;
+    }
+
+    public int getReplayThreads() {
+        return replayThreads;
+    }
+
+    public void setReplayThreads(int replayThreads) {
+        if (replayThreads <= 0) {
+            throw new IllegalArgumentException("replayThreads must be positive: attempted value: " + replayThreads);
+        }
+        this.replayThreads = replayThreads;
+    }
+
+    public synchronized void doStart() throws Exception {
+        File dir = serverInfo.resolve(logFileDir);
+        dir.mkdirs();
+        appendPosition = 0;
+        synchronized (forceLock) {
+            forcedPosition = 0;
+        }
+        segmentFileCount = 0;
+        try {
+            while (segmentFileCount < segmentCount || getSegmentFile(segmentFileCount + 1).exists()) {
+                segments.add(openSegment());
+            }
+            replay();
+            //never append after a record that may have been torn by a crash
+            nextSegment(0);
+        } catch (Exception e) {
+            closeSegments();
+            throw e;
+        }
+        started = true;
+        log.debug("Started transaction log with " + segmentFileCount + " segments in " + dir);
+    }
+
+    public synchronized void doStop() throws Exception {
+        started = false;
+        if (current != null) {
+            current.buffer.force();
+        }
+        closeSegments();
+    }
+
+    public synchronized void doFail() {
+        started = false;
+        closeSegments();
+    }
+
+    private void closeSegments() {
+        for (Iterator iterator = segments.iterator(); iterator.hasNext();) {
+            Segment segment = (Segment) iterator.next();
+            try {
+                segment.close();
+            } catch (IOException e) {
+                log.warn("Could not close transaction log segment " + segment.file, e);
+            }
+        }
+        segments.clear();
+        current = null;
+    }
+
+    public void begin(Xid xid) throws LogException {
+    }
+
+    public Object prepare(Xid xid, List branches) throws LogException {
+        Mark mark = new Mark();
+        long position;
+        synchronized (this) {
+            checkStarted();
+            int length = encodePrepare(xid, branches);
+            append(encodeBuffer, length, mark);
+            current.add(mark);
+            prepareCount++;
+            position = appendPosition;
+        }
+        force(position);
+        return mark;
+    }
+
+    public void commit(Xid xid, Object logMark) throws LogException {
+        done(COMMIT, xid, (Mark) logMark);
+    }
+
+    public void rollback(Xid xid, Object logMark) throws LogException {
+        done(ROLLBACK, xid, (Mark) logMark);
+    }
+
+    private synchronized void done(byte type, Xid xid, Mark mark) throws LogException {
+        checkStarted();
+        int length = encodeDone(type, xid);
+        append(encodeBuffer, length, null);
+        if (mark.segment != null) {
+            mark.segment.remove(mark);
+        }
+    }
+
+    public synchronized Collection recover(XidFactory xidFactory) throws LogException {
+        checkStarted();
+        List recovered = new ArrayList();
+        for (Iterator iterator = segments.iterator(); iterator.hasNext();) {
+            Segment segment = (Segment) iterator.next();
+            for (Mark mark = segment.live.next; mark != segment.live; mark = mark.next) {
+                recovered.add(decodePrepare(segment, mark, xidFactory));
+            }
+        }
+        log.debug("Recovered " + recovered.size() + " prepared transactions from log");
+        return recovered;
+    }
+
+    private void checkStarted() {
+        if (!started) {
+            throw new IllegalStateException("Transaction log is not started");
+        }
+    }
+
+    //appending
+
+    /**
+     * Appends a record to the current segment, moving on to the next segment if it is full.
+     * If mark is not null it is set to the position of the record.
+     */
+    private void append(byte[] payload, int length, Mark mark) throws LogException {
+        int recordLength = RECORD_HEADER_SIZE + length;
+        if (recordLength > current.buffer.capacity() - HEADER_SIZE) {
+            throw new LogException("Log record of " + length + " bytes does not fit in a segment of " + current.buffer.capacity() + " bytes");
+        }
+        if (current.buffer.remaining() < recordLength) {
+            try {
+                nextSegment(recordLength);
+            } catch (IOException e) {
+                throw new LogException(e);
+            }
+            if (current.buffer.remaining() < recordLength) {
+                throw new LogException("Log record of " + length + " bytes does not fit in segment " + current.file);
+            }
+        }
+        int position = writeRecord(payload, length);
+        if (mark != null) {
+            mark.position = position;
+            mark.length = length;
+        }
+    }
+
+    private int writeRecord(byte[] payload, int length) {
+        MappedByteBuffer buffer = current.buffer;
+        int position = buffer.position();
+        checksum.reset();
+        updateChecksum(checksum, current.sequence);
+        checksum.update(payload, 0, length);
+        buffer.putInt(length);
+        buffer.putInt((int) checksum.getValue());
+        buffer.put(payload, 0, length);
+        appendPosition += RECORD_HEADER_SIZE + length;
+        return position;
+    }
+
+    /**
+     * Forces the current segment, moves on to the oldest segment if it is free or else to a
+     * new segment file, and compacts the oldest segment as long as reserved bytes are left
+     * for the record that did not fit.
+     */
+    private void nextSegment(int reserved) throws IOException {
+        if (current != null) {
+            current.buffer.force();
+            synchronized (forceLock) {
+                forcedPosition = Math.max(forcedPosition, appendPosition);
+            }
+        }
+        Segment next;
+        Segment oldest = segments.isEmpty() ? null : (Segment) segments.getFirst();
+        if (oldest != null && oldest != current && oldest.liveCount == 0) {
+            segments.removeFirst();
+            next = oldest;
+        } else {
+            if (current != null) {
+                log.warn("Oldest transaction log segment " + oldest.file + " still holds " + oldest.liveCount + " prepared transactions, adding segment " + (segmentFileCount + 1));
+            }
+            next = openSegment();
+        }
+        next.reset(nextSequence++);
+        segments.addLast(next);
+        current = next;
+        compact(reserved);
+    }
+
+    /**
+     * Copies the live prepare records of the oldest segment into the current one, unless
+     * they would take more than half of the room left or leave less than reserved bytes.
+     */
+    private void compact(int reserved) {
+        Segment oldest = (Segment) segments.getFirst();
+        if (oldest == current || oldest.liveCount == 0) {
+            return;
+        }
+        int needed = 0;
+        for (Mark mark = oldest.live.next; mark != oldest.live; mark = mark.next) {
+            needed += RECORD_HEADER_SIZE + mark.length;
+        }
+        if (needed > current.buffer.remaining() / 2 || needed > current.buffer.remaining() - reserved) {
+            return;
+        }
+        ByteBuffer source = oldest.buffer.duplicate();
+        int count = 0;
+        while (oldest.live.next != oldest.live) {
+            Mark mark = oldest.live.next;
+            if (copyBuffer.length < mark.length) {
+                copyBuffer = new byte[mark.length];
+            }
+            source.position(mark.position + RECORD_HEADER_SIZE);
+            source.get(copyBuffer, 0, mark.length);
+            oldest.remove(mark);
+            mark.position = writeRecord(copyBuffer, mark.length);
+            current.add(mark);
+            count++;
+        }
+        compactionCount++;
+        compactedRecordCount += count;
+        log.debug("Compacted " + count + " prepare records from " + oldest.file + " into " + current.file);
+    }
+
+    /**
+     * Returns once everything appended up to position is on disk.
+     */
+    private void force(long position) {
+        while (true) {
+            synchronized (forceLock) {
+                while (forcing && forcedPosition < position) {
+                    try {
+                        forceLock.wait();
+                    } catch (InterruptedException e) {
+                        throw (IllegalStateException) new IllegalStateException().initCause(e);
+                    }
+                }
+                if (forcedPosition >= position) {
+                    return;
+                }
+                forcing = true;
+            }
+            long target;
+            MappedByteBuffer buffer;
+            synchronized (this) {
+                target = appendPosition;
+                buffer = current == null ? null : current.buffer;
+            }
+            long start = System.currentTimeMillis();
+            boolean forced = false;
+            try {
+                if (buffer == null) {
+                    throw new IllegalStateException("Transaction log is not started");
+                }
+                buffer.force();
+                forced = true;
+            } finally {
+                synchronized (forceLock) {
+                    forcing = false;
+                    if (forced && target > forcedPosition) {
+                        forceCount++;
+                        totalForceTime += System.currentTimeMillis() - start;
+                        totalForcedBytes += target - forcedPosition;
+                        forcedPosition = target;
+                    }
+                    forceLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    //encoding
+
+    private int encodePrepare(Xid xid, List branches) {
+        byte[] globalId = xid.getGlobalTransactionId();
+        byte[] branchId = xid.getBranchQualifier();
+        int length = 1 + 4 + 1 + globalId.length + 1 + branchId.length + 2;
+        for (int i = 0; i < branches.size(); i++) {
+            TransactionBranchInfo branch = (TransactionBranchInfo) branches.get(i);
+            length += 1 + branch.getBranchXid().getBranchQualifier().length + 2 + 2 * branch.getResourceName().length();
+        }
+        byte[] buffer = ensureEncodeBuffer(length);
+        int offset = encodeXid(buffer, PREPARE, xid.getFormatId(), globalId, branchId);
+        offset = putShort(buffer, offset, branches.size());
+        for (int i = 0; i < branches.size(); i++) {
+            TransactionBranchInfo branch = (TransactionBranchInfo) branches.get(i);
+            offset = putBytes(buffer, offset, branch.getBranchXid().getBranchQualifier());
+            String name = branch.getResourceName();
+            offset = putShort(buffer, offset, name.length());
+            for (int j = 0; j < name.length(); j++) {
+                offset = putShort(buffer, offset, name.charAt(j));
+            }
+        }
+        return offset;
+    }
+
+    private int encodeDone(byte type, Xid xid) {
+        byte[] globalId = xid.getGlobalTransactionId();
+        byte[] branchId = xid.getBranchQualifier();
+        byte[] buffer = ensureEncodeBuffer(1 + 4 + 1 + globalId.length + 1 + branchId.length);
+        return encodeXid(buffer, type, xid.getFormatId(), globalId, branchId);
+    }
+
+    private byte[] ensureEncodeBuffer(int length) {
+        if (encodeBuffer.length < length) {
+            encodeBuffer = new byte[Math.max(length, 2 * encodeBuffer.length)];
+        }
+        return encodeBuffer;
+    }
+
+    private static int encodeXid(byte[] buffer, byte type, int formatId, byte[] globalId, byte[] branchId) {
+        buffer[0] = type;
+        buffer[1] = (byte) (formatId >> 24);
+        buffer[2] = (byte) (formatId >> 16);
+        buffer[3] = (byte) (formatId >> 8);
+        buffer[4] = (byte) formatId;
+        int offset = putBytes(buffer, 5, globalId);
+        return putBytes(buffer, offset, branchId);
+    }
+
+    private static int putBytes(byte[] buffer, int offset, byte[] bytes) {
+        buffer[offset++] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, buffer, offset, bytes.length);
+        return offset + bytes.length;
+    }
+
+    private static int putShort(byte[] buffer, int offset, int value) {
+        buffer[offset++] = (byte) (value >> 8);
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+
+    private static void updateChecksum(CRC32 checksum, long sequence) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            checksum.update((int) (sequence >> shift));
+        }
+    }
+
+    //decoding
+
+    private static Xid decodeXid(ByteBuffer payload, XidFactory xidFactory) {
+        int formatId = payload.getInt();
+        byte[] globalId = getBytes(payload);
+        byte[] branchId = getBytes(payload);
+        return xidFactory.recover(formatId, globalId, branchId);
+    }
+
+    private static byte[] getBytes(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.get() & 0xff];
+        payload.get(bytes);
+        return bytes;
+    }
+
+    private static Recovery.XidBranchesPair decodePrepare(Segment segment, Mark mark, XidFactory xidFactory) {
+        ByteBuffer payload = segment.buffer.duplicate();
+        payload.position(mark.position + RECORD_HEADER_SIZE + 1);
+        int formatId = payload.getInt();
+        byte[] globalId = getBytes(payload);
+        byte[] branchId = getBytes(payload);
+        Xid masterXid = xidFactory.recover(formatId, globalId, branchId);
+        Recovery.XidBranchesPair xidBranchesPair = new Recovery.XidBranchesPair(masterXid, mark);
+        int branchCount = payload.getShort() & 0xffff;
+        for (int i = 0; i < branchCount; i++) {
+            Xid branchXid = xidFactory.recover(formatId, globalId, getBytes(payload));
+            char[] name = new char[payload.getShort() & 0xffff];
+            for (int j = 0; j < name.length; j++) {
+                name[j] = payload.getChar();
+            }
+            xidBranchesPair.addBranch(new TransactionBranchInfoImpl(branchXid, new String(name)));
+        }
+        return xidBranchesPair;
+    }
+
+    //segments
+
+    private File getSegmentFile(int number) {
+        return new File(serverInfo.resolve(logFileDir), logFileName + "_" + number + "." + logFileExt);
+    }
+
+    private Segment openSegment() throws IOException {
+        Segment segment = new Segment(getSegmentFile(segmentFileCount + 1), segmentSizeKBytes * 1024);
+        segmentFileCount++;
+        return segment;
+    }
+
+    /**
+     * Reads all segments, replays their records in sequence order and marks the prepare
+     * records of transactions that never completed as live.
+     */
+    private void replay() throws Exception {
+        Segment[] all = (Segment[]) segments.toArray(new Segment[segments.size()]);
+        //unused segments first, then by sequence
+        Arrays.sort(all, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                long sequence1 = ((Segment) o1).sequence;
+                long sequence2 = ((Segment) o2).sequence;
+                return sequence1 < sequence2 ? -1 : (sequence1 == sequence2 ? 0 : 1);
+            }
+        });
+        List[] records = readSegments(all);
+
+        Map prepared = new HashMap();
+        nextSequence = 1;
+        for (int i = 0; i < all.length; i++) {
+            Segment segment = all[i];
+            nextSequence = Math.max(nextSequence, segment.sequence + 1);
+            for (Iterator iterator = records[i].iterator(); iterator.hasNext();) {
+                ReplayedRecord record = (ReplayedRecord) iterator.next();
+                if (record.type == PREPARE) {
+                    //a compacted record may be found twice; the later copy wins
+                    Mark mark = new Mark();
+                    mark.segment = segment;
+                    mark.position = record.position;
+                    mark.length = record.length;
+                    prepared.put(record.xid, mark);
+                } else {
+                    prepared.remove(record.xid);
+                }
+            }
+        }
+        for (Iterator iterator = prepared.values().iterator(); iterator.hasNext();) {
+            Mark mark = (Mark) iterator.next();
+            Segment segment = mark.segment;
+            mark.segment = null;
+            segment.add(mark);
+        }
+        segments.clear();
+        segments.addAll(Arrays.asList(all));
+        current = null;
+        log.debug("Replayed " + all.length + " transaction log segments, " + prepared.size() + " transactions in doubt");
+    }
+
+    private List[] readSegments(final Segment[] all) throws Exception {
+        final List[] records = new List[all.length];
+        final Throwable[] failure = new Throwable[1];
+        final SynchronizedInt next = new SynchronizedInt(0);
+        Runnable reader = new Runnable() {
+            public void run() {
+                try {
+                    for (int i = next.increment() - 1; i < all.length; i = next.increment() - 1) {
+                        records[i] = readSegment(all[i]);
+                    }
+                } catch (Throwable t) {
+                    synchronized (failure) {
+                        failure[0] = t;
+                    }
+                    next.set(all.length);
+                }
+            }
+        };
+        int threadCount = Math.min(replayThreads, all.length);
+        CountDown done = new CountDown(threadCount - 1);
+        for (int i = 1; i < threadCount; i++) {
+            new Thread(new CountingRunnable(reader, done), "Transaction log replay " + i).start();
+        }
+        reader.run();
+        done.acquire();
+        synchronized (failure) {
+            if (failure[0] instanceof Error) {
+                throw (Error) failure[0];
+            } else if (failure[0] != null) {
+                throw (Exception) failure[0];
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return the valid records of the segment, which are checked against their checksums
+     */
+    private List readSegment(Segment segment) {
+        List records = new ArrayList();
+        if (segment.sequence == 0) {
+            return records;
+        }
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(HEADER_SIZE);
+        CRC32 checksum = new CRC32();
+        byte[] payload = new byte[256];
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int position = buffer.position();
+            int length = buffer.getInt();
+            int expected = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                break;
+            }
+            if (payload.length < length) {
+                payload = new byte[length];
+            }
+            buffer.get(payload, 0, length);
+            checksum.reset();
+            updateChecksum(checksum, segment.sequence);
+            checksum.update(payload, 0, length);
+            if ((int) checksum.getValue() != expected) {
+                break;
+            }
+            byte type = payload[0];
+            if (type != PREPARE && type != COMMIT && type != ROLLBACK) {
+                log.warn("Unexpected record type " + type + " in " + segment.file + " at " + position);
+                continue;
+            }
+            Xid xid = decodeXid(ByteBuffer.wrap(payload, 1, length - 1), xidFactory);
+            records.add(new ReplayedRecord(type, xid, position, length));
+        }
+        return records;
+    }
+
+    //statistics
+
+    public String getXMLStats() {
+        return "<MappedSegmentLog>\n"
+                + "<prepareCount value='" + getPrepareCount() + "'/>\n"
+                + "<forceCount value='" + getForceCount() + "'/>\n"
+                + "<averageForceTime value='" + getAverageForceTimeMilliseconds() + "'/>\n"
+                + "<averageBytesPerForce value='" + getAverageBytesPerForce() + "'/>\n"
+                + "<segmentFileCount value='" + getSegmentFileCount() + "'/>\n"
+                + "<compactionCount value='" + getCompactionCount() + "'/>\n"
+                + "</MappedSegmentLog>";
+    }
+
+    public int getAverageForceTime() {
+        return (int) Math.round(getAverageForceTimeMilliseconds());
+    }
+
+    public int getAverageBytesPerForce() {
+        synchronized (forceLock) {
+            return forceCount == 0 ? 0 : (int) (totalForcedBytes / forceCount);
+        }
+    }
+
+    public synchronized long getPrepareCount() {
+        return prepareCount;
+    }
+
+    public long getForceCount() {
+        synchronized (forceLock) {
+            return forceCount;
+        }
+    }
+
+    public double getAverageForceTimeMilliseconds() {
+        synchronized (forceLock) {
+            return forceCount == 0 ? 0 : (double) totalForceTime / forceCount;
+        }
+    }
+
+    /**
+     * @return average number of prepare records made durable by each force
+     */
+    public double getAverageRecordsPerForce() {
+        long forceCount = getForceCount();
+        return forceCount == 0 ? 0 : (double) getPrepareCount() / forceCount;
+    }
+
+    /**
+     * @return number of prepared transactions that have not completed yet
+     */
+    public synchronized int getLiveRecordCount() {
+        int count = 0;
+        for (Iterator iterator = segments.iterator(); iterator.hasNext();) {
+            count += ((Segment) iterator.next()).liveCount;
+        }
+        return count;
+    }
+
+    public synchronized int getSegmentFileCount() {
+        return segmentFileCount;
+    }
+
+    public synchronized long getCompactionCount() {
+        return compactionCount;
+    }
+
+    public synchronized long getCompactedRecordCount() {
+        return compactedRecordCount;
+    }
+
+    private static final class Segment {
+        private final File file;
+        private final RandomAccessFile raf;
+        private final MappedByteBuffer buffer;
+        private long sequence;
+        //sentinel of the list of live prepare records
+        private final Mark live = new Mark();
+        private int liveCount;
+
+        private Segment(File file, int size) throws IOException {
+            this.file = file;
+            raf = new RandomAccessFile(file, "rw");
+            try {
+                if (raf.length() < size) {
+                    preallocate(raf, size);
+                } else {
+                    size = (int) raf.length();
+                }
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } catch (IOException e) {
+                raf.close();
+                throw e;
+            }
+            if (buffer.getInt(0) == MAGIC) {
+                sequence = buffer.getLong(4);
+            }
+            live.next = live;
+            live.previous = live;
+        }
+
+        private static void preallocate(RandomAccessFile raf, int size) throws IOException {
+            byte[] zeros = new byte[Math.min(size, PREALLOCATE_CHUNK_SIZE)];
+            raf.seek(raf.length());
+            for (long remaining = size - raf.length(); remaining > 0; remaining -= zeros.length) {
+                raf.write(zeros, 0, (int) Math.min(remaining, zeros.length));
+            }
+            raf.getFD().sync();
+        }
+
+        private void reset(long sequence) {
+            this.sequence = sequence;
+            buffer.clear();
+            buffer.putInt(MAGIC);
+            buffer.putLong(sequence);
+            buffer.putInt(0);
+        }
+
+        private void add(Mark mark) {
+            mark.segment = this;
+            mark.previous = live.previous;
+            mark.next = live;
+            live.previous.next = mark;
+            live.previous = mark;
+            liveCount++;
+        }
+
+        private void remove(Mark mark) {
+            mark.previous.next = mark.next;
+            mark.next.previous = mark.previous;
+            mark.previous = null;
+            mark.next = null;
+            mark.segment = null;
+            liveCount--;
+        }
+
+        /**
+         * The mapping itself is only released when the buffer is garbage collected.
+         */
+        private void close() throws IOException {
+            raf.close();
+        }
+    }
+
+    /**
+     * Log mark of a prepare record; it moves to another segment when the record is compacted.
+     */
+    private static final class Mark {
+        private Segment segment;
+        private int position;
+        private int length;
+        private Mark previous;
+        private Mark next;
+    }
+
+    private static final class ReplayedRecord {
+        private final byte type;
+        private final Xid xid;
+        private final int position;
+        private final int length;
+
+        private ReplayedRecord(byte type, Xid xid, int position, int length) {
+            this.type = type;
+            this.xid = xid;
+            this.position = position;
+            this.length = length;
+        }
+    }
+
+    private static final class CountingRunnable implements Runnable {
+        private final Runnable runnable;
+        private final CountDown done;
+
+        private CountingRunnable(Runnable runnable, CountDown done) {
+            this.runnable = runnable;
+            this.done = done;
+        }
+
+        public void run() {
+            try {
+                runnable.run();
+            } finally {
+                done.release();
+            }
+        }
+    }
+
+    public static final GBeanInfo GBEAN_INFO;
+
+    static {
+        GBeanInfoBuilder infoFactory = GBeanInfoBuilder.createStatic(MappedSegmentLog.class, NameFactory.TRANSACTION_LOG);
+        infoFactory.addAttribute("logFileDir", String.class, true);
+        infoFactory.addAttribute("logFileName", String.class, true);
+        infoFactory.addAttribute("logFileExt", String.class, true);
+        infoFactory.addAttribute("segmentSizeKBytes", Integer.TYPE, true);
+        infoFactory.addAttribute("segmentCount", Integer.TYPE, true);
+        infoFactory.addAttribute("replayThreads", Integer.TYPE, true);
+        infoFactory.addAttribute("prepareCount", Long.TYPE, false);
+        infoFactory.addAttribute("forceCount", Long.TYPE, false);
+        infoFactory.addAttribute("averageForceTimeMilliseconds", Double.TYPE, false);
+        infoFactory.addAttribute("averageRecordsPerForce", Double.TYPE, false);
+        infoFactory.addAttribute("liveRecordCount", Integer.TYPE, false);
+        infoFactory.addAttribute("segmentFileCount", Integer.TYPE, false);
+        infoFactory.addAttribute("compactionCount", Long.TYPE, false);
+        infoFactory.addAttribute("compactedRecordCount", Long.TYPE, false);
+
+        infoFactory.addReference("XidFactory", XidFactory.class, NameFactory.XID_FACTORY);
+        infoFactory.addReference("ServerInfo", ServerInfo.class, NameFactory.GERONIMO_SERVICE);
+
+        infoFactory.addInterface(TransactionLog.class);
+
+        infoFactory.setConstructor(new String[]{
+            "logFileDir",
+            "logFileName",
+            "logFileExt",
+            "segmentSizeKBytes",
+            "segmentCount",
+            "replayThreads",
+            "XidFactory",
+            "ServerInfo"});
+        GBEAN_INFO = infoFactory.getBeanInfo();
+    }
+
+    public static GBeanInfo getGBeanInfo() {
+        return GBEAN_INFO;
+    }
+
+}
@@ -0,0 +1,121 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.transaction.manager;
+
+import EDU.oswego.cs.dl.util.concurrent.CountDown;
+import EDU.oswego.cs.dl.util.concurrent.PooledExecutor;
+import EDU.oswego.cs.dl.util.concurrent.ThreadFactory;
+
+/**
+ * Runs the prepare, commit or rollback calls for the branches of a two-phase transaction
+ * at the same time, so the time a transaction spends completing is that of its slowest
+ * resource manager rather than the sum of all of them.  The number of threads is bounded;
+ * when they are all busy the calling thread makes the call itself, and it always makes one
+ * of the calls.  Idle threads go away after a minute.
+ *
+ * @version $Rev$ $Date$
+ */
+public class BranchExecutor {
+    private static final long KEEP_ALIVE_MILLISECONDS = 60 * 1000;
+
+    private final PooledExecutor executor;
+    private final int maxThreads;
+
+    public BranchExecutor(int maxThreads) {
+        if (maxThreads <= 0) {
+            throw new IllegalArgumentException("maxThreads must be positive: attempted value: " + maxThreads);
+        }
+        this.maxThreads = maxThreads;
+        executor = new PooledExecutor(maxThreads);
+        executor.setMinimumPoolSize(0);
+        executor.runWhenBlocked();
+        executor.setKeepAliveTime(KEEP_ALIVE_MILLISECONDS);
+        executor.setThreadFactory(new BranchThreadFactory());
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * Runs all the tasks and returns when every one of them has finished.  The tasks must not
+     * throw; they are expected to record their own outcome.
+     */
+    public void invokeAll(Runnable[] tasks) {
+        if (tasks.length == 0) {
+            return;
+        }
+        boolean interrupted = Thread.interrupted();
+        CountDown done = new CountDown(tasks.length - 1);
+        for (int i = 1; i < tasks.length; i++) {
+            Runnable task = new CountingTask(tasks[i], done);
+            try {
+                executor.execute(task);
+            } catch (InterruptedException e) {
+                // we still have to finish the transaction, so do this one here
+                interrupted = true;
+                task.run();
+            }
+        }
+        tasks[0].run();
+
+        while (true) {
+            try {
+                done.acquire();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class CountingTask implements Runnable {
+        private final Runnable task;
+        private final CountDown done;
+
+        public CountingTask(Runnable task, CountDown done) {
+            this.task = task;
+            this.done = done;
+        }
+
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                done.release();
+            }
+        }
+    }
+
+    private static final class BranchThreadFactory implements ThreadFactory {
+        private int nextWorkerID = 0;
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Transaction branch completion " + getNextWorkerID());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+        private synchronized int getNextWorkerID() {
+            return nextWorkerID++;
+        }
+    }
+}
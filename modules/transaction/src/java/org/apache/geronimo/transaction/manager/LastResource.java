@@ -0,0 +1,29 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.transaction.manager;
+
+/**
+ * A NamedXAResource that can only commit in one phase, such as a resource adapter's local
+ * transaction.  A transaction may include one of them with any number of two phase resources:
+ * the other branches are prepared and the decision is logged, then the last resource is committed
+ * in one phase.  Its outcome decides whether the other branches commit or roll back.
+ *
+ * @version $Rev$ $Date$
+ */
+public interface LastResource extends NamedXAResource {
+}
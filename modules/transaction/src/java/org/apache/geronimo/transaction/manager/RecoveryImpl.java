@@ -70,8 +70,9 @@ public class RecoveryImpl implements Recovery {
         for (Iterator iterator = preparedXids.iterator(); iterator.hasNext();) {
             XidBranchesPair xidBranchesPair = (Recovery.XidBranchesPair) iterator.next();
             Xid xid = xidBranchesPair.getXid();
-            if (xidFactory.matchesGlobalId(xid.getGlobalTransactionId())) {
-                ourXids.put(new ByteArrayWrapper(xid.getGlobalTransactionId()), xidBranchesPair);
+            byte[] globalId = XidImpl.globalTransactionId(xid);
+            if (xidFactory.matchesGlobalId(globalId)) {
+                ourXids.put(new ByteArrayWrapper(globalId), xidBranchesPair);
                 for (Iterator branches = xidBranchesPair.getBranches().iterator(); branches.hasNext();) {
                     String name = ((TransactionBranchInfo) branches.next()).getResourceName();
                     Set transactionsForName = (Set)nameToOurTxMap.get(name);
@@ -84,7 +85,7 @@ public class RecoveryImpl implements Recovery {
             } else {
                 TransactionImpl externalTx = new ExternalTransaction(xid, txLog, xidBranchesPair.getBranches());
                 externalXids.put(xid, externalTx);
-                externalGlobalIdMap.put(xid.getGlobalTransactionId(), externalTx);
+                externalGlobalIdMap.put(new ByteArrayWrapper(globalId), externalTx);
             }
         }
     }
@@ -95,7 +96,8 @@ public class RecoveryImpl implements Recovery {
         Xid[] prepared = xaResource.recover(XAResource.TMSTARTRSCAN + XAResource.TMENDRSCAN);
         for (int i = 0; i < prepared.length; i++) {
             Xid xid = prepared[i];
-            ByteArrayWrapper globalIdWrapper = new ByteArrayWrapper(xid.getGlobalTransactionId());
+            byte[] globalId = XidImpl.globalTransactionId(xid);
+            ByteArrayWrapper globalIdWrapper = new ByteArrayWrapper(globalId);
             XidBranchesPair xidNamesPair = (XidBranchesPair) ourXids.get(globalIdWrapper);
             if (xidNamesPair != null) {
                 try {
@@ -105,7 +107,7 @@ public class RecoveryImpl implements Recovery {
                     log.error(e);
                 }
                 removeNameFromTransaction(xidNamesPair, name, true);
-            } else if (xidFactory.matchesGlobalId(xid.getGlobalTransactionId())) {
+            } else if (xidFactory.matchesGlobalId(globalId)) {
                 //ours, but prepare not logged
                 try {
                     xaResource.rollback(xid);
@@ -113,9 +115,9 @@ public class RecoveryImpl implements Recovery {
                     recoveryErrors.add(e);
                     log.error(e);
                 }
-            } else if (xidFactory.matchesBranchId(xid.getBranchQualifier())) {
+            } else if (xidFactory.matchesBranchId(XidImpl.branchQualifier(xid))) {
                 //our branch, but we did not start this tx.
-                TransactionImpl externalTx = (TransactionImpl) externalGlobalIdMap.get(xid.getGlobalTransactionId());
+                TransactionImpl externalTx = (TransactionImpl) externalGlobalIdMap.get(globalIdWrapper);
                 if (externalTx == null) {
                     //we did not prepare this branch, rollback.
                     try {
@@ -154,7 +156,7 @@ public class RecoveryImpl implements Recovery {
         }
         if (xidBranchesPair.getBranches().isEmpty() && 0 != removed ) {
             try {
-                ourXids.remove(new ByteArrayWrapper(xidBranchesPair.getXid().getGlobalTransactionId()));
+                ourXids.remove(new ByteArrayWrapper(XidImpl.globalTransactionId(xidBranchesPair.getXid())));
                 txLog.commit(xidBranchesPair.getXid(), xidBranchesPair.getMark());
             } catch (LogException e) {
                 recoveryErrors.add(e);
@@ -187,7 +189,11 @@ public class RecoveryImpl implements Recovery {
         return new HashMap(externalXids);
     }
 
-    private static class ByteArrayWrapper {
+    /**
+     * Map key comparing a global transaction id by content.  The array is not copied, so it
+     * must not be modified while the wrapper is in use.
+     */
+    private static final class ByteArrayWrapper {
         private final byte[] bytes;
         private final int hashCode;
 
@@ -196,14 +202,15 @@ public class RecoveryImpl implements Recovery {
             this.bytes = bytes;
             int hash = 0;
             for (int i = 0; i < bytes.length; i++) {
-                hash += 37 * bytes[i];
+                hash = 37 * hash + bytes[i];
             }
             hashCode = hash;
         }
 
         public boolean equals(Object other) {
             if (other instanceof ByteArrayWrapper) {
-                return Arrays.equals(bytes, ((ByteArrayWrapper)other).bytes);
+                ByteArrayWrapper wrapper = (ByteArrayWrapper) other;
+                return hashCode == wrapper.hashCode && Arrays.equals(bytes, wrapper.bytes);
             }
             return false;
         }
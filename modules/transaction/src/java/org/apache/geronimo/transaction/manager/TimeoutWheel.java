@@ -0,0 +1,282 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.transaction.manager;
+
+import EDU.oswego.cs.dl.util.concurrent.LinkedQueue;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A hashed timing wheel.  Scheduling and cancelling a timeout are constant time no matter
+ * how many timeouts are pending, which suits transaction timeouts: nearly all of them are
+ * cancelled long before they expire.
+ * <p/>
+ * Callers only put new and cancelled timeouts on queues; the wheel itself is only touched by
+ * its own thread, which every tick moves the queued timeouts into their slots, unlinks the
+ * cancelled ones and runs the tasks of the ones that expired.  A timeout fires up to one tick
+ * late.  Tasks run on the wheel thread and should be short.
+ *
+ * @version $Rev$ $Date$
+ */
+public class TimeoutWheel {
+    private static final Log log = LogFactory.getLog(TimeoutWheel.class);
+
+    private final long tickMilliseconds;
+    private final Slot[] wheel;
+    private final int mask;
+    private final LinkedQueue scheduled = new LinkedQueue();
+    private final LinkedQueue cancelled = new LinkedQueue();
+    private final Thread worker;
+    private final Object countLock = new Object();
+    private int pendingCount;
+    private long expiredCount;
+    private long tick;
+    private volatile boolean stopped;
+
+    /**
+     * @param wheelSize number of slots; rounded up to a power of two
+     */
+    public TimeoutWheel(String name, long tickMilliseconds, int wheelSize) {
+        if (tickMilliseconds <= 0) {
+            throw new IllegalArgumentException("tickMilliseconds must be positive: attempted value: " + tickMilliseconds);
+        }
+        if (wheelSize <= 0) {
+            throw new IllegalArgumentException("wheelSize must be positive: attempted value: " + wheelSize);
+        }
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        this.tickMilliseconds = tickMilliseconds;
+        wheel = new Slot[size];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Slot();
+        }
+        mask = size - 1;
+        worker = new Thread(new Worker(), name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public long getTickMilliseconds() {
+        return tickMilliseconds;
+    }
+
+    /**
+     * Runs the task on the wheel thread after delayMilliseconds, unless the returned Timeout
+     * is cancelled first.
+     */
+    public Timeout schedule(Runnable task, long delayMilliseconds) {
+        if (task == null) {
+            throw new IllegalArgumentException("task is null");
+        }
+        Timeout timeout = new Timeout(this, task, System.currentTimeMillis() + Math.max(delayMilliseconds, 0));
+        synchronized (countLock) {
+            pendingCount++;
+        }
+        put(scheduled, timeout);
+        return timeout;
+    }
+
+    /**
+     * @return number of timeouts scheduled that have neither expired nor been cancelled
+     */
+    public int getPendingCount() {
+        synchronized (countLock) {
+            return pendingCount;
+        }
+    }
+
+    public long getExpiredCount() {
+        synchronized (countLock) {
+            return expiredCount;
+        }
+    }
+
+    public void stop() {
+        stopped = true;
+        worker.interrupt();
+    }
+
+    private void cancelled(Timeout timeout) {
+        synchronized (countLock) {
+            pendingCount--;
+        }
+        put(cancelled, timeout);
+    }
+
+    private static void put(LinkedQueue queue, Timeout timeout) {
+        boolean interrupted = Thread.interrupted();
+        while (true) {
+            try {
+                // a LinkedQueue is unbounded, so this never waits
+                queue.put(timeout);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // everything below is only called by the worker thread
+
+    private void removeCancelled() throws InterruptedException {
+        Timeout timeout;
+        while ((timeout = (Timeout) cancelled.poll(0)) != null) {
+            // it may not have been placed yet; then it is dropped in addScheduled
+            timeout.unlink();
+        }
+    }
+
+    private void addScheduled(long start) throws InterruptedException {
+        Timeout timeout;
+        while ((timeout = (Timeout) scheduled.poll(0)) != null) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            // ticks of the wheel from its start, rounded up, and never in the past
+            long deadlineTick = (timeout.deadline - start + tickMilliseconds - 1) / tickMilliseconds;
+            timeout.deadlineTick = Math.max(deadlineTick, tick);
+            wheel[(int) (timeout.deadlineTick & mask)].add(timeout);
+        }
+    }
+
+    private void expire() {
+        Slot slot = wheel[(int) (tick & mask)];
+        Timeout timeout = slot.head.next;
+        while (timeout != slot.head) {
+            Timeout next = timeout.next;
+            if (timeout.deadlineTick <= tick) {
+                timeout.unlink();
+                if (timeout.expire()) {
+                    synchronized (countLock) {
+                        pendingCount--;
+                        expiredCount++;
+                    }
+                    try {
+                        timeout.task.run();
+                    } catch (Throwable t) {
+                        log.warn("Timeout task " + timeout.task + " failed", t);
+                    }
+                }
+            }
+            timeout = next;
+        }
+    }
+
+    private class Worker implements Runnable {
+        public void run() {
+            long start = System.currentTimeMillis();
+            while (!stopped) {
+                try {
+                    long sleep = start + (tick + 1) * tickMilliseconds - System.currentTimeMillis();
+                    if (sleep > 0) {
+                        Thread.sleep(sleep);
+                    }
+                    tick++;
+                    removeCancelled();
+                    addScheduled(start);
+                    expire();
+                } catch (InterruptedException e) {
+                    // checks stopped
+                }
+            }
+        }
+    }
+
+    private static final class Slot {
+        // sentinel of a circular doubly linked list
+        private final Timeout head = new Timeout(null, null, 0);
+
+        private Slot() {
+            head.next = head;
+            head.previous = head;
+        }
+
+        private void add(Timeout timeout) {
+            timeout.previous = head.previous;
+            timeout.next = head;
+            head.previous.next = timeout;
+            head.previous = timeout;
+        }
+    }
+
+    public static final class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final TimeoutWheel wheel;
+        private final Runnable task;
+        private final long deadline;
+        private int state = PENDING;
+
+        // only used by the wheel thread
+        private long deadlineTick;
+        private Timeout previous;
+        private Timeout next;
+
+        private Timeout(TimeoutWheel wheel, Runnable task, long deadline) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return false if the timeout already expired or was already cancelled
+         */
+        public boolean cancel() {
+            synchronized (this) {
+                if (state != PENDING) {
+                    return false;
+                }
+                state = CANCELLED;
+            }
+            wheel.cancelled(this);
+            return true;
+        }
+
+        public synchronized boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        public synchronized boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        private synchronized boolean expire() {
+            if (state != PENDING) {
+                return false;
+            }
+            state = EXPIRED;
+            return true;
+        }
+
+        private void unlink() {
+            if (next != null) {
+                previous.next = next;
+                next.previous = previous;
+                next = null;
+                previous = null;
+            }
+        }
+    }
+}
@@ -45,24 +45,43 @@ import org.apache.commons.logging.LogFactory;
  */
 public class TransactionImpl implements Transaction {
     private static final Log log = LogFactory.getLog("Transaction");
+    private static final int NOT_PREPARED = -1;
+    private static final int PREPARE_FAILED = -2;
 
     private final XidFactory xidFactory;
     private final Xid xid;
     private final TransactionLog txnLog;
     private final long timeout;
+    private final BranchExecutor branchExecutor;
     private final List syncList = new ArrayList(5);
     private final LinkedList resourceManagers = new LinkedList();
     private final IdentityHashMap activeXaResources = new IdentityHashMap(3);
     private final IdentityHashMap suspendedXaResources = new IdentityHashMap(3);
     private int status = Status.STATUS_NO_TRANSACTION;
     private Object logMark;
+    private TimeoutWheel.Timeout timeoutHandle;
+    private boolean timedOut;
+    private boolean completing;
+    private boolean rolledBackOnTimeout;
 
     TransactionImpl(XidFactory xidFactory, TransactionLog txnLog, long transactionTimeoutMilliseconds) throws SystemException {
-        this(xidFactory.createXid(), xidFactory, txnLog, transactionTimeoutMilliseconds);
+        this(xidFactory.createXid(), xidFactory, txnLog, transactionTimeoutMilliseconds, null);
+    }
+
+    TransactionImpl(XidFactory xidFactory, TransactionLog txnLog, long transactionTimeoutMilliseconds, BranchExecutor branchExecutor) throws SystemException {
+        this(xidFactory.createXid(), xidFactory, txnLog, transactionTimeoutMilliseconds, branchExecutor);
     }
 
     TransactionImpl(Xid xid, XidFactory xidFactory, TransactionLog txnLog, long transactionTimeoutMilliseconds) throws SystemException {
+        this(xid, xidFactory, txnLog, transactionTimeoutMilliseconds, null);
+    }
+
+    /**
+     * @param branchExecutor if not null, the branches of a two-phase commit are prepared and completed in parallel on it
+     */
+    TransactionImpl(Xid xid, XidFactory xidFactory, TransactionLog txnLog, long transactionTimeoutMilliseconds, BranchExecutor branchExecutor) throws SystemException {
         this.xidFactory = xidFactory;
+        this.branchExecutor = branchExecutor;
         this.txnLog = txnLog;
         this.xid = xid;
         this.timeout = transactionTimeoutMilliseconds + TransactionTimer.getCurrentTime();
@@ -80,6 +99,7 @@ public class TransactionImpl implements Transaction {
     //reconstruct a tx for an external tx found in recovery
     public TransactionImpl(Xid xid, TransactionLog txLog) {
         this.xidFactory = null;
+        this.branchExecutor = null;
         this.txnLog = txLog;
         this.xid = xid;
         status = Status.STATUS_PREPARED;
@@ -223,7 +243,7 @@ public class TransactionImpl implements Transaction {
 
         try {
                       boolean timedout = false;
-                      if (TransactionTimer.getCurrentTime() > timeout)
+                      if (isTimedOut() || TransactionTimer.getCurrentTime() > timeout)
                       {
                           status = Status.STATUS_MARKED_ROLLBACK;
                           timedout = true;
@@ -282,14 +302,34 @@ public class TransactionImpl implements Transaction {
                 }
             }
 
-            // two-phase
-            boolean willCommit = internalPrepare();
+            // two-phase, with the last resource (if any) left out of the prepare
+            TransactionBranch lastResource = removeLastResource();
+            boolean willCommit;
+            try {
+                willCommit = internalPrepare();
+            } catch (SystemException e) {
+                if (lastResource != null) {
+                    resourceManagers.clear();
+                    resourceManagers.add(lastResource);
+                    rollbackResources(resourceManagers);
+                }
+                throw e;
+            }
+
+            if (lastResource != null) {
+                if (willCommit) {
+                    willCommit = commitLastResource(lastResource);
+                } else {
+                    resourceManagers.add(lastResource);
+                }
+            }
 
             // notify the RMs
             if (willCommit) {
                 commitResources(resourceManagers);
             } else {
                 rollbackResources(resourceManagers);
+                logRollback();
                 throw new RollbackException("Unable to commit");
             }
         } finally {
@@ -356,8 +396,11 @@ public class TransactionImpl implements Transaction {
     }
 
     //helper method used by Transaction.commit and XATerminator prepare.
-    private void beforePrepare() {
+    private void beforePrepare() throws RollbackException {
         synchronized (this) {
+            if (rolledBackOnTimeout) {
+                throw new RollbackException("Transaction timed out and was rolled back");
+            }
             switch (status) {
                 case Status.STATUS_ACTIVE:
                 case Status.STATUS_MARKED_ROLLBACK:
@@ -365,7 +408,9 @@ public class TransactionImpl implements Transaction {
                 default:
                     throw new IllegalStateException("Status is " + getStateString(status));
             }
+            completing = true;
         }
+        cancelTimeout();
 
         beforeCompletion();
         endResources();
@@ -375,27 +420,31 @@ public class TransactionImpl implements Transaction {
     //helper method used by Transaction.commit and XATerminator prepare.
     private boolean internalPrepare() throws SystemException {
 
-        for (Iterator rms = resourceManagers.iterator(); rms.hasNext();) {
-            synchronized (this) {
-                if (status != Status.STATUS_PREPARING) {
-                    // we were marked for rollback
-                    break;
-                }
-            }
-            TransactionBranch manager = (TransactionBranch) rms.next();
-            try {
-                int vote = manager.getCommitter().prepare(manager.getBranchId());
-                if (vote == XAResource.XA_RDONLY) {
-                    // we don't need to consider this RM any more
-                    rms.remove();
-                }
-            } catch (XAException e) {
+        if (isParallel(resourceManagers)) {
+            parallelPrepare();
+        } else {
+            for (Iterator rms = resourceManagers.iterator(); rms.hasNext();) {
                 synchronized (this) {
-                    status = Status.STATUS_MARKED_ROLLBACK;
-                    //TODO document why this is true from the spec.
-                    //XAException during prepare means we can assume resource is rolled back.
-                    rms.remove();
-                    break;
+                    if (status != Status.STATUS_PREPARING) {
+                        // we were marked for rollback
+                        break;
+                    }
+                }
+                TransactionBranch manager = (TransactionBranch) rms.next();
+                try {
+                    int vote = manager.getCommitter().prepare(manager.getBranchId());
+                    if (vote == XAResource.XA_RDONLY) {
+                        // we don't need to consider this RM any more
+                        rms.remove();
+                    }
+                } catch (XAException e) {
+                    synchronized (this) {
+                        status = Status.STATUS_MARKED_ROLLBACK;
+                        //TODO document why this is true from the spec.
+                        //XAException during prepare means we can assume resource is rolled back.
+                        rms.remove();
+                        break;
+                    }
                 }
             }
         }
@@ -425,9 +474,154 @@ public class TransactionImpl implements Transaction {
         return willCommit;
     }
 
+    /**
+     * Takes the branch of the LastResource, if there is exactly one, out of the branches to prepare.
+     */
+    private TransactionBranch removeLastResource() {
+        TransactionBranch lastResource = null;
+        for (Iterator i = resourceManagers.iterator(); i.hasNext();) {
+            TransactionBranch manager = (TransactionBranch) i.next();
+            if (manager.getCommitter() instanceof LastResource) {
+                if (lastResource != null) {
+                    log.warn("More than one last resource in transaction " + xid + "; preparing all of them, so the outcome may not be atomic");
+                    return null;
+                }
+                lastResource = manager;
+            }
+        }
+        if (lastResource != null) {
+            resourceManagers.remove(lastResource);
+        }
+        return lastResource;
+    }
+
+    /**
+     * Commits the last resource in one phase once the other branches are prepared.
+     *
+     * @return true if the last resource committed, so the other branches must commit too
+     */
+    private boolean commitLastResource(TransactionBranch manager) {
+        synchronized (this) {
+            status = Status.STATUS_COMMITTING;
+        }
+        try {
+            manager.getCommitter().commit(manager.getBranchId(), true);
+            return true;
+        } catch (XAException e) {
+            if (e.errorCode == XAException.XA_HEURCOM) {
+                return true;
+            }
+            log.warn("Last resource " + manager.getCommitter() + " did not commit; rolling back the other branches", e);
+            return false;
+        } catch (RuntimeException e) {
+            log.error("Unexpected exception committing last resource " + manager.getCommitter() + "; rolling back the other branches", e);
+            return false;
+        }
+    }
+
+    private void logRollback() throws SystemException {
+        //only write rollback record if we have already written prepare record.
+        if (logMark != null) {
+            try {
+                txnLog.rollback(xid, logMark);
+            } catch (LogException e) {
+                throw (SystemException) new SystemException("Error logging rollback").initCause(e);
+            }
+        }
+    }
+
+    private void parallelPrepare() {
+        final TransactionBranch[] branches = (TransactionBranch[]) resourceManagers.toArray(new TransactionBranch[resourceManagers.size()]);
+        final int[] votes = new int[branches.length];
+        Runnable[] tasks = new Runnable[branches.length];
+        for (int i = 0; i < branches.length; i++) {
+            final int index = i;
+            tasks[i] = new Runnable() {
+                public void run() {
+                    votes[index] = prepareBranch(branches[index]);
+                }
+            };
+        }
+        branchExecutor.invokeAll(tasks);
+
+        int i = 0;
+        for (Iterator rms = resourceManagers.iterator(); rms.hasNext(); i++) {
+            rms.next();
+            if (votes[i] == XAResource.XA_RDONLY || votes[i] == PREPARE_FAILED) {
+                // we don't need to consider this RM any more, or
+                // XAException during prepare means we can assume resource is rolled back.
+                rms.remove();
+            }
+        }
+    }
+
+    private int prepareBranch(TransactionBranch manager) {
+        synchronized (this) {
+            if (status != Status.STATUS_PREPARING) {
+                // we were marked for rollback by another branch
+                return NOT_PREPARED;
+            }
+        }
+        try {
+            return manager.getCommitter().prepare(manager.getBranchId());
+        } catch (XAException e) {
+            synchronized (this) {
+                status = Status.STATUS_MARKED_ROLLBACK;
+            }
+            return PREPARE_FAILED;
+        } catch (RuntimeException e) {
+            // the branch may be prepared, so keep it and roll it back
+            log.error("Unexpected exception preparing " + manager.getCommitter() + "; transaction will roll back", e);
+            synchronized (this) {
+                status = Status.STATUS_MARKED_ROLLBACK;
+            }
+            return NOT_PREPARED;
+        }
+    }
+
+    private boolean isParallel(List rms) {
+        return branchExecutor != null && rms.size() > 1;
+    }
+
+    /**
+     * Commits or rolls back every branch on the BranchExecutor.
+     *
+     * @return the XAException thrown by each branch, or null where the branch completed normally
+     */
+    private XAException[] parallelComplete(List rms, final boolean commit) {
+        final TransactionBranch[] branches = (TransactionBranch[]) rms.toArray(new TransactionBranch[rms.size()]);
+        final XAException[] failures = new XAException[branches.length];
+        Runnable[] tasks = new Runnable[branches.length];
+        for (int i = 0; i < branches.length; i++) {
+            final int index = i;
+            tasks[i] = new Runnable() {
+                public void run() {
+                    TransactionBranch manager = branches[index];
+                    try {
+                        if (commit) {
+                            manager.getCommitter().commit(manager.getBranchId(), false);
+                        } else {
+                            manager.getCommitter().rollback(manager.getBranchId());
+                        }
+                    } catch (XAException e) {
+                        failures[index] = e;
+                    } catch (RuntimeException e) {
+                        failures[index] = (XAException) new XAException(XAException.XAER_RMERR).initCause(e);
+                    }
+                }
+            };
+        }
+        branchExecutor.invokeAll(tasks);
+        return failures;
+    }
+
     public void rollback() throws IllegalStateException, SystemException {
         List rms;
         synchronized (this) {
+            if (rolledBackOnTimeout) {
+                // already done by the transaction manager
+                return;
+            }
             switch (status) {
                 case Status.STATUS_ACTIVE:
                     status = Status.STATUS_MARKED_ROLLBACK;
@@ -437,9 +631,14 @@ public class TransactionImpl implements Transaction {
                 default:
                     throw new IllegalStateException("Status is " + getStateString(status));
             }
+            completing = true;
             rms = resourceManagers;
         }
+        cancelTimeout();
+        completeRollback(rms);
+    }
 
+    private void completeRollback(List rms) throws SystemException {
         beforeCompletion();
         endResources();
         try {
@@ -465,6 +664,68 @@ public class TransactionImpl implements Transaction {
         }
     }
 
+    synchronized void setTimeoutHandle(TimeoutWheel.Timeout timeoutHandle) {
+        this.timeoutHandle = timeoutHandle;
+    }
+
+    private void cancelTimeout() {
+        TimeoutWheel.Timeout timeoutHandle;
+        synchronized (this) {
+            timeoutHandle = this.timeoutHandle;
+            this.timeoutHandle = null;
+        }
+        if (timeoutHandle != null) {
+            timeoutHandle.cancel();
+        }
+    }
+
+    synchronized boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Called when the transaction timeout expires.  Marks the transaction for rollback unless it
+     * is already completing.
+     *
+     * @return true if the transaction is now marked for rollback because of the timeout
+     */
+    synchronized boolean timedOut() {
+        if (completing) {
+            return false;
+        }
+        switch (status) {
+            case Status.STATUS_ACTIVE:
+                status = Status.STATUS_MARKED_ROLLBACK;
+                // fall through
+            case Status.STATUS_MARKED_ROLLBACK:
+                timedOut = true;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Rolls back a timed out transaction from a thread other than the one using it, so its
+     * resources are released without waiting for the application.  The application's later
+     * commit gets a RollbackException and its rollback does nothing.
+     *
+     * @return false if the application already started to complete the transaction
+     */
+    boolean rollbackOnTimeout() throws SystemException {
+        List rms;
+        synchronized (this) {
+            if (completing || !timedOut || status != Status.STATUS_MARKED_ROLLBACK) {
+                return false;
+            }
+            completing = true;
+            rolledBackOnTimeout = true;
+            rms = resourceManagers;
+        }
+        completeRollback(rms);
+        return true;
+    }
+
     private void beforeCompletion() {
         int i = 0;
         while (true) {
@@ -536,16 +797,29 @@ public class TransactionImpl implements Transaction {
         synchronized (this) {
             status = Status.STATUS_ROLLING_BACK;
         }
-        for (Iterator i = rms.iterator(); i.hasNext();) {
-            TransactionBranch manager = (TransactionBranch) i.next();
-            try {
-                manager.getCommitter().rollback(manager.getBranchId());
-            } catch (XAException e) {
-                log.error("Unexpected exception rolling back " + manager.getCommitter() + "; continuing with rollback", e);
-                if (cause == null) {
-                    cause = new SystemException(e.errorCode);
+        if (isParallel(rms)) {
+            XAException[] failures = parallelComplete(rms, false);
+            for (int i = 0; i < failures.length; i++) {
+                if (failures[i] != null) {
+                    TransactionBranch manager = (TransactionBranch) rms.get(i);
+                    log.error("Unexpected exception rolling back " + manager.getCommitter() + "; continuing with rollback", failures[i]);
+                    if (cause == null) {
+                        cause = new SystemException(failures[i].errorCode);
+                    }
+                }
+            }
+        } else {
+            for (Iterator i = rms.iterator(); i.hasNext();) {
+                TransactionBranch manager = (TransactionBranch) i.next();
+                try {
+                    manager.getCommitter().rollback(manager.getBranchId());
+                } catch (XAException e) {
+                    log.error("Unexpected exception rolling back " + manager.getCommitter() + "; continuing with rollback", e);
+                    if (cause == null) {
+                        cause = new SystemException(e.errorCode);
+                    }
+                    continue;
                 }
-                continue;
             }
         }
         synchronized (this) {
@@ -561,16 +835,29 @@ public class TransactionImpl implements Transaction {
         synchronized (this) {
             status = Status.STATUS_COMMITTING;
         }
-        for (Iterator i = rms.iterator(); i.hasNext();) {
-            TransactionBranch manager = (TransactionBranch) i.next();
-            try {
-                manager.getCommitter().commit(manager.getBranchId(), false);
-            } catch (XAException e) {
-                log.error("Unexpected exception committing" + manager.getCommitter() + "; continuing to commit other RMs", e);
-                if (cause == null) {
-                    cause = new SystemException(e.errorCode);
+        if (isParallel(rms)) {
+            XAException[] failures = parallelComplete(rms, true);
+            for (int i = 0; i < failures.length; i++) {
+                if (failures[i] != null) {
+                    TransactionBranch manager = (TransactionBranch) rms.get(i);
+                    log.error("Unexpected exception committing" + manager.getCommitter() + "; continuing to commit other RMs", failures[i]);
+                    if (cause == null) {
+                        cause = new SystemException(failures[i].errorCode);
+                    }
+                }
+            }
+        } else {
+            for (Iterator i = rms.iterator(); i.hasNext();) {
+                TransactionBranch manager = (TransactionBranch) i.next();
+                try {
+                    manager.getCommitter().commit(manager.getBranchId(), false);
+                } catch (XAException e) {
+                    log.error("Unexpected exception committing" + manager.getCommitter() + "; continuing to commit other RMs", e);
+                    if (cause == null) {
+                        cause = new SystemException(e.errorCode);
+                    }
+                    continue;
                 }
-                continue;
             }
         }
         //if all resources were read only, we didn't write a prepare record.
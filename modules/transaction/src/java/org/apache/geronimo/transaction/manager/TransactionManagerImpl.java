@@ -17,6 +17,9 @@
 
 package org.apache.geronimo.transaction.manager;
 
+import EDU.oswego.cs.dl.util.concurrent.LinkedQueue;
+import EDU.oswego.cs.dl.util.concurrent.PooledExecutor;
+import EDU.oswego.cs.dl.util.concurrent.ThreadFactory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.geronimo.transaction.ExtendedTransactionManager;
@@ -39,9 +42,24 @@ public class TransactionManagerImpl implements ExtendedTransactionManager, XidIm
     private final ThreadLocal transactionTimeoutMilliseconds = new ThreadLocal();
     private final ThreadLocal threadTx = new ThreadLocal();
     private static final Log recoveryLog = LogFactory.getLog("RecoveryController");
+    private static final Log log = LogFactory.getLog(TransactionManagerImpl.class);
+    private static final int TIMEOUT_ROLLBACK_THREADS = 2;
+    private static final PooledExecutor timeoutRollbackExecutor;
+
+    static {
+        timeoutRollbackExecutor = new PooledExecutor(new LinkedQueue(), TIMEOUT_ROLLBACK_THREADS);
+        timeoutRollbackExecutor.setMinimumPoolSize(TIMEOUT_ROLLBACK_THREADS);
+        timeoutRollbackExecutor.setThreadFactory(new TimeoutRollbackThreadFactory());
+    }
+
     final Recovery recovery;
     final Collection resourceManagers;
     private List recoveryErrors = new ArrayList();
+    private volatile BranchExecutor branchExecutor;
+    private volatile boolean rollbackTimedOutTransactions;
+    private final Object timeoutCountLock = new Object();
+    private long timedOutTransactionCount;
+    private long timeoutRollbackCount;
 
     /**
      * TODO NOTE!!! this should be called in an unspecified transaction context, but we cannot enforce this restriction!
@@ -67,6 +85,60 @@ public class TransactionManagerImpl implements ExtendedTransactionManager, XidIm
         }
     }
 
+    public int getParallelCompletionThreads() {
+        BranchExecutor branchExecutor = this.branchExecutor;
+        return branchExecutor == null ? 0 : branchExecutor.getMaxThreads();
+    }
+
+    /**
+     * Sets how many threads are used to prepare and complete the branches of a two-phase commit
+     * in parallel.  0, the default, prepares and completes the branches one after the other on
+     * the committing thread.  Transactions already begun keep the setting they started with.
+     */
+    public synchronized void setParallelCompletionThreads(int parallelCompletionThreads) {
+        if (parallelCompletionThreads < 0) {
+            throw new IllegalArgumentException("parallelCompletionThreads must not be negative: attempted value: " + parallelCompletionThreads);
+        }
+        if (parallelCompletionThreads == getParallelCompletionThreads()) {
+            return;
+        }
+        // the threads of a replaced executor finish the work they have and then time out
+        branchExecutor = parallelCompletionThreads == 0 ? null : new BranchExecutor(parallelCompletionThreads);
+    }
+
+    public boolean isRollbackTimedOutTransactions() {
+        return rollbackTimedOutTransactions;
+    }
+
+    /**
+     * A transaction whose timeout expires is always marked rollback only.  If this is set it is
+     * also rolled back right away on a background thread, releasing its connections and locks
+     * even if the application never completes it.  Off by default, as the resources and
+     * synchronizations of the transaction are then called from a thread other than the
+     * application's.
+     */
+    public void setRollbackTimedOutTransactions(boolean rollbackTimedOutTransactions) {
+        this.rollbackTimedOutTransactions = rollbackTimedOutTransactions;
+    }
+
+    /**
+     * @return number of transactions marked rollback only because their timeout expired
+     */
+    public long getTimedOutTransactionCount() {
+        synchronized (timeoutCountLock) {
+            return timedOutTransactionCount;
+        }
+    }
+
+    /**
+     * @return number of timed out transactions rolled back by the transaction manager
+     */
+    public long getTimeoutRollbackCount() {
+        synchronized (timeoutCountLock) {
+            return timeoutRollbackCount;
+        }
+    }
+
     protected List watchResourceManagers(Collection resourceManagers) {
         return new ArrayList(resourceManagers);
     }
@@ -100,8 +172,9 @@ public class TransactionManagerImpl implements ExtendedTransactionManager, XidIm
         if (getStatus() != Status.STATUS_NO_TRANSACTION) {
             throw new NotSupportedException("Nested Transactions are not supported");
         }
-        TransactionImpl tx = new TransactionImpl(xidFactory, transactionLog, getTransactionTimeoutMilliseconds(transactionTimeoutMilliseconds));
-//        timeoutTimer.schedule(tx, getTransactionTimeoutMilliseconds(transactionTimeoutMilliseconds));
+        long timeoutMilliseconds = getTransactionTimeoutMilliseconds(transactionTimeoutMilliseconds);
+        TransactionImpl tx = new TransactionImpl(xidFactory, transactionLog, timeoutMilliseconds, branchExecutor);
+        scheduleTimeout(tx, timeoutMilliseconds);
         threadTx.set(tx);
                 // Todo: Verify if this is correct thing to do. Use default timeout for next transaction.
         this.transactionTimeoutMilliseconds.set(null);
@@ -163,7 +236,9 @@ public class TransactionManagerImpl implements ExtendedTransactionManager, XidIm
         if (transactionTimeoutMilliseconds < 0) {
             throw new SystemException("transaction timeout must be positive or 0 to reset to default");
         }
-        TransactionImpl tx = new TransactionImpl(xid, xidFactory, transactionLog, getTransactionTimeoutMilliseconds(transactionTimeoutMilliseconds));
+        long timeoutMilliseconds = getTransactionTimeoutMilliseconds(transactionTimeoutMilliseconds);
+        TransactionImpl tx = new TransactionImpl(xid, xidFactory, transactionLog, timeoutMilliseconds, branchExecutor);
+        scheduleTimeout(tx, timeoutMilliseconds);
         return tx;
     }
 
@@ -226,6 +301,10 @@ public class TransactionManagerImpl implements ExtendedTransactionManager, XidIm
         return defaultTransactionTimeoutMilliseconds;
     }
 
+    private void scheduleTimeout(TransactionImpl tx, long timeoutMilliseconds) {
+        tx.setTimeoutHandle(TransactionTimer.schedule(new TransactionTimeout(tx), timeoutMilliseconds));
+    }
+
     protected void recoverResourceManager(ResourceManager resourceManager) {
         NamedXAResource namedXAResource = null;
         try {
@@ -252,4 +331,62 @@ public class TransactionManagerImpl implements ExtendedTransactionManager, XidIm
         return new HashMap(recovery.getExternalXids());
     }
 
+    private class TransactionTimeout implements Runnable {
+        private final TransactionImpl tx;
+
+        public TransactionTimeout(TransactionImpl tx) {
+            this.tx = tx;
+        }
+
+        public void run() {
+            if (!tx.timedOut()) {
+                return;
+            }
+            synchronized (timeoutCountLock) {
+                timedOutTransactionCount++;
+            }
+            if (rollbackTimedOutTransactions) {
+                try {
+                    timeoutRollbackExecutor.execute(new TimeoutRollback(tx));
+                } catch (InterruptedException e) {
+                    // the application still gets a RollbackException when it commits
+                    log.warn("Interrupted scheduling rollback of timed out transaction " + tx);
+                }
+            }
+        }
+    }
+
+    private class TimeoutRollback implements Runnable {
+        private final TransactionImpl tx;
+
+        public TimeoutRollback(TransactionImpl tx) {
+            this.tx = tx;
+        }
+
+        public void run() {
+            try {
+                if (tx.rollbackOnTimeout()) {
+                    synchronized (timeoutCountLock) {
+                        timeoutRollbackCount++;
+                    }
+                }
+            } catch (SystemException e) {
+                log.warn("Unable to roll back timed out transaction " + tx, e);
+            }
+        }
+    }
+
+    private static final class TimeoutRollbackThreadFactory implements ThreadFactory {
+        private int nextWorkerID = 0;
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Transaction timeout rollback " + getNextWorkerID());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+        private synchronized int getNextWorkerID() {
+            return nextWorkerID++;
+        }
+    }
 }
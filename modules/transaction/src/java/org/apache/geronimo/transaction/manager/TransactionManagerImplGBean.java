@@ -75,6 +75,10 @@ public class TransactionManagerImplGBean extends TransactionManagerImpl {
         GBeanInfoBuilder infoBuilder = GBeanInfoBuilder.createStatic(TransactionManagerImplGBean.class, NameFactory.TRANSACTION_MANAGER);
 
         infoBuilder.addAttribute("defaultTransactionTimeoutSeconds", int.class, true);
+        infoBuilder.addAttribute("parallelCompletionThreads", int.class, true);
+        infoBuilder.addAttribute("rollbackTimedOutTransactions", boolean.class, true);
+        infoBuilder.addAttribute("timedOutTransactionCount", long.class, false);
+        infoBuilder.addAttribute("timeoutRollbackCount", long.class, false);
         infoBuilder.addReference("XidFactory", XidFactory.class, NameFactory.XID_FACTORY);
         infoBuilder.addReference("TransactionLog", TransactionLog.class, NameFactory.TRANSACTION_LOG);
         infoBuilder.addReference("ResourceManagers", ResourceManager.class);//two kinds of things, so specify the type in each pattern.
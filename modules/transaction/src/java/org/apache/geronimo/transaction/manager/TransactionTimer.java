@@ -18,12 +18,19 @@
 package org.apache.geronimo.transaction.manager;
 
 /**
+ * Keeps a coarse current time for cheap timeout checks and the timing wheel that enforces
+ * transaction timeouts.
+ *
  * TODO improve shutdown
  *
  * @version $Revision$ $Date$
  */
 public class TransactionTimer {
+    private static final long TICK_MILLISECONDS = 100;
+    private static final int WHEEL_SIZE = 1024;
+
     private static volatile long currentTime;
+    private static final TimeoutWheel timeoutWheel = new TimeoutWheel("Transaction timeout", TICK_MILLISECONDS, WHEEL_SIZE);
 
     private static class CurrentTime extends Thread {
         protected CurrentTime() {
@@ -53,4 +60,18 @@ public class TransactionTimer {
         return currentTime;
     }
 
+    /**
+     * Runs the task on the timeout thread after delayMilliseconds unless the returned Timeout is cancelled first.
+     */
+    public static TimeoutWheel.Timeout schedule(Runnable task, long delayMilliseconds) {
+        return timeoutWheel.schedule(task, delayMilliseconds);
+    }
+
+    /**
+     * @return number of transaction timeouts that have neither expired nor been cancelled
+     */
+    public static int getPendingTimeoutCount() {
+        return timeoutWheel.getPendingCount();
+    }
+
 }
@@ -28,15 +28,25 @@ import java.net.UnknownHostException;
  * <li>4 byte system id</li>
  * <li>4 or 16 byte IP address of host</li>
  * <ol>
+ * Each thread takes counts from its own block of ID_BLOCK_SIZE counts, so threads only
+ * contend when they need a new block.  Counts are unique but are not handed out in order.
+ * The branch qualifiers of the first CACHED_BRANCH_COUNT branches of every transaction are
+ * the same, so they are made once and shared.
  * @version $Rev$ $Date$
  * todo Should have a way of setting baseId
  */
 public class XidFactoryImpl implements XidFactory {
+    private static final int ID_BLOCK_SIZE = 1024;
+    private static final int CACHED_BRANCH_COUNT = 32;
+
     private final byte[] baseId = new byte[Xid.MAXGTRIDSIZE];
-    private long count = 1;
+    private final byte[][] branchIds = new byte[CACHED_BRANCH_COUNT + 1][];
+    private long nextBlock = 1;
+    private final ThreadLocal idBlock = new ThreadLocal();
 
     public XidFactoryImpl(byte[] tmId) {
        System.arraycopy(tmId, 0, baseId, 8, tmId.length);
+       cacheBranchIds();
     }
 
     public XidFactoryImpl() {
@@ -52,14 +62,30 @@ public class XidFactoryImpl implements XidFactory {
         baseId[10] = (byte) (uid >>> 16);
         baseId[11] = (byte) (uid >>> 24);
         System.arraycopy(hostid, 0, baseId, 12, hostid.length);
+        cacheBranchIds();
+    }
+
+    private void cacheBranchIds() {
+        for (int branch = 1; branch < branchIds.length; branch++) {
+            branchIds[branch] = makeBranchId(branch);
+        }
     }
 
     public Xid createXid() {
-        byte[] globalId = (byte[]) baseId.clone();
-        long id;
-        synchronized (this) {
-            id = count++;
+        IdBlock block = (IdBlock) idBlock.get();
+        if (block == null) {
+            block = new IdBlock();
+            idBlock.set(block);
         }
+        if (block.next == block.end) {
+            synchronized (this) {
+                block.next = nextBlock;
+                nextBlock += ID_BLOCK_SIZE;
+            }
+            block.end = block.next + ID_BLOCK_SIZE;
+        }
+        long id = block.next++;
+        byte[] globalId = (byte[]) baseId.clone();
         globalId[0] = (byte) id;
         globalId[1] = (byte) (id >>> 8);
         globalId[2] = (byte) (id >>> 16);
@@ -72,32 +98,33 @@ public class XidFactoryImpl implements XidFactory {
     }
 
     public Xid createBranch(Xid globalId, int branch) {
+        byte[] branchId = branch > 0 && branch < branchIds.length ? branchIds[branch] : makeBranchId(branch);
+        return new XidImpl(globalId, branchId);
+    }
+
+    private byte[] makeBranchId(int branch) {
         byte[] branchId = (byte[]) baseId.clone();
         branchId[0] = (byte) branch;
         branchId[1] = (byte) (branch >>> 8);
         branchId[2] = (byte) (branch >>> 16);
         branchId[3] = (byte) (branch >>> 24);
-        return new XidImpl(globalId, branchId);
+        return branchId;
     }
 
     public boolean matchesGlobalId(byte[] globalTransactionId) {
-        if (globalTransactionId.length != Xid.MAXGTRIDSIZE) {
-            return false;
-        }
-        for (int i = 8; i < globalTransactionId.length; i++) {
-            if (globalTransactionId[i] != baseId[i]) {
-                return false;
-            }
-        }
-        return true;
+        return matchesBaseId(globalTransactionId, Xid.MAXGTRIDSIZE);
     }
 
     public boolean matchesBranchId(byte[] branchQualifier) {
-        if (branchQualifier.length != Xid.MAXBQUALSIZE) {
+        return matchesBaseId(branchQualifier, Xid.MAXBQUALSIZE);
+    }
+
+    private boolean matchesBaseId(byte[] id, int length) {
+        if (id.length != length) {
             return false;
         }
-        for (int i = 8; i < branchQualifier.length; i++) {
-            if (branchQualifier[i] != baseId[i]) {
+        for (int i = 8; i < id.length; i++) {
+            if (id[i] != baseId[i]) {
                 return false;
             }
         }
@@ -108,4 +135,9 @@ public class XidFactoryImpl implements XidFactory {
         return new XidImpl(formatId, globalTransactionid, branchQualifier);
     }
 
+    private static class IdBlock {
+        private long next;
+        private long end;
+    }
+
 }
@@ -23,15 +23,22 @@ import javax.transaction.xa.Xid;
 
 /**
  * Unique id for a transaction.
+ * <p/>
+ * The id arrays are never handed out, only copies of them, so they can be shared: all
+ * transaction xids share one empty branch qualifier and XidFactoryImpl shares the branch
+ * qualifiers of the first few branches between all transactions.  The hash code is computed
+ * when the xid is made, reusing the hash of the global id for branches.
  *
  * @version $Rev$ $Date$
  */
 public class XidImpl implements Xid, Serializable {
     private static int FORMAT_ID = 0x4765526f;  // Gero
+    private static final byte[] NO_BRANCH = new byte[Xid.MAXBQUALSIZE];
     private final int formatId;
     private final byte[] globalId;
     private final byte[] branchId;
-    private int hash;   //apparently never used by our code, so don't compute it.
+    private final int globalHash;
+    private final int hash;
 
     /**
      * Constructor taking a global id (for the main transaction)
@@ -40,8 +47,9 @@ public class XidImpl implements Xid, Serializable {
     public XidImpl(byte[] globalId) {
         this.formatId = FORMAT_ID;
         this.globalId = globalId;
-        //this.hash = hash(0, globalId);
-        branchId = new byte[Xid.MAXBQUALSIZE];
+        branchId = NO_BRANCH;
+        globalHash = hash(0, globalId);
+        hash = hash(globalHash, branchId);
     }
 
     /**
@@ -51,31 +59,54 @@ public class XidImpl implements Xid, Serializable {
      */
     public XidImpl(Xid global, byte[] branch) {
         this.formatId = FORMAT_ID;
-        //int hash;
         if (global instanceof XidImpl) {
             globalId = ((XidImpl) global).globalId;
-            //hash = ((XidImpl) global).hash;
+            globalHash = ((XidImpl) global).globalHash;
         } else {
             globalId = global.getGlobalTransactionId();
-            //hash = hash(0, globalId);
+            globalHash = hash(0, globalId);
         }
         branchId = branch;
-        //this.hash = hash(hash, branchId);
+        hash = hash(globalHash, branchId);
     }
 
     public XidImpl(int formatId, byte[] globalId, byte[] branchId) {
         this.formatId = formatId;
         this.globalId = globalId;
         this.branchId = branchId;
+        globalHash = hash(0, globalId);
+        hash = hash(globalHash, branchId);
     }
 
-    private int hash(int hash, byte[] id) {
+    private static int hash(int hash, byte[] id) {
         for (int i = 0; i < id.length; i++) {
             hash = (hash * 37) + id[i];
         }
         return hash;
     }
 
+    /**
+     * Returns the global transaction id of an xid without copying it if it is an XidImpl.
+     * The caller must not modify the array.
+     */
+    static byte[] globalTransactionId(Xid xid) {
+        if (xid instanceof XidImpl) {
+            return ((XidImpl) xid).globalId;
+        }
+        return xid.getGlobalTransactionId();
+    }
+
+    /**
+     * Returns the branch qualifier of an xid without copying it if it is an XidImpl.
+     * The caller must not modify the array.
+     */
+    static byte[] branchQualifier(Xid xid) {
+        if (xid instanceof XidImpl) {
+            return ((XidImpl) xid).branchId;
+        }
+        return xid.getBranchQualifier();
+    }
+
     public int getFormatId() {
         return formatId;
     }
@@ -89,19 +120,20 @@ public class XidImpl implements Xid, Serializable {
     }
 
     public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
         if (obj instanceof XidImpl == false) {
             return false;
         }
         XidImpl other = (XidImpl) obj;
         return formatId == other.formatId
-                && Arrays.equals(globalId, other.globalId)
-                && Arrays.equals(branchId, other.branchId);
+                && hash == other.hash
+                && (globalId == other.globalId || Arrays.equals(globalId, other.globalId))
+                && (branchId == other.branchId || Arrays.equals(branchId, other.branchId));
     }
 
     public int hashCode() {
-        if (hash == 0) {
-            hash = hash(hash(0, globalId), branchId);
-        }
         return hash;
     }
 
@@ -17,9 +17,11 @@
 
 package org.apache.geronimo.transaction.context;
 
+import javax.transaction.xa.XAException;
 import javax.transaction.xa.Xid;
 import javax.transaction.xa.XAResource;
 
+import EDU.oswego.cs.dl.util.concurrent.CountDown;
 import junit.framework.TestCase;
 import org.apache.geronimo.transaction.ImportedTransactionActiveException;
 import org.apache.geronimo.transaction.manager.TransactionManagerImpl;
@@ -86,4 +88,47 @@ public class TransactionContextManagerTest extends TestCase {
             transactionContextManager.rollback(xid1);
         }
     }
+
+    public void testConcurrentImportedTransactions() throws Exception {
+        final int threadCount = 8;
+        final int transactionsPerThread = 200;
+        final Exception[] failure = new Exception[1];
+        final CountDown done = new CountDown(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < transactionsPerThread; i++) {
+                            Xid xid = xidFactory.createXid();
+                            transactionContextManager.begin(xid, 1000);
+                            transactionContextManager.end(xid);
+                            if (i % 2 == 0) {
+                                transactionContextManager.commit(xid, true);
+                            } else {
+                                transactionContextManager.rollback(xid);
+                            }
+                        }
+                    } catch (Exception e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    } finally {
+                        done.release();
+                    }
+                }
+            }.start();
+        }
+        done.acquire();
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+        Xid xid = xidFactory.createXid();
+        try {
+            transactionContextManager.commit(xid, true);
+            fail("expected XAException");
+        } catch (XAException expected) {
+        }
+    }
 }
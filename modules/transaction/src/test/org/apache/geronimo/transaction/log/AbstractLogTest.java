@@ -36,6 +36,9 @@ import org.apache.geronimo.transaction.manager.TransactionLog;
  *
  * */
 public abstract class AbstractLogTest extends TestCase {
+    private static final File basedir = new File(System.getProperty("basedir", System.getProperty("user.dir")));
+    // results go with the rest of the build output
+    private static final File resultDir = new File(basedir, "target");
     private Object startBarrier = new Object();
     private Object stopBarrier = new Object();
     private int startedThreads = 0;
@@ -51,10 +54,11 @@ public abstract class AbstractLogTest extends TestCase {
     public void testDummy() throws Exception {}
 
     public void testTransactionLog() throws Exception {
-        File resultFileXML = new File(getResultFileName() + ".xml");
+        resultDir.mkdirs();
+        File resultFileXML = new File(resultDir, getResultFileName() + ".xml");
         resultsXML = new FileWriter(resultFileXML);
         resultsXML.write("<log-test>\n");
-        File resultFileCSV = new File(getResultFileName() + ".csv");
+        File resultFileCSV = new File(resultDir, getResultFileName() + ".csv");
         resultsCSV = new FileWriter(resultFileCSV);
         resultsCSV.write("workerCount,xidCount,TotalXids,missingXids,DurationMilliseconds,XidsPerSecond,AverageForceTime,AverageBytesPerForce,AverageLatency\n");
         int xidCount = Integer.getInteger("xa.log.test.xid.count", 50).intValue();
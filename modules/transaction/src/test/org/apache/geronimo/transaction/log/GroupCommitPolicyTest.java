@@ -0,0 +1,69 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.transaction.log;
+
+import junit.framework.TestCase;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class GroupCommitPolicyTest extends TestCase {
+
+    public void testLowRateUsesShortestWindow() throws Exception {
+        GroupCommitPolicy policy = new GroupCommitPolicy(0, 50, 16);
+        assertEquals(0, policy.getWindow());
+        // 20 commits/s: one commit per 50ms, nothing to group
+        assertEquals(0, policy.nextWindow(20, 1000));
+    }
+
+    public void testWindowFollowsRate() throws Exception {
+        GroupCommitPolicy policy = new GroupCommitPolicy(0, 50, 16);
+        // 1000 commits/s: 16 commits arrive in 16ms
+        assertEquals(16, policy.nextWindow(1000, 1000));
+        GroupCommitPolicy fast = new GroupCommitPolicy(0, 50, 16);
+        // 16000 commits/s: 16 commits arrive in 1ms
+        assertEquals(1, fast.nextWindow(16000, 1000));
+    }
+
+    public void testWindowIsCappedAtMax() throws Exception {
+        GroupCommitPolicy policy = new GroupCommitPolicy(0, 50, 16);
+        // 100 commits/s: 16 commits would take 160ms
+        assertEquals(50, policy.nextWindow(100, 1000));
+    }
+
+    public void testRateIsSmoothed() throws Exception {
+        GroupCommitPolicy policy = new GroupCommitPolicy(0, 50, 16);
+        policy.nextWindow(1000, 1000);
+        policy.nextWindow(3000, 1000);
+        assertEquals(2000.0, policy.getCommitsPerSecond(), 0.001);
+        assertEquals(8, policy.getWindow());
+        // an empty period does not change the rate
+        policy.nextWindow(0, 0);
+        assertEquals(2000.0, policy.getCommitsPerSecond(), 0.001);
+    }
+
+    public void testStatisticParsing() throws Exception {
+        String stats = "<forceStats>\n" +
+                "<forceCount  value='97'>Number of channel.force() calls</forceCount>\n" +
+                "<avgForceTime value='0.49'>Average channel.force() time (ms)</avgForceTime>\n" +
+                "</forceStats>";
+        assertEquals(97.0, HOWLLog.getStatistic(stats, "forceCount"), 0);
+        assertEquals(0.49, HOWLLog.getStatistic(stats, "avgForceTime"), 0.0001);
+        assertEquals(0.0, HOWLLog.getStatistic(stats, "avgThreadsWaitingForce"), 0);
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.transaction.log;
+
+import java.io.File;
+import javax.transaction.Transaction;
+import javax.transaction.xa.XAResource;
+
+import EDU.oswego.cs.dl.util.concurrent.CountDown;
+import org.apache.geronimo.system.serverinfo.BasicServerInfo;
+import org.apache.geronimo.transaction.manager.SlowResource;
+import org.apache.geronimo.transaction.manager.TransactionManagerImpl;
+import org.apache.geronimo.transaction.manager.XidFactory;
+import org.apache.geronimo.transaction.manager.XidFactoryImpl;
+
+/**
+ * Measures commit throughput of TransactionManagerImpl on a HOWLLog as the number of
+ * client threads grows, with HOWL's fixed flush sleep time and with adaptive group commit.
+ * Every transaction enlists two resources, so it is a full two-phase commit with a
+ * forced prepare record.  The log is configured like the j2ee-server plan.
+ *
+ * usage: GroupCommitSpeed [transactions per run]
+ *
+ * @version $Rev$ $Date$
+ */
+public class GroupCommitSpeed {
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64, 128, 256};
+    private static final File basedir = new File(System.getProperty("basedir", System.getProperty("user.dir")));
+
+    public static void main(String[] args) throws Exception {
+        int transactions = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+        System.out.println("Group Commit Timings (" + transactions + " transactions per run)");
+        System.out.println("-------------------------------------");
+        commitTimings(transactions);
+        System.out.println();
+        System.out.println();
+        System.out.println();
+        commitTimings(transactions);
+    }
+
+    private static void commitTimings(int transactions) throws Exception {
+        for (int i = 0; i < THREAD_COUNTS.length; i++) {
+            int threadCount = THREAD_COUNTS[i];
+            runTimings("Fixed " + threadCount + " threads", false, threadCount, transactions);
+            runTimings("Adaptive " + threadCount + " threads", true, threadCount, transactions);
+        }
+    }
+
+    private static void runTimings(String invocationType, boolean adaptive, int threadCount, int transactions) throws Exception {
+        HOWLLog howlLog = createLog();
+        howlLog.setAdaptiveGroupCommit(adaptive);
+        howlLog.doStart();
+        try {
+            XidFactory xidFactory = new XidFactoryImpl("GroupCommitSpeed".getBytes());
+            TransactionManagerImpl transactionManager = new TransactionManagerImpl(600, xidFactory, howlLog, null);
+            long elapsed = runTransactions(transactionManager, threadCount, transactions);
+            printResults(invocationType, elapsed, transactions, howlLog);
+        } finally {
+            howlLog.doStop();
+        }
+    }
+
+    private static long runTransactions(final TransactionManagerImpl transactionManager, int threadCount, int transactions) throws Exception {
+        final CountDown startSignal = new CountDown(1);
+        final CountDown doneSignal = new CountDown(threadCount);
+        final int transactionsPerThread = Math.max(transactions / threadCount, 1);
+        for (int t = 0; t < threadCount; t++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    SlowResource first = new SlowResource("first", 0);
+                    SlowResource second = new SlowResource("second", 0);
+                    try {
+                        startSignal.acquire();
+                        for (int i = 0; i < transactionsPerThread; i++) {
+                            transactionManager.begin();
+                            Transaction tx = transactionManager.getTransaction();
+                            tx.enlistResource(first);
+                            tx.enlistResource(second);
+                            tx.delistResource(first, XAResource.TMSUCCESS);
+                            tx.delistResource(second, XAResource.TMSUCCESS);
+                            transactionManager.commit();
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    } finally {
+                        doneSignal.release();
+                    }
+                }
+            });
+            thread.start();
+        }
+        long start = System.currentTimeMillis();
+        startSignal.release();
+        doneSignal.acquire();
+        return System.currentTimeMillis() - start;
+    }
+
+    private static HOWLLog createLog() throws Exception {
+        return new HOWLLog("org.objectweb.howl.log.BlockLogBuffer",
+                32,
+                true,
+                50,
+                "txlog",
+                "log",
+                "howl_speed",
+                -1,
+                0,
+                2,
+                4,
+                -1,
+                new XidFactoryImpl(),
+                new BasicServerInfo(new File(basedir, "target").getAbsolutePath()));
+    }
+
+    private static void printResults(String invocationType, long elapsed, int transactions, HOWLLog howlLog) {
+        String forces = "records/force " + format(howlLog.getAverageRecordsPerForce())
+                + ", waiters/force " + format(howlLog.getAverageWaitersPerForce())
+                + ", force " + format(howlLog.getAverageForceTimeMilliseconds()) + "ms"
+                + ", prepare " + format(howlLog.getAveragePrepareTimeMilliseconds()) + "ms"
+                + ", window " + howlLog.getGroupCommitWindowMilliseconds() + "ms";
+        if (elapsed < 400) {
+            System.out.println(invocationType + ": elapse time to short to calculate throughput (total " + elapsed + "ms) " + forces);
+        } else {
+            System.out.println(invocationType + ": " + (transactions * 1000L / elapsed) + " tx/s  (total " + elapsed + "ms) " + forces);
+        }
+    }
+
+    private static String format(double value) {
+        return String.valueOf(Math.round(value * 100) / 100.0);
+    }
+}
@@ -18,6 +18,8 @@
 package org.apache.geronimo.transaction.log;
 
 import java.io.File;
+import java.util.Collections;
+import javax.transaction.xa.Xid;
 
 import junit.extensions.TestSetup;
 import junit.framework.Test;
@@ -68,6 +70,49 @@ public class HOWLLogTest extends AbstractLogTest {
         howlLog.doStart();
         return howlLog;
     }
+
+    public void testStatistics() throws Exception {
+        HOWLLog howlLog = (HOWLLog) createTransactionLog();
+        try {
+            Xid xid = new XidImpl2(new byte[Xid.MAXGTRIDSIZE]);
+            for (int i = 0; i < 20; i++) {
+                Object logMark = howlLog.prepare(xid, Collections.EMPTY_LIST);
+                howlLog.commit(xid, logMark);
+            }
+            assertEquals(20, howlLog.getPrepareCount());
+            assertTrue(howlLog.getForceCount() > 0);
+            assertTrue(howlLog.getAverageRecordsPerForce() > 0);
+            assertTrue(howlLog.getMaxPrepareTimeMilliseconds() >= howlLog.getAveragePrepareTimeMilliseconds());
+            assertEquals(0, howlLog.getGroupCommitWindowMilliseconds());
+        } finally {
+            closeTransactionLog(howlLog);
+        }
+    }
+
+    public void testAdaptiveGroupCommit() throws Exception {
+        HOWLLog howlLog = (HOWLLog) createTransactionLog();
+        howlLog.doStop();
+        howlLog.setAdaptiveGroupCommit(true);
+        howlLog.doStart();
+        try {
+            Xid xid = new XidImpl2(new byte[Xid.MAXGTRIDSIZE]);
+            for (int i = 0; i < 20; i++) {
+                Object logMark = howlLog.prepare(xid, Collections.EMPTY_LIST);
+                howlLog.commit(xid, logMark);
+            }
+            assertEquals(20, howlLog.getPrepareCount());
+            // a lone committer is not held back to share a force: each prepare gets its own
+            assertEquals(0, howlLog.getGroupCommitWindowMilliseconds());
+            assertTrue(howlLog.getForceCount() >= 20);
+            assertTrue(howlLog.getAverageRecordsPerForce() <= 1);
+            // the configured values are reported unchanged
+            assertEquals(20, howlLog.getFlushSleepTimeMilliseconds());
+            assertEquals(10, howlLog.getThreadsWaitingForceThreshold());
+        } finally {
+            closeTransactionLog(howlLog);
+        }
+    }
+
     public static Test suite() {
         return new TestSetup(new TestSuite(HOWLLogTest.class)) {
             protected void setUp() throws Exception {
@@ -0,0 +1,270 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.transaction.log;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import javax.transaction.xa.Xid;
+
+import org.apache.geronimo.system.serverinfo.BasicServerInfo;
+import org.apache.geronimo.transaction.manager.Recovery;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfo;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfoImpl;
+import org.apache.geronimo.transaction.manager.TransactionLog;
+import org.apache.geronimo.transaction.manager.XidFactory;
+import org.apache.geronimo.transaction.manager.XidFactoryImpl;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class MappedSegmentLogTest extends AbstractLogTest {
+    private static final File basedir = new File(System.getProperty("basedir", System.getProperty("user.dir")));
+    private static final String LOG_FILE_NAME = "segment_test";
+    private static final File txlogDir = new File(basedir, "target/txlog");
+
+    private final XidFactory xidFactory = new XidFactoryImpl();
+    private int segmentSizeKBytes = 64;
+
+    protected String getResultFileName() {
+        return "segmentlog";
+    }
+
+    protected void closeTransactionLog(TransactionLog transactionLog) throws Exception {
+        ((MappedSegmentLog) transactionLog).doStop();
+    }
+
+    protected TransactionLog createTransactionLog() throws Exception {
+        MappedSegmentLog segmentLog = new MappedSegmentLog("txlog", LOG_FILE_NAME, "log", segmentSizeKBytes, 2, 2, xidFactory, new BasicServerInfo(new File(basedir, "target").getAbsolutePath()));
+        segmentLog.doStart();
+        return segmentLog;
+    }
+
+    public void testRecoversBranches() throws Exception {
+        MappedSegmentLog segmentLog = (MappedSegmentLog) createTransactionLog();
+        Xid completed = xidFactory.createXid();
+        Object mark = segmentLog.prepare(completed, createBranches(completed, 2));
+        segmentLog.commit(completed, mark);
+        Xid inDoubt = xidFactory.createXid();
+        segmentLog.prepare(inDoubt, createBranches(inDoubt, 2));
+        assertEquals(1, segmentLog.getLiveRecordCount());
+        segmentLog.doStop();
+
+        segmentLog.doStart();
+        try {
+            Collection recovered = segmentLog.recover(xidFactory);
+            assertEquals(1, recovered.size());
+            Recovery.XidBranchesPair pair = (Recovery.XidBranchesPair) recovered.iterator().next();
+            assertEquals(inDoubt, pair.getXid());
+            assertEquals(2, pair.getBranches().size());
+            TransactionBranchInfo branch = (TransactionBranchInfo) pair.getBranches().iterator().next();
+            assertTrue(branch.getResourceName().startsWith("resource\u00e9"));
+
+            segmentLog.rollback(pair.getXid(), pair.getMark());
+            assertEquals(0, segmentLog.getLiveRecordCount());
+        } finally {
+            segmentLog.doStop();
+        }
+
+        segmentLog.doStart();
+        try {
+            assertTrue(segmentLog.recover(xidFactory).isEmpty());
+        } finally {
+            segmentLog.doStop();
+        }
+    }
+
+    public void testCompactsLivePrepareRecords() throws Exception {
+        segmentSizeKBytes = 4;
+        MappedSegmentLog segmentLog = (MappedSegmentLog) createTransactionLog();
+        try {
+            Xid inDoubt = xidFactory.createXid();
+            segmentLog.prepare(inDoubt, createBranches(inDoubt, 1));
+            // write enough to go round the two segments several times
+            for (int i = 0; i < 500; i++) {
+                Xid xid = xidFactory.createXid();
+                Object mark = segmentLog.prepare(xid, createBranches(xid, 1));
+                segmentLog.commit(xid, mark);
+            }
+            assertEquals(2, segmentLog.getSegmentFileCount());
+            assertTrue(segmentLog.getCompactionCount() > 0);
+            assertEquals(1, segmentLog.getLiveRecordCount());
+            segmentLog.doStop();
+
+            segmentLog.doStart();
+            Collection recovered = segmentLog.recover(xidFactory);
+            assertEquals(1, recovered.size());
+            assertEquals(inDoubt, ((Recovery.XidBranchesPair) recovered.iterator().next()).getXid());
+        } finally {
+            segmentLog.doStop();
+        }
+    }
+
+    public void testCompactionLeavesRoomForRecord() throws Exception {
+        segmentSizeKBytes = 4;
+        MappedSegmentLog segmentLog = (MappedSegmentLog) createTransactionLog();
+        try {
+            // each branch with a long resource name takes about 1.4KB
+            Xid small = xidFactory.createXid();
+            segmentLog.prepare(small, createBranches(small, 1, 700));
+            // does not fit next to the small record once that is compacted into the next segment
+            Xid large = xidFactory.createXid();
+            segmentLog.prepare(large, createBranches(large, 2, 700));
+            assertEquals(2, segmentLog.getLiveRecordCount());
+            segmentLog.doStop();
+
+            segmentLog.doStart();
+            assertEquals(2, segmentLog.recover(xidFactory).size());
+        } finally {
+            segmentLog.doStop();
+        }
+    }
+
+    public void testAddsSegmentsWhenFull() throws Exception {
+        segmentSizeKBytes = 4;
+        MappedSegmentLog segmentLog = (MappedSegmentLog) createTransactionLog();
+        try {
+            // a few hundred in doubt transactions do not fit in two 4KB segments
+            for (int i = 0; i < 300; i++) {
+                Xid xid = xidFactory.createXid();
+                segmentLog.prepare(xid, createBranches(xid, 1));
+            }
+            assertTrue(segmentLog.getSegmentFileCount() > 2);
+            segmentLog.doStop();
+
+            segmentLog.doStart();
+            assertEquals(300, segmentLog.recover(xidFactory).size());
+        } finally {
+            segmentLog.doStop();
+        }
+    }
+
+    public void testIgnoresTornRecord() throws Exception {
+        MappedSegmentLog segmentLog = (MappedSegmentLog) createTransactionLog();
+        Xid first = xidFactory.createXid();
+        segmentLog.prepare(first, createBranches(first, 1));
+        Xid second = xidFactory.createXid();
+        segmentLog.prepare(second, createBranches(second, 1));
+        segmentLog.doStop();
+
+        // damage the last byte of the second record
+        File segmentFile = findLastWrittenSegment();
+        RandomAccessFile raf = new RandomAccessFile(segmentFile, "rw");
+        try {
+            long end = lastRecordEnd(raf);
+            raf.seek(end - 1);
+            int last = raf.read();
+            raf.seek(end - 1);
+            raf.write(last ^ 0xff);
+        } finally {
+            raf.close();
+        }
+
+        segmentLog.doStart();
+        try {
+            Collection recovered = segmentLog.recover(xidFactory);
+            assertEquals(1, recovered.size());
+            assertEquals(first, ((Recovery.XidBranchesPair) recovered.iterator().next()).getXid());
+        } finally {
+            segmentLog.doStop();
+        }
+    }
+
+    public void testStatistics() throws Exception {
+        MappedSegmentLog segmentLog = (MappedSegmentLog) createTransactionLog();
+        try {
+            Xid xid = new XidImpl2(new byte[Xid.MAXGTRIDSIZE]);
+            for (int i = 0; i < 20; i++) {
+                Object logMark = segmentLog.prepare(xid, Collections.EMPTY_LIST);
+                segmentLog.commit(xid, logMark);
+            }
+            assertEquals(20, segmentLog.getPrepareCount());
+            assertEquals(20, segmentLog.getForceCount());
+            assertEquals(1.0, segmentLog.getAverageRecordsPerForce(), 0.001);
+            assertTrue(segmentLog.getAverageBytesPerForce() > Xid.MAXGTRIDSIZE);
+        } finally {
+            segmentLog.doStop();
+        }
+    }
+
+    private List createBranches(Xid xid, int count) {
+        return createBranches(xid, count, 0);
+    }
+
+    private List createBranches(Xid xid, int count, int padding) {
+        StringBuffer suffix = new StringBuffer();
+        for (int i = 0; i < padding; i++) {
+            suffix.append('x');
+        }
+        List branches = new ArrayList();
+        for (int i = 0; i < count; i++) {
+            branches.add(new TransactionBranchInfoImpl(xidFactory.createBranch(xid, i + 1), "resource\u00e9" + i + suffix));
+        }
+        return branches;
+    }
+
+    private File findLastWrittenSegment() throws Exception {
+        File[] files = txlogDir.listFiles();
+        File last = null;
+        long lastSequence = 0;
+        for (int i = 0; i < files.length; i++) {
+            if (files[i].getName().startsWith(LOG_FILE_NAME)) {
+                RandomAccessFile raf = new RandomAccessFile(files[i], "r");
+                try {
+                    raf.seek(4);
+                    long sequence = raf.readLong();
+                    if (sequence > lastSequence) {
+                        last = files[i];
+                        lastSequence = sequence;
+                    }
+                } finally {
+                    raf.close();
+                }
+            }
+        }
+        return last;
+    }
+
+    private long lastRecordEnd(RandomAccessFile raf) throws Exception {
+        long position = 16;
+        raf.seek(position);
+        int length = raf.readInt();
+        long end = position;
+        while (length > 0) {
+            end = position + 8 + length;
+            position = end;
+            raf.seek(position);
+            length = raf.readInt();
+        }
+        return end;
+    }
+
+    protected void setUp() throws Exception {
+        File[] files = txlogDir.listFiles();
+        if (null != files) {
+            for (int i = 0; i < files.length; i++) {
+                if (files[i].getName().startsWith(LOG_FILE_NAME)) {
+                    files[i].delete();
+                }
+            }
+        }
+    }
+}
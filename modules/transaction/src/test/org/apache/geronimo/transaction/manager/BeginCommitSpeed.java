@@ -0,0 +1,107 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.transaction.manager;
+
+import javax.transaction.Transaction;
+import javax.transaction.xa.XAResource;
+
+import EDU.oswego.cs.dl.util.concurrent.CountDown;
+
+/**
+ * Measures the overhead of the transaction manager itself: begin, enlist and delist of
+ * resources that do no work, and commit, as the number of client threads grows.  With one
+ * resource the commit is one phase; with two it is a full two phase commit logged to a
+ * log that keeps nothing.
+ *
+ * usage: BeginCommitSpeed [transactions per run]
+ *
+ * @version $Rev$ $Date$
+ */
+public class BeginCommitSpeed {
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16};
+    private static final int[] RESOURCE_COUNTS = {1, 2};
+
+    public static void main(String[] args) throws Exception {
+        int transactions = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        System.out.println("Begin/Commit Timings (" + transactions + " transactions per run)");
+        System.out.println("-------------------------------------");
+        commitTimings(transactions);
+        System.out.println();
+        System.out.println();
+        System.out.println();
+        commitTimings(transactions);
+    }
+
+    private static void commitTimings(int transactions) throws Exception {
+        TransactionManagerImpl tm = new TransactionManagerImpl(10, new XidFactoryImpl("BeginCommitSpeed".getBytes()), null, null);
+        for (int i = 0; i < RESOURCE_COUNTS.length; i++) {
+            int resourceCount = RESOURCE_COUNTS[i];
+            for (int j = 0; j < THREAD_COUNTS.length; j++) {
+                int threadCount = THREAD_COUNTS[j];
+                long elapsed = runTransactions(tm, resourceCount, threadCount, transactions);
+                printResults(resourceCount + " resources, " + threadCount + " threads", elapsed, transactions);
+            }
+        }
+    }
+
+    private static long runTransactions(final TransactionManagerImpl tm, final int resourceCount, int threadCount, int transactions) throws Exception {
+        final CountDown startSignal = new CountDown(1);
+        final CountDown doneSignal = new CountDown(threadCount);
+        final int transactionsPerThread = transactions / threadCount;
+        for (int t = 0; t < threadCount; t++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    SlowResource[] resources = new SlowResource[resourceCount];
+                    for (int i = 0; i < resources.length; i++) {
+                        resources[i] = new SlowResource("resource" + i, 0);
+                    }
+                    try {
+                        startSignal.acquire();
+                        for (int i = 0; i < transactionsPerThread; i++) {
+                            tm.begin();
+                            Transaction tx = tm.getTransaction();
+                            for (int j = 0; j < resources.length; j++) {
+                                tx.enlistResource(resources[j]);
+                                tx.delistResource(resources[j], XAResource.TMSUCCESS);
+                            }
+                            tm.commit();
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    } finally {
+                        doneSignal.release();
+                    }
+                }
+            });
+            thread.start();
+        }
+        long start = System.currentTimeMillis();
+        startSignal.release();
+        doneSignal.acquire();
+        return System.currentTimeMillis() - start;
+    }
+
+    private static void printResults(String invocationType, long elapsed, int transactions) {
+        if (elapsed < 400) {
+            System.out.println(invocationType + ": elapse time to short to calculate throughput (total " + elapsed + "ms)");
+        } else {
+            System.out.println(invocationType + ": " + (transactions * 1000L / elapsed) + " tx/s  (total " + elapsed + "ms)");
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.geronimo.transaction.manager;
+
+import javax.transaction.RollbackException;
+import javax.transaction.Status;
+import javax.transaction.Transaction;
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+import junit.framework.TestCase;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class LastResourceCommitTest extends TestCase {
+    private MockLog transactionLog = new MockLog();
+    private TransactionManagerImpl tm;
+    private SlowResource r1 = new SlowResource("r1", 0);
+    private SlowResource r2 = new SlowResource("r2", 0);
+    private OnePhaseResource last = new OnePhaseResource("last");
+
+    protected void setUp() throws Exception {
+        tm = new TransactionManagerImpl(10, new XidFactoryImpl("WHAT DO WE CALL IT?".getBytes()), transactionLog, null);
+    }
+
+    public void testLastResourceCommitsAfterPrepare() throws Exception {
+        Transaction tx = begin();
+        tx.commit();
+
+        assertEquals(Status.STATUS_NO_TRANSACTION, tm.getStatus());
+        assertTrue(r1.isCommitted() && r2.isCommitted());
+        assertFalse(last.isPrepared());
+        assertTrue(last.isCommitted());
+        assertTrue(last.committedOnePhase);
+        // the other branches were prepared before the last resource committed
+        assertTrue(last.othersPreparedAtCommit);
+        Recovery.XidBranchesPair logged = (Recovery.XidBranchesPair) transactionLog.prepared.values().iterator().next();
+        assertEquals(2, logged.getBranches().size());
+        assertEquals(1, transactionLog.committed.size());
+    }
+
+    public void testLastResourceFailureRollsBack() throws Exception {
+        last.setFailCommit(true);
+        Transaction tx = begin();
+        try {
+            tx.commit();
+            fail("tx should not commit");
+        } catch (RollbackException e) {
+            //expected
+        }
+        assertEquals(Status.STATUS_NO_TRANSACTION, tm.getStatus());
+        assertFalse(r1.isCommitted() || r2.isCommitted());
+        assertTrue(r1.isRolledback() && r2.isRolledback());
+        assertEquals(1, transactionLog.rolledBack.size());
+        assertTrue(transactionLog.committed.isEmpty());
+    }
+
+    public void testPrepareFailureRollsBackLastResource() throws Exception {
+        r2.setFailPrepare(true);
+        Transaction tx = begin();
+        try {
+            tx.commit();
+            fail("tx should not commit");
+        } catch (RollbackException e) {
+            //expected
+        }
+        assertFalse(last.isCommitted());
+        assertTrue(last.isRolledback());
+        assertTrue(r1.isRolledback());
+        assertTrue(transactionLog.prepared.isEmpty());
+    }
+
+    public void testReadOnlyBranchesAreNotLogged() throws Exception {
+        r1.setVote(XAResource.XA_RDONLY);
+        r2.setVote(XAResource.XA_RDONLY);
+        Transaction tx = begin();
+        tx.commit();
+
+        assertTrue(last.isCommitted());
+        assertTrue(transactionLog.prepared.isEmpty());
+        assertTrue(transactionLog.committed.isEmpty());
+    }
+
+    public void testParallelLastResourceCommit() throws Exception {
+        tm.setParallelCompletionThreads(2);
+        Transaction tx = begin();
+        tx.commit();
+
+        assertTrue(r1.isCommitted() && r2.isCommitted());
+        assertFalse(last.isPrepared());
+        assertTrue(last.othersPreparedAtCommit);
+        assertEquals(1, transactionLog.committed.size());
+    }
+
+    private Transaction begin() throws Exception {
+        tm.begin();
+        Transaction tx = tm.getTransaction();
+        tx.enlistResource(r1);
+        tx.enlistResource(last);
+        tx.enlistResource(r2);
+        tx.delistResource(r1, XAResource.TMSUCCESS);
+        tx.delistResource(last, XAResource.TMSUCCESS);
+        tx.delistResource(r2, XAResource.TMSUCCESS);
+        return tx;
+    }
+
+    private class OnePhaseResource extends SlowResource implements LastResource {
+        private boolean committedOnePhase;
+        private boolean othersPreparedAtCommit;
+
+        public OnePhaseResource(String name) {
+            super(name, 0);
+        }
+
+        public void commit(Xid xid, boolean onePhase) throws XAException {
+            committedOnePhase = onePhase;
+            othersPreparedAtCommit = r1.isPrepared() && r2.isPrepared() && !r1.isCommitted() && !r2.isCommitted();
+            super.commit(xid, onePhase);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.transaction.manager;
+
+import java.io.File;
+
+import org.apache.geronimo.system.serverinfo.BasicServerInfo;
+import org.apache.geronimo.transaction.log.MappedSegmentLog;
+
+/**
+ *
+ *
+ * @version $Rev$ $Date$
+ *
+ * */
+public class MappedSegmentLogRecoveryTest extends AbstractRecoveryTest {
+    private static final File basedir = new File(System.getProperty("basedir", System.getProperty("user.dir")));
+    private static final String LOG_FILE_NAME = "segment_recovery_test";
+    private static final String logFileDir = "txlog";
+    private static final String targetDir = new File(basedir, "target").getAbsolutePath();
+    private static final File txlogDir = new File(basedir, "target/" + logFileDir);
+
+    protected void setUp() throws Exception {
+        // Deletes the previous segment files.
+        File[] files = txlogDir.listFiles();
+        if (null != files) {
+            for (int i = 0; i < files.length; i++) {
+                if (files[i].getName().startsWith(LOG_FILE_NAME)) {
+                    files[i].delete();
+                }
+            }
+        }
+        setUpLog();
+    }
+
+    private void setUpLog() throws Exception {
+        MappedSegmentLog segmentLog = new MappedSegmentLog(logFileDir, LOG_FILE_NAME, "log", 64, 2, 2, xidFactory, new BasicServerInfo(targetDir));
+        segmentLog.doStart();
+        txLog = segmentLog;
+    }
+
+    protected void tearDown() throws Exception {
+        ((MappedSegmentLog) txLog).doStop();
+        txLog = null;
+    }
+
+    protected void prepareForReplay() throws Exception {
+        tearDown();
+        setUpLog();
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.transaction.manager;
+
+import javax.transaction.RollbackException;
+import javax.transaction.Status;
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
+import javax.transaction.xa.XAResource;
+
+import junit.framework.TestCase;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ParallelCompletionTest extends TestCase {
+    private static final long LATENCY = 200;
+
+    private MockLog transactionLog = new MockLog();
+    private TransactionManagerImpl tm;
+    private SlowResource.ActiveCount activeCount = new SlowResource.ActiveCount();
+    private SlowResource r1 = new SlowResource("r1", LATENCY, activeCount);
+    private SlowResource r2 = new SlowResource("r2", LATENCY, activeCount);
+    private SlowResource r3 = new SlowResource("r3", LATENCY, activeCount);
+
+    protected void setUp() throws Exception {
+        tm = new TransactionManagerImpl(10, new XidFactoryImpl("WHAT DO WE CALL IT?".getBytes()), transactionLog, null);
+        tm.setParallelCompletionThreads(4);
+    }
+
+    public void testParallelCommit() throws Exception {
+        Transaction tx = begin();
+        tx.commit();
+
+        assertEquals(Status.STATUS_NO_TRANSACTION, tm.getStatus());
+        assertTrue(r1.isPrepared() && r2.isPrepared() && r3.isPrepared());
+        assertTrue(r1.isCommitted() && r2.isCommitted() && r3.isCommitted());
+        assertEquals(1, transactionLog.committed.size());
+        assertTrue("at most " + activeCount.getMaxActive() + " branches at once", activeCount.getMaxActive() > 1);
+    }
+
+    public void testSerialCommit() throws Exception {
+        tm.setParallelCompletionThreads(0);
+        assertEquals(0, tm.getParallelCompletionThreads());
+        Transaction tx = begin();
+        tx.commit();
+
+        assertTrue(r1.isCommitted() && r2.isCommitted() && r3.isCommitted());
+        assertEquals(1, activeCount.getMaxActive());
+    }
+
+    public void testReadOnlyBranchIsNotCommitted() throws Exception {
+        r2.setVote(XAResource.XA_RDONLY);
+        Transaction tx = begin();
+        tx.commit();
+
+        assertTrue(r1.isCommitted());
+        assertFalse(r2.isCommitted());
+        assertTrue(r3.isCommitted());
+        Recovery.XidBranchesPair logged = (Recovery.XidBranchesPair) transactionLog.prepared.values().iterator().next();
+        assertEquals(2, logged.getBranches().size());
+    }
+
+    public void testPrepareFailureRollsBack() throws Exception {
+        r2.setFailPrepare(true);
+        Transaction tx = begin();
+        try {
+            tx.commit();
+            fail("tx should not commit");
+        } catch (RollbackException e) {
+            //expected
+        }
+        assertEquals(Status.STATUS_NO_TRANSACTION, tm.getStatus());
+        assertFalse(r1.isCommitted() || r2.isCommitted() || r3.isCommitted());
+        assertTrue(r1.isRolledback());
+        // a branch that failed to prepare has rolled back on its own
+        assertFalse(r2.isRolledback());
+        assertTrue(r3.isRolledback());
+        assertTrue(transactionLog.prepared.isEmpty());
+    }
+
+    public void testCommitFailureCompletesOtherBranches() throws Exception {
+        r1.setFailCommit(true);
+        Transaction tx = begin();
+        try {
+            tx.commit();
+            fail("expected SystemException");
+        } catch (SystemException e) {
+            //expected
+        }
+        assertFalse(r1.isCommitted());
+        assertTrue(r2.isCommitted());
+        assertTrue(r3.isCommitted());
+        assertEquals(1, transactionLog.committed.size());
+    }
+
+    public void testParallelRollback() throws Exception {
+        Transaction tx = begin();
+        tx.rollback();
+
+        assertTrue(r1.isRolledback() && r2.isRolledback() && r3.isRolledback());
+        assertTrue("at most " + activeCount.getMaxActive() + " branches at once", activeCount.getMaxActive() > 1);
+    }
+
+    public void testMoreBranchesThanThreads() throws Exception {
+        tm.setParallelCompletionThreads(1);
+        Transaction tx = begin();
+        tx.commit();
+        assertTrue(r1.isCommitted() && r2.isCommitted() && r3.isCommitted());
+    }
+
+    private Transaction begin() throws Exception {
+        tm.begin();
+        Transaction tx = tm.getTransaction();
+        SlowResource[] resources = new SlowResource[] {r1, r2, r3};
+        for (int i = 0; i < resources.length; i++) {
+            tx.enlistResource(resources[i]);
+            tx.delistResource(resources[i], XAResource.TMSUCCESS);
+        }
+        tm.suspend();
+        return tx;
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.transaction.manager;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+/**
+ * A NamedXAResource that takes a fixed time to prepare, commit and roll back, as a
+ * remote resource manager would.  It can be told to vote read only or to fail.
+ * Resources sharing an ActiveCount record how many of them were busy at once.
+ *
+ * @version $Rev$ $Date$
+ */
+public class SlowResource implements NamedXAResource {
+    private final String name;
+    private final long latencyMilliseconds;
+    private final ActiveCount activeCount;
+    private int vote = XAResource.XA_OK;
+    private boolean failPrepare;
+    private boolean failCommit;
+    private volatile boolean prepared;
+    private volatile boolean committed;
+    private volatile boolean rolledback;
+
+    public SlowResource(String name, long latencyMilliseconds) {
+        this(name, latencyMilliseconds, null);
+    }
+
+    public SlowResource(String name, long latencyMilliseconds, ActiveCount activeCount) {
+        this.name = name;
+        this.latencyMilliseconds = latencyMilliseconds;
+        this.activeCount = activeCount;
+    }
+
+    public void setVote(int vote) {
+        this.vote = vote;
+    }
+
+    public void setFailPrepare(boolean failPrepare) {
+        this.failPrepare = failPrepare;
+    }
+
+    public void setFailCommit(boolean failCommit) {
+        this.failCommit = failCommit;
+    }
+
+    public void reset() {
+        prepared = false;
+        committed = false;
+        rolledback = false;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void start(Xid xid, int flags) throws XAException {
+    }
+
+    public void end(Xid xid, int flags) throws XAException {
+    }
+
+    public int prepare(Xid xid) throws XAException {
+        pause();
+        if (failPrepare) {
+            throw new XAException(XAException.XA_RBROLLBACK);
+        }
+        prepared = true;
+        return vote;
+    }
+
+    public void commit(Xid xid, boolean onePhase) throws XAException {
+        pause();
+        if (failCommit) {
+            throw new XAException(XAException.XAER_RMERR);
+        }
+        committed = true;
+    }
+
+    public void rollback(Xid xid) throws XAException {
+        pause();
+        rolledback = true;
+    }
+
+    public void forget(Xid xid) throws XAException {
+    }
+
+    public Xid[] recover(int flag) throws XAException {
+        return new Xid[0];
+    }
+
+    public boolean isSameRM(XAResource xaResource) throws XAException {
+        return xaResource == this;
+    }
+
+    public int getTransactionTimeout() throws XAException {
+        return 0;
+    }
+
+    public boolean setTransactionTimeout(int seconds) throws XAException {
+        return false;
+    }
+
+    public boolean isPrepared() {
+        return prepared;
+    }
+
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    public boolean isRolledback() {
+        return rolledback;
+    }
+
+    private void pause() {
+        if (activeCount != null) {
+            activeCount.enter();
+        }
+        try {
+            if (latencyMilliseconds > 0) {
+                Thread.sleep(latencyMilliseconds);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (activeCount != null) {
+                activeCount.exit();
+            }
+        }
+    }
+
+    /**
+     * Counts the resources inside prepare, commit or rollback, and the most that
+     * ever were at the same time.
+     */
+    public static class ActiveCount {
+        private int active;
+        private int maxActive;
+
+        private synchronized void enter() {
+            active++;
+            if (active > maxActive) {
+                maxActive = active;
+            }
+        }
+
+        private synchronized void exit() {
+            active--;
+        }
+
+        public synchronized int getMaxActive() {
+            return maxActive;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.transaction.manager;
+
+import EDU.oswego.cs.dl.util.concurrent.CountDown;
+import junit.framework.TestCase;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class TimeoutWheelTest extends TestCase {
+    private TimeoutWheel wheel;
+
+    protected void setUp() throws Exception {
+        // a small wheel so timeouts go round it more than once
+        wheel = new TimeoutWheel("test timeout wheel", 10, 8);
+    }
+
+    protected void tearDown() throws Exception {
+        wheel.stop();
+    }
+
+    public void testExpiresNoEarlierThanDelay() throws Exception {
+        final CountDown expired = new CountDown(1);
+        final long[] expiredAt = new long[1];
+        long start = System.currentTimeMillis();
+        TimeoutWheel.Timeout timeout = wheel.schedule(new Runnable() {
+            public void run() {
+                expiredAt[0] = System.currentTimeMillis();
+                expired.release();
+            }
+        }, 250);
+        assertEquals(1, wheel.getPendingCount());
+        assertTrue(expired.attempt(2000));
+        assertTrue("expired after " + (expiredAt[0] - start) + "ms", expiredAt[0] - start >= 250);
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+        assertEquals(0, wheel.getPendingCount());
+        assertEquals(1, wheel.getExpiredCount());
+    }
+
+    public void testCancel() throws Exception {
+        final CountDown expired = new CountDown(1);
+        TimeoutWheel.Timeout timeout = wheel.schedule(new Runnable() {
+            public void run() {
+                expired.release();
+            }
+        }, 100);
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        assertEquals(0, wheel.getPendingCount());
+        assertFalse(expired.attempt(300));
+        assertEquals(0, wheel.getExpiredCount());
+    }
+
+    public void testManyTimeouts() throws Exception {
+        int count = 10000;
+        final CountDown expired = new CountDown(count / 2);
+        TimeoutWheel.Timeout[] timeouts = new TimeoutWheel.Timeout[count];
+        for (int i = 0; i < count; i++) {
+            timeouts[i] = wheel.schedule(new Runnable() {
+                public void run() {
+                    expired.release();
+                }
+            }, 100 + i % 200);
+        }
+        for (int i = 0; i < count; i += 2) {
+            timeouts[i].cancel();
+        }
+        assertTrue(expired.attempt(5000));
+        Thread.sleep(100);
+        assertEquals(0, wheel.getPendingCount());
+        assertEquals(count / 2, wheel.getExpiredCount());
+    }
+
+    public void testFailingTaskDoesNotStopWheel() throws Exception {
+        wheel.schedule(new Runnable() {
+            public void run() {
+                throw new RuntimeException("expected");
+            }
+        }, 0);
+        final CountDown expired = new CountDown(1);
+        wheel.schedule(new Runnable() {
+            public void run() {
+                expired.release();
+            }
+        }, 50);
+        assertTrue(expired.attempt(2000));
+    }
+}
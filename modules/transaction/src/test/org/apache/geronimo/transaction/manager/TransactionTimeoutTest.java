@@ -0,0 +1,104 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.transaction.manager;
+
+import javax.transaction.RollbackException;
+import javax.transaction.Status;
+import javax.transaction.Transaction;
+import javax.transaction.xa.XAResource;
+
+import junit.framework.TestCase;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class TransactionTimeoutTest extends TestCase {
+    private TransactionManagerImpl tm;
+    private SlowResource r1 = new SlowResource("r1", 0);
+    private SlowResource r2 = new SlowResource("r2", 0);
+
+    protected void setUp() throws Exception {
+        tm = new TransactionManagerImpl(10, new XidFactoryImpl("WHAT DO WE CALL IT?".getBytes()), new MockLog(), null);
+    }
+
+    public void testTimeoutMarksRollbackOnly() throws Exception {
+        Transaction tx = tm.begin(200);
+        enlist(tx);
+        Thread.sleep(500);
+        assertEquals(Status.STATUS_MARKED_ROLLBACK, tx.getStatus());
+        assertEquals(1, tm.getTimedOutTransactionCount());
+        assertFalse(r1.isRolledback());
+        try {
+            tm.commit();
+            fail("tx should not commit");
+        } catch (RollbackException e) {
+            //expected
+        }
+        assertTrue(r1.isRolledback() && r2.isRolledback());
+        assertEquals(0, tm.getTimeoutRollbackCount());
+    }
+
+    public void testCompletedTransactionDoesNotTimeOut() throws Exception {
+        Transaction tx = tm.begin(200);
+        enlist(tx);
+        tm.commit();
+        Thread.sleep(500);
+        assertTrue(r1.isCommitted() && r2.isCommitted());
+        assertEquals(Status.STATUS_NO_TRANSACTION, tx.getStatus());
+        assertEquals(0, tm.getTimedOutTransactionCount());
+    }
+
+    public void testRollbackTimedOutTransaction() throws Exception {
+        tm.setRollbackTimedOutTransactions(true);
+        Transaction tx = tm.begin(200);
+        enlist(tx);
+        for (int i = 0; i < 50 && !r1.isRolledback(); i++) {
+            Thread.sleep(20);
+        }
+        assertTrue(r1.isRolledback() && r2.isRolledback());
+        assertEquals(1, tm.getTimedOutTransactionCount());
+        assertEquals(1, tm.getTimeoutRollbackCount());
+        try {
+            tm.commit();
+            fail("tx should not commit");
+        } catch (RollbackException e) {
+            //expected
+        }
+        assertFalse(r1.isCommitted());
+        assertNull(tm.getTransaction());
+    }
+
+    public void testRollbackAfterTimeoutRollback() throws Exception {
+        tm.setRollbackTimedOutTransactions(true);
+        Transaction tx = tm.begin(200);
+        enlist(tx);
+        for (int i = 0; i < 50 && tm.getTimeoutRollbackCount() == 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, tm.getTimeoutRollbackCount());
+        tm.rollback();
+        assertNull(tm.getTransaction());
+    }
+
+    private void enlist(Transaction tx) throws Exception {
+        tx.enlistResource(r1);
+        tx.delistResource(r1, XAResource.TMSUCCESS);
+        tx.enlistResource(r2);
+        tx.delistResource(r2, XAResource.TMSUCCESS);
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.transaction.manager;
+
+import javax.transaction.Transaction;
+import javax.transaction.xa.XAResource;
+
+/**
+ * Measures commit latency of transactions with several slow resource managers, with the
+ * branches completed one after the other and in parallel.  Every prepare, commit and
+ * rollback call on a resource takes the given latency.
+ *
+ * usage: TwoPhaseCommitSpeed [resource latency ms]
+ *
+ * @version $Rev$ $Date$
+ */
+public class TwoPhaseCommitSpeed {
+    private static final int TRANSACTIONS = 100;
+    private static final int PARALLEL_THREADS = 8;
+    private static final int[] BRANCH_COUNTS = {2, 3, 4, 8};
+
+    public static void main(String[] args) throws Exception {
+        long latency = args.length > 0 ? Long.parseLong(args[0]) : 10;
+
+        System.out.println("Two Phase Commit Timings (resource latency " + latency + "ms)");
+        System.out.println("-------------------------------------");
+        commitTimings(latency);
+        System.out.println();
+        System.out.println();
+        System.out.println();
+        commitTimings(latency);
+    }
+
+    private static void commitTimings(long latency) throws Exception {
+        TransactionManagerImpl tm = new TransactionManagerImpl(10, new XidFactoryImpl("TwoPhaseCommitSpeed".getBytes()), new MockLog(), null);
+        for (int i = 0; i < BRANCH_COUNTS.length; i++) {
+            int branchCount = BRANCH_COUNTS[i];
+            SlowResource[] resources = new SlowResource[branchCount];
+            for (int j = 0; j < resources.length; j++) {
+                resources[j] = new SlowResource("resource" + j, latency);
+            }
+
+            tm.setParallelCompletionThreads(0);
+            long elapsed = runTransactions(tm, resources);
+            printResults("Serial " + branchCount + " branches", elapsed, TRANSACTIONS);
+
+            tm.setParallelCompletionThreads(PARALLEL_THREADS);
+            elapsed = runTransactions(tm, resources);
+            printResults("Parallel " + branchCount + " branches", elapsed, TRANSACTIONS);
+        }
+    }
+
+    private static long runTransactions(TransactionManagerImpl tm, SlowResource[] resources) throws Exception {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            tm.begin();
+            Transaction tx = tm.getTransaction();
+            for (int j = 0; j < resources.length; j++) {
+                tx.enlistResource(resources[j]);
+                tx.delistResource(resources[j], XAResource.TMSUCCESS);
+            }
+            tm.commit();
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    private static void printResults(String invocationType, long elapsed, int transactions) {
+        if (elapsed < 400) {
+            System.out.println(invocationType + ": elapse time to short to calculate latency (total " + elapsed + "ms)");
+        } else {
+            System.out.println(invocationType + ": " + (elapsed * 1000L / transactions) + " us/commit  (total " + elapsed + "ms)");
+        }
+    }
+}
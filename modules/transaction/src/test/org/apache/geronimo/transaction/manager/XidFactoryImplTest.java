@@ -0,0 +1,99 @@
+/**
+ *
+ * Copyright 2005 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.geronimo.transaction.manager;
+
+import java.util.HashSet;
+import java.util.Set;
+import javax.transaction.xa.Xid;
+
+import EDU.oswego.cs.dl.util.concurrent.CountDown;
+import junit.framework.TestCase;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class XidFactoryImplTest extends TestCase {
+    private final XidFactory xidFactory = new XidFactoryImpl("XidFactoryImplTest".getBytes());
+
+    public void testRecoveredXidEqualsOriginal() throws Exception {
+        Xid xid = xidFactory.createXid();
+        Xid branch = xidFactory.createBranch(xid, 1);
+        Xid recoveredXid = xidFactory.recover(xid.getFormatId(), xid.getGlobalTransactionId(), xid.getBranchQualifier());
+        Xid recoveredBranch = xidFactory.recover(branch.getFormatId(), branch.getGlobalTransactionId(), branch.getBranchQualifier());
+        assertEquals(xid, recoveredXid);
+        assertEquals(xid.hashCode(), recoveredXid.hashCode());
+        assertEquals(branch, recoveredBranch);
+        assertEquals(branch.hashCode(), recoveredBranch.hashCode());
+        assertFalse(xid.equals(branch));
+    }
+
+    public void testSharedIdsAreNotExposed() throws Exception {
+        Xid first = xidFactory.createBranch(xidFactory.createXid(), 1);
+        Xid second = xidFactory.createBranch(xidFactory.createXid(), 1);
+        byte[] branchQualifier = first.getBranchQualifier();
+        byte original = branchQualifier[20];
+        branchQualifier[20] = (byte) (original + 1);
+        assertEquals(original, second.getBranchQualifier()[20]);
+        assertEquals(original, first.getBranchQualifier()[20]);
+    }
+
+    public void testBranchesBeyondCache() throws Exception {
+        Xid xid = xidFactory.createXid();
+        Xid branch = xidFactory.createBranch(xid, 1000);
+        byte[] branchQualifier = branch.getBranchQualifier();
+        assertEquals((byte) 1000, branchQualifier[0]);
+        assertEquals((byte) (1000 >>> 8), branchQualifier[1]);
+        assertTrue(xidFactory.matchesBranchId(branchQualifier));
+        assertEquals(branch, xidFactory.createBranch(xid, 1000));
+    }
+
+    public void testMatchesOwnIds() throws Exception {
+        Xid xid = xidFactory.createXid();
+        assertTrue(xidFactory.matchesGlobalId(xid.getGlobalTransactionId()));
+        assertTrue(xidFactory.matchesBranchId(xidFactory.createBranch(xid, 1).getBranchQualifier()));
+        XidFactory other = new XidFactoryImpl("other".getBytes());
+        assertFalse(other.matchesGlobalId(xid.getGlobalTransactionId()));
+        assertFalse(xidFactory.matchesGlobalId(new byte[10]));
+    }
+
+    public void testIdsAreUniqueAcrossThreads() throws Exception {
+        final int threadCount = 8;
+        final int xidsPerThread = 3000;
+        final Set xids = new HashSet();
+        final CountDown done = new CountDown(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            new Thread() {
+                public void run() {
+                    try {
+                        Set local = new HashSet();
+                        for (int i = 0; i < xidsPerThread; i++) {
+                            local.add(xidFactory.createXid());
+                        }
+                        synchronized (xids) {
+                            xids.addAll(local);
+                        }
+                    } finally {
+                        done.release();
+                    }
+                }
+            }.start();
+        }
+        done.acquire();
+        assertEquals(threadCount * xidsPerThread, xids.size());
+    }
+}